@@ -0,0 +1,242 @@
+package com.monk.commerce.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.dto.CouponRequest;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Seeds a synthetic catalog into a running instance and drives {@code /coupons/applicable-coupons}
+ * and {@code /coupons/apply-coupon/{id}} at a fixed arrival rate. Run with
+ * {@code gradle loadTest --args="--rate=500 --duration=PT60S"}.
+ * <p>
+ * Requests are issued open-loop: the n-th request is due at {@code start + n / rate} whether or
+ * not earlier ones have completed, and its latency is measured from that due time. A stalled server
+ * therefore shows up as queueing latency instead of silently lowering the offered load.
+ */
+public final class LoadTest {
+
+    private static final int PREPARED_CARTS = 10_000;
+    // SQLite serializes writers, so more concurrent inserts only produce SQLITE_BUSY
+    private static final int SEED_CONCURRENCY = 4;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadTestOptions options;
+    private final ObjectMapper mapper;
+    private final HttpClient client;
+    private final Endpoint applicable = new Endpoint("applicable-coupons");
+    private final Endpoint apply = new Endpoint("apply-coupon");
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+        this.mapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        SyntheticCatalog catalog = new SyntheticCatalog(options);
+        List<Integer> couponIds = options.seedCatalog() ? seed(catalog.coupons()) : existingCouponIds();
+        if (couponIds.isEmpty() && options.applyFraction() > 0) {
+            throw new IllegalStateException("No coupons to apply; seed a catalog or set --apply-fraction=0");
+        }
+        List<byte[]> carts = new ArrayList<>(PREPARED_CARTS);
+        SyntheticCatalog.CartStream stream = catalog.carts();
+        for (int i = 0; i < PREPARED_CARTS; i++) carts.add(mapper.writeValueAsBytes(stream.next()));
+
+        System.out.printf("Driving %s at %.0f req/s for %s after %s of warm-up%n",
+                options.baseUrl(), options.rate(), options.duration(), options.warmup());
+        drive(carts, couponIds);
+        report();
+    }
+
+    private List<Integer> seed(List<CouponRequest> coupons) throws Exception {
+        long start = System.nanoTime();
+        List<Integer> ids = new ArrayList<>(coupons.size());
+        ConcurrentLinkedQueue<Integer> created = new ConcurrentLinkedQueue<>();
+        Semaphore permits = new Semaphore(SEED_CONCURRENCY);
+        LongAdder failures = new LongAdder();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (CouponRequest coupon : coupons) {
+            permits.acquire();
+            HttpRequest request = post("/coupons", mapper.writeValueAsBytes(body(coupon)));
+            pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, error) -> {
+                        permits.release();
+                        if (error != null || response.statusCode() / 100 != 2) {
+                            failures.increment();
+                            return;
+                        }
+                        try {
+                            created.add(mapper.readTree(response.body()).path("id").asInt());
+                        } catch (IOException e) {
+                            failures.increment();
+                        }
+                    }));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        ids.addAll(created);
+        System.out.printf("Seeded %d coupons (%d failed) in %d ms%n", ids.size(), failures.sum(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return ids;
+    }
+
+    private List<Integer> existingCouponIds() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri("/coupons")).timeout(REQUEST_TIMEOUT).GET().build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        List<Integer> ids = new ArrayList<>();
+        for (JsonNode coupon : mapper.readTree(response.body())) ids.add(coupon.path("id").asInt());
+        return ids;
+    }
+
+    /**
+     * The API takes the type next to the details, so the request is written field by field rather
+     * than through the record's polymorphic mapping.
+     */
+    private ObjectNode body(CouponRequest coupon) {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("type", coupon.type().getValue());
+        body.set("details", mapper.valueToTree(coupon.details()));
+        if (coupon.constraints() != null) body.set("constraints", mapper.valueToTree(coupon.constraints()));
+        return body;
+    }
+
+    private void drive(List<byte[]> carts, List<Integer> couponIds) {
+        Random random = new Random(options.seed() + 1);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate());
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long recordFrom = start + options.warmup().toNanos();
+        long end = recordFrom + options.duration().toNanos();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        for (long n = 0; ; n++) {
+            long due = start + n * intervalNanos;
+            if (due >= end) break;
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            byte[] cart = carts.get((int) (n % carts.size()));
+            boolean applying = !couponIds.isEmpty() && random.nextDouble() < options.applyFraction();
+            Endpoint endpoint = applying ? apply : applicable;
+            String path = applying
+                    ? "/coupons/apply-coupon/" + couponIds.get(random.nextInt(couponIds.size()))
+                    : "/coupons/applicable-coupons";
+            boolean recorded = due >= recordFrom;
+            if (recorded) endpoint.sent.increment();
+            inFlight.add(client.sendAsync(post(path, cart), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (recorded) endpoint.record(System.nanoTime() - due, response, error);
+                    }));
+            if (inFlight.size() >= 4096) inFlight.removeIf(CompletableFuture::isDone);
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+    }
+
+    private void report() throws IOException {
+        double seconds = options.duration().toNanos() / 1e9;
+        applicable.report(System.out, seconds);
+        apply.report(System.out, seconds);
+        if (options.histogramFile() != null) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(options.histogramFile()))) {
+                for (Endpoint endpoint : List.of(applicable, apply)) {
+                    out.println("# " + endpoint.name + " latency (ms)");
+                    endpoint.histogram().outputPercentileDistribution(out, 1e6);
+                }
+            }
+            System.out.println("Latency distributions written to " + options.histogramFile());
+        }
+    }
+
+    private HttpRequest post(String path, byte[] body) {
+        return HttpRequest.newBuilder(uri(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(options.baseUrl() + path);
+    }
+
+    private static final class Endpoint {
+        private final String name;
+        private final Recorder latency = new Recorder(3);
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder clientErrors = new LongAdder();
+        private final LongAdder serverErrors = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private Histogram histogram;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, HttpResponse<?> response, Throwable error) {
+            if (error != null) {
+                failures.increment();
+                return;
+            }
+            latency.recordValue(nanos);
+            switch (response.statusCode() / 100) {
+                case 2 -> ok.increment();
+                // Expired, inapplicable and exhausted coupons are expected answers, not failures
+                case 4 -> clientErrors.increment();
+                default -> serverErrors.increment();
+            }
+        }
+
+        Histogram histogram() {
+            if (histogram == null) histogram = latency.getIntervalHistogram();
+            return histogram;
+        }
+
+        void report(PrintStream out, double seconds) {
+            Histogram h = histogram();
+            out.printf("%n%s: %d sent, %.1f completed/s, 2xx %d, 4xx %d, 5xx %d, failed %d%n", name, sent.sum(),
+                    h.getTotalCount() / seconds, ok.sum(), clientErrors.sum(), serverErrors.sum(), failures.sum());
+            if (h.getTotalCount() == 0) return;
+            out.printf("  latency ms  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  p99.99 %.2f  max %.2f%n",
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)), ms(h.getValueAtPercentile(99)),
+                    ms(h.getValueAtPercentile(99.9)), ms(h.getValueAtPercentile(99.99)), ms(h.getMaxValue()));
+        }
+
+        private static double ms(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.monk.commerce.loadtest;
+
+import com.monk.commerce.entity.CouponType;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command-line options of {@link LoadTest}, given as {@code --name=value}. Every option has a
+ * default, so a bare run seeds a small catalog and drives a local instance for thirty seconds.
+ */
+record LoadTestOptions(
+        URI baseUrl,
+        long seed,
+        boolean seedCatalog,
+        int coupons,
+        Map<CouponType, Double> mix,
+        int products,
+        double productSkew,
+        double expiredFraction,
+        int expiryDays,
+        int maxCartLines,
+        double rate,
+        double applyFraction,
+        Duration warmup,
+        Duration duration,
+        Path histogramFile
+) {
+
+    static final String USAGE = """
+            Options (all optional):
+              --base-url=http://localhost:8080/api/v1   instance under test
+              --seed=42                                 seed of the catalog and cart generators
+              --seed-catalog=true                       create the synthetic catalog before the run
+              --coupons=1000                            number of coupons to create
+              --mix=cart:2,product:6,bxgy:2             relative weights of the coupon types (also rule)
+              --products=10000                          size of the product id space
+              --product-skew=1.0                        Zipf exponent of product popularity, 0 for uniform
+              --expired=0.1                             fraction of coupons that are already expired
+              --expiry-days=365                         spread of expiry dates around today
+              --max-cart-lines=8                        cart lines are uniform in [1, max]
+              --rate=200                                requests per second, issued open-loop
+              --apply-fraction=0.2                      share of requests that apply a coupon
+              --warmup=PT10S                            traffic before recording starts
+              --duration=PT30S                          recorded traffic
+              --histogram-file=                         also write the latency distribution here
+            """;
+
+    private static final Set<String> KNOWN = Set.of("base-url", "seed", "seed-catalog", "coupons", "mix", "products",
+            "product-skew", "expired", "expiry-days", "max-cart-lines", "rate", "apply-fraction", "warmup", "duration",
+            "histogram-file");
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got '" + arg + "'\n" + USAGE);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        LoadTestOptions options = new LoadTestOptions(
+                URI.create(stripSlash(values.getOrDefault("base-url", "http://localhost:8080/api/v1"))),
+                Long.parseLong(values.getOrDefault("seed", "42")),
+                Boolean.parseBoolean(values.getOrDefault("seed-catalog", "true")),
+                Integer.parseInt(values.getOrDefault("coupons", "1000")),
+                parseMix(values.getOrDefault("mix", "cart:2,product:6,bxgy:2")),
+                Integer.parseInt(values.getOrDefault("products", "10000")),
+                Double.parseDouble(values.getOrDefault("product-skew", "1.0")),
+                Double.parseDouble(values.getOrDefault("expired", "0.1")),
+                Integer.parseInt(values.getOrDefault("expiry-days", "365")),
+                Integer.parseInt(values.getOrDefault("max-cart-lines", "8")),
+                Double.parseDouble(values.getOrDefault("rate", "200")),
+                Double.parseDouble(values.getOrDefault("apply-fraction", "0.2")),
+                Duration.parse(values.getOrDefault("warmup", "PT10S")),
+                Duration.parse(values.getOrDefault("duration", "PT30S")),
+                values.getOrDefault("histogram-file", "").isBlank() ? null : Path.of(values.get("histogram-file"))
+        );
+        values.keySet().removeAll(KNOWN);
+        if (!values.isEmpty()) throw new IllegalArgumentException("Unknown options " + values.keySet() + "\n" + USAGE);
+        if (options.rate() <= 0 || options.products() <= 0 || options.maxCartLines() <= 0) {
+            throw new IllegalArgumentException("rate, products and max-cart-lines must be positive\n" + USAGE);
+        }
+        return options;
+    }
+
+    private static Map<CouponType, Double> parseMix(String mix) {
+        Map<CouponType, Double> weights = new EnumMap<>(CouponType.class);
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2) throw new IllegalArgumentException("Expected type:weight in --mix but got '" + part + "'");
+            String name = kv[0].trim().toUpperCase();
+            CouponType type = switch (name) {
+                case "CART" -> CouponType.CART_WISE;
+                case "PRODUCT" -> CouponType.PRODUCT_WISE;
+                default -> CouponType.fromString(name);
+            };
+            weights.put(type, Double.parseDouble(kv[1].trim()));
+        }
+        return weights;
+    }
+
+    private static String stripSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,96 @@
+package com.monk.commerce.loadtest;
+
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.CouponType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded generator of coupons and carts. Products are drawn from the same skewed distribution for
+ * both, so popular products carry most of the PRODUCT_WISE and BXGY coupons and show up in most
+ * carts, as in a real catalog. The same seed always yields the same catalog and cart stream.
+ */
+final class SyntheticCatalog {
+
+    private final LoadTestOptions options;
+    private final ZipfSampler products;
+
+    SyntheticCatalog(LoadTestOptions options) {
+        this.options = options;
+        this.products = new ZipfSampler(options.products(), options.productSkew());
+    }
+
+    List<CouponRequest> coupons() {
+        Random random = new Random(options.seed());
+        double totalWeight = options.mix().values().stream().mapToDouble(Double::doubleValue).sum();
+        List<CouponRequest> coupons = new ArrayList<>(options.coupons());
+        for (int i = 0; i < options.coupons(); i++) {
+            coupons.add(coupon(pickType(random, totalWeight), random));
+        }
+        return coupons;
+    }
+
+    /** An endless, reproducible stream of carts; each call to {@code next} returns a new cart. */
+    CartStream carts() {
+        return new CartStream(new Random(options.seed() ^ 0x5DEECE66DL));
+    }
+
+    final class CartStream {
+        private final Random random;
+
+        private CartStream(Random random) {
+            this.random = random;
+        }
+
+        CartRequest next() {
+            int lines = 1 + random.nextInt(options.maxCartLines());
+            List<CartItem> items = new ArrayList<>(lines);
+            for (int i = 0; i < lines; i++) {
+                items.add(new CartItem(products.next(random), 1 + random.nextInt(5), 10 + random.nextInt(490)));
+            }
+            return new CartRequest(items);
+        }
+    }
+
+    private CouponType pickType(Random random, double totalWeight) {
+        double pick = random.nextDouble() * totalWeight;
+        CouponType last = CouponType.CART_WISE;
+        for (Map.Entry<CouponType, Double> weight : options.mix().entrySet()) {
+            last = weight.getKey();
+            pick -= weight.getValue();
+            if (pick < 0) break;
+        }
+        return last;
+    }
+
+    private CouponRequest coupon(CouponType type, Random random) {
+        LocalDate expiry = expiry(random);
+        CouponDetails details = switch (type) {
+            case CART_WISE -> new CartWiseDetails(50 * (1 + random.nextInt(40)), 5 + random.nextInt(26), expiry);
+            case PRODUCT_WISE -> new ProductWiseDetails(products.next(random), 5 + random.nextInt(46), expiry);
+            case BXGY -> new BxGyDetails(
+                    List.of(new ProductQuantity(products.next(random), 1 + random.nextInt(3)),
+                            new ProductQuantity(products.next(random), 1 + random.nextInt(3))),
+                    List.of(new ProductQuantity(products.next(random), 1)),
+                    1 + random.nextInt(3), expiry);
+            case RULE -> new RuleDetails("total >= " + 100 * (1 + random.nextInt(10))
+                    + " && contains(" + products.next(random) + ")",
+                    "min(total * 0.0" + (5 + random.nextInt(5)) + ", 100)", expiry);
+        };
+        return new CouponRequest(type, details);
+    }
+
+    private LocalDate expiry(Random random) {
+        if (options.expiryDays() <= 0) return null;
+        LocalDate today = LocalDate.now();
+        if (random.nextDouble() < options.expiredFraction()) {
+            return today.minusDays(1 + random.nextInt(options.expiryDays()));
+        }
+        // Half of the live coupons never expire
+        return random.nextBoolean() ? null : today.plusDays(1 + random.nextInt(options.expiryDays()));
+    }
+}
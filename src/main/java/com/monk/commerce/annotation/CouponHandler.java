@@ -11,4 +11,10 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface CouponHandler {
     CouponType value();
+
+    /**
+     * Marks an alternative implementation that only runs in shadow mode, alongside the primary
+     * strategy of the same type, and never serves a response.
+     */
+    boolean shadow() default false;
 }
@@ -0,0 +1,16 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.archive")
+public record ArchiveProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("P30D") Duration grace,
+        @DefaultValue("10") int minBatchSize,
+        @DefaultValue("1000") int maxBatchSize,
+        @DefaultValue("PT0.05S") Duration targetBatchLatency,
+        @DefaultValue("0.2") double maxWriteShare
+) {}
@@ -0,0 +1,12 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.sessions")
+public record CartSessionProperties(
+        @DefaultValue("PT30M") Duration ttl,
+        @DefaultValue("100000") int maxSessions
+) {}
@@ -0,0 +1,17 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "coupons.catalog")
+public record CatalogProperties(
+        @DefaultValue("heap") ColumnStorage columnStorage
+) {
+
+    public enum ColumnStorage {
+        /** Primitive arrays on the heap. */
+        HEAP,
+        /** One direct buffer per columns generation, so the heap holds a fixed few objects at any catalog size. */
+        OFF_HEAP
+    }
+}
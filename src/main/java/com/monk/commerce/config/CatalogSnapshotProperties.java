@@ -0,0 +1,12 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+@ConfigurationProperties(prefix = "coupons.snapshot")
+public record CatalogSnapshotProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("coupons-catalog.snapshot") Path path
+) {}
@@ -0,0 +1,9 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "coupons.changes")
+public record ChangeLogProperties(
+        @DefaultValue("100000") int maxEntries
+) {}
@@ -0,0 +1,10 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "coupons.evaluation")
+public record EvaluationProperties(
+        // Carts with at least this many lines are sorted by product once and searched by each coupon
+        @DefaultValue("256") int sortMergeMinLines
+) {}
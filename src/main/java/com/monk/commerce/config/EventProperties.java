@@ -0,0 +1,26 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "coupons.events")
+public record EventProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("8192") int bufferSize,
+        @DefaultValue("drop") Overflow overflow,
+        @DefaultValue("256") int batchSize,
+        @DefaultValue("log") List<String> sinks,
+        @DefaultValue("coupons-events.log") Path logFile,
+        @DefaultValue("10000") int brokerCapacity
+) {
+
+    public enum Overflow {
+        /** Discard the event and count it in {@code coupons.events.dropped}. */
+        DROP,
+        /** Make the request thread wait until the slowest consumer frees a slot. */
+        BLOCK
+    }
+}
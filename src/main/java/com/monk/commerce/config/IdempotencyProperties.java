@@ -0,0 +1,12 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.idempotency")
+public record IdempotencyProperties(
+        @DefaultValue("PT10M") Duration ttl,
+        @DefaultValue("100000") int maxEntries
+) {}
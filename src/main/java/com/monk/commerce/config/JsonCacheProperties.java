@@ -0,0 +1,11 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "coupons.json-cache")
+public record JsonCacheProperties(
+        @DefaultValue("100000") int maxEntries,
+        @DefaultValue("16MB") DataSize maxListSize
+) {}
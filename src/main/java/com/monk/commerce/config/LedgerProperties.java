@@ -0,0 +1,32 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.ledger")
+public record LedgerProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("coupons-ledger") Path directory,
+        @DefaultValue("batch") FsyncPolicy fsync,
+        @DefaultValue("PT1S") Duration fsyncInterval,
+        @DefaultValue("64MB") DataSize rollSize,
+        @DefaultValue("PT1H") Duration rollInterval,
+        @DefaultValue("1024") int maxBatch,
+        @DefaultValue("65536") int queueCapacity,
+        @DefaultValue("true") boolean replayOnStart,
+        @DefaultValue("P7D") Duration retention
+) {
+
+    public enum FsyncPolicy {
+        /** Every group of records is forced to disk before the next one is written. */
+        BATCH,
+        /** The segment is forced at most once per {@code fsync-interval}. */
+        INTERVAL,
+        /** Leave flushing to the operating system. */
+        NEVER
+    }
+}
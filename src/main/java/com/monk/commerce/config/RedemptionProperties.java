@@ -0,0 +1,26 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.redemption")
+public record RedemptionProperties(
+        @DefaultValue("500") int flushBatchSize,
+        @DefaultValue("local") Mode mode,
+        String nodeId,
+        @DefaultValue("PT1M") Duration leaseTtl,
+        @DefaultValue("PT30S") Duration leaseIdleReturn,
+        @DefaultValue("PT10S") Duration leaseTarget,
+        @DefaultValue("10") int minLeaseBlock,
+        @DefaultValue("10000") int maxLeaseBlock
+) {
+
+    public enum Mode {
+        /** Limits are enforced by this JVM alone. */
+        LOCAL,
+        /** Nodes lease blocks of redemptions from the shared {@code redemption_quota} table. */
+        LEASED
+    }
+}
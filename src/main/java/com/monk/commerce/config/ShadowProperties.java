@@ -0,0 +1,16 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "coupons.shadow")
+public record ShadowProperties(
+        @DefaultValue("false") boolean enabled,
+        // Share of applicable-coupons and apply requests evaluated again by the shadow strategies
+        @DefaultValue("0.01") double sampleRate,
+        @DefaultValue("1") int threads,
+        // Comparisons waiting beyond this are dropped rather than queued
+        @DefaultValue("256") int queueCapacity,
+        // Largest discount difference still counted as a match
+        @DefaultValue("0.005") double tolerance
+) {}
@@ -0,0 +1,15 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "coupons.simulation")
+public record SimulationProperties(
+        // 0 runs one worker per core
+        @DefaultValue("0") int parallelism,
+        @DefaultValue("512") int chunkSize,
+        @DefaultValue("100") int maxProposed,
+        @DefaultValue("1MB") DataSize maxLineLength,
+        @DefaultValue("1") int maxConcurrent
+) {}
@@ -0,0 +1,15 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.tenants")
+public record TenantProperties(
+        @DefaultValue("PT30M") Duration idleTimeout,
+        @DefaultValue("1000") int maxLoaded,
+        // 0 allows one evaluation per core
+        @DefaultValue("0") int maxConcurrentEvaluations,
+        @DefaultValue("PT1S") Duration maxWait
+) {}
@@ -0,0 +1,19 @@
+package com.monk.commerce.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "coupons.warmup")
+public record WarmupProperties(
+        @DefaultValue("true") boolean enabled,
+        Path cartsFile,
+        @DefaultValue("200") int syntheticCarts,
+        @DefaultValue("3") int minRounds,
+        @DefaultValue("50") int maxRounds,
+        @DefaultValue("3") int stableRounds,
+        @DefaultValue("0.1") double tolerance,
+        @DefaultValue("PT30S") Duration maxDuration
+) {}
@@ -2,8 +2,16 @@ package com.monk.commerce.controller;
 
 import com.monk.commerce.dto.*;
 import com.monk.commerce.service.CouponService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
@@ -22,13 +30,24 @@ public class CouponController {
     }
 
     @GetMapping
-    public List<CouponResponse> getAllCoupons() {
-        return service.getAllCoupons();
+    public ResponseEntity<byte[]> getAllCoupons(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = service.getCatalogETag();
+        if (matches(ifNoneMatch, eTag)) return notModified(eTag);
+        return json(service.getAllCouponsJson());
+    }
+
+    @GetMapping("/changes")
+    public CouponChangesResponse getChanges(@RequestParam(required = false) Long since) {
+        return service.getChanges(since);
     }
 
     @GetMapping("/{id}")
-    public CouponResponse getCoupon(@PathVariable Integer id) {
-        return service.getCoupon(id);
+    public ResponseEntity<byte[]> getCoupon(@PathVariable Integer id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = service.getCouponETag(id);
+        if (matches(ifNoneMatch, eTag)) return notModified(eTag);
+        return json(service.getCouponJson(id));
     }
 
     @PutMapping("/{id}")
@@ -42,12 +61,93 @@ public class CouponController {
     }
 
     @PostMapping("/applicable-coupons")
-    public ApplicableCouponsResponse getApplicableCoupons(@RequestBody CartRequest cart) {
-        return service.getApplicableCoupons(cart);
+    public ApplicableCouponsResponse getApplicableCoupons(
+            @RequestBody CartRequest cart,
+            @RequestHeader(value = "X-Deadline-Ms", required = false) Long deadlineHeader,
+            @RequestParam(required = false) Long deadlineMs) {
+        // The tighter of the two wins, so a proxy can tighten a budget the caller put in the URL but not extend it
+        Long budget = deadlineHeader;
+        if (budget == null || deadlineMs != null && deadlineMs < budget) budget = deadlineMs;
+        if (budget == null) return service.getApplicableCoupons(cart);
+        return service.getApplicableCoupons(cart, Duration.ofMillis(Math.max(0, budget)));
+    }
+
+    @PostMapping("/cart-sessions")
+    public CartSessionResponse createCartSession(@RequestBody(required = false) CartRequest cart) {
+        return service.createCartSession(cart == null ? new CartRequest(List.of()) : cart);
+    }
+
+    @GetMapping("/cart-sessions/{id}")
+    public CartSessionResponse getCartSession(@PathVariable String id) {
+        return service.getCartSession(id);
+    }
+
+    @PatchMapping("/cart-sessions/{id}")
+    public CartSessionResponse updateCartSession(@PathVariable String id, @RequestBody List<CartChange> changes) {
+        return service.updateCartSession(id, changes);
+    }
+
+    @DeleteMapping("/cart-sessions/{id}")
+    public void deleteCartSession(@PathVariable String id) {
+        service.deleteCartSession(id);
     }
 
     @PostMapping("/apply-coupon/{id}")
-    public ApplyCouponResponse applyCoupon(@PathVariable Integer id, @RequestBody CartRequest cart) {
-        return service.applyCoupon(id, cart);
+    public ApplyCouponResponse applyCoupon(@PathVariable Integer id, @RequestBody CartRequest cart,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return service.applyCoupon(id, cart, idempotencyKey);
+    }
+
+    /**
+     * Takes the proposed coupons as a JSON part and the historical carts as a file part, one
+     * CartRequest JSON per line. The upload is spooled to disk and read as a stream.
+     */
+    @PostMapping(value = "/simulations", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public SimulationReport simulateCampaign(@RequestPart("coupons") List<CouponRequest> proposed,
+                                             @RequestPart("carts") MultipartFile carts) throws IOException {
+        try (InputStream in = carts.getInputStream()) {
+            return service.simulateCampaign(proposed, in);
+        }
+    }
+
+    /**
+     * Replaces the members of a customer segment with the customer ids in the body, separated by
+     * whitespace or commas. The body is read as a stream, so it can hold millions of ids.
+     */
+    @PutMapping(value = "/segments/{name}", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public SegmentResponse uploadSegment(@PathVariable String name, InputStream members) {
+        return service.uploadSegment(name, members);
+    }
+
+    @GetMapping("/segments/{name}")
+    public SegmentResponse getSegment(@PathVariable String name) {
+        return service.getSegment(name);
+    }
+
+    @DeleteMapping("/segments/{name}")
+    public void deleteSegment(@PathVariable String name) {
+        service.deleteSegment(name);
+    }
+
+    private static ResponseEntity<byte[]> json(CachedJson json) {
+        return ResponseEntity.ok().eTag(json.eTag()).contentType(MediaType.APPLICATION_JSON).body(json.body());
+    }
+
+    private static ResponseEntity<byte[]> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+
+    /**
+     * Weak comparison as RFC 9110 prescribes for If-None-Match: a {@code W/} prefix is ignored and
+     * {@code *} matches any current representation.
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(eTag)) return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,27 @@
+package com.monk.commerce.controller;
+
+import com.monk.commerce.exception.InvalidTenantException;
+import com.monk.commerce.service.tenant.TenantContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Binds the request to the tenant named by its {@code X-Tenant-Id} header, or to the default tenant.
+ */
+public class TenantInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String tenant = request.getHeader(TenantContext.HEADER);
+        if (tenant != null && !TenantContext.isValid(tenant)) throw new InvalidTenantException(tenant);
+        TenantContext.set(tenant);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        TenantContext.clear();
+    }
+}
@@ -0,0 +1,15 @@
+package com.monk.commerce.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * A recurring daily window, on the given days or every day when none are given. A window whose
+ * {@code to} is not after {@code from} runs past midnight into the next day.
+ */
+public record ActivationWindow(
+        List<DayOfWeek> days,
+        LocalTime from,
+        LocalTime to
+) {}
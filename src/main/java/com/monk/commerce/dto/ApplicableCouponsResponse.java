@@ -2,6 +2,14 @@ package com.monk.commerce.dto;
 
 import java.util.List;
 
+/**
+ * {@code partial} is set when the evaluation ran out of its deadline before reaching every coupon.
+ */
 public record ApplicableCouponsResponse(
-        List<ApplicableCoupon> applicableCoupons
-) {}
\ No newline at end of file
+        List<ApplicableCoupon> applicableCoupons,
+        boolean partial
+) {
+    public ApplicableCouponsResponse(List<ApplicableCoupon> applicableCoupons) {
+        this(applicableCoupons, false);
+    }
+}
@@ -0,0 +1,9 @@
+package com.monk.commerce.dto;
+
+/**
+ * A response body serialized ahead of time, with the strong ETag of the version it was built from.
+ */
+public record CachedJson(
+        String eTag,
+        byte[] body
+) {}
@@ -0,0 +1,15 @@
+package com.monk.commerce.dto;
+
+/**
+ * One edit of a cart session. {@code ADD} adds {@code quantity} units (default 1), {@code REMOVE}
+ * takes away {@code quantity} units or the whole line when no quantity is given, and {@code SET}
+ * replaces the quantity. A price is required when a line is created and updates it otherwise.
+ */
+public record CartChange(
+        Action action,
+        Integer productId,
+        Integer quantity,
+        Double price
+) {
+    public enum Action { ADD, REMOVE, SET }
+}
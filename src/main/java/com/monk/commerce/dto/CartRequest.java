@@ -3,5 +3,10 @@ package com.monk.commerce.dto;
 import java.util.List;
 
 public record CartRequest(
-        List<CartItem> items
-) {}
\ No newline at end of file
+        List<CartItem> items,
+        Long customerId
+) {
+    public CartRequest(List<CartItem> items) {
+        this(items, null);
+    }
+}
@@ -0,0 +1,11 @@
+package com.monk.commerce.dto;
+
+import java.util.List;
+
+public record CartSessionResponse(
+        String sessionId,
+        Long customerId,
+        List<CartItem> items,
+        double total,
+        List<ApplicableCoupon> applicableCoupons
+) {}
@@ -0,0 +1,14 @@
+package com.monk.commerce.dto;
+
+import java.util.List;
+
+/**
+ * Coupons created, updated or deleted after {@code since}. Every change up to {@code version} is
+ * included, so {@code version} is the {@code since} of the next request.
+ */
+public record CouponChangesResponse(
+        Long since,
+        long version,
+        List<CouponResponse> changed,
+        List<Integer> deleted
+) {}
@@ -0,0 +1,23 @@
+package com.monk.commerce.dto;
+
+import java.util.List;
+
+public record CouponConstraints(
+        Integer usageLimit,
+        Boolean oncePerCustomer,
+        CouponSchedule schedule,
+        // Customer segments, of which the customer must be in at least one
+        List<String> segments
+) {
+    public CouponConstraints(Integer usageLimit, Boolean oncePerCustomer, CouponSchedule schedule) {
+        this(usageLimit, oncePerCustomer, schedule, null);
+    }
+
+    public CouponConstraints(Integer usageLimit, Boolean oncePerCustomer) {
+        this(usageLimit, oncePerCustomer, null, null);
+    }
+
+    public CouponConstraints(Integer usageLimit) {
+        this(usageLimit, null, null, null);
+    }
+}
@@ -3,6 +3,6 @@ package com.monk.commerce.dto;
 import java.time.LocalDate;
 
 public sealed interface CouponDetails
-        permits CartWiseDetails, ProductWiseDetails, BxGyDetails {
+        permits CartWiseDetails, ProductWiseDetails, BxGyDetails, RuleDetails {
     LocalDate expiryDate();
 }
\ No newline at end of file
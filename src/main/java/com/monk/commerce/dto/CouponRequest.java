@@ -14,7 +14,13 @@ public record CouponRequest(
         @JsonSubTypes({
                 @JsonSubTypes.Type(value = CartWiseDetails.class, name = "CART_WISE"),
                 @JsonSubTypes.Type(value = ProductWiseDetails.class, name = "PRODUCT_WISE"),
-                @JsonSubTypes.Type(value = BxGyDetails.class, name = "BXGY")
+                @JsonSubTypes.Type(value = BxGyDetails.class, name = "BXGY"),
+                @JsonSubTypes.Type(value = RuleDetails.class, name = "RULE")
         })
-        CouponDetails details
-) {}
\ No newline at end of file
+        CouponDetails details,
+        CouponConstraints constraints
+) {
+    public CouponRequest(CouponType type, CouponDetails details) {
+        this(type, details, null);
+    }
+}
\ No newline at end of file
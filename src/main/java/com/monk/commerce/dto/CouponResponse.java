@@ -5,5 +5,10 @@ import com.monk.commerce.entity.CouponType;
 public record CouponResponse(
         Integer id,
         CouponType type,
-        CouponDetails details
-) {}
\ No newline at end of file
+        CouponDetails details,
+        CouponConstraints constraints
+) {
+    public CouponResponse(Integer id, CouponType type, CouponDetails details) {
+        this(id, type, details, null);
+    }
+}
\ No newline at end of file
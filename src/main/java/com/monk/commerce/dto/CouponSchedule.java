@@ -0,0 +1,20 @@
+package com.monk.commerce.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * When a coupon takes part in evaluation: from {@code startsAt} until {@code endsAt}, and within
+ * that span only inside one of the {@code windows} if any are given. Windows are read in
+ * {@code timeZone}, UTC by default.
+ */
+public record CouponSchedule(
+        Instant startsAt,
+        Instant endsAt,
+        String timeZone,
+        List<ActivationWindow> windows
+) {
+    public CouponSchedule(Instant startsAt, Instant endsAt) {
+        this(startsAt, endsAt, null, null);
+    }
+}
@@ -0,0 +1,14 @@
+package com.monk.commerce.dto;
+
+import java.time.LocalDate;
+
+/**
+ * A coupon defined by two expressions over the cart: {@code condition} decides applicability and
+ * {@code discount} computes the amount off, e.g. {@code total >= 1000 && contains(7) && qty(3) >= 2}
+ * with {@code min(total * 10 / 100, 150)}.
+ */
+public record RuleDetails(
+        String condition,
+        String discount,
+        LocalDate expiryDate
+) implements CouponDetails {}
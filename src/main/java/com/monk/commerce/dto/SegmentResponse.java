@@ -0,0 +1,13 @@
+package com.monk.commerce.dto;
+
+import java.time.Instant;
+
+/**
+ * A customer segment as stored: its member count and the size of its compressed bitmap.
+ */
+public record SegmentResponse(
+        String name,
+        long members,
+        long bytes,
+        Instant updatedAt
+) {}
@@ -0,0 +1,41 @@
+package com.monk.commerce.dto;
+
+import com.monk.commerce.entity.CouponType;
+
+import java.util.List;
+
+/**
+ * What a set of proposed coupons would have cost over a file of historical carts, next to the
+ * live catalog. A proposed coupon "wins" a cart when its discount beats every live coupon's.
+ */
+public record SimulationReport(
+        long carts,
+        long skippedLines,
+        double cartValue,
+        long cartsWithLiveCoupon,
+        double bestLiveDiscount,
+        List<CouponImpact> proposed,
+        long elapsedMillis
+) {
+
+    /** The impact of the proposed coupon at {@code index} in the request. */
+    public record CouponImpact(
+            int index,
+            CouponType type,
+            long hits,
+            double hitRate,
+            double totalDiscount,
+            double averageDiscount,
+            double maxDiscount,
+            long winsOverLive,
+            double incrementalDiscount,
+            List<DiscountBucket> distribution
+    ) {}
+
+    /** Carts whose discount fell in {@code [from, to)}; {@code to} is null for the last bucket. */
+    public record DiscountBucket(
+            double from,
+            Double to,
+            long carts
+    ) {}
+}
@@ -0,0 +1,57 @@
+package com.monk.commerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * A coupon moved out of the {@code coupon} table some time after it expired. Same columns as
+ * {@link Coupon}, copied as stored, plus when the row was archived.
+ */
+@Entity
+@Table(name = "coupon_archive")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ArchivedCoupon {
+
+    @Id
+    private Integer id;
+
+    private String tenantId;
+
+    private CouponType type;
+
+    @Column(columnDefinition = "TEXT")
+    private String details;
+
+    private LocalDate expiryDate;
+
+    private Long version;
+
+    private Integer usageLimit;
+
+    private Boolean oncePerCustomer;
+
+    @Column(columnDefinition = "TEXT")
+    private String schedule;
+
+    @Column(columnDefinition = "TEXT")
+    private String segments;
+
+    private Integer redemptionCount;
+
+    // Epoch milliseconds
+    private Long archivedAt;
+
+    public Coupon toCoupon() {
+        return Coupon.builder().id(id).tenantId(tenantId).type(type).details(details).expiryDate(expiryDate).version(version)
+                .usageLimit(usageLimit).oncePerCustomer(oncePerCustomer).schedule(schedule)
+                .segments(segments).redemptionCount(redemptionCount).build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.monk.commerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The highest catalog version a tenant's deletes have taken. A deleted coupon leaves no row to
+ * carry its version, so a catalog loading from the table would otherwise hand it out again.
+ */
+@Entity
+@Table(name = "catalog_version")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CatalogVersion {
+
+    // The tenant id, empty for the default tenant
+    @Id
+    private String tenant;
+
+    private Long version;
+}
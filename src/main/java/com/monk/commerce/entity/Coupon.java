@@ -9,7 +9,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "coupon")
+@Table(name = "coupon", indexes = {
+        @Index(name = "ix_coupon_expiry_date", columnList = "expiryDate"),
+        @Index(name = "ix_coupon_tenant_id", columnList = "tenantId")
+})
 @Data
 @Builder
 @AllArgsConstructor
@@ -20,10 +23,31 @@ public class Coupon {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
+    // Null for the default tenant
+    private String tenantId;
+
     private CouponType type;
 
     @Column(columnDefinition = "TEXT")
     private String details;
 
     private LocalDate expiryDate;
+
+    private Long version;
+
+    private Integer usageLimit;
+
+    private Boolean oncePerCustomer;
+
+    // CouponSchedule as JSON, null when the coupon is always active
+    @Column(columnDefinition = "TEXT")
+    private String schedule;
+
+    // Names of the customer segments the coupon is limited to, comma-separated; null for everyone
+    @Column(columnDefinition = "TEXT")
+    private String segments;
+
+    // Written only by the redemption flusher, never by entity saves that may hold a stale count
+    @Column(updatable = false)
+    private Integer redemptionCount;
 }
@@ -6,7 +6,8 @@ import com.fasterxml.jackson.annotation.JsonValue;
 public enum CouponType {
     CART_WISE("CART_WISE"),
     PRODUCT_WISE("PRODUCT_WISE"),
-    BXGY("BXGY");
+    BXGY("BXGY"),
+    RULE("RULE");
 
     private final String value;
 
@@ -0,0 +1,25 @@
+package com.monk.commerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "customer_redemption",
+        indexes = @Index(name = "ix_customer_redemption_coupon", columnList = "couponId"))
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerRedemption {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Integer couponId;
+
+    private Long customerId;
+}
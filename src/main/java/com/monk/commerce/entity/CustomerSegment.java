@@ -0,0 +1,38 @@
+package com.monk.commerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A named set of customer ids, stored as a serialized
+ * {@link com.monk.commerce.service.segment.SegmentBitmap}.
+ */
+@Entity
+@Table(name = "customer_segment",
+        uniqueConstraints = @UniqueConstraint(name = "ux_customer_segment_name", columnNames = {"tenantId", "name"}))
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CustomerSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Null for the default tenant
+    private String tenantId;
+
+    private String name;
+
+    private Long members;
+
+    @Column(columnDefinition = "BLOB")
+    private byte[] bitmap;
+
+    // Epoch milliseconds
+    private Long updatedAt;
+}
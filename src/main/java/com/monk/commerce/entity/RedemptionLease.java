@@ -0,0 +1,33 @@
+package com.monk.commerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "redemption_lease",
+        indexes = @Index(name = "ix_redemption_lease_coupon_node", columnList = "couponId, nodeId"))
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RedemptionLease {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Integer couponId;
+
+    private String nodeId;
+
+    private Long granted;
+
+    private Long used;
+
+    private Instant expiresAt;
+}
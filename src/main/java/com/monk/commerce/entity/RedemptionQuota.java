@@ -0,0 +1,27 @@
+package com.monk.commerce.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Cluster-wide quota of a limited coupon. {@code allocated} counts every unit handed out to a
+ * node lease, consumed or not, so it never exceeds {@code usageLimit}.
+ */
+@Entity
+@Table(name = "redemption_quota")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RedemptionQuota {
+
+    @Id
+    private Integer couponId;
+
+    private Integer usageLimit;
+
+    private Long allocated;
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class CartSessionNotFoundException extends ResponseStatusException {
+    public CartSessionNotFoundException(String id) {
+        super(HttpStatus.NOT_FOUND, "Cart session " + id + " not found or expired");
+    }
+}
@@ -0,0 +1,11 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class ChangesUnavailableException extends ResponseStatusException {
+    public ChangesUnavailableException(long since, long oldest) {
+        super(HttpStatus.GONE, "Changes since version " + since + " are not available (oldest is " + oldest
+                + "); resynchronize by requesting the changes without since");
+    }
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class CouponAlreadyUsedException extends ResponseStatusException {
+    public CouponAlreadyUsedException(Integer couponId) {
+        super(HttpStatus.BAD_REQUEST, "Coupon " + couponId + " has already been used by this customer");
+    }
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class CouponNotActiveException extends ResponseStatusException {
+    public CouponNotActiveException(Integer couponId) {
+        super(HttpStatus.BAD_REQUEST, "Coupon " + couponId + " is not active at this time");
+    }
+}
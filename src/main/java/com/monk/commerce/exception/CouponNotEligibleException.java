@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class CouponNotEligibleException extends ResponseStatusException {
+    public CouponNotEligibleException(Integer couponId) {
+        super(HttpStatus.BAD_REQUEST, "Customer is not in any segment coupon " + couponId + " is limited to");
+    }
+}
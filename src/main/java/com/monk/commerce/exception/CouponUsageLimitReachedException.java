@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class CouponUsageLimitReachedException extends ResponseStatusException {
+    public CouponUsageLimitReachedException(Integer couponId) {
+        super(HttpStatus.BAD_REQUEST, "Coupon " + couponId + " has reached its usage limit");
+    }
+}
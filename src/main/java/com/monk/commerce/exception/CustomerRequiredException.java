@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class CustomerRequiredException extends ResponseStatusException {
+    public CustomerRequiredException(Integer couponId) {
+        super(HttpStatus.BAD_REQUEST, "Coupon " + couponId + " can only be applied to a cart with a customerId");
+    }
+}
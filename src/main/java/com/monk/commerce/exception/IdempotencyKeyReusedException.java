@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class IdempotencyKeyReusedException extends ResponseStatusException {
+    public IdempotencyKeyReusedException(String key) {
+        super(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key " + key + " was already used for a different request");
+    }
+}
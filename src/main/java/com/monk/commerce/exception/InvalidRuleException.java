@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class InvalidRuleException extends ResponseStatusException {
+    public InvalidRuleException(String message) {
+        super(HttpStatus.BAD_REQUEST, "Invalid rule: " + message);
+    }
+}
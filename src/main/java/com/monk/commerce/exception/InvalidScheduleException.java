@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class InvalidScheduleException extends ResponseStatusException {
+    public InvalidScheduleException(String message) {
+        super(HttpStatus.BAD_REQUEST, "Invalid schedule: " + message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class InvalidSegmentException extends ResponseStatusException {
+    public InvalidSegmentException(String reason) {
+        super(HttpStatus.BAD_REQUEST, "Invalid segment: " + reason);
+    }
+}
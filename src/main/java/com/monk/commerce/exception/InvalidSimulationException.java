@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class InvalidSimulationException extends ResponseStatusException {
+    public InvalidSimulationException(String reason) {
+        super(HttpStatus.BAD_REQUEST, "Invalid simulation: " + reason);
+    }
+}
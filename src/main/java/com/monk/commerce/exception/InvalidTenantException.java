@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class InvalidTenantException extends ResponseStatusException {
+    public InvalidTenantException(String tenant) {
+        super(HttpStatus.BAD_REQUEST, "Invalid tenant id: " + tenant);
+    }
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class SegmentNotFoundException extends ResponseStatusException {
+    public SegmentNotFoundException(String name) {
+        super(HttpStatus.NOT_FOUND, "Segment not found: " + name);
+    }
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class SimulationBusyException extends ResponseStatusException {
+    public SimulationBusyException() {
+        super(HttpStatus.TOO_MANY_REQUESTS, "Too many simulations are running, retry later");
+    }
+}
@@ -0,0 +1,10 @@
+package com.monk.commerce.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+public class TenantBusyException extends ResponseStatusException {
+    public TenantBusyException(String tenant) {
+        super(HttpStatus.TOO_MANY_REQUESTS, "Tenant " + tenant + " has too much evaluation work queued, retry later");
+    }
+}
@@ -0,0 +1,24 @@
+package com.monk.commerce.repository;
+
+import com.monk.commerce.entity.ArchivedCoupon;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+
+public interface ArchivedCouponRepository extends JpaRepository<ArchivedCoupon, Integer> {
+
+    /**
+     * Copies the given {@code coupon} rows as they are stored, in one statement. An id already in
+     * the archive, left by a deleted coupon whose id was reused, is overwritten.
+     */
+    @Modifying
+    @Query(value = "insert or replace into coupon_archive (id, tenant_id, type, details, expiry_date, version, usage_limit, " +
+            "once_per_customer, schedule, segments, redemption_count, archived_at) " +
+            "select id, tenant_id, type, details, expiry_date, version, usage_limit, once_per_customer, schedule, segments, " +
+            "redemption_count, :archivedAt from coupon where id in :ids",
+            nativeQuery = true)
+    int copyFromCoupons(@Param("ids") Collection<Integer> ids, @Param("archivedAt") long archivedAt);
+}
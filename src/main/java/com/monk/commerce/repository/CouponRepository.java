@@ -1,7 +1,46 @@
 package com.monk.commerce.repository;
 
 import com.monk.commerce.entity.Coupon;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
 
 public interface CouponRepository extends JpaRepository<Coupon, Integer> {
+
+    List<Coupon> findByTenantIdIsNull();
+
+    List<Coupon> findByTenantId(String tenantId);
+
+    List<Coupon> findByVersionGreaterThanOrVersionIsNull(Long version);
+
+    @Query("select c.id from Coupon c")
+    List<Integer> findAllIds();
+
+    @Query("select coalesce(max(c.version), 0) from Coupon c")
+    long findMaxVersion();
+
+    @Query("select v.version from CatalogVersion v where v.tenant = :tenant")
+    Long findCatalogVersion(@Param("tenant") String tenant);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into catalog_version (tenant, version) values (:tenant, :version) " +
+            "on conflict (tenant) do update set version = max(version, excluded.version)", nativeQuery = true)
+    int raiseCatalogVersion(@Param("tenant") String tenant, @Param("version") long version);
+
+    @Query("select c.id from Coupon c where c.expiryDate < :cutoff")
+    List<Integer> findIdsExpiredBefore(@Param("cutoff") LocalDate cutoff, Pageable page);
+
+    @Query("select c.redemptionCount from Coupon c where c.id = :id")
+    Integer findRedemptionCount(@Param("id") Integer id);
+
+    @Modifying
+    @Query("update Coupon c set c.redemptionCount = coalesce(c.redemptionCount, 0) + :delta where c.id = :id")
+    int incrementRedemptionCount(@Param("id") Integer id, @Param("delta") int delta);
 }
@@ -0,0 +1,21 @@
+package com.monk.commerce.repository;
+
+import com.monk.commerce.entity.CustomerRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface CustomerRedemptionRepository extends JpaRepository<CustomerRedemption, Long> {
+
+    @Query("select r.customerId from CustomerRedemption r where r.couponId = :id")
+    List<Long> findCustomerIds(@Param("id") Integer couponId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from CustomerRedemption r where r.couponId = :id")
+    int deleteByCouponId(@Param("id") Integer couponId);
+}
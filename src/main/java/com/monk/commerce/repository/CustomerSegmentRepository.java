@@ -0,0 +1,27 @@
+package com.monk.commerce.repository;
+
+import com.monk.commerce.entity.CustomerSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CustomerSegmentRepository extends JpaRepository<CustomerSegment, Long> {
+
+    Optional<CustomerSegment> findByTenantIdAndName(String tenantId, String name);
+
+    Optional<CustomerSegment> findByTenantIdIsNullAndName(String name);
+
+    /** Every segment without its bitmap, to tell which ones changed since they were loaded. */
+    List<Stamp> findAllBy();
+
+    interface Stamp {
+        Long getId();
+
+        String getTenantId();
+
+        String getName();
+
+        Long getUpdatedAt();
+    }
+}
@@ -0,0 +1,22 @@
+package com.monk.commerce.repository;
+
+import com.monk.commerce.entity.RedemptionLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface RedemptionLeaseRepository extends JpaRepository<RedemptionLease, Long> {
+
+    Optional<RedemptionLease> findByCouponIdAndNodeId(Integer couponId, String nodeId);
+
+    List<RedemptionLease> findByExpiresAtBefore(Instant instant);
+
+    @Modifying
+    @Query("delete from RedemptionLease l where l.couponId = :id")
+    int deleteByCouponId(@Param("id") Integer couponId);
+}
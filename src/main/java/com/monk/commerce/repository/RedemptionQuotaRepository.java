@@ -0,0 +1,35 @@
+package com.monk.commerce.repository;
+
+import com.monk.commerce.entity.RedemptionQuota;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface RedemptionQuotaRepository extends JpaRepository<RedemptionQuota, Integer> {
+
+    @Modifying
+    @Query(value = "insert or ignore into redemption_quota (coupon_id, usage_limit, allocated) values (:id, :limit, 0)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("id") Integer couponId, @Param("limit") int usageLimit);
+
+    @Modifying
+    @Query("update RedemptionQuota q set q.usageLimit = :limit where q.couponId = :id")
+    int updateLimit(@Param("id") Integer couponId, @Param("limit") int usageLimit);
+
+    @Query("select q.usageLimit - q.allocated from RedemptionQuota q where q.couponId = :id")
+    Long findUnallocated(@Param("id") Integer couponId);
+
+    @Modifying
+    @Query("update RedemptionQuota q set q.allocated = q.allocated + :units " +
+            "where q.couponId = :id and q.allocated + :units <= q.usageLimit")
+    int allocate(@Param("id") Integer couponId, @Param("units") long units);
+
+    @Modifying
+    @Query("update RedemptionQuota q set q.allocated = q.allocated - :units where q.couponId = :id")
+    int deallocate(@Param("id") Integer couponId, @Param("units") long units);
+
+    @Modifying
+    @Query("delete from RedemptionQuota q where q.couponId = :id")
+    int deleteByCouponId(@Param("id") Integer couponId);
+}
@@ -2,14 +2,38 @@ package com.monk.commerce.service;
 
 import com.monk.commerce.dto.*;
 
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
 
 public interface CouponService {
     CouponResponse createCoupon(CouponRequest request);
     List<CouponResponse> getAllCoupons();
+    String getCatalogETag();
+    CachedJson getAllCouponsJson();
     CouponResponse getCoupon(Integer id);
+    String getCouponETag(Integer id);
+    CachedJson getCouponJson(Integer id);
     CouponResponse updateCoupon(Integer id, CouponRequest request);
     void deleteCoupon(Integer id);
+    CouponChangesResponse getChanges(Long since);
     ApplicableCouponsResponse getApplicableCoupons(CartRequest cart);
+    ApplicableCouponsResponse getApplicableCoupons(CartRequest cart, Duration budget);
+    /** Like {@link #getApplicableCoupons(CartRequest)}, without publishing an event. */
+    ApplicableCouponsResponse previewApplicableCoupons(CartRequest cart);
+    CartSessionResponse createCartSession(CartRequest cart);
+    CartSessionResponse getCartSession(String id);
+    CartSessionResponse updateCartSession(String id, List<CartChange> changes);
+    void deleteCartSession(String id);
+    SimulationReport simulateCampaign(List<CouponRequest> proposed, InputStream carts);
     ApplyCouponResponse applyCoupon(Integer id, CartRequest cart);
+    ApplyCouponResponse applyCoupon(Integer id, CartRequest cart, String idempotencyKey);
+    /**
+     * Runs the checks and the discount of {@link #applyCoupon(Integer, CartRequest)} except usage
+     * limits, without redeeming the coupon, recording it or publishing an event.
+     */
+    ApplyCouponResponse previewCoupon(Integer id, CartRequest cart);
+    SegmentResponse uploadSegment(String name, InputStream members);
+    SegmentResponse getSegment(String name);
+    void deleteSegment(String name);
 }
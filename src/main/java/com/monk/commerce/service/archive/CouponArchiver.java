@@ -0,0 +1,152 @@
+package com.monk.commerce.service.archive;
+
+import com.monk.commerce.config.ArchiveProperties;
+import com.monk.commerce.repository.ArchivedCouponRepository;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.tenant.TenantCatalogs;
+import com.monk.commerce.service.tenant.TenantPartition;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Moves coupons that expired more than {@code coupons.archive.grace} ago from {@code coupon} to
+ * {@code coupon_archive}, so the hot table and the catalog stop carrying them. Each batch is
+ * copied and deleted in one transaction. Batches are sized by how long the last one held the
+ * write lock, halving above {@code target-batch-latency} and growing slowly below it, and the job
+ * pauses between batches so that it holds the lock for at most {@code max-write-share} of the time.
+ */
+@Component
+public class CouponArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponArchiver.class);
+
+    private final CouponRepository repository;
+    private final ArchivedCouponRepository archive;
+    private final TenantCatalogs tenants;
+    private final CouponJsonCache json;
+    private final RedemptionLimiter limiter;
+    private final TransactionTemplate transactions;
+    private final ArchiveProperties properties;
+    private final Counter archivedCounter;
+    // Carried over between runs
+    private int batchSize;
+
+    public CouponArchiver(CouponRepository repository, ArchivedCouponRepository archive, TenantCatalogs tenants,
+                          CouponJsonCache json, RedemptionLimiter limiter, TransactionTemplate transactions,
+                          ArchiveProperties properties, MeterRegistry registry) {
+        this.repository = repository;
+        this.archive = archive;
+        this.tenants = tenants;
+        this.json = json;
+        this.limiter = limiter;
+        this.transactions = transactions;
+        this.properties = properties;
+        this.archivedCounter = registry.counter("coupons.archive.archived");
+        this.batchSize = minBatchSize();
+    }
+
+    @Scheduled(fixedDelayString = "${coupons.archive.interval:PT1H}",
+            initialDelayString = "${coupons.archive.interval:PT1H}")
+    public void run() {
+        if (!properties.enabled() || !tenants.defaultPartition().catalog().isLoaded()) return;
+        archiveExpired(LocalDate.now());
+    }
+
+    /**
+     * Archives every coupon whose expiry date is more than the grace period before {@code today}.
+     * Returns the number of coupons archived.
+     */
+    public synchronized int archiveExpired(LocalDate today) {
+        LocalDate cutoff = today.minusDays(properties.grace().toDays());
+        int archived = 0;
+        while (true) {
+            int requested = batchSize;
+            long start = System.nanoTime();
+            List<Integer> ids;
+            try {
+                ids = transactions.execute(status -> moveBatch(cutoff, requested));
+            } catch (RuntimeException e) {
+                log.warn("Failed to archive expired coupons, will retry: {}", e.getMessage());
+                break;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (ids == null || ids.isEmpty()) break;
+            unpublish(ids);
+            archived += ids.size();
+            archivedCounter.increment(ids.size());
+            resize(elapsed);
+            if (ids.size() < requested || !pause(elapsed)) break;
+        }
+        if (archived > 0) log.info("Archived {} coupons that expired before {}", archived, cutoff);
+        return archived;
+    }
+
+    int batchSize() {
+        return batchSize;
+    }
+
+    private List<Integer> moveBatch(LocalDate cutoff, int size) {
+        List<Integer> ids = repository.findIdsExpiredBefore(cutoff, PageRequest.of(0, size));
+        if (ids.isEmpty()) return ids;
+        archive.copyFromCoupons(ids, System.currentTimeMillis());
+        repository.deleteAllByIdInBatch(ids);
+        return ids;
+    }
+
+    // Committed rows first, then the catalogs: readers see the coupon a little longer, never a gap.
+    // A partition still loading reads the table after the batch committed.
+    private void unpublish(List<Integer> ids) {
+        List<TenantPartition> partitions = tenants.loaded();
+        for (Integer id : ids) {
+            for (TenantPartition partition : partitions) {
+                CouponCatalog catalog = partition.catalog();
+                if (!catalog.isLoaded() || catalog.find(id).isEmpty()) continue;
+                catalog.mutate(version -> {
+                    catalog.remove(id, version);
+                    return null;
+                });
+            }
+            json.evict(id);
+            limiter.forget(id);
+        }
+    }
+
+    private void resize(long elapsedNanos) {
+        long target = properties.targetBatchLatency().toNanos();
+        if (elapsedNanos > target) {
+            batchSize = Math.max(minBatchSize(), batchSize / 2);
+        } else if (elapsedNanos < target / 2) {
+            batchSize = Math.min(Math.max(minBatchSize(), properties.maxBatchSize()), batchSize + minBatchSize());
+        }
+    }
+
+    /** Waits long enough to keep the job's share of the write lock in bounds; false if interrupted. */
+    private boolean pause(long elapsedNanos) {
+        double share = properties.maxWriteShare();
+        if (share >= 1) return true;
+        long pauseNanos = (long) (elapsedNanos * (1 - share) / Math.max(share, 0.01));
+        try {
+            Thread.sleep(pauseNanos / 1_000_000, (int) (pauseNanos % 1_000_000));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int minBatchSize() {
+        return Math.max(1, properties.minBatchSize());
+    }
+}
@@ -0,0 +1,73 @@
+package com.monk.commerce.service.catalog;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Bounded log of catalog writes keyed by version, so that a mirror catching up reads work
+ * proportional to what changed rather than to the catalog. Versions are handed out before the
+ * write they stamp completes, and writes can finish out of order, so the log also tracks the
+ * versions still in flight: changes are only reported up to the version below the oldest of them.
+ */
+final class CatalogChangeLog {
+
+    record Change(int couponId, boolean deleted) {}
+
+    private final int capacity;
+    private final ConcurrentSkipListMap<Long, Change> changes = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private int size;
+    // Every change above the floor is still in the log
+    private volatile long floor;
+
+    CatalogChangeLog(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Starts the log over at a version whose earlier history is not known, such as a fresh load.
+     */
+    synchronized void reset(long version) {
+        changes.clear();
+        size = 0;
+        floor = version;
+    }
+
+    void begin(long version) {
+        inFlight.add(version);
+    }
+
+    void end(long version) {
+        inFlight.remove(version);
+    }
+
+    synchronized void record(long version, int couponId, boolean deleted) {
+        if (version <= floor) return;
+        if (changes.put(version, new Change(couponId, deleted)) == null) size++;
+        while (size > capacity) {
+            Map.Entry<Long, Change> oldest = changes.pollFirstEntry();
+            size--;
+            floor = oldest.getKey();
+        }
+    }
+
+    long floor() {
+        return floor;
+    }
+
+    /**
+     * The highest version at or below {@code latest} that no write in flight can still fall under.
+     */
+    long highWaterMark(long latest) {
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        return oldest == null ? latest : Math.min(latest, oldest - 1);
+    }
+
+    NavigableMap<Long, Change> between(long since, long upTo) {
+        if (upTo <= since) return Collections.emptyNavigableMap();
+        return changes.subMap(since, false, upTo, true);
+    }
+}
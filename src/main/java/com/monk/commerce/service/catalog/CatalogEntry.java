@@ -0,0 +1,8 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.dto.CouponResponse;
+
+public record CatalogEntry(
+        CouponResponse coupon,
+        long version
+) {}
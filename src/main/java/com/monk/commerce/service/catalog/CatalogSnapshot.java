@@ -0,0 +1,8 @@
+package com.monk.commerce.service.catalog;
+
+import java.util.List;
+
+public record CatalogSnapshot(
+        long version,
+        List<CatalogEntry> entries
+) {}
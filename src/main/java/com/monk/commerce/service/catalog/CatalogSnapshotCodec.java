@@ -0,0 +1,330 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.CouponType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of a catalog snapshot:
+ * <pre>
+ * header  : int magic, short format, long catalogVersion, int count
+ * record  : int id, byte type, long version, int expiryEpochDay, int usageLimit, byte flags,
+ *           type-specific payload, schedule if flagged, segments if flagged
+ * schedule: instant startsAt, instant endsAt, string timeZone, int windowCount,
+ *           windowCount × (byte dayMask, long fromNanoOfDay, long toNanoOfDay)
+ * segments: int count, count × string name
+ * trailer : long crc32 of everything before it
+ * </pre>
+ * Nullable ints are written as {@link #NULL_INT}. Flag bit 0 marks a once-per-customer coupon, bit 1
+ * a scheduled one, bit 2 one limited to customer segments. Strings (RULE expressions, time zones,
+ * segment names) are an int byte length, -1 for null, followed by UTF-8 bytes. Instants are long
+ * epoch seconds, {@link Long#MIN_VALUE} for null, and int nanos. A day mask of 0 means every day,
+ * otherwise bit {@code d - 1} is set for ISO day {@code d}.
+ */
+public final class CatalogSnapshotCodec {
+
+    static final int MAGIC = 0x4D4B4353;
+    static final short FORMAT_VERSION = 5;
+    static final byte FLAG_ONCE_PER_CUSTOMER = 1;
+    static final byte FLAG_SCHEDULED = 2;
+    static final byte FLAG_SEGMENTS = 4;
+    static final int NULL_INT = Integer.MIN_VALUE;
+
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 4;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    static final long MAX_SNAPSHOT_BYTES = Integer.MAX_VALUE;
+
+    private CatalogSnapshotCodec() {}
+
+    public static void write(Path path, CatalogSnapshot snapshot) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer out = new Writer(channel);
+            out.ensure(HEADER_BYTES);
+            out.buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putLong(snapshot.version()).putInt(snapshot.entries().size());
+            for (CatalogEntry entry : snapshot.entries()) {
+                writeEntry(out, entry);
+            }
+            out.finish();
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static CatalogSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 8) throw new IOException("Snapshot " + path + " is truncated");
+            // A single mapping, and the offsets into it, are ints
+            if (size > MAX_SNAPSHOT_BYTES) {
+                throw new IOException("Snapshot " + path + " is " + size + " bytes, over the limit of "
+                        + MAX_SNAPSHOT_BYTES);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, (int) size - 8));
+            if (buffer.getLong((int) size - 8) != crc.getValue()) {
+                throw new IOException("Snapshot " + path + " failed its checksum");
+            }
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a catalog snapshot: " + path);
+            short format = buffer.getShort();
+            if (format != FORMAT_VERSION) throw new IOException("Unsupported snapshot format " + format);
+
+            long version = buffer.getLong();
+            int count = buffer.getInt();
+            List<CatalogEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(readEntry(buffer));
+            }
+            return new CatalogSnapshot(version, entries);
+        }
+    }
+
+    private static void writeEntry(Writer out, CatalogEntry entry) throws IOException {
+        CouponResponse coupon = entry.coupon();
+        LocalDate expiry = coupon.details().expiryDate();
+        CouponConstraints constraints = coupon.constraints();
+        out.ensure(4 + 1 + 8 + 4 + 4 + 1);
+        out.buffer.putInt(coupon.id())
+                .put(typeCode(coupon.type()))
+                .putLong(entry.version())
+                .putInt(expiry == null ? NULL_INT : (int) expiry.toEpochDay())
+                .putInt(constraints == null ? NULL_INT : nullable(constraints.usageLimit()))
+                .put(flags(constraints));
+
+        if (coupon.details() instanceof CartWiseDetails d) {
+            out.ensure(16);
+            out.buffer.putDouble(d.threshold()).putDouble(d.discount());
+        } else if (coupon.details() instanceof ProductWiseDetails d) {
+            out.ensure(12);
+            out.buffer.putInt(nullable(d.productId())).putDouble(d.discount());
+        } else if (coupon.details() instanceof BxGyDetails d) {
+            out.ensure(4);
+            out.buffer.putInt(d.repetitionLimit());
+            writeProducts(out, d.buyProducts());
+            writeProducts(out, d.getProducts());
+        } else if (coupon.details() instanceof RuleDetails d) {
+            writeString(out, d.condition());
+            writeString(out, d.discount());
+        }
+        if (constraints != null && constraints.schedule() != null) writeSchedule(out, constraints.schedule());
+        if (constraints != null && constraints.segments() != null) writeSegments(out, constraints.segments());
+    }
+
+    private static byte flags(CouponConstraints constraints) {
+        if (constraints == null) return 0;
+        int flags = Boolean.TRUE.equals(constraints.oncePerCustomer()) ? FLAG_ONCE_PER_CUSTOMER : 0;
+        if (constraints.schedule() != null) flags |= FLAG_SCHEDULED;
+        if (constraints.segments() != null) flags |= FLAG_SEGMENTS;
+        return (byte) flags;
+    }
+
+    private static void writeSchedule(Writer out, CouponSchedule schedule) throws IOException {
+        writeInstant(out, schedule.startsAt());
+        writeInstant(out, schedule.endsAt());
+        writeString(out, schedule.timeZone());
+        int count = schedule.windows() == null ? 0 : schedule.windows().size();
+        out.ensure(4);
+        out.buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            ActivationWindow window = schedule.windows().get(i);
+            int mask = 0;
+            if (window.days() != null) {
+                for (DayOfWeek day : window.days()) mask |= 1 << (day.getValue() - 1);
+            }
+            out.ensure(1 + 8 + 8);
+            out.buffer.put((byte) mask).putLong(window.from().toNanoOfDay()).putLong(window.to().toNanoOfDay());
+        }
+    }
+
+    private static void writeSegments(Writer out, List<String> segments) throws IOException {
+        out.ensure(4);
+        out.buffer.putInt(segments.size());
+        for (String segment : segments) writeString(out, segment);
+    }
+
+    private static void writeInstant(Writer out, Instant instant) throws IOException {
+        out.ensure(8 + 4);
+        out.buffer.putLong(instant == null ? Long.MIN_VALUE : instant.getEpochSecond())
+                .putInt(instant == null ? 0 : instant.getNano());
+    }
+
+    private static void writeProducts(Writer out, List<ProductQuantity> products) throws IOException {
+        int count = products == null ? 0 : products.size();
+        out.ensure(4);
+        out.buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            ProductQuantity pq = products.get(i);
+            out.ensure(8);
+            out.buffer.putInt(nullable(pq.productId())).putInt(nullable(pq.quantity()));
+        }
+    }
+
+    private static void writeString(Writer out, String value) throws IOException {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        out.ensure(4);
+        out.buffer.putInt(bytes == null ? -1 : bytes.length);
+        if (bytes == null) return;
+        for (int offset = 0; offset < bytes.length; ) {
+            out.ensure(1);
+            int chunk = Math.min(out.buffer.remaining(), bytes.length - offset);
+            out.buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    private static CatalogEntry readEntry(ByteBuffer in) {
+        int id = in.getInt();
+        CouponType type = typeOf(in.get());
+        long version = in.getLong();
+        int epochDay = in.getInt();
+        LocalDate expiry = epochDay == NULL_INT ? null : LocalDate.ofEpochDay(epochDay);
+        Integer usageLimit = boxed(in.getInt());
+        byte flags = in.get();
+        boolean oncePerCustomer = (flags & FLAG_ONCE_PER_CUSTOMER) != 0;
+
+        CouponDetails details = switch (type) {
+            case CART_WISE -> new CartWiseDetails(in.getDouble(), in.getDouble(), expiry);
+            case PRODUCT_WISE -> new ProductWiseDetails(boxed(in.getInt()), in.getDouble(), expiry);
+            case BXGY -> {
+                int repetitionLimit = in.getInt();
+                List<ProductQuantity> buy = readProducts(in);
+                List<ProductQuantity> get = readProducts(in);
+                yield new BxGyDetails(buy, get, repetitionLimit, expiry);
+            }
+            case RULE -> new RuleDetails(readString(in), readString(in), expiry);
+        };
+        CouponSchedule schedule = (flags & FLAG_SCHEDULED) != 0 ? readSchedule(in) : null;
+        List<String> segments = (flags & FLAG_SEGMENTS) != 0 ? readSegments(in) : null;
+        CouponConstraints constraints = usageLimit == null && !oncePerCustomer && schedule == null && segments == null
+                ? null
+                : new CouponConstraints(usageLimit, oncePerCustomer ? Boolean.TRUE : null, schedule, segments);
+        return new CatalogEntry(new CouponResponse(id, type, details, constraints), version);
+    }
+
+    private static CouponSchedule readSchedule(ByteBuffer in) {
+        Instant startsAt = readInstant(in);
+        Instant endsAt = readInstant(in);
+        String timeZone = readString(in);
+        int count = in.getInt();
+        List<ActivationWindow> windows = count == 0 ? null : new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int mask = in.get();
+            List<DayOfWeek> days = null;
+            if (mask != 0) {
+                days = new ArrayList<>();
+                for (DayOfWeek day : DayOfWeek.values()) {
+                    if ((mask & 1 << (day.getValue() - 1)) != 0) days.add(day);
+                }
+            }
+            windows.add(new ActivationWindow(days, LocalTime.ofNanoOfDay(in.getLong()), LocalTime.ofNanoOfDay(in.getLong())));
+        }
+        return new CouponSchedule(startsAt, endsAt, timeZone, windows);
+    }
+
+    private static List<String> readSegments(ByteBuffer in) {
+        int count = in.getInt();
+        List<String> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) segments.add(readString(in));
+        return List.copyOf(segments);
+    }
+
+    private static Instant readInstant(ByteBuffer in) {
+        long seconds = in.getLong();
+        int nanos = in.getInt();
+        return seconds == Long.MIN_VALUE ? null : Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    private static List<ProductQuantity> readProducts(ByteBuffer in) {
+        int count = in.getInt();
+        List<ProductQuantity> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new ProductQuantity(boxed(in.getInt()), boxed(in.getInt())));
+        }
+        return products;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static byte typeCode(CouponType type) {
+        return switch (type) {
+            case CART_WISE -> 1;
+            case PRODUCT_WISE -> 2;
+            case BXGY -> 3;
+            case RULE -> 4;
+        };
+    }
+
+    static CouponType typeOf(byte code) {
+        return switch (code) {
+            case 1 -> CouponType.CART_WISE;
+            case 2 -> CouponType.PRODUCT_WISE;
+            case 3 -> CouponType.BXGY;
+            case 4 -> CouponType.RULE;
+            default -> throw new IllegalStateException("Unknown coupon type code " + code);
+        };
+    }
+
+    private static int nullable(Integer value) {
+        return value == null ? NULL_INT : value;
+    }
+
+    private static Integer boxed(int value) {
+        return value == NULL_INT ? null : value;
+    }
+
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        private final CRC32 crc = new CRC32();
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) drain();
+        }
+
+        void finish() throws IOException {
+            drain();
+            buffer.putLong(crc.getValue()).flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.config.CatalogSnapshotProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Restores the catalog from the on-disk snapshot before the web server starts accepting
+ * requests, and periodically rewrites the snapshot once the catalog version has moved.
+ */
+@Component
+public class CatalogSnapshotService implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    private final CouponCatalog catalog;
+    private final CatalogSnapshotProperties properties;
+    private volatile long lastWrittenVersion = -1;
+
+    public CatalogSnapshotService(CouponCatalog catalog, CatalogSnapshotProperties properties) {
+        this.catalog = catalog;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.enabled()) return;
+        if (Files.exists(properties.path())) {
+            try {
+                long start = System.nanoTime();
+                CatalogSnapshot snapshot = CatalogSnapshotCodec.read(properties.path());
+                catalog.restore(snapshot);
+                lastWrittenVersion = snapshot.version();
+                log.info("Restored {} coupons from snapshot version {} in {} ms", snapshot.entries().size(),
+                        snapshot.version(), (System.nanoTime() - start) / 1_000_000);
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring unreadable catalog snapshot {}: {}", properties.path(), e.getMessage());
+            }
+        }
+        catalog.ensureLoaded();
+    }
+
+    @Scheduled(fixedDelayString = "${coupons.snapshot.interval:PT5M}",
+            initialDelayString = "${coupons.snapshot.interval:PT5M}")
+    public void writeSnapshot() {
+        if (!properties.enabled() || !catalog.isLoaded()) return;
+        CatalogSnapshot snapshot = catalog.snapshot();
+        if (snapshot.version() == lastWrittenVersion) return;
+        try {
+            CatalogSnapshotCodec.write(properties.path(), snapshot);
+            lastWrittenVersion = snapshot.version();
+        } catch (IOException e) {
+            log.warn("Failed to write catalog snapshot {}: {}", properties.path(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        writeSnapshot();
+    }
+}
@@ -0,0 +1,34 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.service.tenant.TenantCatalogs;
+import com.monk.commerce.service.tenant.TenantPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Turns the activation wheel of every loaded catalog once per tick, so scheduled coupons enter
+ * and leave the evaluated set at their boundaries.
+ */
+@Component
+public class CouponActivationTicker {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponActivationTicker.class);
+
+    private final TenantCatalogs tenants;
+
+    public CouponActivationTicker(TenantCatalogs tenants) {
+        this.tenants = tenants;
+    }
+
+    @Scheduled(fixedDelayString = "${coupons.activation.tick:PT1S}")
+    public void tick() {
+        Instant now = Instant.now();
+        int changed = 0;
+        for (TenantPartition partition : tenants.loaded()) changed += partition.catalog().advanceActivations(now);
+        if (changed > 0) log.info("Switched {} scheduled coupons", changed);
+    }
+}
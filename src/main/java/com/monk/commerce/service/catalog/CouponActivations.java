@@ -0,0 +1,121 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponSchedule;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Keeps the set of scheduled coupons that are currently outside their schedule. Each scheduled
+ * coupon has one timer in a {@link TimerWheel} for its next boundary; when timers fire, every coupon
+ * changing state at that moment is applied in one new immutable set. Readers only ever test
+ * membership in the set they captured, and never look at the clock.
+ */
+final class CouponActivations {
+
+    static final long TICK_MILLIS = 1000;
+
+    private final Map<Integer, Tracked> scheduled = new HashMap<>();
+    private TimerWheel<Boundary> wheel = new TimerWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    private volatile Set<Integer> inactive = Set.of();
+
+    Set<Integer> inactive() {
+        return inactive;
+    }
+
+    synchronized void reset(Collection<CatalogEntry> entries, Instant now) {
+        scheduled.clear();
+        wheel = new TimerWheel<>(TICK_MILLIS, now.toEpochMilli());
+        Set<Integer> next = new HashSet<>();
+        for (CatalogEntry entry : entries) {
+            CouponSchedule schedule = schedule(entry);
+            if (schedule == null) continue;
+            if (!start(entry.coupon().id(), entry.version(), schedule, now)) next.add(entry.coupon().id());
+        }
+        inactive = Set.copyOf(next);
+    }
+
+    /** Starts following the entry's schedule, replacing whatever the coupon had before. */
+    synchronized void track(CatalogEntry entry, Instant now) {
+        Integer id = entry.coupon().id();
+        CouponSchedule schedule = schedule(entry);
+        Tracked current = scheduled.get(id);
+        if (schedule == null) {
+            if (current != null) forget(id);
+            return;
+        }
+        if (current != null && current.version == entry.version()) return;
+        boolean active = start(id, entry.version(), schedule, now);
+        if (active == inactive.contains(id)) publish(active ? Set.of(id) : Set.of(), active ? Set.of() : Set.of(id));
+    }
+
+    synchronized void forget(Integer id) {
+        // Its timer finds nothing to act on when it fires
+        scheduled.remove(id);
+        if (inactive.contains(id)) publish(Set.of(id), Set.of());
+    }
+
+    /**
+     * Fires every boundary up to {@code now}. Returns the number of coupons that changed state.
+     */
+    synchronized int advance(Instant now) {
+        Set<Integer> activated = new HashSet<>();
+        Set<Integer> deactivated = new HashSet<>();
+        Set<Integer> current = inactive;
+        wheel.advance(now.toEpochMilli(), boundary -> {
+            Tracked tracked = scheduled.get(boundary.couponId());
+            if (tracked == null || tracked.version != boundary.version()
+                    || !boundary.at().equals(tracked.pendingAt)) return;
+            tracked.pendingAt = null;
+            boolean active = CouponSchedules.isActive(tracked.schedule, now);
+            if (active && current.contains(boundary.couponId())) activated.add(boundary.couponId());
+            if (!active && !current.contains(boundary.couponId())) deactivated.add(boundary.couponId());
+            reschedule(boundary.couponId(), tracked, now);
+        });
+        if (!activated.isEmpty() || !deactivated.isEmpty()) publish(activated, deactivated);
+        return activated.size() + deactivated.size();
+    }
+
+    synchronized int pendingTimers() {
+        return wheel.size();
+    }
+
+    private boolean start(Integer id, long version, CouponSchedule schedule, Instant now) {
+        Tracked tracked = new Tracked(schedule, version);
+        scheduled.put(id, tracked);
+        reschedule(id, tracked, now);
+        return CouponSchedules.isActive(schedule, now);
+    }
+
+    private void reschedule(Integer id, Tracked tracked, Instant now) {
+        Instant next = CouponSchedules.nextChange(tracked.schedule, now);
+        tracked.pendingAt = next;
+        if (next != null) wheel.schedule(next.toEpochMilli(), new Boundary(id, tracked.version, next));
+    }
+
+    private void publish(Set<Integer> activated, Set<Integer> deactivated) {
+        Set<Integer> next = new HashSet<>(inactive);
+        next.removeAll(activated);
+        next.addAll(deactivated);
+        inactive = Set.copyOf(next);
+    }
+
+    private static CouponSchedule schedule(CatalogEntry entry) {
+        CouponConstraints constraints = entry.coupon().constraints();
+        return constraints == null ? null : constraints.schedule();
+    }
+
+    private static final class Tracked {
+        final CouponSchedule schedule;
+        final long version;
+        Instant pendingAt;
+
+        Tracked(CouponSchedule schedule, long version) {
+            this.schedule = schedule;
+            this.version = version;
+        }
+    }
+
+    private record Boundary(Integer couponId, long version, Instant at) {}
+}
@@ -0,0 +1,544 @@
+package com.monk.commerce.service.catalog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.config.CatalogProperties;
+import com.monk.commerce.config.CatalogProperties.ColumnStorage;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.exception.ChangesUnavailableException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.service.strategy.CartIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+/**
+ * In-memory view of the coupon table with every {@code details} string already parsed.
+ * Each write is stamped with a monotonically increasing catalog version, which is what
+ * snapshots and catch-up queries are keyed on. A load resumes from the highest version stored on a
+ * row or taken by a delete, so a version is never handed out twice.
+ * <p>
+ * PRODUCT_WISE coupons are held in {@link ProductWiseColumns} rather than as records. A write
+ * lands in the record map first and is folded into freshly merged columns once enough writes have
+ * accumulated. Readers never lock; they resolve every coupon against one columns generation, where
+ * a record wins over a row unless it is a PRODUCT_WISE record no newer than the row, and a removed
+ * row stays hidden by a tombstone until the columns no longer contain it.
+ * <p>
+ * Each catalog holds the coupons of one tenant. The bean is the default tenant's; the others are
+ * created from it by {@code TenantCatalogs} through {@link #forTenant}.
+ */
+@Component
+public class CouponCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(CouponCatalog.class);
+    private static final int MIN_PENDING_ROWS = 1024;
+
+    private final CouponRepository repository;
+    private final ObjectMapper mapper;
+    private final ChangeLogProperties changeLogProperties;
+    private final ColumnStorage columnStorage;
+    // The tenant_id of the coupons held, null for the default tenant
+    private final String tenantId;
+    private final Map<Integer, CatalogEntry> entries = new ConcurrentHashMap<>();
+    private final Set<Integer> removedRows = ConcurrentHashMap.newKeySet();
+    private final AtomicLong version = new AtomicLong();
+    // Writers share the read side; snapshot() takes the write side so that no version
+    // below the snapshot version can still be in flight when it is captured.
+    private final ReadWriteLock writeGate = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    // Column maintenance is serialized; readers only ever read the volatile reference
+    private final Object columnLock = new Object();
+    private volatile ProductWiseColumns columns = ProductWiseColumns.EMPTY;
+    // Takes back off-heap buffers of replaced generations once their readers have closed
+    private final ProductWiseColumns.BufferPool bufferPool = new ProductWiseColumns.BufferPool();
+    private int pendingRows;
+    // Folded in by the last merge, but still needed by readers of the previous columns
+    private List<CatalogEntry> foldedRecords = List.of();
+    private Set<Integer> foldedRemovals = Set.of();
+
+    private final CatalogChangeLog changeLog;
+    private final CouponActivations activations = new CouponActivations();
+
+    public CouponCatalog(CouponRepository repository, ObjectMapper mapper, ChangeLogProperties changeLogProperties) {
+        this(repository, mapper, changeLogProperties, new CatalogProperties(ColumnStorage.HEAP));
+    }
+
+    @Autowired
+    public CouponCatalog(CouponRepository repository, ObjectMapper mapper, ChangeLogProperties changeLogProperties,
+                         CatalogProperties catalogProperties) {
+        this(repository, mapper, changeLogProperties, catalogProperties.columnStorage(), null);
+    }
+
+    private CouponCatalog(CouponRepository repository, ObjectMapper mapper, ChangeLogProperties changeLogProperties,
+                          ColumnStorage columnStorage, String tenantId) {
+        this.repository = repository;
+        this.mapper = mapper;
+        this.changeLogProperties = changeLogProperties;
+        this.columnStorage = columnStorage;
+        this.tenantId = tenantId;
+        this.changeLog = new CatalogChangeLog(changeLogProperties.maxEntries());
+    }
+
+    /**
+     * An empty catalog for another tenant, configured like this one.
+     */
+    public CouponCatalog forTenant(String tenantId) {
+        return new CouponCatalog(repository, mapper, changeLogProperties, columnStorage, tenantId);
+    }
+
+    public String tenantId() {
+        return tenantId;
+    }
+
+    /** Whether the row belongs to this catalog's tenant. */
+    public boolean holds(Coupon entity) {
+        return Objects.equals(entity.getTenantId(), tenantId);
+    }
+
+    /**
+     * Every coupon, with PRODUCT_WISE rows materialized as records.
+     */
+    public List<CatalogEntry> entries() {
+        try (View view = view()) {
+            return view.entries();
+        }
+    }
+
+    public Optional<CatalogEntry> find(Integer id) {
+        if (id == null) return Optional.empty();
+        try (View view = view()) {
+            return view.find(id);
+        }
+    }
+
+    /**
+     * A consistent read of the catalog against the current columns generation, which stays pinned
+     * until the view is closed. A view that is never closed is still safe to read, but keeps its
+     * generation's off-heap buffer from being reused.
+     */
+    public View view() {
+        ensureLoaded();
+        while (true) {
+            ProductWiseColumns rows = columns;
+            // Fails only if a merge replaced the generation and its last reader closed meanwhile
+            if (rows.retain()) return new View(rows, activations.inactive());
+        }
+    }
+
+    /**
+     * Whether the coupon is inside its schedule, as of the last activation tick. Unscheduled
+     * coupons are always active.
+     */
+    public boolean isActive(Integer id) {
+        ensureLoaded();
+        return !activations.inactive().contains(id);
+    }
+
+    /**
+     * Activates and deactivates the scheduled coupons whose boundaries have passed. Returns the
+     * number of coupons that changed state.
+     */
+    public int advanceActivations(Instant now) {
+        if (!loaded) return 0;
+        return activations.advance(now);
+    }
+
+    /**
+     * Reads resolved against one columns generation, so a coupon being folded into the columns
+     * concurrently is reported exactly once.
+     */
+    public final class View implements AutoCloseable {
+
+        private final ProductWiseColumns rows;
+        private final Set<Integer> inactive;
+        private boolean closed;
+
+        private View(ProductWiseColumns rows, Set<Integer> inactive) {
+            this.rows = rows;
+            this.inactive = inactive;
+        }
+
+        /** Every coupon, including those outside their schedule. */
+        public List<CatalogEntry> entries() {
+            List<CatalogEntry> all = new ArrayList<>(entries.size() + rows.size());
+            for (CatalogEntry entry : entries.values()) {
+                if (!isShadowed(entry)) all.add(entry);
+            }
+            for (int row = 0; row < rows.size(); row++) {
+                if (isVisible(row)) all.add(rows.entry(row));
+            }
+            return all;
+        }
+
+        /**
+         * The coupons held as records: every type except PRODUCT_WISE, plus PRODUCT_WISE coupons
+         * written since the columns were last merged, leaving out coupons outside their schedule.
+         * Together with {@link #forEachProductWiseMatch} this covers every active coupon; scheduled
+         * coupons are never held in the columns.
+         */
+        public List<CatalogEntry> records() {
+            List<CatalogEntry> records = new ArrayList<>(entries.size());
+            for (CatalogEntry entry : entries.values()) {
+                if (!isShadowed(entry) && (inactive.isEmpty() || !inactive.contains(entry.coupon().id()))) {
+                    records.add(entry);
+                }
+            }
+            return records;
+        }
+
+        public boolean isActive(int id) {
+            return !inactive.contains(id);
+        }
+
+        /** The scheduled coupons this view treats as inactive; a new set whenever any of them changes. */
+        public Set<Integer> inactive() {
+            return inactive;
+        }
+
+        public Optional<CatalogEntry> find(int id) {
+            CatalogEntry record = entries.get(id);
+            if (record != null && !isShadowed(record)) return Optional.of(record);
+            int row = rows.rowOf(id);
+            return row >= 0 && isVisible(row) ? Optional.of(rows.entry(row)) : Optional.empty();
+        }
+
+        /**
+         * Calls back once for every unexpired PRODUCT_WISE coupon held in the columns whose product
+         * is in the cart, with the discount it earns.
+         */
+        public void forEachProductWiseMatch(List<CartItem> items, LocalDate today, ProductWiseMatch consumer) {
+            if (rows.size() == 0 || items.isEmpty()) return;
+            forEachProductWiseMatch(CartIndex.of(items), today, consumer);
+        }
+
+        /**
+         * Like {@link #forEachProductWiseMatch(List, LocalDate, ProductWiseMatch)}, for a cart already
+         * sorted by product. The cart's products are visited in ascending order, so each binary search
+         * starts where the previous product's rows ended.
+         */
+        public void forEachProductWiseMatch(CartIndex cart, LocalDate today, ProductWiseMatch consumer) {
+            if (rows.size() == 0 || cart.size() == 0) return;
+            long todayEpochDay = today.toEpochDay();
+            int from = 0;
+            for (int start = 0; start < cart.size(); ) {
+                int product = cart.productId(start);
+                int end = start + 1;
+                while (end < cart.size() && cart.productId(end) == product) end++;
+                int row = rows.lowerBound(product, from);
+                for (; row < rows.size() && rows.productId(row) == product; row++) {
+                    if (rows.isExpired(row, todayEpochDay) || !isVisible(row)) continue;
+                    double percent = rows.discount(row);
+                    double discount = 0;
+                    for (int i = start; i < end; i++) {
+                        CartItem item = cart.item(i);
+                        discount += item.price() * item.quantity() * percent / 100;
+                    }
+                    consumer.accept(rows.entry(row).coupon(), discount);
+                }
+                from = row;
+                start = end;
+            }
+        }
+
+        /** Unpins the columns generation; nothing may be read through the view afterwards. */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            rows.release();
+        }
+
+        private boolean isShadowed(CatalogEntry record) {
+            return shadowedByRow(rows, record);
+        }
+
+        private boolean isVisible(int row) {
+            int id = rows.couponId(row);
+            if (!removedRows.isEmpty() && removedRows.contains(id)) return false;
+            CatalogEntry record = entries.get(id);
+            return record == null || shadowedByRow(rows, record);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProductWiseMatch {
+        void accept(CouponResponse coupon, double discount);
+    }
+
+    public long version() {
+        ensureLoaded();
+        return version.get();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Runs a write under a freshly allocated catalog version. The action is expected to persist
+     * the change and then publish it through {@link #put(Coupon)} or {@link #remove(Integer, long)}.
+     */
+    public <T> T mutate(LongFunction<T> action) {
+        ensureLoaded();
+        writeGate.readLock().lock();
+        long next;
+        synchronized (changeLog) {
+            next = version.incrementAndGet();
+            changeLog.begin(next);
+        }
+        try {
+            return action.apply(next);
+        } finally {
+            changeLog.end(next);
+            writeGate.readLock().unlock();
+        }
+    }
+
+    /**
+     * The highest version below every write still in flight: whatever is read from the catalog
+     * afterwards reflects at least all writes up to it.
+     */
+    public long stableVersion() {
+        ensureLoaded();
+        synchronized (changeLog) {
+            return changeLog.highWaterMark(version.get());
+        }
+    }
+
+    /**
+     * The coupons changed after {@code since}, or every coupon when {@code since} is null. Only the
+     * latest state of each coupon is returned, read from the catalog rather than the log.
+     */
+    public CouponChangesResponse changesSince(Long since) {
+        ensureLoaded();
+        long latest;
+        long upTo;
+        synchronized (changeLog) {
+            latest = version.get();
+            upTo = changeLog.highWaterMark(latest);
+        }
+        if (since == null) {
+            List<CouponResponse> all = new ArrayList<>();
+            for (CatalogEntry entry : entries()) all.add(entry.coupon());
+            all.sort(Comparator.comparing(CouponResponse::id));
+            return new CouponChangesResponse(null, upTo, all, List.of());
+        }
+        if (since < changeLog.floor() || since > latest) throw new ChangesUnavailableException(since, changeLog.floor());
+        Map<Integer, Boolean> touched = new TreeMap<>();
+        for (CatalogChangeLog.Change change : changeLog.between(since, upTo).values()) {
+            touched.put(change.couponId(), change.deleted());
+        }
+        // The log may have been trimmed past since while it was being read
+        if (since < changeLog.floor()) throw new ChangesUnavailableException(since, changeLog.floor());
+        List<CouponResponse> changed = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        try (View view = view()) {
+            for (Map.Entry<Integer, Boolean> change : touched.entrySet()) {
+                Optional<CatalogEntry> current = change.getValue() ? Optional.empty() : view.find(change.getKey());
+                if (current.isPresent()) changed.add(current.get().coupon());
+                else deleted.add(change.getKey());
+            }
+        }
+        return new CouponChangesResponse(since, upTo, changed, deleted);
+    }
+
+    public CouponResponse put(Coupon entity) {
+        CouponResponse coupon = compile(entity);
+        put(new CatalogEntry(coupon, entity.getVersion() == null ? 0 : entity.getVersion()));
+        return coupon;
+    }
+
+    public void remove(Integer id, long version) {
+        synchronized (columnLock) {
+            // Hide the row before dropping the record, so readers see neither rather than the row
+            if (columns.rowOf(id) >= 0 && removedRows.add(id)) pendingRows++;
+            entries.remove(id);
+        }
+        activations.forget(id);
+        changeLog.record(version, id, true);
+        try {
+            repository.raiseCatalogVersion(tenantId == null ? "" : tenantId, version);
+        } catch (RuntimeException e) {
+            log.warn("Failed to store catalog version {} of a delete, a reload may hand it out again: {}",
+                    version, e.getMessage());
+        }
+    }
+
+    public CatalogSnapshot snapshot() {
+        ensureLoaded();
+        writeGate.writeLock().lock();
+        try {
+            return new CatalogSnapshot(version.get(), List.copyOf(entries()));
+        } finally {
+            writeGate.writeLock().unlock();
+        }
+    }
+
+    public void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            long max = 0;
+            List<Coupon> rows = tenantId == null ? repository.findByTenantIdIsNull() : repository.findByTenantId(tenantId);
+            for (Coupon entity : rows) {
+                put(entity);
+                if (entity.getVersion() != null) max = Math.max(max, entity.getVersion());
+            }
+            mergeColumns(true);
+            version.accumulateAndGet(Math.max(max, storedVersion()), Math::max);
+            changeLog.reset(version.get());
+            activations.reset(entries.values(), Instant.now());
+            loaded = true;
+        }
+    }
+
+    /**
+     * Seeds the catalog from a snapshot and then catches up on the rows written after it:
+     * rows with a newer version are re-read, and ids that are no longer in the table are dropped.
+     */
+    public synchronized void restore(CatalogSnapshot snapshot) {
+        if (loaded) return;
+        for (CatalogEntry entry : snapshot.entries()) {
+            put(entry);
+        }
+        for (Coupon entity : repository.findByVersionGreaterThanOrVersionIsNull(snapshot.version())) {
+            if (holds(entity)) put(entity);
+        }
+        Set<Integer> live = new HashSet<>(repository.findAllIds());
+        entries.keySet().retainAll(live);
+        mergeColumns(true);
+        version.set(Math.max(Math.max(snapshot.version(), repository.findMaxVersion()), storedVersion()));
+        changeLog.reset(version.get());
+        activations.reset(entries.values(), Instant.now());
+        loaded = true;
+    }
+
+    // The version of the latest delete, which no row carries
+    private long storedVersion() {
+        Long stored = repository.findCatalogVersion(tenantId == null ? "" : tenantId);
+        return stored == null ? 0 : stored;
+    }
+
+    public CouponResponse compile(Coupon entity) {
+        CouponDetails details;
+        try {
+            details = switch (entity.getType()) {
+                case CART_WISE -> {
+                    var d = mapper.readValue(entity.getDetails(), CartWiseDetails.class);
+                    yield new CartWiseDetails(d.threshold(), d.discount(), entity.getExpiryDate());
+                }
+                case PRODUCT_WISE -> {
+                    var d = mapper.readValue(entity.getDetails(), ProductWiseDetails.class);
+                    yield new ProductWiseDetails(d.productId(), d.discount(), entity.getExpiryDate());
+                }
+                case BXGY -> {
+                    var d = mapper.readValue(entity.getDetails(), BxGyDetails.class);
+                    yield new BxGyDetails(d.buyProducts(), d.getProducts(), d.repetitionLimit(), entity.getExpiryDate());
+                }
+                case RULE -> {
+                    var d = mapper.readValue(entity.getDetails(), RuleDetails.class);
+                    yield new RuleDetails(d.condition(), d.discount(), entity.getExpiryDate());
+                }
+            };
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse coupon details", e);
+        }
+        return new CouponResponse(entity.getId(), entity.getType(), details, constraints(entity));
+    }
+
+    private CouponConstraints constraints(Coupon entity) {
+        boolean oncePerCustomer = Boolean.TRUE.equals(entity.getOncePerCustomer());
+        CouponSchedule schedule;
+        try {
+            schedule = entity.getSchedule() == null ? null : mapper.readValue(entity.getSchedule(), CouponSchedule.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse coupon schedule", e);
+        }
+        List<String> segments = entity.getSegments() == null || entity.getSegments().isEmpty()
+                ? null
+                : List.of(entity.getSegments().split(","));
+        if (entity.getUsageLimit() == null && !oncePerCustomer && schedule == null && segments == null) return null;
+        return new CouponConstraints(entity.getUsageLimit(), oncePerCustomer ? Boolean.TRUE : null, schedule, segments);
+    }
+
+    private void put(CatalogEntry entry) {
+        Integer id = entry.coupon().id();
+        synchronized (columnLock) {
+            CatalogEntry current = entries.get(id);
+            int row = columns.rowOf(id);
+            if (current != null ? current.version() > entry.version()
+                    : row >= 0 && !removedRows.contains(id) && columns.version(row) > entry.version()) {
+                return;
+            }
+            // Known to be inactive before readers can see it
+            if (loaded) activations.track(entry, Instant.now());
+            entries.put(id, entry);
+            // The record is newer than any row, so the row no longer needs hiding
+            removedRows.remove(id);
+            if (loaded) changeLog.record(entry.version(), id, false);
+            if (ProductWiseColumns.fits(entry) && ++pendingRows >= Math.max(MIN_PENDING_ROWS, columns.size() / 8)
+                    && loaded) {
+                mergeColumns(false);
+            }
+        }
+    }
+
+    /**
+     * Whether a PRODUCT_WISE record is superseded by an equally new or newer row, as happens to
+     * records folded into the columns by the last merge.
+     */
+    private static boolean shadowedByRow(ProductWiseColumns rows, CatalogEntry record) {
+        if (!ProductWiseColumns.fits(record)) return false;
+        int row = rows.rowOf(record.coupon().id());
+        return row >= 0 && rows.version(row) >= record.version();
+    }
+
+    /**
+     * Folds the PRODUCT_WISE records and removals accumulated since the last merge into new
+     * columns. Unless nothing can be reading concurrently, the folded records and tombstones are
+     * only dropped by the following merge, since readers of the previous columns still need them.
+     */
+    private void mergeColumns(boolean quiescent) {
+        synchronized (columnLock) {
+            for (CatalogEntry record : foldedRecords) entries.remove(record.coupon().id(), record);
+            removedRows.removeAll(foldedRemovals);
+            ProductWiseColumns current = columns;
+            List<CatalogEntry> records = new ArrayList<>();
+            for (CatalogEntry entry : entries.values()) {
+                if (ProductWiseColumns.fits(entry) && !shadowedByRow(current, entry)) records.add(entry);
+            }
+            Set<Integer> removed = Set.copyOf(removedRows);
+            if (!records.isEmpty() || !removed.isEmpty()) {
+                columns = ProductWiseColumns.merge(columnStorage, bufferPool, current, id -> {
+                    if (removed.contains(id)) return false;
+                    CatalogEntry record = entries.get(id);
+                    return record == null || shadowedByRow(current, record);
+                }, records);
+                // Its buffer is pooled once the views still reading it are closed
+                current.release();
+            }
+            pendingRows = 0;
+            if (quiescent) {
+                for (CatalogEntry record : records) entries.remove(record.coupon().id(), record);
+                removedRows.removeAll(removed);
+                foldedRecords = List.of();
+                foldedRemovals = Set.of();
+            } else {
+                foldedRecords = records;
+                foldedRemovals = removed;
+            }
+        }
+    }
+}
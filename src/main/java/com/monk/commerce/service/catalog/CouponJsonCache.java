@@ -0,0 +1,101 @@
+package com.monk.commerce.service.catalog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monk.commerce.config.JsonCacheProperties;
+import com.monk.commerce.dto.CachedJson;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.service.tenant.TenantContext;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Serialized JSON of coupons and of the coupon list, keyed by catalog version, so that repeated
+ * reads of an unchanged coupon skip Jackson. A newer version simply misses and replaces the old
+ * bytes. At most {@code coupons.json-cache.max-entries} coupons are kept, and each tenant's list
+ * only while it is under {@code max-list-size}.
+ */
+@Component
+public class CouponJsonCache {
+
+    private final ObjectMapper mapper;
+    private final int maxEntries;
+    private final long maxListBytes;
+    private final Map<Integer, Versioned> coupons = new ConcurrentHashMap<>();
+    // By tenant, since catalog versions are per tenant
+    private final Map<String, Versioned> lists = new ConcurrentHashMap<>();
+
+    public CouponJsonCache(ObjectMapper mapper, JsonCacheProperties properties) {
+        this.mapper = mapper;
+        this.maxEntries = Math.max(1, properties.maxEntries());
+        this.maxListBytes = properties.maxListSize().toBytes();
+    }
+
+    public static String eTag(CatalogEntry entry) {
+        return "\"" + entry.coupon().id() + "-" + entry.version() + "\"";
+    }
+
+    public static String listETag(String tenant, long catalogVersion) {
+        String prefix = TenantContext.DEFAULT.equals(tenant) ? "catalog-" : "catalog-" + tenant + "-";
+        return "\"" + prefix + catalogVersion + "\"";
+    }
+
+    public CachedJson coupon(CatalogEntry entry) {
+        Integer id = entry.coupon().id();
+        Versioned cached = coupons.get(id);
+        if (cached != null && cached.version() == entry.version()) return cached.json();
+        CachedJson json = new CachedJson(eTag(entry), serialize(entry.coupon()));
+        if (coupons.size() >= maxEntries) evictOne();
+        coupons.merge(id, new Versioned(entry.version(), json),
+                (current, candidate) -> candidate.version() >= current.version() ? candidate : current);
+        return json;
+    }
+
+    /**
+     * The tenant's list at {@code catalogVersion}; {@code coupons} is only called when that version
+     * has not been serialized yet.
+     */
+    public CachedJson list(String tenant, long catalogVersion, Supplier<List<CouponResponse>> coupons) {
+        Versioned cached = lists.get(tenant);
+        if (cached != null && cached.version() == catalogVersion) return cached.json();
+        CachedJson json = new CachedJson(listETag(tenant, catalogVersion), serialize(coupons.get()));
+        if (json.body().length <= maxListBytes) {
+            lists.merge(tenant, new Versioned(catalogVersion, json),
+                    (current, candidate) -> candidate.version() > current.version() ? candidate : current);
+        }
+        return json;
+    }
+
+    public void evict(Integer id) {
+        coupons.remove(id);
+    }
+
+    /** Drops the list of a tenant whose catalog partition was evicted. */
+    public void evictList(String tenant) {
+        lists.remove(tenant);
+    }
+
+    private void evictOne() {
+        // Hash order is effectively random, which is good enough for a cache of rarely-changing bytes
+        Iterator<Integer> ids = coupons.keySet().iterator();
+        if (ids.hasNext()) {
+            ids.next();
+            ids.remove();
+        }
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private record Versioned(long version, CachedJson json) {}
+}
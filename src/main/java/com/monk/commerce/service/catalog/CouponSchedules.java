@@ -0,0 +1,98 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.dto.ActivationWindow;
+import com.monk.commerce.dto.CouponSchedule;
+import com.monk.commerce.exception.InvalidScheduleException;
+
+import java.time.*;
+
+/**
+ * Evaluates {@link CouponSchedule}s. Only the activation timers call these; coupon evaluation
+ * relies on the catalog's active set instead.
+ */
+public final class CouponSchedules {
+
+    // A weekly window recurs within eight days of any instant, one more covers a window begun the day before
+    private static final int DAYS_AHEAD = 8;
+
+    private CouponSchedules() {}
+
+    public static void validate(CouponSchedule schedule) {
+        if (schedule == null) return;
+        if (schedule.startsAt() != null && schedule.endsAt() != null && !schedule.endsAt().isAfter(schedule.startsAt())) {
+            throw new InvalidScheduleException("endsAt must be after startsAt");
+        }
+        try {
+            zone(schedule);
+        } catch (DateTimeException e) {
+            throw new InvalidScheduleException("unknown time zone " + schedule.timeZone());
+        }
+        if (schedule.windows() == null) return;
+        for (ActivationWindow window : schedule.windows()) {
+            if (window == null || window.from() == null || window.to() == null) {
+                throw new InvalidScheduleException("a window needs from and to");
+            }
+            if (window.from().equals(window.to())) throw new InvalidScheduleException("a window cannot be empty");
+        }
+    }
+
+    public static boolean isActive(CouponSchedule schedule, Instant now) {
+        if (schedule.startsAt() != null && now.isBefore(schedule.startsAt())) return false;
+        if (schedule.endsAt() != null && !now.isBefore(schedule.endsAt())) return false;
+        if (schedule.windows() == null || schedule.windows().isEmpty()) return true;
+        ZoneId zone = zone(schedule);
+        LocalDate today = LocalDate.ofInstant(now, zone);
+        for (ActivationWindow window : schedule.windows()) {
+            for (LocalDate day = today.minusDays(1); !day.isAfter(today); day = day.plusDays(1)) {
+                if (!runsOn(window, day)) continue;
+                if (!now.isBefore(start(window, day, zone)) && now.isBefore(end(window, day, zone))) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The first instant after {@code now} at which the coupon may become active or inactive, or
+     * null if it never changes again.
+     */
+    public static Instant nextChange(CouponSchedule schedule, Instant now) {
+        if (schedule.startsAt() != null && now.isBefore(schedule.startsAt())) return schedule.startsAt();
+        Instant end = schedule.endsAt();
+        if (end != null && !now.isBefore(end)) return null;
+        if (schedule.windows() == null || schedule.windows().isEmpty()) return end;
+        ZoneId zone = zone(schedule);
+        LocalDate today = LocalDate.ofInstant(now, zone);
+        Instant next = end;
+        for (ActivationWindow window : schedule.windows()) {
+            for (int i = -1; i <= DAYS_AHEAD; i++) {
+                LocalDate day = today.plusDays(i);
+                if (!runsOn(window, day)) continue;
+                next = earliestAfter(now, next, start(window, day, zone));
+                next = earliestAfter(now, next, end(window, day, zone));
+            }
+        }
+        return next;
+    }
+
+    private static Instant earliestAfter(Instant now, Instant current, Instant candidate) {
+        if (!candidate.isAfter(now)) return current;
+        return current == null || candidate.isBefore(current) ? candidate : current;
+    }
+
+    private static boolean runsOn(ActivationWindow window, LocalDate day) {
+        return window.days() == null || window.days().isEmpty() || window.days().contains(day.getDayOfWeek());
+    }
+
+    private static Instant start(ActivationWindow window, LocalDate day, ZoneId zone) {
+        return ZonedDateTime.of(day, window.from(), zone).toInstant();
+    }
+
+    private static Instant end(ActivationWindow window, LocalDate day, ZoneId zone) {
+        LocalDate endDay = window.to().isAfter(window.from()) ? day : day.plusDays(1);
+        return ZonedDateTime.of(endDay, window.to(), zone).toInstant();
+    }
+
+    private static ZoneId zone(CouponSchedule schedule) {
+        return schedule.timeZone() == null ? ZoneOffset.UTC : ZoneId.of(schedule.timeZone());
+    }
+}
@@ -0,0 +1,380 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.config.CatalogProperties.ColumnStorage;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.dto.ProductWiseDetails;
+import com.monk.commerce.entity.CouponType;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+
+/**
+ * PRODUCT_WISE coupons stored as parallel primitive columns sorted by {@code (productId, couponId)},
+ * instead of one {@code CouponResponse → ProductWiseDetails} record graph per coupon. A row costs
+ * {@link #BYTES_PER_ROW} bytes; records are only materialized for coupons a caller actually needs.
+ * <p>
+ * The columns live either in primitive arrays or, with {@link ColumnStorage#OFF_HEAP}, in one direct
+ * buffer per generation, which matching reads in place; the heap then holds a few objects per
+ * generation whatever the number of rows. Readers pin an off-heap generation with {@link #retain()}
+ * while they read it, and once the catalog has replaced it and the last reader has let go, its
+ * buffer goes back to a {@link BufferPool} for the next merge instead of waiting for the GC.
+ * Other coupon types have variable-length details and stay records.
+ * <p>
+ * Instances are immutable once built. {@link CouponCatalog} rebuilds them by merging the previous
+ * columns with the coupons written since.
+ */
+abstract class ProductWiseColumns {
+
+    static final int NO_EXPIRY = Integer.MAX_VALUE;
+    static final int NO_LIMIT = Integer.MIN_VALUE;
+    static final int BYTES_PER_ROW = 4 + 4 + 8 + 4 + 4 + 1 + 8 + 4;
+    static final ProductWiseColumns EMPTY = new Heap(0);
+
+    private static final byte FLAG_ONCE_PER_CUSTOMER = 1;
+    private static final Comparator<CatalogEntry> ROW_ORDER = Comparator
+            .comparingInt((CatalogEntry e) -> ((ProductWiseDetails) e.coupon().details()).productId())
+            .thenComparingInt(e -> e.coupon().id());
+
+    private final int size;
+
+    private ProductWiseColumns(int size) {
+        this.size = size;
+    }
+
+    static ProductWiseColumns allocate(ColumnStorage storage, BufferPool pool, int size) {
+        return storage == ColumnStorage.OFF_HEAP ? new OffHeap(size, pool) : new Heap(size);
+    }
+
+    /**
+     * Pins the generation for a reader. Returns false once it has been released for good, in which
+     * case the reader should take the current generation instead.
+     */
+    boolean retain() {
+        return true;
+    }
+
+    /** Drops a reader's pin, or the catalog's own reference once a merge has replaced the generation. */
+    void release() {
+    }
+
+    int size() {
+        return size;
+    }
+
+    abstract int productId(int row);
+
+    abstract int couponId(int row);
+
+    abstract long discountBasisPoints(int row);
+
+    abstract int expiryEpochDay(int row);
+
+    abstract int usageLimit(int row);
+
+    abstract byte flags(int row);
+
+    abstract long version(int row);
+
+    /** The row number at position {@code i} in coupon id order. */
+    abstract int byCoupon(int i);
+
+    abstract void set(int row, int productId, int couponId, long discountBasisPoints, int expiryEpochDay,
+                      int usageLimit, byte flags, long version);
+
+    abstract void setByCoupon(int i, int row);
+
+    /**
+     * Whether the entry can be held as a row without losing information: an unscheduled
+     * PRODUCT_WISE coupon with a product, a discount in whole basis points and an expiry within
+     * {@code int} days.
+     */
+    static boolean fits(CatalogEntry entry) {
+        CouponResponse coupon = entry.coupon();
+        if (coupon.type() != CouponType.PRODUCT_WISE || coupon.id() == null) return false;
+        if (!(coupon.details() instanceof ProductWiseDetails details) || details.productId() == null) return false;
+        if (Math.round(details.discount() * 100) / 100.0 != details.discount()) return false;
+        if (details.expiryDate() != null) {
+            long day = details.expiryDate().toEpochDay();
+            if (day >= NO_EXPIRY || day < Integer.MIN_VALUE) return false;
+        }
+        CouponConstraints constraints = coupon.constraints();
+        if (constraints == null) return true;
+        // Scheduled coupons stay records, so that only records need checking against the active set, and
+        // segment-limited ones so that only records need checking against segments
+        return constraints.schedule() == null && constraints.segments() == null
+                && (constraints.usageLimit() == null || constraints.usageLimit() != NO_LIMIT);
+    }
+
+    /**
+     * Builds new columns from the rows of {@code base} that {@code keep} accepts plus {@code added},
+     * which must all {@link #fits fit}. The base is already sorted, so only the added rows are sorted
+     * before the two are merged.
+     */
+    static ProductWiseColumns merge(ColumnStorage storage, BufferPool pool, ProductWiseColumns base,
+                                    IntPredicate keep, List<CatalogEntry> added) {
+        added.sort(ROW_ORDER);
+        int kept = 0;
+        boolean[] keepRow = new boolean[base.size];
+        for (int row = 0; row < base.size; row++) {
+            if (keep.test(base.couponId(row))) {
+                keepRow[row] = true;
+                kept++;
+            }
+        }
+        ProductWiseColumns merged = allocate(storage, pool, kept + added.size());
+        int out = 0;
+        int row = 0;
+        int next = 0;
+        while (out < merged.size) {
+            while (row < base.size && !keepRow[row]) row++;
+            boolean takeBase;
+            if (row == base.size) takeBase = false;
+            else if (next == added.size()) takeBase = true;
+            else {
+                ProductWiseDetails details = (ProductWiseDetails) added.get(next).coupon().details();
+                int cmp = Integer.compare(base.productId(row), details.productId());
+                takeBase = cmp < 0 || cmp == 0 && base.couponId(row) < added.get(next).coupon().id();
+            }
+            if (takeBase) merged.copyRow(out++, base, row++);
+            else merged.setRow(out++, added.get(next++));
+        }
+        merged.indexByCoupon();
+        return merged;
+    }
+
+    /** The row holding the coupon, or {@code -1}. */
+    int rowOf(int id) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int candidate = couponId(byCoupon(mid));
+            if (candidate < id) lo = mid + 1;
+            else if (candidate > id) hi = mid - 1;
+            else return byCoupon(mid);
+        }
+        return -1;
+    }
+
+    /** The first row at or after {@code from} whose product is not below {@code product}. */
+    int lowerBound(int product, int from) {
+        int lo = from;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (productId(mid) < product) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    boolean isExpired(int row, long todayEpochDay) {
+        return expiryEpochDay(row) < todayEpochDay;
+    }
+
+    /** The discount percentage, exactly as it was given. */
+    double discount(int row) {
+        return discountBasisPoints(row) / 100.0;
+    }
+
+    CatalogEntry entry(int row) {
+        int expiryDay = expiryEpochDay(row);
+        LocalDate expiry = expiryDay == NO_EXPIRY ? null : LocalDate.ofEpochDay(expiryDay);
+        int usageLimit = usageLimit(row);
+        Integer limit = usageLimit == NO_LIMIT ? null : usageLimit;
+        Boolean oncePerCustomer = (flags(row) & FLAG_ONCE_PER_CUSTOMER) != 0 ? Boolean.TRUE : null;
+        CouponConstraints constraints = limit == null && oncePerCustomer == null
+                ? null
+                : new CouponConstraints(limit, oncePerCustomer);
+        return new CatalogEntry(new CouponResponse(couponId(row), CouponType.PRODUCT_WISE,
+                new ProductWiseDetails(productId(row), discount(row), expiry), constraints), version(row));
+    }
+
+    private void setRow(int row, CatalogEntry entry) {
+        CouponResponse coupon = entry.coupon();
+        ProductWiseDetails details = (ProductWiseDetails) coupon.details();
+        CouponConstraints constraints = coupon.constraints();
+        set(row, details.productId(), coupon.id(), Math.round(details.discount() * 100),
+                details.expiryDate() == null ? NO_EXPIRY : (int) details.expiryDate().toEpochDay(),
+                constraints == null || constraints.usageLimit() == null ? NO_LIMIT : constraints.usageLimit(),
+                constraints != null && Boolean.TRUE.equals(constraints.oncePerCustomer()) ? FLAG_ONCE_PER_CUSTOMER : 0,
+                entry.version());
+    }
+
+    private void copyRow(int row, ProductWiseColumns from, int fromRow) {
+        set(row, from.productId(fromRow), from.couponId(fromRow), from.discountBasisPoints(fromRow),
+                from.expiryEpochDay(fromRow), from.usageLimit(fromRow), from.flags(fromRow), from.version(fromRow));
+    }
+
+    private void indexByCoupon() {
+        // Sort (couponId, row) pairs packed into longs rather than boxing a comparator
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = (long) couponId(row) << 32 | row;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < size; i++) setByCoupon(i, (int) keys[i]);
+    }
+
+    private static final class Heap extends ProductWiseColumns {
+
+        private final int[] productId;
+        private final int[] couponId;
+        private final long[] discountBasisPoints;
+        private final int[] expiryEpochDay;
+        private final int[] usageLimit;
+        private final byte[] flags;
+        private final long[] version;
+        // Row numbers ordered by coupon id, for lookups by id
+        private final int[] byCoupon;
+
+        Heap(int size) {
+            super(size);
+            this.productId = new int[size];
+            this.couponId = new int[size];
+            this.discountBasisPoints = new long[size];
+            this.expiryEpochDay = new int[size];
+            this.usageLimit = new int[size];
+            this.flags = new byte[size];
+            this.version = new long[size];
+            this.byCoupon = new int[size];
+        }
+
+        @Override int productId(int row) { return productId[row]; }
+        @Override int couponId(int row) { return couponId[row]; }
+        @Override long discountBasisPoints(int row) { return discountBasisPoints[row]; }
+        @Override int expiryEpochDay(int row) { return expiryEpochDay[row]; }
+        @Override int usageLimit(int row) { return usageLimit[row]; }
+        @Override byte flags(int row) { return flags[row]; }
+        @Override long version(int row) { return version[row]; }
+        @Override int byCoupon(int i) { return byCoupon[i]; }
+
+        @Override
+        void set(int row, int productId, int couponId, long discountBasisPoints, int expiryEpochDay, int usageLimit,
+                 byte flags, long version) {
+            this.productId[row] = productId;
+            this.couponId[row] = couponId;
+            this.discountBasisPoints[row] = discountBasisPoints;
+            this.expiryEpochDay[row] = expiryEpochDay;
+            this.usageLimit[row] = usageLimit;
+            this.flags[row] = flags;
+            this.version[row] = version;
+        }
+
+        @Override
+        void setByCoupon(int i, int row) {
+            byCoupon[i] = row;
+        }
+    }
+
+    /**
+     * The same columns laid out one after another in a direct buffer, widest first so that every
+     * value is naturally aligned: discounts and versions, then the {@code int} columns, then flags.
+     * The buffer goes back to the pool once the generation is replaced and no reader holds it.
+     */
+    private static final class OffHeap extends ProductWiseColumns {
+
+        private final ByteBuffer buffer;
+        private final BufferPool pool;
+        // The catalog's reference plus one per reader; never raised again once it reaches zero
+        private final AtomicInteger refs = new AtomicInteger(1);
+        private final int versionAt;
+        private final int productIdAt;
+        private final int couponIdAt;
+        private final int expiryAt;
+        private final int usageLimitAt;
+        private final int byCouponAt;
+        private final int flagsAt;
+
+        OffHeap(int size, BufferPool pool) {
+            super(size);
+            long bytes = (long) size * BYTES_PER_ROW;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException(size + " PRODUCT_WISE rows exceed one off-heap buffer");
+            }
+            this.buffer = pool.take((int) bytes);
+            this.pool = pool;
+            this.versionAt = 8 * size;
+            this.productIdAt = 16 * size;
+            this.couponIdAt = 20 * size;
+            this.expiryAt = 24 * size;
+            this.usageLimitAt = 28 * size;
+            this.byCouponAt = 32 * size;
+            this.flagsAt = 36 * size;
+        }
+
+        @Override int productId(int row) { return buffer.getInt(productIdAt + 4 * row); }
+        @Override int couponId(int row) { return buffer.getInt(couponIdAt + 4 * row); }
+        @Override long discountBasisPoints(int row) { return buffer.getLong(8 * row); }
+        @Override int expiryEpochDay(int row) { return buffer.getInt(expiryAt + 4 * row); }
+        @Override int usageLimit(int row) { return buffer.getInt(usageLimitAt + 4 * row); }
+        @Override byte flags(int row) { return buffer.get(flagsAt + row); }
+        @Override long version(int row) { return buffer.getLong(versionAt + 8 * row); }
+        @Override int byCoupon(int i) { return buffer.getInt(byCouponAt + 4 * i); }
+
+        @Override
+        void set(int row, int productId, int couponId, long discountBasisPoints, int expiryEpochDay, int usageLimit,
+                 byte flags, long version) {
+            buffer.putLong(8 * row, discountBasisPoints);
+            buffer.putLong(versionAt + 8 * row, version);
+            buffer.putInt(productIdAt + 4 * row, productId);
+            buffer.putInt(couponIdAt + 4 * row, couponId);
+            buffer.putInt(expiryAt + 4 * row, expiryEpochDay);
+            buffer.putInt(usageLimitAt + 4 * row, usageLimit);
+            buffer.put(flagsAt + row, flags);
+        }
+
+        @Override
+        void setByCoupon(int i, int row) {
+            buffer.putInt(byCouponAt + 4 * i, row);
+        }
+
+        @Override
+        boolean retain() {
+            while (true) {
+                int current = refs.get();
+                if (current == 0) return false;
+                if (refs.compareAndSet(current, current + 1)) return true;
+            }
+        }
+
+        @Override
+        void release() {
+            if (refs.decrementAndGet() == 0) pool.give(buffer);
+        }
+    }
+
+    /**
+     * Holds on to the buffer of the last off-heap generation released, so that the next merge can
+     * write into it rather than allocate; merges alternate between two buffers while the catalog
+     * size is steady. Buffers are allocated with a quarter of headroom so that growth reuses too.
+     */
+    static final class BufferPool {
+
+        private final AtomicReference<ByteBuffer> spare = new AtomicReference<>();
+
+        ByteBuffer take(int bytes) {
+            ByteBuffer buffer = spare.getAndSet(null);
+            // Every byte below the size is written by the merge, so a reused buffer needs no clearing
+            if (buffer != null && buffer.capacity() >= bytes) return buffer;
+            int capacity = (int) Math.min(Integer.MAX_VALUE, bytes + (long) bytes / 4);
+            return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+        void give(ByteBuffer buffer) {
+            spare.set(buffer);
+        }
+
+        ByteBuffer spare() {
+            return spare.get();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.monk.commerce.service.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@value #LEVELS} levels of {@value #SLOTS} slots, each level's slot
+ * spanning a whole turn of the level below. Scheduling is constant time. A timer sits at the coarsest
+ * level that still tells it apart, and moves down a level each time the wheel reaches its slot, so
+ * every timer is touched at most {@value #LEVELS} times. Timers beyond the top level's reach are
+ * parked in its farthest slot and re-filed from there.
+ * <p>
+ * Timers fire on the first {@link #advance} at or after their deadline, at tick granularity. Not
+ * thread-safe.
+ */
+final class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long HORIZON_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final List<List<Timer<T>>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private List<Timer<T>> due = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    TimerWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(nowMillis, tickMillis);
+        for (int i = 0; i < LEVELS * SLOTS; i++) slots.add(new ArrayList<>());
+    }
+
+    void schedule(long deadlineMillis, T payload) {
+        file(new Timer<>(deadlineMillis, payload));
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis}, handing every timer whose deadline has passed to
+     * {@code expired}. Timers scheduled from within {@code expired} are filed normally.
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        fireDue(expired);
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target;
+                return;
+            }
+            currentTick++;
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                for (Timer<T> timer : take(level, currentTick)) file(timer);
+            }
+            due.addAll(take(0, currentTick));
+            fireDue(expired);
+        }
+    }
+
+    private void file(Timer<T> timer) {
+        long deadlineTick = Math.floorDiv(timer.deadlineMillis() + tickMillis - 1, tickMillis);
+        long delta = deadlineTick - currentTick;
+        if (delta <= 0) {
+            due.add(timer);
+            return;
+        }
+        if (delta >= HORIZON_TICKS) {
+            deadlineTick = currentTick + HORIZON_TICKS - 1;
+            delta = HORIZON_TICKS - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) level++;
+        slots.get(index(level, deadlineTick)).add(timer);
+    }
+
+    private List<Timer<T>> take(int level, long tick) {
+        int index = index(level, tick);
+        List<Timer<T>> timers = slots.get(index);
+        if (timers.isEmpty()) return List.of();
+        slots.set(index, new ArrayList<>());
+        return timers;
+    }
+
+    private void fireDue(Consumer<T> expired) {
+        while (!due.isEmpty()) {
+            List<Timer<T>> firing = due;
+            due = new ArrayList<>();
+            size -= firing.size();
+            for (Timer<T> timer : firing) expired.accept(timer.payload());
+        }
+    }
+
+    private static int index(int level, long tick) {
+        return level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+    }
+
+    private record Timer<T>(long deadlineMillis, T payload) {}
+}
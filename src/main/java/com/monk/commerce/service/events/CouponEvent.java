@@ -0,0 +1,55 @@
+package com.monk.commerce.service.events;
+
+/**
+ * One pre-allocated slot of the {@link EventRing}. Slots are overwritten in place by producers, so
+ * sinks must copy whatever they keep beyond {@link EventSink#onEvent}.
+ */
+public final class CouponEvent {
+
+    private EventType type;
+    private long timestamp;
+    private int couponId;
+    private Long customerId;
+    private double cartTotal;
+    private double discount;
+    private int count;
+
+    void set(EventType type, long timestamp, int couponId, Long customerId, double cartTotal, double discount,
+             int count) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.couponId = couponId;
+        this.customerId = customerId;
+        this.cartTotal = cartTotal;
+        this.discount = discount;
+        this.count = count;
+    }
+
+    public EventType type() {
+        return type;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public int couponId() {
+        return couponId;
+    }
+
+    public Long customerId() {
+        return customerId;
+    }
+
+    public double cartTotal() {
+        return cartTotal;
+    }
+
+    public double discount() {
+        return discount;
+    }
+
+    public int count() {
+        return count;
+    }
+}
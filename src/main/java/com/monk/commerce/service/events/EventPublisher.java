@@ -0,0 +1,129 @@
+package com.monk.commerce.service.events;
+
+import com.monk.commerce.config.EventProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes coupon events from request threads without locks or allocation: the event is written
+ * into a pre-allocated {@link EventRing} slot. One consumer thread per configured sink drains the
+ * ring in batches. When the ring is full the event is dropped or the caller waits, depending on
+ * {@code coupons.events.overflow}.
+ * <p>
+ * Publishing starts once the application is ready, so warm-up traffic is not reported.
+ */
+@Component
+public class EventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(EventPublisher.class);
+    private static final long IDLE_PARK_NANOS = 200_000;
+
+    private final EventProperties properties;
+    private final List<EventSink> sinks;
+    private final EventRing ring;
+    private final boolean block;
+    private final Counter publishedCounter;
+    private final Counter droppedCounter;
+    private final List<Thread> consumers = new ArrayList<>();
+    private volatile boolean running;
+
+    public EventPublisher(EventProperties properties, List<EventSink> available, MeterRegistry registry) {
+        this.properties = properties;
+        this.sinks = properties.enabled() ? select(available, properties.sinks()) : List.of();
+        this.ring = new EventRing(properties.bufferSize(), sinks.size());
+        this.block = properties.overflow() == EventProperties.Overflow.BLOCK;
+        this.publishedCounter = registry.counter("coupons.events.published");
+        this.droppedCounter = registry.counter("coupons.events.dropped");
+        Gauge.builder("coupons.events.depth", ring, EventRing::depth).register(registry);
+        Gauge.builder("coupons.events.capacity", ring, EventRing::capacity).register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        for (int i = 0; i < sinks.size(); i++) {
+            int consumer = i;
+            Thread thread = new Thread(() -> consume(consumer), "coupon-events-" + sinks.get(i).name());
+            thread.setDaemon(true);
+            thread.start();
+            consumers.add(thread);
+        }
+    }
+
+    public void publishApply(int couponId, Long customerId, double cartTotal, double discount) {
+        publish(EventType.APPLY, couponId, customerId, cartTotal, discount, 1);
+    }
+
+    public void publishApplicable(int bestCouponId, Long customerId, double cartTotal, double bestDiscount,
+                                  int count) {
+        publish(EventType.APPLICABLE, bestCouponId, customerId, cartTotal, bestDiscount, count);
+    }
+
+    long depth() {
+        return ring.depth();
+    }
+
+    @PreDestroy
+    public synchronized void close() throws InterruptedException {
+        running = false;
+        for (Thread consumer : consumers) consumer.join();
+        consumers.clear();
+        for (EventSink sink : sinks) sink.close();
+    }
+
+    private void publish(EventType type, int couponId, Long customerId, double cartTotal, double discount, int count) {
+        if (sinks.isEmpty() || !running) return;
+        long sequence = ring.claim(block);
+        if (sequence < 0) {
+            droppedCounter.increment();
+            return;
+        }
+        ring.slot(sequence).set(type, System.currentTimeMillis(), couponId, customerId, cartTotal, discount, count);
+        ring.publish(sequence);
+        publishedCounter.increment();
+    }
+
+    private void consume(int consumer) {
+        EventSink sink = sinks.get(consumer);
+        int batchSize = Math.max(1, properties.batchSize());
+        while (true) {
+            long next = ring.position(consumer) + 1;
+            int n = ring.available(next, batchSize);
+            if (n == 0) {
+                // Stop only once every claimed event has been handed over
+                if (!running && ring.position(consumer) >= ring.cursor()) return;
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                for (int i = 0; i < n; i++) sink.onEvent(ring.slot(next + i));
+                sink.endOfBatch();
+            } catch (RuntimeException e) {
+                log.warn("Event sink {} failed on a batch of {} events: {}", sink.name(), n, e.getMessage());
+            }
+            ring.advance(consumer, next + n - 1);
+        }
+    }
+
+    private static List<EventSink> select(List<EventSink> available, List<String> names) {
+        List<EventSink> selected = new ArrayList<>();
+        for (String name : names) {
+            EventSink sink = available.stream().filter(s -> s.name().equals(name.trim())).findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Unknown event sink " + name));
+            selected.add(sink);
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,95 @@
+package com.monk.commerce.service.events;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-producer, multi-consumer ring of pre-allocated {@link CouponEvent} slots, in the style of
+ * a disruptor. A producer claims a sequence with one CAS on the cursor, fills the slot and marks it
+ * published by storing the sequence in {@code published}. Every consumer sees every event and
+ * tracks its own position; a slot is reused only once all consumers have moved past it.
+ */
+final class EventRing {
+
+    private final CouponEvent[] slots;
+    private final int mask;
+    private final AtomicLongArray published;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong[] consumers;
+
+    EventRing(int size, int consumerCount) {
+        int capacity = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.slots = new CouponEvent[capacity];
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new CouponEvent();
+            published.set(i, -1);
+        }
+        this.consumers = new AtomicLong[consumerCount];
+        for (int i = 0; i < consumerCount; i++) consumers[i] = new AtomicLong(-1);
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Claims the next sequence, or returns -1 when the ring is full and {@code block} is false.
+     */
+    long claim(boolean block) {
+        while (true) {
+            long current = cursor.get();
+            long next = current + 1;
+            if (next - slots.length > slowestConsumer()) {
+                if (!block) return -1;
+                LockSupport.parkNanos(1_000);
+                continue;
+            }
+            if (cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    CouponEvent slot(long sequence) {
+        return slots[(int) sequence & mask];
+    }
+
+    void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+    }
+
+    /**
+     * Number of consecutive published events starting at {@code next}, capped at {@code max}.
+     */
+    int available(long next, int max) {
+        int n = 0;
+        while (n < max && published.get((int) (next + n) & mask) == next + n) n++;
+        return n;
+    }
+
+    long cursor() {
+        return cursor.get();
+    }
+
+    long position(int consumer) {
+        return consumers[consumer].get();
+    }
+
+    void advance(int consumer, long sequence) {
+        consumers[consumer].set(sequence);
+    }
+
+    /**
+     * Events claimed but not yet processed by the slowest consumer.
+     */
+    long depth() {
+        return cursor.get() - slowestConsumer();
+    }
+
+    private long slowestConsumer() {
+        long min = Long.MAX_VALUE;
+        for (AtomicLong consumer : consumers) min = Math.min(min, consumer.get());
+        return consumers.length == 0 ? cursor.get() : min;
+    }
+}
@@ -0,0 +1,18 @@
+package com.monk.commerce.service.events;
+
+/**
+ * Destination of coupon events. Each sink selected in {@code coupons.events.sinks} gets its own
+ * consumer thread, so implementations need not be thread-safe towards each other's calls.
+ */
+public interface EventSink {
+
+    /** Name used in {@code coupons.events.sinks}. */
+    String name();
+
+    void onEvent(CouponEvent event);
+
+    /** Called after the last event of each batch, e.g. to flush buffered output. */
+    default void endOfBatch() {}
+
+    default void close() {}
+}
@@ -0,0 +1,8 @@
+package com.monk.commerce.service.events;
+
+public enum EventType {
+    /** An {@code apply-coupon} call; {@code count} is 1. */
+    APPLY,
+    /** An {@code applicable-coupons} result; {@code couponId} and {@code discount} describe the best coupon. */
+    APPLICABLE
+}
@@ -0,0 +1,44 @@
+package com.monk.commerce.service.events;
+
+import com.monk.commerce.config.EventProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process stand-in for a message broker topic: keeps the newest
+ * {@code coupons.events.broker-capacity} events for other components or tests to poll.
+ */
+@Component
+public class LocalBrokerSink implements EventSink {
+
+    public record Message(EventType type, long timestamp, int couponId, Long customerId, double cartTotal,
+                          double discount, int count) {}
+
+    private final int capacity;
+    private final ArrayDeque<Message> topic = new ArrayDeque<>();
+
+    public LocalBrokerSink(EventProperties properties) {
+        this.capacity = Math.max(1, properties.brokerCapacity());
+    }
+
+    @Override
+    public String name() {
+        return "broker";
+    }
+
+    @Override
+    public synchronized void onEvent(CouponEvent event) {
+        if (topic.size() == capacity) topic.pollFirst();
+        topic.addLast(new Message(event.type(), event.timestamp(), event.couponId(), event.customerId(),
+                event.cartTotal(), event.discount(), event.count()));
+    }
+
+    public synchronized List<Message> poll(int max) {
+        List<Message> messages = new ArrayList<>(Math.min(max, topic.size()));
+        while (messages.size() < max && !topic.isEmpty()) messages.add(topic.pollFirst());
+        return messages;
+    }
+}
@@ -0,0 +1,80 @@
+package com.monk.commerce.service.events;
+
+import com.monk.commerce.config.EventProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends events as CSV lines ({@code timestamp,type,couponId,customerId,cartTotal,discount,count})
+ * to {@code coupons.events.log-file}. The file is opened on the first event.
+ */
+@Component
+public class LogFileEventSink implements EventSink {
+
+    private final Path file;
+    private final StringBuilder line = new StringBuilder(96);
+    private BufferedWriter writer;
+
+    public LogFileEventSink(EventProperties properties) {
+        this.file = properties.logFile();
+    }
+
+    @Override
+    public String name() {
+        return "log";
+    }
+
+    @Override
+    public void onEvent(CouponEvent event) {
+        line.setLength(0);
+        line.append(event.timestamp()).append(',')
+                .append(event.type()).append(',')
+                .append(event.couponId()).append(',')
+                .append(event.customerId() == null ? "" : event.customerId()).append(',')
+                .append(event.cartTotal()).append(',')
+                .append(event.discount()).append(',')
+                .append(event.count()).append('\n');
+        try {
+            writer().append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void endOfBatch() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+        }
+        writer = null;
+    }
+
+    private BufferedWriter writer() throws IOException {
+        if (writer == null) {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        return writer;
+    }
+}
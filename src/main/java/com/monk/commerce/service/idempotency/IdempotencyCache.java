@@ -0,0 +1,99 @@
+package com.monk.commerce.service.idempotency;
+
+import com.monk.commerce.config.IdempotencyProperties;
+import com.monk.commerce.exception.IdempotencyKeyReusedException;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of a request under its {@code Idempotency-Key}. The first caller runs the
+ * action; callers with the same key wait on its future and get the same result. Entries live for
+ * {@code coupons.idempotency.ttl} and the oldest finished ones are dropped beyond {@code max-entries}.
+ * Failures are not remembered, so a retry after an error runs again.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Insertion order, which is also expiry order since every entry gets the same ttl
+    private final Queue<Map.Entry<String, Entry>> order = new ConcurrentLinkedQueue<>();
+
+    public IdempotencyCache(IdempotencyProperties properties) {
+        this.ttlNanos = properties.ttl().toNanos();
+        this.maxEntries = Math.max(1, properties.maxEntries());
+    }
+
+    /**
+     * Runs {@code action} once per key. {@code request} identifies what the key was first used
+     * for; reusing the key for a different request is rejected.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Object request, Supplier<T> action) {
+        long now = System.nanoTime();
+        evict(now);
+        Entry entry = new Entry(request, new CompletableFuture<>(), now + ttlNanos);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null && existing.isEvictable(now)) {
+            entries.remove(key, existing);
+        }
+        if (existing != null) {
+            if (!existing.request().equals(request)) throw new IdempotencyKeyReusedException(key);
+            return (T) await(existing.result());
+        }
+        order.add(Map.entry(key, entry));
+
+        T value;
+        try {
+            value = action.get();
+        } catch (Throwable e) {
+            // Errors too, or every duplicate would wait forever
+            entries.remove(key, entry);
+            entry.result().completeExceptionally(e);
+            throw e;
+        }
+        entry.result().complete(value);
+        return value;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        Map.Entry<String, Entry> head;
+        // An entry still running stays, or a duplicate could run alongside it; so do the ones behind it
+        while ((head = order.peek()) != null && head.getValue().result().isDone()
+                && (head.getValue().isExpired(now) || entries.size() >= maxEntries)) {
+            if (order.remove(head)) entries.remove(head.getKey(), head.getValue());
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    private record Entry(Object request, CompletableFuture<Object> result, long expiresAt) {
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+
+        boolean isEvictable(long now) {
+            return isExpired(now) && result.isDone();
+        }
+    }
+}
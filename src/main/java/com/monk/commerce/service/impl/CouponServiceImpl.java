@@ -2,26 +2,91 @@ package com.monk.commerce.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.monk.commerce.dto.*;
+import com.monk.commerce.exception.CartSessionNotFoundException;
+import com.monk.commerce.exception.CouponNotActiveException;
+import com.monk.commerce.exception.CouponNotEligibleException;
 import com.monk.commerce.exception.CouponNotFoundException;
+import com.monk.commerce.exception.CustomerRequiredException;
+import com.monk.commerce.exception.InvalidSegmentException;
 import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.repository.ArchivedCouponRepository;
 import com.monk.commerce.repository.CouponRepository;
 import com.monk.commerce.service.CouponService;
+import com.monk.commerce.service.catalog.CatalogEntry;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.catalog.CouponSchedules;
+import com.monk.commerce.service.events.EventPublisher;
+import com.monk.commerce.service.idempotency.IdempotencyCache;
+import com.monk.commerce.service.ledger.LedgerRecord;
+import com.monk.commerce.service.ledger.RedemptionLedger;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.redemption.Reservation;
+import com.monk.commerce.service.segment.CustomerSegments;
+import com.monk.commerce.service.shadow.ShadowEvaluator;
+import com.monk.commerce.service.shadow.ShadowEvaluator.CatalogRead;
+import com.monk.commerce.service.simulation.CampaignSimulator;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.session.CartSession;
+import com.monk.commerce.service.session.CartSessionStore;
 import com.monk.commerce.service.strategy.CouponStrategy;
 import com.monk.commerce.service.strategy.CouponStrategyFactory;
+import com.monk.commerce.service.tenant.FairShareScheduler;
+import com.monk.commerce.service.tenant.TenantCatalogs;
+import com.monk.commerce.service.tenant.TenantContext;
+import com.monk.commerce.service.tenant.TenantPartition;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 @Service
 public class CouponServiceImpl implements CouponService {
 
+    // Longer budgets are cut to this; an evaluation that slow is not being raced against a deadline
+    private static final Duration MAX_BUDGET = Duration.ofMinutes(1);
+
     private final CouponRepository repository;
+    private final ArchivedCouponRepository archive;
+    private final TenantCatalogs tenants;
+    private final FairShareScheduler scheduler;
     private final CouponStrategyFactory factory;
+    private final RedemptionLimiter limiter;
+    private final IdempotencyCache idempotency;
+    private final RedemptionLedger ledger;
+    private final EventPublisher events;
+    private final CouponJsonCache json;
+    private final CartSessionStore sessions;
+    private final CampaignSimulator simulator;
+    private final ShadowEvaluator shadow;
+    private final CustomerSegments segments;
     private final ObjectMapper mapper;
 
-    public CouponServiceImpl(CouponRepository repository, CouponStrategyFactory factory, ObjectMapper mapper) {
+    public CouponServiceImpl(CouponRepository repository, ArchivedCouponRepository archive, TenantCatalogs tenants,
+                             FairShareScheduler scheduler, CouponStrategyFactory factory, RedemptionLimiter limiter,
+                             IdempotencyCache idempotency, RedemptionLedger ledger, EventPublisher events,
+                             CouponJsonCache json, CartSessionStore sessions, CampaignSimulator simulator,
+                             ShadowEvaluator shadow, CustomerSegments segments, ObjectMapper mapper) {
         this.repository = repository;
+        this.archive = archive;
+        this.tenants = tenants;
+        this.scheduler = scheduler;
         this.factory = factory;
+        this.limiter = limiter;
+        this.idempotency = idempotency;
+        this.ledger = ledger;
+        this.events = events;
+        this.json = json;
+        this.sessions = sessions;
+        this.simulator = simulator;
+        this.shadow = shadow;
+        this.segments = segments;
         this.mapper = mapper;
     }
 
@@ -30,86 +95,393 @@ public class CouponServiceImpl implements CouponService {
         Coupon entity = new Coupon();
         entity.setType(request.type());
         entity.setExpiryDate(request.details().expiryDate());
+        applyConstraints(entity, request.constraints());
+        validate(request);
         try {
             entity.setDetails(mapper.writeValueAsString(request.details()));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        repository.save(entity);
-        return toResponse(entity);
+        try (TenantPartition partition = tenants.acquire()) {
+            CouponCatalog catalog = partition.catalog();
+            entity.setTenantId(catalog.tenantId());
+            return catalog.mutate(version -> {
+                entity.setVersion(version);
+                repository.save(entity);
+                return catalog.put(entity);
+            });
+        }
     }
 
     @Override
     public List<CouponResponse> getAllCoupons() {
-        return repository.findAll().stream().map(this::toResponse).toList();
+        try (TenantPartition partition = tenants.acquire()) {
+            return sorted(partition.catalog());
+        }
+    }
+
+    @Override
+    public String getCatalogETag() {
+        try (TenantPartition partition = tenants.acquire()) {
+            return CouponJsonCache.listETag(partition.tenant(), partition.catalog().stableVersion());
+        }
+    }
+
+    @Override
+    public CachedJson getAllCouponsJson() {
+        try (TenantPartition partition = tenants.acquire()) {
+            CouponCatalog catalog = partition.catalog();
+            return json.list(partition.tenant(), catalog.stableVersion(), () -> sorted(catalog));
+        }
     }
 
     @Override
     public CouponResponse getCoupon(Integer id) {
-        return toResponse(repository.findById(id).orElseThrow(() -> new CouponNotFoundException(id)));
+        try (TenantPartition partition = tenants.acquire()) {
+            return coupon(partition.catalog(), id);
+        }
+    }
+
+    /**
+     * Answered from the catalog alone, so a conditional request never reaches the database.
+     */
+    @Override
+    public String getCouponETag(Integer id) {
+        try (TenantPartition partition = tenants.acquire()) {
+            return partition.catalog().find(id).map(CouponJsonCache::eTag).orElse(null);
+        }
+    }
+
+    @Override
+    public CachedJson getCouponJson(Integer id) {
+        try (TenantPartition partition = tenants.acquire()) {
+            CouponCatalog catalog = partition.catalog();
+            CatalogEntry entry = catalog.find(id)
+                    .or(() -> repository.findById(id).filter(catalog::holds).flatMap(entity -> {
+                        catalog.put(entity);
+                        return catalog.find(id);
+                    }))
+                    .or(() -> findArchived(catalog, id))
+                    .orElseThrow(() -> new CouponNotFoundException(id));
+            return json.coupon(entry);
+        }
     }
 
     @Override
     public CouponResponse updateCoupon(Integer id, CouponRequest request) {
-        Coupon entity = repository.findById(id).orElseThrow(() -> new CouponNotFoundException(id));
-        entity.setType(request.type());
-        entity.setExpiryDate(request.details().expiryDate());
-        try {
-            entity.setDetails(mapper.writeValueAsString(request.details()));
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        try (TenantPartition partition = tenants.acquire()) {
+            CouponCatalog catalog = partition.catalog();
+            Coupon entity = repository.findById(id).filter(catalog::holds)
+                    .orElseThrow(() -> new CouponNotFoundException(id));
+            entity.setType(request.type());
+            entity.setExpiryDate(request.details().expiryDate());
+            applyConstraints(entity, request.constraints());
+            validate(request);
+            try {
+                entity.setDetails(mapper.writeValueAsString(request.details()));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return catalog.mutate(version -> {
+                entity.setVersion(version);
+                repository.save(entity);
+                return catalog.put(entity);
+            });
         }
-        repository.save(entity);
-        return toResponse(entity);
     }
 
     @Override
     public void deleteCoupon(Integer id) {
-        repository.deleteById(id);
+        try (TenantPartition partition = tenants.acquire()) {
+            CouponCatalog catalog = partition.catalog();
+            // Only a coupon missing from the catalog can be another tenant's
+            if (catalog.find(id).isEmpty()
+                    && repository.findById(id).filter(entity -> !catalog.holds(entity)).isPresent()) {
+                throw new CouponNotFoundException(id);
+            }
+            catalog.mutate(version -> {
+                repository.deleteById(id);
+                catalog.remove(id, version);
+                json.evict(id);
+                limiter.forget(id);
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public CouponChangesResponse getChanges(Long since) {
+        try (TenantPartition partition = tenants.acquire()) {
+            return partition.catalog().changesSince(since);
+        }
     }
 
     @Override
     public ApplicableCouponsResponse getApplicableCoupons(CartRequest cart) {
-        List<ApplicableCoupon> applicable = repository.findAll().stream().map(this::toResponse)
-                .filter(c -> {
-                    CouponStrategy strategy = factory.getStrategy(c.type());
-                    return strategy.isApplicable(cart, c);
-                })
-                .map(c -> {
-                    CouponStrategy strategy = factory.getStrategy(c.type());
-                    double discount = strategy.calculateDiscount(cart, c);
-                    return new ApplicableCoupon(c.id(), c.type(), discount);
-                }).toList();
-        return new ApplicableCouponsResponse(applicable);
+        return applicable(cart, true);
+    }
+
+    @Override
+    public ApplicableCouponsResponse previewApplicableCoupons(CartRequest cart) {
+        return applicable(cart, false);
+    }
+
+    /** Evaluates the cart; only a live call is shadowed and published. */
+    private ApplicableCouponsResponse applicable(CartRequest cart, boolean live) {
+        String tenant = TenantContext.current();
+        scheduler.acquire(tenant);
+        try (TenantPartition partition = tenants.acquire(tenant)) {
+            CartEvaluator evaluator = partition.evaluator();
+            CatalogRead read = live && shadow.sample()
+                    ? new CatalogRead(evaluator, partition.catalog(), partition.catalog().version())
+                    : null;
+            long start = System.nanoTime();
+            List<ApplicableCoupon> applicable = evaluator.evaluate(cart);
+            if (read != null) shadow.applicable(read, cart, applicable, System.nanoTime() - start);
+            if (live) publishApplicable(cart, applicable);
+            return new ApplicableCouponsResponse(applicable);
+        } finally {
+            scheduler.release(tenant);
+        }
+    }
+
+    @Override
+    public ApplicableCouponsResponse getApplicableCoupons(CartRequest cart, Duration budget) {
+        if (budget == null) return getApplicableCoupons(cart);
+        // Time spent waiting for a slot counts against the budget. Clamped, as toNanos() overflows for huge
+        // budgets; the deadline itself may wrap, since it is only ever compared by subtraction.
+        long budgetNanos = budget.isNegative() ? 0
+                : budget.compareTo(MAX_BUDGET) > 0 ? MAX_BUDGET.toNanos()
+                : budget.toNanos();
+        long deadline = System.nanoTime() + budgetNanos;
+        String tenant = TenantContext.current();
+        scheduler.acquire(tenant, deadline);
+        try (TenantPartition partition = tenants.acquire(tenant)) {
+            CartEvaluator evaluator = partition.evaluator();
+            CatalogRead read = shadow.sample()
+                    ? new CatalogRead(evaluator, partition.catalog(), partition.catalog().version())
+                    : null;
+            long start = System.nanoTime();
+            ApplicableCouponsResponse response = evaluator.evaluate(cart, deadline);
+            // A partial result is expected to differ
+            if (read != null && !response.partial()) {
+                shadow.applicable(read, cart, response.applicableCoupons(), System.nanoTime() - start);
+            }
+            publishApplicable(cart, response.applicableCoupons());
+            return response;
+        } finally {
+            scheduler.release(tenant);
+        }
+    }
+
+    @Override
+    public CartSessionResponse createCartSession(CartRequest cart) {
+        String tenant = TenantContext.current();
+        CartSession session = CartSession.of(UUID.randomUUID().toString(), tenant, cart);
+        scheduler.acquire(tenant);
+        try (TenantPartition partition = tenants.acquire(tenant)) {
+            synchronized (session) {
+                partition.evaluator().evaluate(session);
+                sessions.put(session);
+                return toResponse(session, true);
+            }
+        } finally {
+            scheduler.release(tenant);
+        }
+    }
+
+    @Override
+    public CartSessionResponse getCartSession(String id) {
+        CartSession session = session(id);
+        synchronized (session) {
+            return toResponse(session, false);
+        }
+    }
+
+    @Override
+    public CartSessionResponse updateCartSession(String id, List<CartChange> changes) {
+        CartSession session = session(id);
+        scheduler.acquire(session.tenant());
+        try (TenantPartition partition = tenants.acquire(session.tenant())) {
+            synchronized (session) {
+                Set<Integer> changed = session.apply(changes == null ? List.of() : changes);
+                partition.evaluator().reevaluate(session, changed);
+                return toResponse(session, true);
+            }
+        } finally {
+            scheduler.release(session.tenant());
+        }
+    }
+
+    @Override
+    public void deleteCartSession(String id) {
+        session(id);
+        if (!sessions.remove(id)) throw new CartSessionNotFoundException(id);
+    }
+
+    @Override
+    public SimulationReport simulateCampaign(List<CouponRequest> proposed, InputStream carts) {
+        try (TenantPartition partition = tenants.acquire()) {
+            return simulator.simulate(partition.evaluator(), proposed, carts);
+        }
     }
 
     @Override
     public ApplyCouponResponse applyCoupon(Integer id, CartRequest cart) {
-        CouponResponse coupon = getCoupon(id);
+        String tenant = TenantContext.current();
+        scheduler.acquire(tenant);
+        try (TenantPartition partition = tenants.acquire(tenant)) {
+            return apply(partition.catalog(), id, cart);
+        } finally {
+            scheduler.release(tenant);
+        }
+    }
+
+    @Override
+    public ApplyCouponResponse applyCoupon(Integer id, CartRequest cart, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) return applyCoupon(id, cart);
+        // Keys are chosen by callers, so two tenants may well pick the same one
+        String tenant = TenantContext.current();
+        String key = tenant + ":" + idempotencyKey;
+        return idempotency.execute(key, new ApplyRequest(id, cart), () -> applyCoupon(id, cart));
+    }
+
+    @Override
+    public ApplyCouponResponse previewCoupon(Integer id, CartRequest cart) {
+        String tenant = TenantContext.current();
+        scheduler.acquire(tenant);
+        try (TenantPartition partition = tenants.acquire(tenant)) {
+            CouponResponse coupon = eligibleCoupon(partition.catalog(), id, cart);
+            return factory.getStrategy(coupon.type()).applyCoupon(cart, coupon);
+        } finally {
+            scheduler.release(tenant);
+        }
+    }
+
+    /** The coupon, once it is known to be active and open to the cart's customer. */
+    private CouponResponse eligibleCoupon(CouponCatalog catalog, Integer id, CartRequest cart) {
+        CouponResponse coupon = coupon(catalog, id);
+        if (!catalog.isActive(id)) throw new CouponNotActiveException(id);
+        if (!segments.admits(catalog.tenantId(), coupon, cart.customerId())) {
+            if (cart.customerId() == null) throw new CustomerRequiredException(id);
+            throw new CouponNotEligibleException(id);
+        }
+        return coupon;
+    }
+
+    private ApplyCouponResponse apply(CouponCatalog catalog, Integer id, CartRequest cart) {
+        CouponResponse coupon = eligibleCoupon(catalog, id, cart);
         CouponStrategy strategy = factory.getStrategy(coupon.type());
-        return strategy.applyCoupon(cart, coupon);
+        Reservation reservation = limiter.reserve(coupon, cart.customerId());
+        ApplyCouponResponse response;
+        long start = System.nanoTime();
+        try {
+            response = strategy.applyCoupon(cart, coupon);
+        } catch (RuntimeException e) {
+            reservation.release();
+            throw e;
+        }
+        if (shadow.sample()) shadow.apply(coupon, cart, response, System.nanoTime() - start);
+        // A cart that earns no discount has not used the coupon
+        if (response.totalDiscount() > 0) {
+            reservation.commit();
+            ledger.append(new LedgerRecord(System.currentTimeMillis(), id, cart.customerId(),
+                    response.totalPrice(), response.totalDiscount(),
+                    coupon.constraints() != null && coupon.constraints().usageLimit() != null));
+        } else {
+            reservation.release();
+        }
+        events.publishApply(id, cart.customerId(), response.totalPrice(), response.totalDiscount());
+        return response;
     }
 
-    private CouponResponse toResponse(Coupon entity) {
-        CouponDetails details;
+    @Override
+    public SegmentResponse uploadSegment(String name, InputStream members) {
+        return segments.upload(TenantContext.column(TenantContext.current()), name, members);
+    }
+
+    @Override
+    public SegmentResponse getSegment(String name) {
+        return segments.get(TenantContext.column(TenantContext.current()), name);
+    }
+
+    @Override
+    public void deleteSegment(String name) {
+        segments.delete(TenantContext.column(TenantContext.current()), name);
+    }
+
+    private CouponResponse coupon(CouponCatalog catalog, Integer id) {
+        return catalog.find(id)
+                .map(CatalogEntry::coupon)
+                .or(() -> repository.findById(id).filter(catalog::holds).map(catalog::put))
+                .or(() -> findArchived(catalog, id).map(CatalogEntry::coupon))
+                .orElseThrow(() -> new CouponNotFoundException(id));
+    }
+
+    private static List<CouponResponse> sorted(CouponCatalog catalog) {
+        return catalog.entries().stream()
+                .map(CatalogEntry::coupon)
+                .sorted(Comparator.comparing(CouponResponse::id))
+                .toList();
+    }
+
+    private void publishApplicable(CartRequest cart, List<ApplicableCoupon> applicable) {
+        double cartTotal = 0;
+        for (CartItem item : cart.items()) cartTotal += item.price() * item.quantity();
+        int bestId = -1;
+        double bestDiscount = 0;
+        for (ApplicableCoupon coupon : applicable) {
+            if (bestId < 0 || coupon.discount() > bestDiscount) {
+                bestId = coupon.couponId();
+                bestDiscount = coupon.discount();
+            }
+        }
+        events.publishApplicable(bestId, cart.customerId(), cartTotal, bestDiscount, applicable.size());
+    }
+
+    /** Archived coupons are compiled on every read and never enter the catalog. */
+    private Optional<CatalogEntry> findArchived(CouponCatalog catalog, Integer id) {
+        return archive.findById(id)
+                .filter(archived -> Objects.equals(archived.getTenantId(), catalog.tenantId()))
+                .map(archived -> new CatalogEntry(catalog.compile(archived.toCoupon()),
+                        archived.getVersion() == null ? 0 : archived.getVersion()));
+    }
+
+    /** The session, if it belongs to the current tenant. */
+    private CartSession session(String id) {
+        return sessions.find(id)
+                .filter(session -> session.tenant().equals(TenantContext.current()))
+                .orElseThrow(() -> new CartSessionNotFoundException(id));
+    }
+
+    private CartSessionResponse toResponse(CartSession session, boolean evaluated) {
+        List<ApplicableCoupon> applicable = session.applicableCoupons();
+        if (evaluated) publishApplicable(session.cart(), applicable);
+        return new CartSessionResponse(session.id(), session.customerId(), session.items(), session.total(), applicable);
+    }
+
+    private record ApplyRequest(Integer couponId, CartRequest cart) {}
+
+    private void validate(CouponRequest request) {
+        CouponStrategy strategy = factory.getStrategy(request.type());
+        if (strategy != null) strategy.validate(request.details());
+    }
+
+    private void applyConstraints(Coupon entity, CouponConstraints constraints) {
+        entity.setUsageLimit(constraints == null ? null : constraints.usageLimit());
+        entity.setOncePerCustomer(constraints == null ? null : constraints.oncePerCustomer());
+        CouponSchedule schedule = constraints == null ? null : constraints.schedule();
+        CouponSchedules.validate(schedule);
         try {
-            details = switch (entity.getType()) {
-                case CART_WISE -> {
-                    var d = mapper.readValue(entity.getDetails(), CartWiseDetails.class);
-                    yield new CartWiseDetails(d.threshold(), d.discount(), entity.getExpiryDate());
-                }
-                case PRODUCT_WISE -> {
-                    var d = mapper.readValue(entity.getDetails(), ProductWiseDetails.class);
-                    yield new ProductWiseDetails(d.productId(), d.discount(), entity.getExpiryDate());
-                }
-                case BXGY -> {
-                    var d = mapper.readValue(entity.getDetails(), BxGyDetails.class);
-                    yield new BxGyDetails(d.buyProducts(), d.getProducts(), d.repetitionLimit(), entity.getExpiryDate());
-                }
-            };
+            entity.setSchedule(schedule == null ? null : mapper.writeValueAsString(schedule));
         } catch (Exception e) {
-            throw new RuntimeException("Failed to parse coupon details", e);
+            throw new RuntimeException(e);
+        }
+        List<String> names = constraints == null ? null : constraints.segments();
+        if (names != null) {
+            if (names.isEmpty()) throw new InvalidSegmentException("a coupon limited to segments needs at least one");
+            names.forEach(CustomerSegments::validateName);
         }
-        return new CouponResponse(entity.getId(), entity.getType(), details);
+        entity.setSegments(names == null ? null : String.join(",", names));
     }
 }
\ No newline at end of file
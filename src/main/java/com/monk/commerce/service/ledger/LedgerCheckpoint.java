@@ -0,0 +1,72 @@
+package com.monk.commerce.service.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * What the segments folded away by {@link RedemptionLedger#compact()} added up to, so that replay
+ * only has to read the segments written since. Stored in {@value #FILE_NAME} next to the segments:
+ * <pre>
+ * int magic, short format, long throughSequence, long records, int count,
+ * count × (int couponId, long limitedRecords), long crc32 of everything before it
+ * </pre>
+ */
+record LedgerCheckpoint(long throughSequence, long records, Map<Integer, Long> limitedCounts) {
+
+    static final String FILE_NAME = "checkpoint.bin";
+    static final LedgerCheckpoint NONE = new LedgerCheckpoint(-1, 0, Map.of());
+
+    private static final int MAGIC = 0x4D4B4C43;
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 8 + 4;
+    private static final int ENTRY_BYTES = 4 + 8;
+
+    static LedgerCheckpoint read(Path directory) throws IOException {
+        Path path = directory.resolve(FILE_NAME);
+        if (!Files.exists(path)) return NONE;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < HEADER_BYTES + 8) throw new IOException("Ledger checkpoint " + path + " is truncated");
+        CRC32 crc = new CRC32();
+        crc.update(in.slice(0, in.limit() - 8));
+        if (in.getLong(in.limit() - 8) != crc.getValue()) {
+            throw new IOException("Ledger checkpoint " + path + " failed its checksum");
+        }
+        if (in.getInt() != MAGIC) throw new IOException("Not a ledger checkpoint: " + path);
+        short format = in.getShort();
+        if (format != FORMAT_VERSION) throw new IOException("Unsupported ledger checkpoint format " + format);
+        long throughSequence = in.getLong();
+        long records = in.getLong();
+        int count = in.getInt();
+        if (count < 0 || (long) count * ENTRY_BYTES != in.remaining() - 8) {
+            throw new IOException("Ledger checkpoint " + path + " is truncated");
+        }
+        Map<Integer, Long> limitedCounts = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) limitedCounts.put(in.getInt(), in.getLong());
+        return new LedgerCheckpoint(throughSequence, records, limitedCounts);
+    }
+
+    /** Replaces the checkpoint in {@code directory} in one rename. */
+    void write(Path directory) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + limitedCounts.size() * ENTRY_BYTES + 8);
+        out.putInt(MAGIC).putShort(FORMAT_VERSION).putLong(throughSequence).putLong(records)
+                .putInt(limitedCounts.size());
+        limitedCounts.forEach((couponId, count) -> out.putInt(couponId).putLong(count));
+        CRC32 crc = new CRC32();
+        crc.update(out.slice(0, out.position()));
+        out.putLong(crc.getValue());
+        Path tmp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+        try {
+            Files.write(tmp, out.array());
+            Files.move(tmp, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.monk.commerce.service.ledger;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary layout of a ledger segment:
+ * <pre>
+ * header : int magic, short format
+ * record : long timestamp, int couponId, long customerId, double totalPrice, double totalDiscount,
+ *          byte flags, int crc32
+ * </pre>
+ * Records have a fixed size and carry their own checksum, so a torn write at the end of a segment
+ * is detected and skipped on read. An anonymous customer is written as {@link #NO_CUSTOMER}; flag
+ * bit 0 marks a limited application.
+ */
+final class LedgerFormat {
+
+    static final int MAGIC = 0x4D4B524C;
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 4 + 2;
+    static final int PAYLOAD_BYTES = 8 + 4 + 8 + 8 + 8 + 1;
+    static final int RECORD_BYTES = PAYLOAD_BYTES + 4;
+    static final long NO_CUSTOMER = Long.MIN_VALUE;
+    static final byte FLAG_LIMITED = 1;
+    static final String PREFIX = "ledger-";
+    static final String SUFFIX = ".log";
+
+    private LedgerFormat() {}
+
+    static String segmentName(long sequence) {
+        return PREFIX + String.format("%020d", sequence) + SUFFIX;
+    }
+
+    static long sequenceOf(String fileName) {
+        if (!fileName.startsWith(PREFIX) || !fileName.endsWith(SUFFIX)) return -1;
+        try {
+            return Long.parseLong(fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static void writeHeader(ByteBuffer out) {
+        out.putInt(MAGIC).putShort(FORMAT_VERSION);
+    }
+
+    static void write(ByteBuffer out, LedgerRecord record, CRC32 crc) {
+        int start = out.position();
+        out.putLong(record.timestamp())
+                .putInt(record.couponId())
+                .putLong(record.customerId() == null ? NO_CUSTOMER : record.customerId())
+                .putDouble(record.totalPrice())
+                .putDouble(record.totalDiscount())
+                .put(record.limited() ? FLAG_LIMITED : 0);
+        crc.reset();
+        crc.update(out.slice(start, PAYLOAD_BYTES));
+        out.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Reads the record at the buffer's position, or returns null when its checksum does not match.
+     */
+    static LedgerRecord read(ByteBuffer in, CRC32 crc) {
+        int start = in.position();
+        crc.reset();
+        crc.update(in.slice(start, PAYLOAD_BYTES));
+        long timestamp = in.getLong();
+        int couponId = in.getInt();
+        long customerId = in.getLong();
+        double totalPrice = in.getDouble();
+        double totalDiscount = in.getDouble();
+        byte flags = in.get();
+        if (in.getInt() != (int) crc.getValue()) return null;
+        return new LedgerRecord(timestamp, couponId, customerId == NO_CUSTOMER ? null : customerId,
+                totalPrice, totalDiscount, (flags & FLAG_LIMITED) != 0);
+    }
+}
@@ -0,0 +1,85 @@
+package com.monk.commerce.service.ledger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads ledger segments in the order they were written. Usable without a running application,
+ * e.g. for offline reconciliation: {@code LedgerReader.read(Path.of("coupons-ledger"), consumer)}.
+ * Segments older than {@code coupons.ledger.retention} are only left as totals in the checkpoint.
+ */
+public final class LedgerReader {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerReader.class);
+
+    private LedgerReader() {}
+
+    /**
+     * Streams every intact record of every segment in {@code directory} and returns how many
+     * were read.
+     */
+    public static long read(Path directory, Consumer<LedgerRecord> consumer) throws IOException {
+        return readAfter(directory, -1, consumer);
+    }
+
+    /**
+     * Like {@link #read}, but only the segments after {@code sequence}, such as those written since
+     * the segments folded into the checkpoint.
+     */
+    public static long readAfter(Path directory, long sequence, Consumer<LedgerRecord> consumer) throws IOException {
+        long count = 0;
+        for (Path segment : segments(directory)) {
+            if (LedgerFormat.sequenceOf(segment.getFileName().toString()) <= sequence) continue;
+            count += readSegment(segment, consumer);
+        }
+        return count;
+    }
+
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> LedgerFormat.sequenceOf(f.getFileName().toString()) >= 0).forEach(segments::add);
+        }
+        segments.sort(Comparator.comparingLong(f -> LedgerFormat.sequenceOf(f.getFileName().toString())));
+        return segments;
+    }
+
+    static long readSegment(Path segment, Consumer<LedgerRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < LedgerFormat.HEADER_BYTES) return 0;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != LedgerFormat.MAGIC) throw new IOException("Not a ledger segment: " + segment);
+            short format = buffer.getShort();
+            if (format != LedgerFormat.FORMAT_VERSION) throw new IOException("Unsupported ledger format " + format);
+
+            CRC32 crc = new CRC32();
+            long count = 0;
+            while (buffer.remaining() >= LedgerFormat.RECORD_BYTES) {
+                LedgerRecord record = LedgerFormat.read(buffer, crc);
+                if (record == null) {
+                    log.warn("Ledger segment {} is damaged at offset {}, skipping the rest of it",
+                            segment, buffer.position() - LedgerFormat.RECORD_BYTES);
+                    return count;
+                }
+                consumer.accept(record);
+                count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.monk.commerce.service.ledger;
+
+/**
+ * One successful coupon application. {@code customerId} is null for anonymous carts; {@code limited}
+ * tells whether the application used up one unit of the coupon's usage limit.
+ */
+public record LedgerRecord(
+        long timestamp,
+        int couponId,
+        Long customerId,
+        double totalPrice,
+        double totalDiscount,
+        boolean limited
+) {}
@@ -0,0 +1,51 @@
+package com.monk.commerce.service.ledger;
+
+import com.monk.commerce.config.LedgerProperties;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays the ledger at startup so that redemptions committed after the last counter flush are
+ * not forgotten: each coupon's counter starts from at least the number of limited applications the
+ * ledger holds for it, counting those folded into the checkpoint.
+ */
+@Component
+public class LedgerRecovery implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerRecovery.class);
+
+    private final RedemptionLedger ledger;
+    private final RedemptionLimiter limiter;
+    private final LedgerProperties properties;
+
+    public LedgerRecovery(RedemptionLedger ledger, RedemptionLimiter limiter, LedgerProperties properties) {
+        this.ledger = ledger;
+        this.limiter = limiter;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.enabled() || !properties.replayOnStart()) return;
+        try {
+            long start = System.nanoTime();
+            LedgerCheckpoint checkpoint = ledger.checkpoint();
+            Map<Integer, Long> counts = new HashMap<>(checkpoint.limitedCounts());
+            long records = checkpoint.records() + ledger.replay(record -> {
+                if (record.limited()) counts.merge(record.couponId(), 1L, Long::sum);
+            });
+            limiter.seedAtLeast(counts);
+            log.info("Replayed {} ledger records for {} coupons in {} ms", records, counts.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to replay the redemption ledger: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.monk.commerce.service.ledger;
+
+import com.monk.commerce.config.LedgerProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of every successful coupon application. Request threads only enqueue and
+ * return; a single writer thread drains whatever has accumulated, writes it with one
+ * {@link FileChannel} call and forces it according to {@code coupons.ledger.fsync}. An application
+ * is acknowledged before its record reaches the disk, so records still queued or written but not
+ * yet forced are lost on a crash; {@code fsync=batch} narrows that window to one batch but does not
+ * close it. Segments roll by size and age, and every start opens a new segment so a torn tail from
+ * a crash is never appended to. A failed write is retried in a new segment
+ * rather than dropped, and segments older than {@code coupons.ledger.retention} are folded into a
+ * {@link LedgerCheckpoint} so that replay does not grow without bound.
+ */
+@Component
+public class RedemptionLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(RedemptionLedger.class);
+    private static final long POLL_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    private final LedgerProperties properties;
+    private final BlockingQueue<LedgerRecord> queue;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer;
+    private Thread writer;
+    private volatile boolean running;
+    /** Segments below this sequence are closed and may be compacted. */
+    private volatile long openSequence = Long.MAX_VALUE;
+
+    private FileChannel channel;
+    private long sequence;
+    private long segmentBytes;
+    private long segmentOpenedAt;
+    private long lastSyncAt;
+    private boolean dirty;
+
+    public RedemptionLedger(LedgerProperties properties) {
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, properties.queueCapacity()));
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!properties.enabled()) return;
+        Files.createDirectories(properties.directory());
+        List<Path> segments = LedgerReader.segments(properties.directory());
+        // Compaction may have deleted every segment; new ones must still come after the checkpoint
+        sequence = Math.max(LedgerCheckpoint.read(properties.directory()).throughSequence() + 1, segments.isEmpty()
+                ? 0
+                : LedgerFormat.sequenceOf(segments.get(segments.size() - 1).getFileName().toString()) + 1);
+        openSequence = sequence;
+        buffer = ByteBuffer.allocateDirect(Math.max(1, properties.maxBatch()) * LedgerFormat.RECORD_BYTES);
+        running = true;
+        writer = new Thread(this::run, "redemption-ledger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a record for the writer. Blocks when the queue is full rather than dropping the
+     * record. A record appended while the ledger is stopped, before start or after shutdown began,
+     * is rejected and counted in {@link #rejected()}.
+     */
+    public void append(LedgerRecord record) {
+        if (!running) {
+            if (properties.enabled() && rejected.getAndIncrement() == 0) {
+                log.warn("Redemption ledger is not running, rejecting the record for coupon {} and any that follow",
+                        record.couponId());
+            }
+            return;
+        }
+        if (queue.offer(record)) return;
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while appending to the redemption ledger, record for coupon {} is lost",
+                    record.couponId());
+        }
+    }
+
+    /**
+     * Reads back every record written since the {@link #checkpoint()}, including those of earlier
+     * runs.
+     */
+    public long replay(Consumer<LedgerRecord> consumer) throws IOException {
+        return LedgerReader.readAfter(properties.directory(), checkpoint().throughSequence(), consumer);
+    }
+
+    /** Totals of the segments that compaction has folded away. */
+    LedgerCheckpoint checkpoint() throws IOException {
+        return LedgerCheckpoint.read(properties.directory());
+    }
+
+    /**
+     * Folds the closed segments older than {@code coupons.ledger.retention} into the checkpoint, then
+     * deletes them. Only a run of the oldest segments is folded, so the checkpoint always covers a
+     * prefix of the ledger and replay reads exactly the segments after it.
+     */
+    @Scheduled(fixedDelayString = "${coupons.ledger.compact-interval:PT1H}")
+    public synchronized void compact() {
+        if (!properties.enabled()) return;
+        try {
+            Path directory = properties.directory();
+            if (!Files.isDirectory(directory)) return;
+            long cutoff = System.currentTimeMillis() - properties.retention().toMillis();
+            List<Path> folded = new ArrayList<>();
+            for (Path segment : LedgerReader.segments(directory)) {
+                if (LedgerFormat.sequenceOf(segment.getFileName().toString()) >= openSequence
+                        || Files.getLastModifiedTime(segment).toMillis() > cutoff) break;
+                folded.add(segment);
+            }
+            if (folded.isEmpty()) return;
+            LedgerCheckpoint previous = LedgerCheckpoint.read(directory);
+            Map<Integer, Long> limitedCounts = new HashMap<>(previous.limitedCounts());
+            long records = previous.records();
+            long through = previous.throughSequence();
+            for (Path segment : folded) {
+                long segmentSequence = LedgerFormat.sequenceOf(segment.getFileName().toString());
+                // Left behind by a compaction that stopped after writing its checkpoint
+                if (segmentSequence <= previous.throughSequence()) continue;
+                records += LedgerReader.readSegment(segment, record -> {
+                    if (record.limited()) limitedCounts.merge(record.couponId(), 1L, Long::sum);
+                });
+                through = segmentSequence;
+            }
+            new LedgerCheckpoint(through, records, limitedCounts).write(directory);
+            for (Path segment : folded) Files.deleteIfExists(segment);
+            log.info("Compacted {} redemption ledger segments, checkpoint now holds {} records", folded.size(),
+                    records);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to compact the redemption ledger: {}", e.getMessage());
+        }
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    /** Records appended while the ledger was enabled but not running, which it never wrote. */
+    public long rejected() {
+        return rejected.get();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (writer == null) return;
+        running = false;
+        writer.join();
+        writer = null;
+    }
+
+    private void run() {
+        int maxBatch = Math.max(1, properties.maxBatch());
+        List<LedgerRecord> batch = new ArrayList<>(maxBatch);
+        int failures = 0;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    LedgerRecord first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, maxBatch - 1);
+                    }
+                }
+                if (!batch.isEmpty()) write(batch);
+                if (dirty && properties.fsync() == LedgerProperties.FsyncPolicy.INTERVAL
+                        && System.currentTimeMillis() - lastSyncAt >= properties.fsyncInterval().toMillis()) {
+                    sync();
+                }
+                failures = 0;
+            } catch (InterruptedException e) {
+                // Shutdown is signalled through running; keep draining
+            } catch (IOException | RuntimeException e) {
+                closeSegment();
+                failures++;
+                if (!running && failures >= SHUTDOWN_ATTEMPTS) {
+                    log.error("Giving up on {} redemption ledger records at shutdown: {}",
+                            batch.size() + queue.size(), e.getMessage());
+                    batch.clear();
+                    queue.clear();
+                    break;
+                }
+                // Keep the batch: the next attempt opens a new segment, and appends block on the full
+                // queue meanwhile rather than losing redemptions
+                log.error("Failed to write {} redemption ledger records, retrying: {}", batch.size(),
+                        e.getMessage());
+                pause(Math.min(MAX_RETRY_MILLIS, POLL_MILLIS * failures));
+            }
+        }
+        closeSegment();
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // Shutdown is signalled through running
+        }
+    }
+
+    /**
+     * Writes the batch and removes what reached the segment from it, so that after a failure only
+     * the records not written in full are retried.
+     */
+    private void write(List<LedgerRecord> batch) throws IOException {
+        buffer.clear();
+        for (int i = 0, n = batch.size(); i < n; i++) {
+            LedgerFormat.write(buffer, batch.get(i), crc);
+        }
+        buffer.flip();
+        if (channel == null || shouldRoll(buffer.remaining())) roll();
+        int bytes = buffer.remaining();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            int complete = buffer.position() / LedgerFormat.RECORD_BYTES;
+            written.addAndGet(complete);
+            batch.subList(0, complete).clear();
+            throw e;
+        }
+        segmentBytes += bytes;
+        dirty = true;
+        written.addAndGet(batch.size());
+        batch.clear();
+        if (properties.fsync() == LedgerProperties.FsyncPolicy.BATCH) sync();
+    }
+
+    private boolean shouldRoll(int incoming) {
+        if (segmentBytes <= LedgerFormat.HEADER_BYTES) return false;
+        return segmentBytes + incoming > properties.rollSize().toBytes()
+                || System.currentTimeMillis() - segmentOpenedAt >= properties.rollInterval().toMillis();
+    }
+
+    private void roll() throws IOException {
+        closeSegment();
+        openSequence = sequence;
+        Path path = properties.directory().resolve(LedgerFormat.segmentName(sequence++));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(LedgerFormat.HEADER_BYTES);
+        LedgerFormat.writeHeader(header);
+        header.flip();
+        while (header.hasRemaining()) channel.write(header);
+        segmentBytes = LedgerFormat.HEADER_BYTES;
+        segmentOpenedAt = System.currentTimeMillis();
+    }
+
+    private void sync() throws IOException {
+        if (channel != null) channel.force(false);
+        lastSyncAt = System.currentTimeMillis();
+        dirty = false;
+    }
+
+    private void closeSegment() {
+        if (channel == null) return;
+        try {
+            if (properties.fsync() != LedgerProperties.FsyncPolicy.NEVER) channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close redemption ledger segment: {}", e.getMessage());
+        }
+        channel = null;
+        dirty = false;
+    }
+}
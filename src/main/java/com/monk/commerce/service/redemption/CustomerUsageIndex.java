@@ -0,0 +1,116 @@
+package com.monk.commerce.service.redemption;
+
+import com.monk.commerce.entity.CustomerRedemption;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Which customers have used each once-per-customer coupon. Every coupon gets its own primitive
+ * set, loaded from {@code customer_redemption} the first time the coupon is checked, so a lookup
+ * is a hash probe under an optimistic read. New uses are queued and written by
+ * {@link RedemptionFlusher}.
+ */
+@Component
+public class CustomerUsageIndex {
+
+    private final CustomerRedemptionRepository repository;
+    private final Map<Integer, Usage> usages = new ConcurrentHashMap<>();
+    private final Queue<CustomerRedemption> pending = new ConcurrentLinkedQueue<>();
+
+    public CustomerUsageIndex(CustomerRedemptionRepository repository) {
+        this.repository = repository;
+    }
+
+    public boolean hasUsed(Integer couponId, long customerId) {
+        return usage(couponId).contains(customerId);
+    }
+
+    /**
+     * Marks the customer as having used the coupon; returns false when they already had.
+     */
+    boolean claim(Integer couponId, long customerId) {
+        return usage(couponId).add(customerId);
+    }
+
+    void release(Integer couponId, long customerId) {
+        usage(couponId).remove(customerId);
+    }
+
+    void commit(Integer couponId, long customerId) {
+        pending.add(CustomerRedemption.builder().couponId(couponId).customerId(customerId).build());
+    }
+
+    /**
+     * Drops the coupon's uses, stored ones included even when they were never loaded, so that a
+     * coupon reusing the id does not inherit them.
+     */
+    void forget(Integer couponId) {
+        usages.remove(couponId);
+        repository.deleteByCouponId(couponId);
+    }
+
+    boolean isTracked(Integer couponId) {
+        return usages.containsKey(couponId);
+    }
+
+    Queue<CustomerRedemption> pending() {
+        return pending;
+    }
+
+    private Usage usage(Integer couponId) {
+        Usage usage = usages.get(couponId);
+        if (usage != null) return usage;
+        return usages.computeIfAbsent(couponId, id -> {
+            List<Long> customers = repository.findCustomerIds(id);
+            Usage loaded = new Usage(customers.size());
+            for (Long customer : customers) loaded.customers.add(customer);
+            return loaded;
+        });
+    }
+
+    private static final class Usage {
+        private final StampedLock lock = new StampedLock();
+        private final LongHashSet customers;
+
+        Usage(int expected) {
+            this.customers = new LongHashSet(expected);
+        }
+
+        boolean contains(long customerId) {
+            long stamp = lock.tryOptimisticRead();
+            boolean found = customers.contains(customerId);
+            if (lock.validate(stamp)) return found;
+            stamp = lock.readLock();
+            try {
+                return customers.contains(customerId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        boolean add(long customerId) {
+            long stamp = lock.writeLock();
+            try {
+                return customers.add(customerId);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void remove(long customerId) {
+            long stamp = lock.writeLock();
+            try {
+                customers.remove(customerId);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.monk.commerce.service.redemption;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of primitive longs with linear probing. Not thread-safe; see
+ * {@link CustomerUsageIndex} for how readers and writers are coordinated.
+ */
+final class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int size;
+    private boolean containsEmpty;
+
+    LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    boolean contains(long key) {
+        if (key == EMPTY) return containsEmpty;
+        long[] table = keys;
+        int mask = table.length - 1;
+        int pos = mix(key) & mask;
+        for (int probes = 0; probes < table.length; probes++) {
+            long current = table[pos];
+            if (current == key) return true;
+            if (current == EMPTY) return false;
+            pos = (pos + 1) & mask;
+        }
+        return false;
+    }
+
+    boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsEmpty) return false;
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 2 > keys.length) rehash(keys.length << 1);
+        int mask = keys.length - 1;
+        int pos = mix(key) & mask;
+        while (keys[pos] != EMPTY) {
+            if (keys[pos] == key) return false;
+            pos = (pos + 1) & mask;
+        }
+        keys[pos] = key;
+        size++;
+        return true;
+    }
+
+    boolean remove(long key) {
+        if (key == EMPTY) {
+            if (!containsEmpty) return false;
+            containsEmpty = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int pos = mix(key) & mask;
+        while (keys[pos] != key) {
+            if (keys[pos] == EMPTY) return false;
+            pos = (pos + 1) & mask;
+        }
+        // Backward-shift deletion keeps every probe chain contiguous without tombstones
+        int gap = pos;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        int mask = capacity - 1;
+        for (long key : old) {
+            if (key == EMPTY) continue;
+            int pos = mix(key) & mask;
+            while (table[pos] != EMPTY) pos = (pos + 1) & mask;
+            table[pos] = key;
+        }
+        keys = table;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,249 @@
+package com.monk.commerce.service.redemption;
+
+import com.monk.commerce.config.RedemptionProperties;
+import com.monk.commerce.entity.RedemptionLease;
+import com.monk.commerce.repository.RedemptionLeaseRepository;
+import com.monk.commerce.repository.RedemptionQuotaRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out blocks of a coupon's global usage limit to this node so that reservations stay local
+ * CAS operations even when several nodes share one limit.
+ * <p>
+ * {@code redemption_quota.allocated} counts every unit leased to any node and is only ever raised
+ * by a conditional update, so the sum of all allowances never exceeds the limit. Block sizes follow
+ * the observed redemption rate of the coupon, aiming at {@code lease-target} worth of traffic per
+ * block. Each heartbeat reports what was consumed, renews the lease, hands idle units back and
+ * reclaims the unused units of nodes whose lease expired. A node that crashes between heartbeats
+ * can over-issue by at most what it committed since its last report.
+ */
+@Component
+@ConditionalOnProperty(prefix = "coupons.redemption", name = "mode", havingValue = "leased")
+public class QuotaLeaseManager {
+
+    private static final Logger log = LoggerFactory.getLogger(QuotaLeaseManager.class);
+    private static final double RATE_SMOOTHING = 0.5;
+
+    private final RedemptionQuotaRepository quotas;
+    private final RedemptionLeaseRepository leaseRows;
+    private final TransactionTemplate transactions;
+    private final RedemptionProperties properties;
+    private final String nodeId;
+    private final Map<Integer, Lease> leases = new ConcurrentHashMap<>();
+
+    public QuotaLeaseManager(RedemptionQuotaRepository quotas, RedemptionLeaseRepository leaseRows,
+                             TransactionTemplate transactions, RedemptionProperties properties) {
+        this.quotas = quotas;
+        this.leaseRows = leaseRows;
+        this.transactions = transactions;
+        this.properties = properties;
+        this.nodeId = properties.nodeId() == null || properties.nodeId().isBlank()
+                ? UUID.randomUUID().toString()
+                : properties.nodeId();
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Leases another block for the coupon when the counter has no allowance left. Returns false
+     * when the cluster-wide quota is exhausted.
+     */
+    boolean refill(Integer couponId, int usageLimit, RedemptionCounter counter) {
+        Lease lease = leases.computeIfAbsent(couponId, id -> new Lease(counter));
+        synchronized (lease) {
+            if (counter.used() < counter.allowance()) return true;
+            long block = blockSize(lease, usageLimit);
+            Instant expiresAt = Instant.now().plus(properties.leaseTtl());
+            long units;
+            try {
+                units = transactions.execute(status -> acquire(couponId, usageLimit, block, lease, expiresAt));
+            } catch (RuntimeException e) {
+                log.warn("Failed to lease redemptions of coupon {}: {}", couponId, e.getMessage());
+                return false;
+            }
+            if (units == 0) {
+                lease.exhausted = true;
+                return false;
+            }
+            counter.grant(units);
+            lease.expiresAt = expiresAt;
+            lease.exhausted = false;
+            return true;
+        }
+    }
+
+    boolean isExhausted(Integer couponId) {
+        Lease lease = leases.get(couponId);
+        return lease != null && lease.exhausted;
+    }
+
+    /**
+     * Drops the coupon's lease together with its quota and the lease rows of every node, so that a
+     * coupon reusing the id starts from a fresh quota. Other nodes find their row gone on the next
+     * heartbeat and stop spending what they still hold.
+     */
+    void forget(Integer couponId) {
+        leases.remove(couponId);
+        try {
+            transactions.executeWithoutResult(status -> {
+                leaseRows.deleteByCouponId(couponId);
+                quotas.deleteByCouponId(couponId);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete the redemption quota of coupon {}: {}", couponId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${coupons.redemption.lease-heartbeat:PT10S}")
+    public void heartbeat() {
+        Instant now = Instant.now();
+        for (Map.Entry<Integer, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            synchronized (lease) {
+                sample(lease, now);
+                boolean idle = Duration.between(lease.lastActivity, now).compareTo(properties.leaseIdleReturn()) >= 0;
+                renew(entry.getKey(), lease, now, idle);
+                lease.exhausted = false;
+            }
+        }
+        reapExpired(now);
+    }
+
+    @PreDestroy
+    public void close() {
+        Instant now = Instant.now();
+        for (Map.Entry<Integer, Lease> entry : leases.entrySet()) {
+            synchronized (entry.getValue()) {
+                renew(entry.getKey(), entry.getValue(), now, true);
+            }
+        }
+    }
+
+    private long acquire(Integer couponId, int usageLimit, long block, Lease lease, Instant expiresAt) {
+        quotas.insertIfAbsent(couponId, usageLimit);
+        quotas.updateLimit(couponId, usageLimit);
+        RedemptionLease row = leaseRows.findByCouponIdAndNodeId(couponId, nodeId).orElse(null);
+        if (row != null && lease.fresh) {
+            // Left over from an earlier run under the same node id.
+            quotas.deallocate(couponId, Math.max(0, row.getGranted() - row.getUsed()));
+            row.setGranted(0L);
+            row.setUsed(0L);
+        }
+        lease.fresh = false;
+
+        long units = block;
+        if (quotas.allocate(couponId, units) == 0) {
+            Long unallocated = quotas.findUnallocated(couponId);
+            units = unallocated == null ? 0 : Math.min(block, unallocated);
+            if (units <= 0 || quotas.allocate(couponId, units) == 0) return 0L;
+        }
+        if (row == null) {
+            row = RedemptionLease.builder().couponId(couponId).nodeId(nodeId).granted(0L).used(0L).build();
+        }
+        row.setGranted(row.getGranted() + units);
+        row.setUsed(lease.counter.committed());
+        row.setExpiresAt(expiresAt);
+        leaseRows.save(row);
+        return units;
+    }
+
+    private void renew(Integer couponId, Lease lease, Instant now, boolean returnUnused) {
+        if (returnUnused) lease.unreturned += lease.counter.revokeUnused();
+        long committed = lease.counter.committed();
+        long returned = lease.unreturned;
+        Instant expiresAt = now.plus(properties.leaseTtl());
+        try {
+            boolean present = Boolean.TRUE.equals(transactions.execute(status -> {
+                RedemptionLease row = leaseRows.findByCouponIdAndNodeId(couponId, nodeId).orElse(null);
+                if (row == null) return false;
+                if (returned > 0) quotas.deallocate(couponId, returned);
+                row.setGranted(row.getGranted() - returned);
+                row.setUsed(committed);
+                row.setExpiresAt(expiresAt);
+                leaseRows.save(row);
+                return true;
+            }));
+            lease.unreturned = 0;
+            if (present) {
+                lease.expiresAt = expiresAt;
+            } else if (!lease.fresh) {
+                // Another node reaped the lease, together with the units it still covered.
+                lease.counter.revokeUnused();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew redemption lease of coupon {}: {}", couponId, e.getMessage());
+            if (lease.expiresAt != null && now.isAfter(lease.expiresAt)) {
+                // Other nodes may reclaim the units from now on, so stop spending them.
+                lease.counter.revokeUnused();
+                lease.unreturned = 0;
+            }
+        }
+    }
+
+    private void reapExpired(Instant now) {
+        try {
+            transactions.executeWithoutResult(status -> {
+                for (RedemptionLease row : leaseRows.findByExpiresAtBefore(now)) {
+                    if (nodeId.equals(row.getNodeId())) continue;
+                    long unused = row.getGranted() - row.getUsed();
+                    if (unused > 0) quotas.deallocate(row.getCouponId(), unused);
+                    leaseRows.delete(row);
+                    log.info("Reclaimed {} redemptions of coupon {} from expired node {}",
+                            Math.max(0, unused), row.getCouponId(), row.getNodeId());
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to reclaim expired redemption leases: {}", e.getMessage());
+        }
+    }
+
+    private void sample(Lease lease, Instant now) {
+        long committed = lease.counter.committed();
+        double seconds = Duration.between(lease.lastSample, now).toNanos() / 1e9;
+        if (seconds > 0) {
+            double rate = (committed - lease.lastCommitted) / seconds;
+            lease.rate = RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * lease.rate;
+        }
+        if (committed != lease.lastCommitted) lease.lastActivity = now;
+        lease.lastCommitted = committed;
+        lease.lastSample = now;
+    }
+
+    private long blockSize(Lease lease, int usageLimit) {
+        double target = lease.rate * properties.leaseTarget().toNanos() / 1e9;
+        long block = Math.max(properties.minLeaseBlock(), (long) Math.ceil(target));
+        block = Math.min(block, properties.maxLeaseBlock());
+        return Math.max(1, Math.min(block, usageLimit));
+    }
+
+    private static final class Lease {
+        final RedemptionCounter counter;
+        Instant expiresAt;
+        Instant lastSample = Instant.now();
+        Instant lastActivity = lastSample;
+        long lastCommitted;
+        double rate;
+        long unreturned;
+        boolean fresh = true;
+        volatile boolean exhausted;
+
+        Lease(RedemptionCounter counter) {
+            this.counter = counter;
+            this.lastCommitted = counter.committed();
+        }
+    }
+}
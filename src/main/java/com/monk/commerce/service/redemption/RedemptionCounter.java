@@ -0,0 +1,101 @@
+package com.monk.commerce.service.redemption;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redemption count of one coupon on this node. {@code used} covers both committed and in-flight
+ * reservations, so a reservation is a single CAS. It shares one word with {@code allowance}, the
+ * number of units leased to this node, so that granting and revoking leased units can never race
+ * with a reservation. {@code committed} is what gets persisted.
+ */
+public final class RedemptionCounter {
+
+    private static final long USED_MASK = 0xFFFF_FFFFL;
+
+    // allowance << 32 | used
+    private final AtomicLong state;
+    private final AtomicLong committed;
+    private volatile long persisted;
+
+    RedemptionCounter(long committed) {
+        this(committed, committed);
+    }
+
+    RedemptionCounter(long committed, long persisted) {
+        this.state = new AtomicLong(committed);
+        this.committed = new AtomicLong(committed);
+        this.persisted = persisted;
+    }
+
+    /**
+     * Reserves one use against a fixed limit.
+     */
+    boolean tryReserve(long limit) {
+        long current;
+        do {
+            current = state.get();
+            if ((current & USED_MASK) >= limit) return false;
+        } while (!state.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Reserves one use against the units leased to this node.
+     */
+    boolean tryReserveLeased() {
+        long current;
+        do {
+            current = state.get();
+            if ((current & USED_MASK) >= current >>> 32) return false;
+        } while (!state.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    void commit() {
+        committed.incrementAndGet();
+    }
+
+    void release() {
+        state.decrementAndGet();
+    }
+
+    void grant(long units) {
+        state.addAndGet(units << 32);
+    }
+
+    /**
+     * Shrinks the allowance down to the units already used and returns how many were given up.
+     */
+    long revokeUnused() {
+        long current;
+        long used;
+        long allowance;
+        do {
+            current = state.get();
+            used = current & USED_MASK;
+            allowance = current >>> 32;
+            if (allowance <= used) return 0;
+        } while (!state.compareAndSet(current, used << 32 | used));
+        return allowance - used;
+    }
+
+    public long used() {
+        return state.get() & USED_MASK;
+    }
+
+    public long allowance() {
+        return state.get() >>> 32;
+    }
+
+    public long committed() {
+        return committed.get();
+    }
+
+    long persisted() {
+        return persisted;
+    }
+
+    void markPersisted(long value) {
+        if (value > persisted) persisted = value;
+    }
+}
@@ -0,0 +1,115 @@
+package com.monk.commerce.service.redemption;
+
+import com.monk.commerce.config.RedemptionProperties;
+import com.monk.commerce.entity.CustomerRedemption;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-behind for {@link RedemptionLimiter}: the commits made since the last flush are added to
+ * {@code coupon.redemption_count} in batches, one transaction per batch. Writing increments rather
+ * than absolute counts keeps the column correct when several nodes redeem the same coupon.
+ * Customer uses queued by {@link CustomerUsageIndex} are inserted on the same schedule.
+ */
+@Component
+public class RedemptionFlusher {
+
+    private static final Logger log = LoggerFactory.getLogger(RedemptionFlusher.class);
+
+    private final RedemptionLimiter limiter;
+    private final CouponRepository repository;
+    private final CustomerUsageIndex customers;
+    private final CustomerRedemptionRepository customerRepository;
+    private final TransactionTemplate transactions;
+    private final RedemptionProperties properties;
+
+    public RedemptionFlusher(RedemptionLimiter limiter, CouponRepository repository, CustomerUsageIndex customers,
+                             CustomerRedemptionRepository customerRepository, TransactionTemplate transactions,
+                             RedemptionProperties properties) {
+        this.limiter = limiter;
+        this.repository = repository;
+        this.customers = customers;
+        this.customerRepository = customerRepository;
+        this.transactions = transactions;
+        this.properties = properties;
+    }
+
+    @Scheduled(fixedDelayString = "${coupons.redemption.flush-interval:PT1S}")
+    public synchronized void flush() {
+        int batchSize = Math.max(1, properties.flushBatchSize());
+        Integer[] ids = new Integer[batchSize];
+        RedemptionCounter[] counters = new RedemptionCounter[batchSize];
+        long[] counts = new long[batchSize];
+        int size = 0;
+        for (Map.Entry<Integer, RedemptionCounter> entry : limiter.counters().entrySet()) {
+            RedemptionCounter counter = entry.getValue();
+            long committed = counter.committed();
+            if (committed == counter.persisted()) continue;
+            ids[size] = entry.getKey();
+            counters[size] = counter;
+            counts[size] = committed;
+            if (++size == batchSize) {
+                write(ids, counters, counts, size);
+                size = 0;
+            }
+        }
+        if (size > 0) write(ids, counters, counts, size);
+        flushCustomers(batchSize);
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private void flushCustomers(int batchSize) {
+        List<CustomerRedemption> batch = new ArrayList<>(batchSize);
+        CustomerRedemption use;
+        while ((use = customers.pending().poll()) != null) {
+            // Uses of a coupon deleted since are dropped
+            if (customers.isTracked(use.getCouponId())) batch.add(use);
+            if (batch.size() == batchSize) {
+                if (!writeCustomers(batch)) return;
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) writeCustomers(batch);
+    }
+
+    private boolean writeCustomers(List<CustomerRedemption> batch) {
+        try {
+            transactions.executeWithoutResult(status -> customerRepository.saveAll(batch));
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist {} customer redemptions, will retry: {}", batch.size(), e.getMessage());
+            for (CustomerRedemption use : batch) use.setId(null);
+            customers.pending().addAll(batch);
+            return false;
+        }
+    }
+
+    private void write(Integer[] ids, RedemptionCounter[] counters, long[] counts, int size) {
+        try {
+            transactions.executeWithoutResult(status -> {
+                for (int i = 0; i < size; i++) {
+                    repository.incrementRedemptionCount(ids[i], (int) (counts[i] - counters[i].persisted()));
+                }
+            });
+            for (int i = 0; i < size; i++) {
+                counters[i].markPersisted(counts[i]);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to persist {} redemption counts, will retry: {}", size, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.monk.commerce.service.redemption;
+
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.exception.CouponAlreadyUsedException;
+import com.monk.commerce.exception.CouponUsageLimitReachedException;
+import com.monk.commerce.exception.CustomerRequiredException;
+import com.monk.commerce.repository.CouponRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Enforces global usage limits from memory. A counter is seeded from the persisted
+ * {@code redemptionCount} the first time its coupon is used and is written back in batches by
+ * {@link RedemptionFlusher}, so checkout never waits on a database write.
+ * <p>
+ * In {@code leased} mode the limit is shared with other nodes: counters start at zero and may
+ * only spend the allowance granted by {@link QuotaLeaseManager}.
+ * <p>
+ * Once-per-customer coupons are checked against {@link CustomerUsageIndex}; the customer's use is
+ * claimed together with the reservation and dropped again when the reservation is released.
+ */
+@Component
+public class RedemptionLimiter {
+
+    private final CouponRepository repository;
+    private final CustomerUsageIndex customers;
+    private final QuotaLeaseManager leases;
+    private final Map<Integer, RedemptionCounter> counters = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> floors = new ConcurrentHashMap<>();
+
+    public RedemptionLimiter(CouponRepository repository, CustomerUsageIndex customers,
+                             Optional<QuotaLeaseManager> leases) {
+        this.repository = repository;
+        this.customers = customers;
+        this.leases = leases.orElse(null);
+    }
+
+    public Reservation reserve(CouponResponse coupon) {
+        return reserve(coupon, null);
+    }
+
+    public Reservation reserve(CouponResponse coupon, Long customerId) {
+        boolean perCustomer = oncePerCustomer(coupon);
+        Integer limit = usageLimit(coupon);
+        if (limit == null && !perCustomer) return Reservation.NONE;
+        if (perCustomer) {
+            if (customerId == null) throw new CustomerRequiredException(coupon.id());
+            if (!customers.claim(coupon.id(), customerId)) throw new CouponAlreadyUsedException(coupon.id());
+        }
+        RedemptionCounter counter = null;
+        try {
+            if (limit != null) counter = reserveUse(coupon, limit);
+        } catch (RuntimeException e) {
+            if (perCustomer) customers.release(coupon.id(), customerId);
+            throw e;
+        }
+        return perCustomer
+                ? new Reservation(counter, customers, coupon.id(), customerId)
+                : new Reservation(counter, null, null, 0);
+    }
+
+    public boolean hasRemaining(CouponResponse coupon) {
+        return hasRemaining(coupon, null);
+    }
+
+    /**
+     * Whether the coupon may still be used by the given customer, who may be unknown.
+     */
+    public boolean hasRemaining(CouponResponse coupon, Long customerId) {
+        if (oncePerCustomer(coupon) && (customerId == null || customers.hasUsed(coupon.id(), customerId))) {
+            return false;
+        }
+        Integer limit = usageLimit(coupon);
+        if (limit == null) return true;
+        RedemptionCounter counter = counter(coupon.id());
+        if (leases == null) return counter.used() < limit;
+        return counter.used() < counter.allowance() || !leases.isExhausted(coupon.id());
+    }
+
+    public void forget(Integer couponId) {
+        counters.remove(couponId);
+        customers.forget(couponId);
+        if (leases != null) leases.forget(couponId);
+    }
+
+    /**
+     * Makes counters that are seeded from now on start from at least the given committed counts,
+     * e.g. ones recovered from the redemption ledger. The difference is written back by the next
+     * flush. Ignored in leased mode, where counters only track this node's allowance.
+     */
+    public void seedAtLeast(Map<Integer, Long> committed) {
+        if (leases == null) floors.putAll(committed);
+    }
+
+    Map<Integer, RedemptionCounter> counters() {
+        return counters;
+    }
+
+    private RedemptionCounter reserveUse(CouponResponse coupon, int limit) {
+        RedemptionCounter counter = counter(coupon.id());
+        if (leases == null) {
+            if (!counter.tryReserve(limit)) throw new CouponUsageLimitReachedException(coupon.id());
+        } else {
+            while (!counter.tryReserveLeased()) {
+                if (!leases.refill(coupon.id(), limit, counter)) throw new CouponUsageLimitReachedException(coupon.id());
+            }
+        }
+        return counter;
+    }
+
+    private RedemptionCounter counter(Integer couponId) {
+        RedemptionCounter counter = counters.get(couponId);
+        if (counter != null) return counter;
+        return counters.computeIfAbsent(couponId, id -> {
+            if (leases != null) return new RedemptionCounter(0);
+            Integer stored = repository.findRedemptionCount(id);
+            long persisted = stored == null ? 0 : stored;
+            return new RedemptionCounter(Math.max(persisted, floors.getOrDefault(id, 0L)), persisted);
+        });
+    }
+
+    private static boolean oncePerCustomer(CouponResponse coupon) {
+        return coupon.constraints() != null && Boolean.TRUE.equals(coupon.constraints().oncePerCustomer());
+    }
+
+    private static Integer usageLimit(CouponResponse coupon) {
+        return coupon.constraints() == null ? null : coupon.constraints().usageLimit();
+    }
+}
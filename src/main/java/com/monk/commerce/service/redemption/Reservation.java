@@ -0,0 +1,37 @@
+package com.monk.commerce.service.redemption;
+
+/**
+ * One reserved use of a limited coupon. Exactly one of {@link #commit()} or {@link #release()}
+ * takes effect; later calls are ignored.
+ */
+public final class Reservation {
+
+    static final Reservation NONE = new Reservation(null, null, null, 0);
+
+    private final RedemptionCounter counter;
+    private final CustomerUsageIndex customers;
+    private final Integer couponId;
+    private final long customerId;
+    private boolean settled;
+
+    Reservation(RedemptionCounter counter, CustomerUsageIndex customers, Integer couponId, long customerId) {
+        this.counter = counter;
+        this.customers = customers;
+        this.couponId = couponId;
+        this.customerId = customerId;
+    }
+
+    public void commit() {
+        if (settled) return;
+        settled = true;
+        if (counter != null) counter.commit();
+        if (customers != null) customers.commit(couponId, customerId);
+    }
+
+    public void release() {
+        if (settled) return;
+        settled = true;
+        if (counter != null) counter.release();
+        if (customers != null) customers.release(couponId, customerId);
+    }
+}
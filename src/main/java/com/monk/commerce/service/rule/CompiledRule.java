@@ -0,0 +1,36 @@
+package com.monk.commerce.service.rule;
+
+import com.monk.commerce.dto.CartItem;
+
+import java.util.List;
+
+/**
+ * A parsed rule, ready to evaluate carts without allocating.
+ */
+public final class CompiledRule {
+
+    private final RuleNodes.Bool condition;
+    private final RuleNodes.Num discount;
+
+    CompiledRule(RuleNodes.Bool condition, RuleNodes.Num discount) {
+        this.condition = condition;
+        this.discount = discount;
+    }
+
+    public boolean matches(List<CartItem> items) {
+        return condition.test(items);
+    }
+
+    /**
+     * The discount for a cart that matches, bounded by zero and the cart total.
+     */
+    public double discount(List<CartItem> items, double total) {
+        double amount = discount.eval(items);
+        if (!(amount > 0)) return 0;
+        return Math.min(amount, total);
+    }
+
+    RuleNodes.Bool condition() {
+        return condition;
+    }
+}
@@ -0,0 +1,75 @@
+package com.monk.commerce.service.rule;
+
+import com.monk.commerce.dto.RuleDetails;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles rule details once and keeps the result, keyed by condition and then discount, so the
+ * expiry date does not split a rule. Coupons are compiled when they are written or loaded, so
+ * evaluation only pays for two map lookups. The per-junction statistics live in the compiled tree
+ * and are therefore shared by every coupon with the same rule.
+ * <p>
+ * Rules of deleted coupons and of simulation proposals are only evaluated for a while; whatever
+ * was not used during a whole {@code coupons.rules.sweep-interval} is dropped, and compiled again
+ * should it come back.
+ */
+@Component
+public class RuleCompiler {
+
+    private final Map<String, Map<String, Cached>> compiled = new ConcurrentHashMap<>();
+    private volatile long epoch;
+
+    public CompiledRule compile(RuleDetails details) {
+        String condition = details.condition();
+        String discount = details.discount();
+        // Neither can be a map key; parsing reports them
+        if (condition == null || discount == null) return parse(condition, discount);
+        Map<String, Cached> byDiscount = compiled.get(condition);
+        Cached cached = byDiscount == null ? null : byDiscount.get(discount);
+        if (cached == null) {
+            CompiledRule rule = parse(condition, discount);
+            cached = compiled.computeIfAbsent(condition, c -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(discount, d -> new Cached(rule));
+        }
+        long now = epoch;
+        // Written at most once per sweep, so evaluating threads do not contend on it
+        if (cached.usedEpoch != now) cached.usedEpoch = now;
+        return cached.rule;
+    }
+
+    /**
+     * Drops the rules not compiled or evaluated since the previous sweep.
+     */
+    @Scheduled(fixedDelayString = "${coupons.rules.sweep-interval:PT10M}")
+    public void evictUnused() {
+        long previous = epoch++;
+        for (Map<String, Cached> byDiscount : compiled.values()) {
+            byDiscount.values().removeIf(cached -> cached.usedEpoch < previous);
+        }
+        compiled.values().removeIf(Map::isEmpty);
+    }
+
+    int size() {
+        int size = 0;
+        for (Map<String, Cached> byDiscount : compiled.values()) size += byDiscount.size();
+        return size;
+    }
+
+    private static CompiledRule parse(String condition, String discount) {
+        return new CompiledRule(RuleParser.parseCondition(condition), RuleParser.parseAmount(discount));
+    }
+
+    private static final class Cached {
+
+        final CompiledRule rule;
+        volatile long usedEpoch;
+
+        Cached(CompiledRule rule) {
+            this.rule = rule;
+        }
+    }
+}
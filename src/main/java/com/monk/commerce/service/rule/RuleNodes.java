@@ -0,0 +1,351 @@
+package com.monk.commerce.service.rule;
+
+import com.monk.commerce.dto.CartItem;
+
+import java.util.List;
+
+/**
+ * Node types of a compiled rule. Evaluation walks the tree over the cart's item list and allocates
+ * nothing; every node reports a static cost (roughly the number of passes over the cart) that seeds
+ * the ordering of {@link Junction} children until measurements take over.
+ */
+final class RuleNodes {
+
+    private RuleNodes() {}
+
+    abstract static class Num {
+        abstract double eval(List<CartItem> items);
+
+        abstract int cost();
+    }
+
+    abstract static class Bool {
+        abstract boolean test(List<CartItem> items);
+
+        abstract int cost();
+    }
+
+    static final class Constant extends Num {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double eval(List<CartItem> items) {
+            return value;
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+    }
+
+    /** Cart-wide aggregates: {@code total}, {@code items} (units) and {@code lines}. */
+    static final class Aggregate extends Num {
+        static final int TOTAL = 0;
+        static final int UNITS = 1;
+        static final int LINES = 2;
+
+        private final int kind;
+
+        Aggregate(int kind) {
+            this.kind = kind;
+        }
+
+        @Override
+        double eval(List<CartItem> items) {
+            if (kind == LINES) return items.size();
+            double sum = 0;
+            for (int i = 0, n = items.size(); i < n; i++) {
+                CartItem item = items.get(i);
+                sum += kind == TOTAL ? item.price() * item.quantity() : item.quantity();
+            }
+            return sum;
+        }
+
+        @Override
+        int cost() {
+            return kind == LINES ? 0 : 1;
+        }
+    }
+
+    /** Per-product lookups: {@code qty(p)}, {@code value(p)} and {@code price(p)}. */
+    static final class ProductMetric extends Num {
+        static final int QTY = 0;
+        static final int VALUE = 1;
+        static final int PRICE = 2;
+
+        private final int kind;
+        private final int productId;
+
+        ProductMetric(int kind, int productId) {
+            this.kind = kind;
+            this.productId = productId;
+        }
+
+        @Override
+        double eval(List<CartItem> items) {
+            double result = 0;
+            for (int i = 0, n = items.size(); i < n; i++) {
+                CartItem item = items.get(i);
+                if (item.productId() == null || item.productId() != productId) continue;
+                switch (kind) {
+                    case QTY -> result += item.quantity();
+                    case VALUE -> result += item.price() * item.quantity();
+                    default -> result = Math.max(result, item.price());
+                }
+            }
+            return result;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    static final class Arithmetic extends Num {
+        private final char op;
+        private final Num left;
+        private final Num right;
+
+        Arithmetic(char op, Num left, Num right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double eval(List<CartItem> items) {
+            double a = left.eval(items);
+            double b = right.eval(items);
+            return switch (op) {
+                case '+' -> a + b;
+                case '-' -> a - b;
+                case '*' -> a * b;
+                case '/' -> b == 0 ? 0 : a / b;
+                case '<' -> Math.min(a, b);
+                case '>' -> Math.max(a, b);
+                default -> throw new IllegalStateException("Unknown operator " + op);
+            };
+        }
+
+        @Override
+        int cost() {
+            return left.cost() + right.cost();
+        }
+    }
+
+    static final class Negate extends Num {
+        private final Num operand;
+
+        Negate(Num operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double eval(List<CartItem> items) {
+            return -operand.eval(items);
+        }
+
+        @Override
+        int cost() {
+            return operand.cost();
+        }
+    }
+
+    static final class Compare extends Bool {
+        static final int GE = 0;
+        static final int GT = 1;
+        static final int LE = 2;
+        static final int LT = 3;
+        static final int EQ = 4;
+        static final int NE = 5;
+
+        private final int op;
+        private final Num left;
+        private final Num right;
+
+        Compare(int op, Num left, Num right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(List<CartItem> items) {
+            double a = left.eval(items);
+            double b = right.eval(items);
+            return switch (op) {
+                case GE -> a >= b;
+                case GT -> a > b;
+                case LE -> a <= b;
+                case LT -> a < b;
+                case EQ -> a == b;
+                default -> a != b;
+            };
+        }
+
+        @Override
+        int cost() {
+            return left.cost() + right.cost();
+        }
+    }
+
+    static final class Contains extends Bool {
+        private final int productId;
+
+        Contains(int productId) {
+            this.productId = productId;
+        }
+
+        @Override
+        boolean test(List<CartItem> items) {
+            for (int i = 0, n = items.size(); i < n; i++) {
+                CartItem item = items.get(i);
+                if (item.productId() != null && item.productId() == productId && item.quantity() > 0) return true;
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return 1;
+        }
+    }
+
+    static final class Literal extends Bool {
+        private final boolean value;
+
+        Literal(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean test(List<CartItem> items) {
+            return value;
+        }
+
+        @Override
+        int cost() {
+            return 0;
+        }
+    }
+
+    static final class Not extends Bool {
+        private final Bool operand;
+
+        Not(Bool operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(List<CartItem> items) {
+            return !operand.test(items);
+        }
+
+        @Override
+        int cost() {
+            return operand.cost();
+        }
+    }
+
+    /**
+     * A conjunction ({@code decisive == false}) or disjunction ({@code decisive == true}) whose
+     * children run in increasing order of cost per decisive outcome, so a cheap check that usually
+     * settles the result goes first.
+     * <p>
+     * Every {@link #SAMPLE_EVERY}th call evaluates all children without short-circuiting and records
+     * how often each one was decisive and how long it took; every {@link #REORDER_EVERY} samples the
+     * order is recomputed. The statistics are updated without synchronization: a lost update only
+     * makes an estimate slightly older, and the order is published as a fresh array.
+     */
+    static final class Junction extends Bool {
+        static final int SAMPLE_EVERY = 16;
+        static final int REORDER_EVERY = 64;
+        private static final double COST_SMOOTHING = 0.2;
+        private static final double NANOS_PER_COST_UNIT = 50;
+
+        private final boolean decisive;
+        private final Bool[] children;
+        private final long[] samples;
+        private final long[] decided;
+        private final double[] nanos;
+        private volatile int[] order;
+        private int calls;
+        private int sampled;
+
+        Junction(boolean decisive, List<Bool> children) {
+            this.decisive = decisive;
+            this.children = children.toArray(new Bool[0]);
+            int n = this.children.length;
+            this.samples = new long[n];
+            this.decided = new long[n];
+            this.nanos = new double[n];
+            for (int i = 0; i < n; i++) nanos[i] = (1 + this.children[i].cost()) * NANOS_PER_COST_UNIT;
+            this.order = rank();
+        }
+
+        @Override
+        boolean test(List<CartItem> items) {
+            if (++calls % SAMPLE_EVERY == 0) return sample(items);
+            int[] current = order;
+            for (int i = 0; i < current.length; i++) {
+                if (children[current[i]].test(items) == decisive) return decisive;
+            }
+            return !decisive;
+        }
+
+        @Override
+        int cost() {
+            int cost = 0;
+            for (Bool child : children) cost += child.cost();
+            return cost;
+        }
+
+        int[] order() {
+            return order.clone();
+        }
+
+        private boolean sample(List<CartItem> items) {
+            boolean settled = false;
+            for (int i = 0; i < children.length; i++) {
+                long start = System.nanoTime();
+                boolean result = children[i].test(items);
+                nanos[i] += COST_SMOOTHING * ((System.nanoTime() - start) - nanos[i]);
+                samples[i]++;
+                if (result == decisive) {
+                    decided[i]++;
+                    settled = true;
+                }
+            }
+            if (++sampled % REORDER_EVERY == 0) order = rank();
+            return settled == decisive;
+        }
+
+        private int[] rank() {
+            int n = children.length;
+            int[] ranked = new int[n];
+            double[] score = new double[n];
+            for (int i = 0; i < n; i++) {
+                ranked[i] = i;
+                // Laplace-smoothed probability that this child settles the junction on its own
+                double p = (decided[i] + 1.0) / (samples[i] + 2.0);
+                score[i] = nanos[i] / p;
+            }
+            for (int i = 1; i < n; i++) {
+                int child = ranked[i];
+                int j = i - 1;
+                while (j >= 0 && score[ranked[j]] > score[child]) {
+                    ranked[j + 1] = ranked[j];
+                    j--;
+                }
+                ranked[j + 1] = child;
+            }
+            return ranked;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.monk.commerce.service.rule;
+
+import com.monk.commerce.exception.InvalidRuleException;
+import com.monk.commerce.service.rule.RuleNodes.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-descent parser for rule expressions:
+ * <pre>
+ * or      := and (('||' | 'or') and)*
+ * and     := not (('&amp;&amp;' | 'and') not)*
+ * not     := ('!' | 'not') not | compare
+ * compare := sum (('&gt;=' | '&gt;' | '&lt;=' | '&lt;' | '==' | '!=') sum)?
+ * sum     := term (('+' | '-') term)*
+ * term    := unary (('*' | '/') unary)*
+ * unary   := '-' unary | primary
+ * primary := number | 'true' | 'false' | 'total' | 'items' | 'lines'
+ *          | ('qty' | 'value' | 'price' | 'contains') '(' productId ')'
+ *          | ('min' | 'max') '(' sum ',' sum ')'
+ *          | '(' or ')'
+ * </pre>
+ * Boolean and numeric sub-expressions are checked at parse time, so a compiled rule can never
+ * fail with a type error while evaluating a cart.
+ */
+final class RuleParser {
+
+    private final String source;
+    private int pos;
+
+    private RuleParser(String source) {
+        this.source = source;
+    }
+
+    static Bool parseCondition(String source) {
+        RuleParser parser = new RuleParser(require(source, "condition"));
+        Bool result = parser.asBool(parser.or());
+        parser.expectEnd();
+        return result;
+    }
+
+    static Num parseAmount(String source) {
+        RuleParser parser = new RuleParser(require(source, "discount"));
+        Num result = parser.asNum(parser.or());
+        parser.expectEnd();
+        return result;
+    }
+
+    private Object or() {
+        Object first = and();
+        if (!peekOperator("||") && !peekWord("or")) return first;
+        List<Bool> children = new ArrayList<>();
+        children.add(asBool(first));
+        while (acceptOperator("||") || acceptWord("or")) children.add(asBool(and()));
+        return new Junction(true, children);
+    }
+
+    private Object and() {
+        Object first = not();
+        if (!peekOperator("&&") && !peekWord("and")) return first;
+        List<Bool> children = new ArrayList<>();
+        children.add(asBool(first));
+        while (acceptOperator("&&") || acceptWord("and")) children.add(asBool(not()));
+        return new Junction(false, children);
+    }
+
+    private Object not() {
+        if (peekOperator("!") && !peekOperator("!=")) {
+            acceptOperator("!");
+            return new Not(asBool(not()));
+        }
+        if (acceptWord("not")) return new Not(asBool(not()));
+        return compare();
+    }
+
+    private Object compare() {
+        Object left = sum();
+        int op;
+        if (acceptOperator(">=")) op = Compare.GE;
+        else if (acceptOperator("<=")) op = Compare.LE;
+        else if (acceptOperator("==")) op = Compare.EQ;
+        else if (acceptOperator("!=")) op = Compare.NE;
+        else if (acceptOperator(">")) op = Compare.GT;
+        else if (acceptOperator("<")) op = Compare.LT;
+        else return left;
+        return new Compare(op, asNum(left), asNum(sum()));
+    }
+
+    private Object sum() {
+        Object left = term();
+        while (true) {
+            if (acceptOperator("+")) left = new Arithmetic('+', asNum(left), asNum(term()));
+            else if (acceptOperator("-")) left = new Arithmetic('-', asNum(left), asNum(term()));
+            else return left;
+        }
+    }
+
+    private Object term() {
+        Object left = unary();
+        while (true) {
+            if (acceptOperator("*")) left = new Arithmetic('*', asNum(left), asNum(unary()));
+            else if (acceptOperator("/")) left = new Arithmetic('/', asNum(left), asNum(unary()));
+            else return left;
+        }
+    }
+
+    private Object unary() {
+        if (acceptOperator("-")) return new Negate(asNum(unary()));
+        return primary();
+    }
+
+    private Object primary() {
+        skipWhitespace();
+        if (acceptOperator("(")) {
+            Object inner = or();
+            expectOperator(")");
+            return inner;
+        }
+        if (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+            return new Constant(number());
+        }
+        String word = word();
+        return switch (word) {
+            case "true" -> new Literal(true);
+            case "false" -> new Literal(false);
+            case "total" -> new Aggregate(Aggregate.TOTAL);
+            case "items" -> new Aggregate(Aggregate.UNITS);
+            case "lines" -> new Aggregate(Aggregate.LINES);
+            case "qty" -> new ProductMetric(ProductMetric.QTY, productArgument());
+            case "value" -> new ProductMetric(ProductMetric.VALUE, productArgument());
+            case "price" -> new ProductMetric(ProductMetric.PRICE, productArgument());
+            case "contains" -> new Contains(productArgument());
+            case "min", "max" -> {
+                expectOperator("(");
+                Num a = asNum(sum());
+                expectOperator(",");
+                Num b = asNum(sum());
+                expectOperator(")");
+                yield new Arithmetic(word.equals("min") ? '<' : '>', a, b);
+            }
+            case "" -> throw error("expected a value");
+            default -> throw error("unknown name '" + word + "'");
+        };
+    }
+
+    private int productArgument() {
+        expectOperator("(");
+        skipWhitespace();
+        int start = pos;
+        while (pos < source.length() && Character.isDigit(source.charAt(pos))) pos++;
+        if (start == pos) throw error("expected a product id");
+        int productId;
+        try {
+            productId = Integer.parseInt(source.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("product id out of range");
+        }
+        expectOperator(")");
+        return productId;
+    }
+
+    private double number() {
+        int start = pos;
+        while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) pos++;
+        try {
+            return Double.parseDouble(source.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("malformed number");
+        }
+    }
+
+    private String word() {
+        skipWhitespace();
+        int start = pos;
+        while (pos < source.length() && Character.isLetter(source.charAt(pos))) pos++;
+        return source.substring(start, pos).toLowerCase();
+    }
+
+    private boolean peekWord(String word) {
+        int saved = pos;
+        boolean found = word().equals(word);
+        pos = saved;
+        return found;
+    }
+
+    private boolean acceptWord(String word) {
+        int saved = pos;
+        if (word().equals(word)) return true;
+        pos = saved;
+        return false;
+    }
+
+    private boolean peekOperator(String operator) {
+        skipWhitespace();
+        return source.startsWith(operator, pos);
+    }
+
+    private boolean acceptOperator(String operator) {
+        if (!peekOperator(operator)) return false;
+        pos += operator.length();
+        return true;
+    }
+
+    private void expectOperator(String operator) {
+        if (!acceptOperator(operator)) throw error("expected '" + operator + "'");
+    }
+
+    private void expectEnd() {
+        skipWhitespace();
+        if (pos < source.length()) throw error("unexpected '" + source.charAt(pos) + "'");
+    }
+
+    private void skipWhitespace() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) pos++;
+    }
+
+    private Bool asBool(Object node) {
+        if (node instanceof Bool b) return b;
+        throw error("expected a condition");
+    }
+
+    private Num asNum(Object node) {
+        if (node instanceof Num n) return n;
+        throw error("expected a number");
+    }
+
+    private InvalidRuleException error(String message) {
+        return new InvalidRuleException(message + " at position " + pos + " of \"" + source + "\"");
+    }
+
+    private static String require(String source, String field) {
+        if (source == null || source.isBlank()) throw new InvalidRuleException(field + " is required");
+        return source;
+    }
+}
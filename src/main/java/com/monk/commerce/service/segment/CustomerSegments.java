@@ -0,0 +1,233 @@
+package com.monk.commerce.service.segment;
+
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.dto.SegmentResponse;
+import com.monk.commerce.entity.CustomerSegment;
+import com.monk.commerce.exception.InvalidSegmentException;
+import com.monk.commerce.exception.SegmentNotFoundException;
+import com.monk.commerce.repository.CustomerSegmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The customer segments coupons can be limited to, held in memory as {@link SegmentBitmap}s so
+ * that eligibility is checked without touching the database. An upload is parsed into a new bitmap
+ * off to the side, stored, and then published by replacing the map entry, so evaluations in flight
+ * see either the old members or the new ones and never wait for the upload. Segments written by
+ * other nodes are picked up every {@code coupons.segments.refresh-interval}.
+ */
+@Component
+public class CustomerSegments {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerSegments.class);
+    private static final Pattern VALID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    // The key of the default tenant, whose segments carry no tenant id
+    private static final String DEFAULT_KEY = "";
+
+    // Null when the segments only live in memory
+    private final CustomerSegmentRepository repository;
+    // Tenant to segment name to segment
+    private final Map<String, Map<String, Segment>> segments = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    @Autowired
+    public CustomerSegments(CustomerSegmentRepository repository) {
+        this.repository = repository;
+    }
+
+    private CustomerSegments() {
+        this.repository = null;
+        this.loaded = true;
+    }
+
+    /** Segments that are never stored, for evaluators outside the application context. */
+    public static CustomerSegments inMemory() {
+        return new CustomerSegments();
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && VALID.matcher(name).matches();
+    }
+
+    /**
+     * Whether the customer may use the coupon as far as segments go: always for a coupon limited to
+     * none, otherwise only for a known customer in at least one of them. A segment that was never
+     * uploaded has no members.
+     */
+    public boolean admits(String tenantId, CouponResponse coupon, Long customerId) {
+        CouponConstraints constraints = coupon.constraints();
+        if (constraints == null || constraints.segments() == null) return true;
+        if (customerId == null) return false;
+        if (!loaded) ensureLoaded();
+        Map<String, Segment> tenant = segments.get(key(tenantId));
+        if (tenant == null) return false;
+        List<String> names = constraints.segments();
+        for (int i = 0; i < names.size(); i++) {
+            Segment segment = tenant.get(names.get(i));
+            if (segment != null && segment.bitmap().contains(customerId)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the members of the segment with the customer ids in {@code members}, separated by
+     * whitespace or commas. Nothing changes when the input is malformed.
+     */
+    public SegmentResponse upload(String tenantId, String name, InputStream members) {
+        validateName(name);
+        SegmentBitmap bitmap = read(members);
+        ensureLoaded();
+        synchronized (this) {
+            Segment previous = tenant(tenantId).get(name);
+            long updatedAt = Math.max(System.currentTimeMillis(), previous == null ? 0 : previous.updatedAt() + 1);
+            Long id = previous == null ? null : previous.id();
+            if (repository != null) {
+                CustomerSegment entity = find(tenantId, name).orElseGet(CustomerSegment::new);
+                entity.setTenantId(tenantId);
+                entity.setName(name);
+                entity.setMembers(bitmap.cardinality());
+                entity.setBitmap(bitmap.toBytes());
+                entity.setUpdatedAt(updatedAt);
+                id = repository.save(entity).getId();
+            }
+            Segment segment = new Segment(id, name, bitmap, updatedAt);
+            tenant(tenantId).put(name, segment);
+            log.info("Segment {} now has {} members in {} bytes", name, bitmap.cardinality(), bitmap.sizeInBytes());
+            return segment.response();
+        }
+    }
+
+    public SegmentResponse get(String tenantId, String name) {
+        ensureLoaded();
+        Map<String, Segment> tenant = segments.get(key(tenantId));
+        Segment segment = tenant == null ? null : tenant.get(name);
+        if (segment == null) throw new SegmentNotFoundException(name);
+        return segment.response();
+    }
+
+    public synchronized void delete(String tenantId, String name) {
+        ensureLoaded();
+        Map<String, Segment> tenant = segments.get(key(tenantId));
+        if (tenant == null || tenant.remove(name) == null) throw new SegmentNotFoundException(name);
+        if (repository != null) find(tenantId, name).ifPresent(repository::delete);
+    }
+
+    public static void validateName(String name) {
+        if (!isValidName(name)) throw new InvalidSegmentException(name);
+    }
+
+    /** Loads every stored segment on first use. */
+    public void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            reload();
+            loaded = true;
+        }
+    }
+
+    /** Reloads the segments another node uploaded or deleted since the last look. */
+    @Scheduled(fixedDelayString = "${coupons.segments.refresh-interval:PT1M}")
+    public synchronized void refresh() {
+        if (!loaded || repository == null) return;
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh customer segments, will retry: {}", e.getMessage());
+        }
+    }
+
+    private void reload() {
+        List<CustomerSegmentRepository.Stamp> stamps = repository.findAllBy();
+        Set<Long> stored = new HashSet<>();
+        for (CustomerSegmentRepository.Stamp stamp : stamps) {
+            stored.add(stamp.getId());
+            Segment current = tenant(stamp.getTenantId()).get(stamp.getName());
+            if (current != null && stamp.getId().equals(current.id())
+                    && current.updatedAt() == stamp.getUpdatedAt()) continue;
+            // One bitmap at a time, so a reload never holds every stored bitmap in memory twice
+            repository.findById(stamp.getId()).ifPresent(entity -> tenant(entity.getTenantId()).put(entity.getName(),
+                    new Segment(entity.getId(), entity.getName(), SegmentBitmap.fromBytes(entity.getBitmap()),
+                            entity.getUpdatedAt())));
+        }
+        for (Map<String, Segment> tenant : segments.values()) {
+            tenant.values().removeIf(segment -> segment.id() != null && !stored.contains(segment.id()));
+        }
+    }
+
+    private Optional<CustomerSegment> find(String tenantId, String name) {
+        return tenantId == null
+                ? repository.findByTenantIdIsNullAndName(name)
+                : repository.findByTenantIdAndName(tenantId, name);
+    }
+
+    private Map<String, Segment> tenant(String tenantId) {
+        return segments.computeIfAbsent(key(tenantId), key -> new ConcurrentHashMap<>());
+    }
+
+    private static String key(String tenantId) {
+        return tenantId == null ? DEFAULT_KEY : tenantId;
+    }
+
+    /** Customer ids separated by whitespace or commas, each an optional minus sign and digits. */
+    static SegmentBitmap read(InputStream members) {
+        SegmentBitmap.Builder builder = SegmentBitmap.builder();
+        try (InputStream in = new BufferedInputStream(members, 64 * 1024)) {
+            long position = 0;
+            long id = 0;
+            int digits = 0;
+            boolean negative = false;
+            int c;
+            while ((c = in.read()) != -1) {
+                position++;
+                if (c >= '0' && c <= '9') {
+                    int digit = c - '0';
+                    if (id > (Long.MAX_VALUE - digit) / 10) {
+                        throw new InvalidSegmentException("customer id out of range at byte " + position);
+                    }
+                    id = id * 10 + digit;
+                    digits++;
+                } else if (c == '-' && digits == 0 && !negative) {
+                    negative = true;
+                } else if (c == ',' || Character.isWhitespace(c)) {
+                    if (negative && digits == 0) throw new InvalidSegmentException("lone '-' at byte " + position);
+                    if (digits > 0) builder.add(negative ? -id : id);
+                    id = 0;
+                    digits = 0;
+                    negative = false;
+                } else {
+                    throw new InvalidSegmentException("unexpected character at byte " + position);
+                }
+            }
+            if (negative && digits == 0) throw new InvalidSegmentException("lone '-' at byte " + position);
+            if (digits > 0) builder.add(negative ? -id : id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read segment members", e);
+        }
+        return builder.build();
+    }
+
+    private record Segment(Long id, String name, SegmentBitmap bitmap, long updatedAt) {
+
+        SegmentResponse response() {
+            return new SegmentResponse(name, bitmap.cardinality(), bitmap.sizeInBytes(), Instant.ofEpochMilli(updatedAt));
+        }
+    }
+}
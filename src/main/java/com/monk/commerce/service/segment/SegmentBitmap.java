@@ -0,0 +1,253 @@
+package com.monk.commerce.service.segment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable set of customer ids, compressed the way Roaring bitmaps are. Ids are grouped by
+ * their high 48 bits, and each group holds its low 16 bits either as a sorted {@code char} array,
+ * while it has at most {@value #ARRAY_MAX} members, or as a 65536-bit bitmap beyond that, whichever
+ * is smaller. A membership test is a binary search over the group keys followed by one bit test
+ * or a search of at most {@value #ARRAY_MAX} entries, so it costs about the same whatever the size
+ * of the segment.
+ */
+public final class SegmentBitmap {
+
+    public static final SegmentBitmap EMPTY = new SegmentBitmap(new long[0], new Object[0], 0);
+
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+    private static final int MAGIC = 0x53454731;
+    private static final int BITMAP = -1;
+
+    private final long[] keys;
+    // One per key: a char[] of sorted low bits or a long[] bitmap of them
+    private final Object[] containers;
+    private final long cardinality;
+
+    private SegmentBitmap(long[] keys, Object[] containers, long cardinality) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinality = cardinality;
+    }
+
+    public boolean contains(long id) {
+        int i = Arrays.binarySearch(keys, id >> 16);
+        if (i < 0) return false;
+        char low = (char) id;
+        if (containers[i] instanceof long[] bits) return (bits[low >>> 6] & 1L << low) != 0;
+        return Arrays.binarySearch((char[]) containers[i], low) >= 0;
+    }
+
+    /** The number of ids held. */
+    public long cardinality() {
+        return cardinality;
+    }
+
+    /** The heap taken by the containers and their keys. */
+    public long sizeInBytes() {
+        long bytes = 8L * keys.length;
+        for (Object container : containers) {
+            bytes += container instanceof long[] bits ? 8L * bits.length : 2L * ((char[]) container).length;
+        }
+        return bytes;
+    }
+
+    /** From the first {@code n} of {@code ids}, in ascending order; duplicates are allowed. */
+    static SegmentBitmap ofSorted(long[] ids, int n) {
+        long[] keys = new long[16];
+        Object[] containers = new Object[16];
+        int count = 0;
+        long cardinality = 0;
+        char[] lows = new char[1 << 16];
+        for (int i = 0; i < n; ) {
+            long key = ids[i] >> 16;
+            int size = 0;
+            for (; i < n && ids[i] >> 16 == key; i++) {
+                if (i > 0 && ids[i] == ids[i - 1]) continue;
+                lows[size++] = (char) ids[i];
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                containers = Arrays.copyOf(containers, count * 2);
+            }
+            keys[count] = key;
+            containers[count++] = container(lows, size);
+            cardinality += size;
+        }
+        return new SegmentBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count), cardinality);
+    }
+
+    /** Every id in this bitmap or in {@code other}. */
+    public SegmentBitmap or(SegmentBitmap other) {
+        if (other.keys.length == 0) return this;
+        if (keys.length == 0) return other;
+        long[] merged = new long[keys.length + other.keys.length];
+        Object[] containers = new Object[merged.length];
+        int count = 0;
+        long cardinality = 0;
+        int a = 0;
+        int b = 0;
+        while (a < keys.length || b < other.keys.length) {
+            Object container;
+            if (b == other.keys.length || a < keys.length && keys[a] < other.keys[b]) {
+                merged[count] = keys[a];
+                container = this.containers[a++];
+            } else if (a == keys.length || other.keys[b] < keys[a]) {
+                merged[count] = other.keys[b];
+                container = other.containers[b++];
+            } else {
+                merged[count] = keys[a];
+                container = union(this.containers[a++], other.containers[b++]);
+            }
+            containers[count++] = container;
+            cardinality += size(container);
+        }
+        return new SegmentBitmap(Arrays.copyOf(merged, count), Arrays.copyOf(containers, count), cardinality);
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, sizeInBytes() + 64));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                if (containers[i] instanceof long[] bits) {
+                    out.writeInt(BITMAP);
+                    for (long word : bits) out.writeLong(word);
+                } else {
+                    char[] lows = (char[]) containers[i];
+                    out.writeInt(lows.length);
+                    for (char low : lows) out.writeChar(low);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads what {@link #toBytes()} wrote. Throws IllegalArgumentException on anything else.
+     */
+    public static SegmentBitmap fromBytes(byte[] bytes) {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.getInt() != MAGIC) throw new IllegalArgumentException("not a segment bitmap");
+            int count = in.getInt();
+            if (count < 0 || count > bytes.length / 12) throw new IllegalArgumentException("bad container count");
+            long[] keys = new long[count];
+            Object[] containers = new Object[count];
+            long cardinality = 0;
+            for (int i = 0; i < count; i++) {
+                keys[i] = in.getLong();
+                if (i > 0 && keys[i] <= keys[i - 1]) throw new IllegalArgumentException("keys out of order");
+                int size = in.getInt();
+                if (size == BITMAP) {
+                    long[] bits = new long[BITMAP_WORDS];
+                    in.asLongBuffer().get(bits);
+                    in.position(in.position() + 8 * BITMAP_WORDS);
+                    containers[i] = bits;
+                } else {
+                    if (size <= 0 || size > ARRAY_MAX) throw new IllegalArgumentException("bad container size");
+                    char[] lows = new char[size];
+                    in.asCharBuffer().get(lows);
+                    in.position(in.position() + 2 * size);
+                    containers[i] = lows;
+                }
+                cardinality += size(containers[i]);
+            }
+            return new SegmentBitmap(keys, containers, cardinality);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated segment bitmap", e);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static Object container(char[] lows, int size) {
+        if (size <= ARRAY_MAX) return Arrays.copyOf(lows, size);
+        long[] bits = new long[BITMAP_WORDS];
+        for (int i = 0; i < size; i++) bits[lows[i] >>> 6] |= 1L << lows[i];
+        return bits;
+    }
+
+    private static Object union(Object a, Object b) {
+        if (a instanceof char[] left && b instanceof char[] right) {
+            char[] merged = new char[left.length + right.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < left.length || j < right.length) {
+                char next;
+                if (j == right.length || i < left.length && left[i] < right[j]) next = left[i++];
+                else if (i == left.length || right[j] < left[i]) next = right[j++];
+                else {
+                    next = left[i++];
+                    j++;
+                }
+                merged[size++] = next;
+            }
+            return container(merged, size);
+        }
+        long[] bits = new long[BITMAP_WORDS];
+        for (Object container : new Object[]{a, b}) {
+            if (container instanceof long[] words) {
+                for (int w = 0; w < BITMAP_WORDS; w++) bits[w] |= words[w];
+            } else {
+                for (char low : (char[]) container) bits[low >>> 6] |= 1L << low;
+            }
+        }
+        return bits;
+    }
+
+    private static long size(Object container) {
+        if (!(container instanceof long[] bits)) return ((char[]) container).length;
+        long size = 0;
+        for (long word : bits) size += Long.bitCount(word);
+        return size;
+    }
+
+    /**
+     * Collects ids in any order. They are sorted and folded into the bitmap a chunk at a time, so a
+     * build needs the finished bitmap plus one chunk of memory, however many ids are added.
+     */
+    public static final class Builder {
+
+        private static final int CHUNK = 1 << 20;
+
+        private long[] pending = new long[1024];
+        private int size;
+        private SegmentBitmap built = EMPTY;
+
+        private Builder() {}
+
+        public Builder add(long id) {
+            if (size == pending.length) {
+                if (size == CHUNK) fold();
+                else pending = Arrays.copyOf(pending, Math.min(CHUNK, size * 2));
+            }
+            pending[size++] = id;
+            return this;
+        }
+
+        public SegmentBitmap build() {
+            fold();
+            return built;
+        }
+
+        private void fold() {
+            Arrays.sort(pending, 0, size);
+            built = built.or(ofSorted(pending, size));
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.monk.commerce.service.session;
+
+import com.monk.commerce.config.EvaluationProperties;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.ChangesUnavailableException;
+import com.monk.commerce.service.catalog.CatalogEntry;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponCatalog.ProductWiseMatch;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.segment.CustomerSegments;
+import com.monk.commerce.service.session.CartSession.Evaluated;
+import com.monk.commerce.service.strategy.CartIndex;
+import com.monk.commerce.service.strategy.CouponStrategy;
+import com.monk.commerce.service.strategy.CouponStrategyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Finds the coupons applicable to a cart, either from scratch or, for a cart session, by
+ * re-evaluating only what a change can have affected.
+ * <p>
+ * A cart of at least {@code coupons.evaluation.sort-merge-min-lines} lines is sorted by product
+ * once per evaluation, and every coupon searches that {@link CartIndex} for its products instead
+ * of scanning all the lines.
+ * <p>
+ * Coupons limited to customer segments are checked against them together with their usage limits,
+ * once a strategy found them applicable.
+ */
+@Component
+public class CartEvaluator {
+
+    // The deadline is read once every 16 coupons, after the first 16 so that even a spent budget gets the best few
+    private static final int DEADLINE_CHECK_MASK = 15;
+    // Ranking reads it once every 1024 records, so a spent budget still ranks one block of a huge catalog
+    private static final int RANK_CHECK_MASK = 1023;
+
+    private final CouponCatalog catalog;
+    private final CouponStrategyFactory factory;
+    private final RedemptionLimiter limiter;
+    private final CustomerSegments segments;
+    private final EvaluationProperties properties;
+    // Whether PRODUCT_WISE coupons in the columns are judged by the strategy rather than matched by product
+    private final boolean columnsByStrategy;
+    private volatile CouponDependencyIndex index;
+
+    public CartEvaluator(CouponCatalog catalog, CouponStrategyFactory factory, RedemptionLimiter limiter) {
+        this(catalog, factory, limiter, new EvaluationProperties(256));
+    }
+
+    public CartEvaluator(CouponCatalog catalog, CouponStrategyFactory factory, RedemptionLimiter limiter,
+                         EvaluationProperties properties) {
+        this(catalog, factory, limiter, CustomerSegments.inMemory(), properties);
+    }
+
+    @Autowired
+    public CartEvaluator(CouponCatalog catalog, CouponStrategyFactory factory, RedemptionLimiter limiter,
+                         CustomerSegments segments, EvaluationProperties properties) {
+        this(catalog, factory, limiter, segments, properties, false);
+    }
+
+    private CartEvaluator(CouponCatalog catalog, CouponStrategyFactory factory, RedemptionLimiter limiter,
+                          CustomerSegments segments, EvaluationProperties properties, boolean columnsByStrategy) {
+        this.catalog = catalog;
+        this.factory = factory;
+        this.limiter = limiter;
+        this.segments = segments;
+        this.properties = properties;
+        this.columnsByStrategy = columnsByStrategy;
+    }
+
+    /** An evaluator of another catalog, configured like this one. */
+    public CartEvaluator forCatalog(CouponCatalog catalog) {
+        return new CartEvaluator(catalog, factory, limiter, segments, properties, columnsByStrategy);
+    }
+
+    /**
+     * An evaluator of the same catalog through other strategies. When they replace the PRODUCT_WISE
+     * strategy, the coupons in the columns that match the cart by product are evaluated through it
+     * too, instead of taking the discount the columns compute.
+     */
+    public CartEvaluator withStrategies(CouponStrategyFactory factory) {
+        boolean columnsByStrategy = factory.getStrategy(CouponType.PRODUCT_WISE)
+                != this.factory.getStrategy(CouponType.PRODUCT_WISE);
+        return new CartEvaluator(catalog, factory, limiter, segments, properties, columnsByStrategy);
+    }
+
+    /** Whether the customer is in one of the segments the coupon is limited to, if it is limited to any. */
+    public boolean isEligible(CouponResponse coupon, Long customerId) {
+        return segments.admits(catalog.tenantId(), coupon, customerId);
+    }
+
+    /** Whether the coupon applies to the cart and its customer, leaving usage limits aside. */
+    public boolean appliesIgnoringLimits(CouponResponse coupon, CartRequest cart) {
+        return factory.getStrategy(coupon.type()).isApplicable(cart, coupon) && isEligible(coupon, cart.customerId());
+    }
+
+    public List<ApplicableCoupon> evaluate(CartRequest cart) {
+        List<ApplicableCoupon> applicable = new ArrayList<>();
+        try (CouponCatalog.View view = catalog.view()) {
+            forEachApplicable(view, cart, LocalDate.now(), (coupon, result) -> applicable.add(result));
+        }
+        return applicable;
+    }
+
+    /**
+     * Like {@link #evaluate(CartRequest)}, but stops once {@link System#nanoTime()} passes
+     * {@code deadlineNanos} and flags the result as partial. PRODUCT_WISE coupons in the columns
+     * come first, being exact and cheap; the records follow in descending order of the most each
+     * can take off this cart, so the coupons evaluated in time are the ones most likely to matter.
+     * Ranking itself stops at the deadline, and only the records ranked by then are evaluated.
+     */
+    public ApplicableCouponsResponse evaluate(CartRequest cart, long deadlineNanos) {
+        try (CouponCatalog.View view = catalog.view()) {
+            LocalDate today = LocalDate.now();
+            List<ApplicableCoupon> applicable = new ArrayList<>();
+            CartIndex sorted = sortedOrNull(cart);
+            ProductWiseMatch collect = columnMatch(cart, sorted, (coupon, result) -> applicable.add(result));
+            if (sorted != null) view.forEachProductWiseMatch(sorted, today, collect);
+            else view.forEachProductWiseMatch(cart.items(), today, collect);
+            List<CatalogEntry> records = view.records();
+            long[] order = rankByBound(records, cart, today, deadlineNanos);
+            for (int i = 0; i < order.length; i++) {
+                if (i > 0 && (i & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() - deadlineNanos >= 0) {
+                    return new ApplicableCouponsResponse(applicable, true);
+                }
+                CouponResponse coupon = records.get((int) order[order.length - 1 - i]).coupon();
+                ApplicableCoupon result = evaluate(coupon, cart, sorted);
+                if (result != null) applicable.add(result);
+            }
+            return new ApplicableCouponsResponse(applicable, order.length < records.size());
+        }
+    }
+
+    /** Evaluates the session's cart against the whole catalog. */
+    public void evaluate(CartSession session) {
+        long version = catalog.stableVersion();
+        LocalDate today = LocalDate.now();
+        CartRequest cart = session.cart();
+        Map<Integer, Evaluated> results = new HashMap<>();
+        try (CouponCatalog.View view = catalog.view()) {
+            forEachApplicable(view, cart, today,
+                    (coupon, result) -> results.put(coupon.id(), new Evaluated(coupon, result)));
+            session.evaluated(results, version, view.inactive(), today, session.total());
+        }
+    }
+
+    /**
+     * Brings the session's last evaluation up to date after the lines of {@code changedProducts}
+     * changed. Only these coupons are evaluated again: those naming a changed product, CART_WISE
+     * coupons whose threshold lies between the old and the new total or whose discount scales with
+     * it, coupons depending on the whole cart, coupons written since the last evaluation and
+     * scheduled coupons activated or deactivated since. The rest keep their result, re-checked
+     * against usage limits. A new day, or a catalog that moved on further than the change log
+     * reaches back, falls back to a full evaluation.
+     */
+    public void reevaluate(CartSession session, Set<Integer> changedProducts) {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(session.evaluatedOn)) {
+            evaluate(session);
+            return;
+        }
+        CouponChangesResponse changes;
+        try {
+            changes = catalog.changesSince(session.catalogVersion);
+        } catch (ChangesUnavailableException e) {
+            evaluate(session);
+            return;
+        }
+        try (CouponCatalog.View view = catalog.view()) {
+            CartRequest cart = session.cart();
+            double total = session.total();
+
+            Set<Integer> affected = new HashSet<>();
+            index(changes.version(), view.inactive())
+                    .forEachAffected(changedProducts, session.evaluatedTotal, total, affected::add);
+            for (Evaluated evaluated : session.results.values()) {
+                CouponResponse coupon = evaluated.coupon();
+                boolean scalesWithTotal = coupon.type() == CouponType.CART_WISE && total != session.evaluatedTotal;
+                // Covers PRODUCT_WISE coupons held in the columns, which the index does not know
+                boolean lostProduct = coupon.details() instanceof ProductWiseDetails details
+                        && changedProducts.contains(details.productId());
+                if (scalesWithTotal || lostProduct) affected.add(coupon.id());
+            }
+            for (CouponResponse coupon : changes.changed()) affected.add(coupon.id());
+            if (view.inactive() != session.inactive) {
+                for (Integer id : view.inactive()) if (!session.inactive.contains(id)) affected.add(id);
+                for (Integer id : session.inactive) if (!view.inactive().contains(id)) affected.add(id);
+            }
+
+            Map<Integer, Evaluated> results = new HashMap<>(session.results);
+            for (Integer id : changes.deleted()) results.remove(id);
+            CartIndex sorted = affected.isEmpty() ? null : sortedOrNull(cart);
+            for (Integer id : affected) {
+                results.remove(id);
+                if (!view.isActive(id)) continue;
+                view.find(id).ifPresent(entry -> {
+                    ApplicableCoupon result = evaluate(entry.coupon(), cart, sorted);
+                    if (result != null) results.put(id, new Evaluated(entry.coupon(), result));
+                });
+            }
+            List<CartItem> changedLines = new ArrayList<>();
+            for (CartItem item : cart.items()) {
+                if (changedProducts.contains(item.productId())) changedLines.add(item);
+            }
+            view.forEachProductWiseMatch(changedLines, today, (coupon, discount) -> {
+                if (limiter.hasRemaining(coupon, cart.customerId())) {
+                    results.put(coupon.id(), new Evaluated(coupon, new ApplicableCoupon(coupon.id(), coupon.type(), discount)));
+                }
+            });
+            results.values().removeIf(evaluated -> !limiter.hasRemaining(evaluated.coupon(), cart.customerId())
+                    || !isEligible(evaluated.coupon(), cart.customerId()));
+            session.evaluated(results, changes.version(), view.inactive(), today, total);
+        }
+    }
+
+    private void forEachApplicable(CouponCatalog.View view, CartRequest cart, LocalDate today,
+                                   BiConsumer<CouponResponse, ApplicableCoupon> consumer) {
+        CartIndex sorted = sortedOrNull(cart);
+        for (CatalogEntry entry : view.records()) {
+            ApplicableCoupon result = evaluate(entry.coupon(), cart, sorted);
+            if (result != null) consumer.accept(entry.coupon(), result);
+        }
+        // PRODUCT_WISE coupons in the columns are matched by product instead of one by one
+        ProductWiseMatch match = columnMatch(cart, sorted, consumer);
+        if (sorted != null) view.forEachProductWiseMatch(sorted, today, match);
+        else view.forEachProductWiseMatch(cart.items(), today, match);
+    }
+
+    private ProductWiseMatch columnMatch(CartRequest cart, CartIndex sorted,
+                                         BiConsumer<CouponResponse, ApplicableCoupon> consumer) {
+        if (columnsByStrategy) {
+            return (coupon, discount) -> {
+                ApplicableCoupon result = evaluate(coupon, cart, sorted);
+                if (result != null) consumer.accept(coupon, result);
+            };
+        }
+        return (coupon, discount) -> {
+            if (limiter.hasRemaining(coupon, cart.customerId())) {
+                consumer.accept(coupon, new ApplicableCoupon(coupon.id(), coupon.type(), discount));
+            }
+        };
+    }
+
+    /** The cart sorted by product when it is large enough to be worth it, otherwise null. */
+    private CartIndex sortedOrNull(CartRequest cart) {
+        return cart.items().size() >= properties.sortMergeMinLines() ? CartIndex.of(cart.items()) : null;
+    }
+
+    /**
+     * Indexes of {@code records} in ascending order of their bound, packed as the bound's float bits
+     * over the index so that one primitive sort does it. Bounds are non-negative, where float bits
+     * order like the values. Returns only the records ranked before {@code deadlineNanos} passed.
+     */
+    private static long[] rankByBound(List<CatalogEntry> records, CartRequest cart, LocalDate today,
+                                      long deadlineNanos) {
+        Map<Integer, Double> lineValues = new HashMap<>();
+        double total = 0;
+        for (CartItem item : cart.items()) {
+            double value = item.price() * item.quantity();
+            lineValues.merge(item.productId(), value, Double::sum);
+            total += value;
+        }
+        long[] order = new long[records.size()];
+        int ranked = 0;
+        for (; ranked < order.length; ranked++) {
+            if (ranked > 0 && (ranked & RANK_CHECK_MASK) == 0 && System.nanoTime() - deadlineNanos >= 0) break;
+            double bound = upperBound(records.get(ranked).coupon(), lineValues, total, today);
+            if (!(bound > 0)) bound = 0;
+            order[ranked] = ((long) Float.floatToIntBits((float) bound) << 32) | ranked;
+        }
+        if (ranked < order.length) order = Arrays.copyOf(order, ranked);
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * The most the coupon can take off the cart, cheaply: never below its discount, and 0 only
+     * where it cannot apply at all. Coupons with a bound of 0 are still evaluated, last.
+     */
+    private static double upperBound(CouponResponse coupon, Map<Integer, Double> lineValues, double total,
+                                     LocalDate today) {
+        CouponDetails details = coupon.details();
+        if (details.expiryDate() != null && details.expiryDate().isBefore(today)) return 0;
+        if (details instanceof CartWiseDetails cartWise) {
+            return total >= cartWise.threshold() ? total * Math.max(0, cartWise.discount()) / 100 : 0;
+        }
+        if (details instanceof ProductWiseDetails productWise) {
+            double value = lineValues.getOrDefault(productWise.productId(), 0.0);
+            return value * Math.max(0, productWise.discount()) / 100;
+        }
+        if (details instanceof BxGyDetails bxGy) {
+            double value = 0;
+            if (bxGy.getProducts() != null) {
+                for (ProductQuantity get : bxGy.getProducts()) value += lineValues.getOrDefault(get.productId(), 0.0);
+            }
+            return value;
+        }
+        // A rule's discount is only known by running it
+        return Math.max(0, total);
+    }
+
+    private ApplicableCoupon evaluate(CouponResponse coupon, CartRequest cart, CartIndex sorted) {
+        CouponStrategy strategy = factory.getStrategy(coupon.type());
+        boolean applicable = sorted == null
+                ? strategy.isApplicable(cart, coupon)
+                : strategy.isApplicable(cart, sorted, coupon);
+        if (!applicable || !limiter.hasRemaining(coupon, cart.customerId()) || !isEligible(coupon, cart.customerId())) {
+            return null;
+        }
+        double discount = sorted == null
+                ? strategy.calculateDiscount(cart, coupon)
+                : strategy.calculateDiscount(cart, sorted, coupon);
+        return new ApplicableCoupon(coupon.id(), coupon.type(), discount);
+    }
+
+    private CouponDependencyIndex index(long version, Set<Integer> inactive) {
+        CouponDependencyIndex current = index;
+        if (current == null || current.version != version || current.inactive != inactive) {
+            // Built from a view at least as new as the version, shared by every session until the next
+            // write or activation change
+            try (CouponCatalog.View view = catalog.view()) {
+                current = CouponDependencyIndex.build(version, inactive, view.records());
+            }
+            index = current;
+        }
+        return current;
+    }
+}
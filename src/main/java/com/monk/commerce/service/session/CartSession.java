@@ -0,0 +1,161 @@
+package com.monk.commerce.service.session;
+
+import com.monk.commerce.dto.ApplicableCoupon;
+import com.monk.commerce.dto.CartChange;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.exception.InvalidCartChangeException;
+import com.monk.commerce.service.tenant.TenantContext;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * A cart kept on the server, one line per product, together with the result of its last
+ * evaluation. Callers synchronize on the session while changing or evaluating it.
+ */
+public final class CartSession {
+
+    private final String id;
+    private final String tenant;
+    private final Long customerId;
+    private Map<Integer, CartItem> lines = new LinkedHashMap<>();
+
+    // The last evaluation: applicable coupons by id, and what they were evaluated against
+    Map<Integer, Evaluated> results = Map.of();
+    long catalogVersion;
+    Set<Integer> inactive = Set.of();
+    LocalDate evaluatedOn;
+    double evaluatedTotal;
+
+    // Maintained by CartSessionStore
+    long expiresAt;
+
+    CartSession(String id, String tenant, Long customerId) {
+        this.id = id;
+        this.tenant = tenant;
+        this.customerId = customerId;
+    }
+
+    /**
+     * A session holding the request's items. Lines for the same product are merged, which is only
+     * possible when they agree on the price.
+     */
+    public static CartSession of(String id, CartRequest cart) {
+        return of(id, TenantContext.DEFAULT, cart);
+    }
+
+    /** A session of the tenant holding the request's items. */
+    public static CartSession of(String id, String tenant, CartRequest cart) {
+        CartSession session = new CartSession(id, tenant, cart.customerId());
+        if (cart.items() == null) return session;
+        for (CartItem item : cart.items()) {
+            if (item.productId() == null) throw new InvalidCartChangeException("productId is required");
+            if (item.quantity() <= 0) continue;
+            checkPrice(item.price());
+            CartItem existing = session.lines.get(item.productId());
+            if (existing != null && existing.price() != item.price()) {
+                throw new InvalidCartChangeException("product " + item.productId() + " appears at two prices");
+            }
+            int quantity = existing == null ? item.quantity() : existing.quantity() + item.quantity();
+            session.lines.put(item.productId(), new CartItem(item.productId(), quantity, item.price()));
+        }
+        return session;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+    public Long customerId() {
+        return customerId;
+    }
+
+    public List<CartItem> items() {
+        return new ArrayList<>(lines.values());
+    }
+
+    public CartRequest cart() {
+        return new CartRequest(items(), customerId);
+    }
+
+    public double total() {
+        double total = 0;
+        for (CartItem item : lines.values()) total += item.price() * item.quantity();
+        return total;
+    }
+
+    /** The applicable coupons of the last evaluation, by coupon id. */
+    public List<ApplicableCoupon> applicableCoupons() {
+        List<ApplicableCoupon> applicable = new ArrayList<>(results.size());
+        for (Evaluated evaluated : results.values()) applicable.add(evaluated.result());
+        applicable.sort(Comparator.comparing(ApplicableCoupon::couponId));
+        return applicable;
+    }
+
+    /**
+     * Applies all changes or, if any of them is invalid, none. Returns the products whose line
+     * changed.
+     */
+    public Set<Integer> apply(List<CartChange> changes) {
+        Map<Integer, CartItem> next = new LinkedHashMap<>(lines);
+        Set<Integer> changed = new HashSet<>();
+        for (CartChange change : changes) {
+            if (change.action() == null) throw new InvalidCartChangeException("action is required");
+            Integer product = change.productId();
+            if (product == null) throw new InvalidCartChangeException("productId is required");
+            CartItem line = next.get(product);
+            int quantity = line == null ? 0 : line.quantity();
+            switch (change.action()) {
+                case ADD -> quantity += change.quantity() == null ? 1 : positive(change.quantity());
+                case REMOVE -> quantity = change.quantity() == null ? 0 : quantity - positive(change.quantity());
+                case SET -> {
+                    if (change.quantity() == null || change.quantity() < 0) {
+                        throw new InvalidCartChangeException("SET needs a quantity of at least 0");
+                    }
+                    quantity = change.quantity();
+                }
+            }
+            if (quantity <= 0) {
+                if (next.remove(product) != null) changed.add(product);
+                continue;
+            }
+            Double price = change.price() != null ? change.price() : line == null ? null : line.price();
+            if (price == null) throw new InvalidCartChangeException("a price is required for new product " + product);
+            checkPrice(price);
+            CartItem updated = new CartItem(product, quantity, price);
+            if (!updated.equals(line)) {
+                next.put(product, updated);
+                changed.add(product);
+            }
+        }
+        lines = next;
+        return changed;
+    }
+
+    void evaluated(Map<Integer, Evaluated> results, long catalogVersion, Set<Integer> inactive, LocalDate on,
+                   double total) {
+        this.results = results;
+        this.catalogVersion = catalogVersion;
+        this.inactive = inactive;
+        this.evaluatedOn = on;
+        this.evaluatedTotal = total;
+    }
+
+    private static int positive(int quantity) {
+        if (quantity <= 0) throw new InvalidCartChangeException("quantity must be positive");
+        return quantity;
+    }
+
+    private static void checkPrice(double price) {
+        if (!(price >= 0) || Double.isInfinite(price)) throw new InvalidCartChangeException("price must be at least 0");
+    }
+
+    /** An applicable coupon together with the coupon it was evaluated from. */
+    record Evaluated(CouponResponse coupon, ApplicableCoupon result) {}
+}
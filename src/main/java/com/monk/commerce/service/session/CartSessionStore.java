@@ -0,0 +1,60 @@
+package com.monk.commerce.service.session;
+
+import com.monk.commerce.config.CartSessionProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * Cart sessions by id. A session expires {@code coupons.sessions.ttl} after it was last used, and
+ * the least recently used sessions are dropped beyond {@code max-sessions}. The map is kept in
+ * access order, so its head is always the session closest to expiry.
+ */
+@Component
+public class CartSessionStore {
+
+    private final long ttlNanos;
+    private final int maxSessions;
+    private final LinkedHashMap<String, CartSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    public CartSessionStore(CartSessionProperties properties) {
+        this.ttlNanos = properties.ttl().toNanos();
+        this.maxSessions = Math.max(1, properties.maxSessions());
+    }
+
+    public synchronized void put(CartSession session) {
+        long now = System.nanoTime();
+        evict(now);
+        while (sessions.size() >= maxSessions) {
+            Iterator<CartSession> eldest = sessions.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        session.expiresAt = now + ttlNanos;
+        sessions.put(session.id(), session);
+    }
+
+    /** The session, if it has not expired; finding it counts as a use. */
+    public synchronized Optional<CartSession> find(String id) {
+        long now = System.nanoTime();
+        evict(now);
+        CartSession session = sessions.get(id);
+        if (session != null) session.expiresAt = now + ttlNanos;
+        return Optional.ofNullable(session);
+    }
+
+    public synchronized boolean remove(String id) {
+        return sessions.remove(id) != null;
+    }
+
+    synchronized int size() {
+        return sessions.size();
+    }
+
+    private void evict(long now) {
+        Iterator<CartSession> oldest = sessions.values().iterator();
+        while (oldest.hasNext() && now - oldest.next().expiresAt > 0) oldest.remove();
+    }
+}
@@ -0,0 +1,117 @@
+package com.monk.commerce.service.session;
+
+import com.monk.commerce.dto.*;
+import com.monk.commerce.service.catalog.CatalogEntry;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * What the result of each catalog record depends on, so a cart change only re-evaluates the
+ * records it can affect: PRODUCT_WISE and BXGY coupons by the products they name, CART_WISE coupons
+ * by threshold. Anything else, such as a rule, depends on the whole cart. PRODUCT_WISE coupons held
+ * in the catalog's columns are not records and are matched by product there instead.
+ * <p>
+ * Immutable; built for one catalog version and one set of inactive scheduled coupons, which it
+ * leaves out.
+ */
+final class CouponDependencyIndex {
+
+    private static final int[] NONE = new int[0];
+
+    final long version;
+    final Set<Integer> inactive;
+    private final Map<Integer, int[]> byProduct;
+    // CART_WISE coupons sorted by threshold
+    private final double[] thresholds;
+    private final int[] thresholdCoupons;
+    private final int[] wholeCart;
+
+    private CouponDependencyIndex(long version, Set<Integer> inactive, Map<Integer, int[]> byProduct,
+                                  double[] thresholds, int[] thresholdCoupons, int[] wholeCart) {
+        this.version = version;
+        this.inactive = inactive;
+        this.byProduct = byProduct;
+        this.thresholds = thresholds;
+        this.thresholdCoupons = thresholdCoupons;
+        this.wholeCart = wholeCart;
+    }
+
+    static CouponDependencyIndex build(long version, Set<Integer> inactive, List<CatalogEntry> records) {
+        Map<Integer, List<Integer>> products = new HashMap<>();
+        List<CartWiseCoupon> cartWise = new ArrayList<>();
+        List<Integer> wholeCart = new ArrayList<>();
+        for (CatalogEntry entry : records) {
+            CouponResponse coupon = entry.coupon();
+            Integer id = coupon.id();
+            if (coupon.details() instanceof CartWiseDetails details) {
+                cartWise.add(new CartWiseCoupon(details.threshold(), id));
+            } else if (coupon.details() instanceof ProductWiseDetails details && details.productId() != null) {
+                products.computeIfAbsent(details.productId(), p -> new ArrayList<>()).add(id);
+            } else if (coupon.details() instanceof BxGyDetails details && named(details)) {
+                Set<Integer> named = new HashSet<>();
+                for (ProductQuantity p : details.buyProducts()) named.add(p.productId());
+                for (ProductQuantity p : details.getProducts()) named.add(p.productId());
+                for (Integer product : named) products.computeIfAbsent(product, p -> new ArrayList<>()).add(id);
+            } else {
+                wholeCart.add(id);
+            }
+        }
+        Map<Integer, int[]> byProduct = new HashMap<>(products.size() * 4 / 3 + 1);
+        products.forEach((product, ids) -> byProduct.put(product, toArray(ids)));
+        cartWise.sort(Comparator.comparingDouble(CartWiseCoupon::threshold));
+        double[] thresholds = new double[cartWise.size()];
+        int[] thresholdCoupons = new int[cartWise.size()];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = cartWise.get(i).threshold();
+            thresholdCoupons[i] = cartWise.get(i).id();
+        }
+        return new CouponDependencyIndex(version, inactive, byProduct, thresholds, thresholdCoupons, toArray(wholeCart));
+    }
+
+    /**
+     * Calls back with every record whose result may differ after the lines of {@code products}
+     * changed and the cart total moved from {@code fromTotal} to {@code toTotal}. A coupon may be
+     * reported more than once.
+     */
+    void forEachAffected(Set<Integer> products, double fromTotal, double toTotal, IntConsumer consumer) {
+        for (Integer product : products) {
+            for (int id : byProduct.getOrDefault(product, NONE)) consumer.accept(id);
+        }
+        // Applicability of a CART_WISE coupon only changes if the total crossed its threshold
+        if (fromTotal != toTotal) {
+            double low = Math.min(fromTotal, toTotal);
+            double high = Math.max(fromTotal, toTotal);
+            for (int i = lowerBound(low); i < thresholds.length && thresholds[i] <= high; i++) {
+                consumer.accept(thresholdCoupons[i]);
+            }
+        }
+        for (int id : wholeCart) consumer.accept(id);
+    }
+
+    private int lowerBound(double threshold) {
+        int lo = 0;
+        int hi = thresholds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (thresholds[mid] < threshold) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static boolean named(BxGyDetails details) {
+        if (details.buyProducts() == null || details.getProducts() == null) return false;
+        for (ProductQuantity p : details.buyProducts()) if (p == null || p.productId() == null) return false;
+        for (ProductQuantity p : details.getProducts()) if (p == null || p.productId() == null) return false;
+        return true;
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) array[i] = ids.get(i);
+        return array;
+    }
+
+    private record CartWiseCoupon(double threshold, int id) {}
+}
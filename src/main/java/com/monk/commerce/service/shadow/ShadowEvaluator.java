@@ -0,0 +1,261 @@
+package com.monk.commerce.service.shadow;
+
+import com.monk.commerce.annotation.CouponHandler;
+import com.monk.commerce.config.ShadowProperties;
+import com.monk.commerce.dto.ApplicableCoupon;
+import com.monk.commerce.dto.ApplyCouponResponse;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.service.catalog.CatalogEntry;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.strategy.CouponStrategy;
+import com.monk.commerce.service.strategy.CouponStrategyFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates a sample of applicable-coupons and apply requests a second time through the shadow
+ * strategies, those marked {@code @CouponHandler(shadow = true)}, and compares the discounts with
+ * the response already served. The comparison runs on its own low-priority threads behind a
+ * bounded queue; when the queue is full the sample is dropped, so the request thread only ever
+ * pays for the sampling decision and a queue offer.
+ * <p>
+ * Both sides are timed: {@code coupons.shadow.latency} per operation and engine, so the latency
+ * delta is the difference between the two. Mismatches are counted and logged with the coupons that
+ * differ. An applicable-coupons comparison is skipped when the catalog changed in between.
+ * <p>
+ * A shadow PRODUCT_WISE strategy also judges the coupons held in the catalog's columns, but only
+ * those matching a product in the cart; columns coupons for other products are not compared.
+ * <p>
+ * Usage limits are read live on both sides, so a redemption between the two evaluations can make
+ * a limited coupon appear on one side only. Such a difference is not counted as a mismatch when
+ * the side that left the coupon out would have taken it but for its limits; a comparison with no
+ * other difference counts as skipped.
+ */
+@Component
+public class ShadowEvaluator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShadowEvaluator.class);
+    // Coupons named in one mismatch log line
+    private static final int LOGGED_COUPONS = 10;
+
+    private final ShadowProperties properties;
+    private final CouponStrategyFactory factory;
+    private final ThreadPoolExecutor executor;
+    private final Meters applicable;
+    private final Meters apply;
+    private final Counter skippedCounter;
+    private final Counter droppedCounter;
+
+    public ShadowEvaluator(List<CouponStrategy> strategies, ShadowProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.factory = new CouponStrategyFactory(strategies, true);
+        this.applicable = new Meters("applicable", registry);
+        this.apply = new Meters("apply", registry);
+        this.skippedCounter = registry.counter("coupons.shadow.skipped");
+        this.droppedCounter = registry.counter("coupons.shadow.dropped");
+        boolean anyShadow = strategies.stream().anyMatch(strategy -> {
+            CouponHandler annotation = strategy.getClass().getAnnotation(CouponHandler.class);
+            return annotation != null && annotation.shadow();
+        });
+        if (properties.enabled() && !anyShadow) log.warn("Shadow mode is enabled but no shadow strategy is registered");
+        this.executor = properties.enabled() && anyShadow && properties.sampleRate() > 0 ? executor() : null;
+    }
+
+    /** Whether to shadow the current request; false whenever shadow mode is off. */
+    public boolean sample() {
+        return executor != null && ThreadLocalRandom.current().nextDouble() < properties.sampleRate();
+    }
+
+    /**
+     * Evaluates the cart again through the shadow strategies and compares the result with
+     * {@code primary}, which the evaluator of {@code read} computed in {@code primaryNanos}.
+     */
+    public void applicable(CatalogRead read, CartRequest cart, List<ApplicableCoupon> primary, long primaryNanos) {
+        executor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                CartEvaluator evaluator = read.evaluator().withStrategies(factory);
+                List<ApplicableCoupon> shadow = evaluator.evaluate(cart);
+                long shadowNanos = System.nanoTime() - start;
+                if (read.catalog().version() != read.version()) {
+                    skippedCounter.increment();
+                    return;
+                }
+                Comparison comparison = compare(read, evaluator, cart, primary, shadow);
+                if (comparison.differences().isEmpty() && comparison.racedOnLimits() > 0) {
+                    skippedCounter.increment();
+                    return;
+                }
+                applicable.timed(primaryNanos, shadowNanos);
+                if (!comparison.differences().isEmpty()) {
+                    applicable.mismatches.increment();
+                    log.warn("Shadow applicable-coupons mismatch ({} ms primary, {} ms shadow): {}",
+                            millis(primaryNanos), millis(shadowNanos), describe(comparison.differences()));
+                }
+            } catch (RuntimeException e) {
+                applicable.failed(e);
+            }
+        });
+    }
+
+    /**
+     * Applies the coupon again through its shadow strategy and compares the discounts with
+     * {@code primary}, which the primary strategy computed in {@code primaryNanos}.
+     */
+    public void apply(CouponResponse coupon, CartRequest cart, ApplyCouponResponse primary, long primaryNanos) {
+        executor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                ApplyCouponResponse shadow = factory.getStrategy(coupon.type()).applyCoupon(cart, coupon);
+                long shadowNanos = System.nanoTime() - start;
+                apply.timed(primaryNanos, shadowNanos);
+                if (!sameDiscounts(primary, shadow)) {
+                    apply.mismatches.increment();
+                    log.warn("Shadow apply mismatch on coupon {} ({} ms primary, {} ms shadow): discount {} vs {}",
+                            coupon.id(), millis(primaryNanos), millis(shadowNanos), primary.totalDiscount(),
+                            shadow.totalDiscount());
+                }
+            } catch (RuntimeException e) {
+                apply.failed(e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (executor == null) return;
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private ThreadPoolExecutor executor() {
+        int threads = Math.max(1, properties.threads());
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, properties.queueCapacity())),
+                task -> {
+                    Thread thread = new Thread(task, "coupon-shadow-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                (task, pool) -> droppedCounter.increment());
+    }
+
+    /**
+     * What differs between the two results, leaving out the coupons found on one side only because
+     * their usage limits changed in between.
+     */
+    private Comparison compare(CatalogRead read, CartEvaluator shadowEvaluator, CartRequest cart,
+                               List<ApplicableCoupon> primary, List<ApplicableCoupon> shadow) {
+        Map<Integer, Double> expected = new HashMap<>();
+        for (ApplicableCoupon coupon : primary) expected.put(coupon.couponId(), coupon.discount());
+        List<String> differences = new ArrayList<>();
+        int raced = 0;
+        for (ApplicableCoupon coupon : shadow) {
+            Double discount = expected.remove(coupon.couponId());
+            if (discount == null) {
+                if (leftOutByLimits(read, read.evaluator(), coupon.couponId(), cart)) raced++;
+                else differences.add(coupon.couponId() + " only in shadow");
+            } else if (Math.abs(discount - coupon.discount()) > properties.tolerance()) {
+                differences.add(coupon.couponId() + " " + discount + " vs " + coupon.discount());
+            }
+        }
+        for (Integer id : expected.keySet()) {
+            if (leftOutByLimits(read, shadowEvaluator, id, cart)) raced++;
+            else differences.add(id + " only in primary");
+        }
+        return new Comparison(differences, raced);
+    }
+
+    /**
+     * Whether the evaluator that left the coupon out would have taken it but for its usage limits,
+     * which the other evaluator read at another time.
+     */
+    private static boolean leftOutByLimits(CatalogRead read, CartEvaluator leftOutBy, Integer id, CartRequest cart) {
+        Optional<CatalogEntry> entry = read.catalog().find(id);
+        if (entry.isEmpty()) return false;
+        CouponResponse coupon = entry.get().coupon();
+        CouponConstraints constraints = coupon.constraints();
+        boolean limited = constraints != null
+                && (constraints.usageLimit() != null || Boolean.TRUE.equals(constraints.oncePerCustomer()));
+        return limited && leftOutBy.appliesIgnoringLimits(coupon, cart);
+    }
+
+    private static String describe(List<String> differences) {
+        return differences.size() <= LOGGED_COUPONS
+                ? String.join(", ", differences)
+                : String.join(", ", differences.subList(0, LOGGED_COUPONS)) + " and "
+                        + (differences.size() - LOGGED_COUPONS) + " more";
+    }
+
+    private boolean sameDiscounts(ApplyCouponResponse primary, ApplyCouponResponse shadow) {
+        if (Math.abs(primary.totalDiscount() - shadow.totalDiscount()) > properties.tolerance()) return false;
+        if (primary.items().size() != shadow.items().size()) return false;
+        for (int i = 0; i < primary.items().size(); i++) {
+            double difference = primary.items().get(i).totalDiscount() - shadow.items().get(i).totalDiscount();
+            if (Math.abs(difference) > properties.tolerance()) return false;
+        }
+        return true;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+
+    /**
+     * The primary evaluator and the catalog it read, at the version current before it evaluated.
+     */
+    public record CatalogRead(CartEvaluator evaluator, CouponCatalog catalog, long version) {}
+
+    private record Comparison(List<String> differences, int racedOnLimits) {}
+
+    private static final class Meters {
+
+        private final String operation;
+        private final Counter compared;
+        private final Counter mismatches;
+        private final Counter errors;
+        private final Timer primary;
+        private final Timer shadow;
+
+        Meters(String operation, MeterRegistry registry) {
+            this.operation = operation;
+            this.compared = registry.counter("coupons.shadow.compared", "operation", operation);
+            this.mismatches = registry.counter("coupons.shadow.mismatches", "operation", operation);
+            this.errors = registry.counter("coupons.shadow.errors", "operation", operation);
+            this.primary = registry.timer("coupons.shadow.latency", "operation", operation, "engine", "primary");
+            this.shadow = registry.timer("coupons.shadow.latency", "operation", operation, "engine", "shadow");
+        }
+
+        void timed(long primaryNanos, long shadowNanos) {
+            compared.increment();
+            primary.record(primaryNanos, TimeUnit.NANOSECONDS);
+            shadow.record(shadowNanos, TimeUnit.NANOSECONDS);
+        }
+
+        void failed(RuntimeException e) {
+            errors.increment();
+            log.warn("Shadow {} evaluation failed where the primary succeeded: {}", operation, e.toString());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.monk.commerce.service.simulation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads UTF-8 lines without ever holding more than {@code maxChars} of one: longer lines are
+ * skipped up to their end and counted, so a file without line breaks cannot exhaust the heap.
+ */
+final class BoundedLineReader implements Closeable {
+
+    private final Reader in;
+    private final int maxChars;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long oversized;
+
+    BoundedLineReader(InputStream in, int maxChars) {
+        this.in = new InputStreamReader(in, StandardCharsets.UTF_8);
+        this.maxChars = Math.max(1, maxChars);
+    }
+
+    /** The next line that fits, without its terminator, or null at the end of the input. */
+    String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        boolean tooLong = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (tooLong) oversized++;
+                    return tooLong || line.isEmpty() ? null : line.toString();
+                }
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') position++;
+            if (!tooLong) {
+                if (line.length() + position - start > maxChars) {
+                    tooLong = true;
+                    line.setLength(0);
+                } else {
+                    line.append(buffer, start, position - start);
+                }
+            }
+            if (position < limit) {
+                position++;
+                if (tooLong) {
+                    oversized++;
+                    tooLong = false;
+                    continue;
+                }
+                int end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') line.setLength(end - 1);
+                return line.toString();
+            }
+        }
+    }
+
+    long oversized() {
+        return oversized;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
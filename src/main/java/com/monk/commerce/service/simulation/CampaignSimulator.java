@@ -0,0 +1,228 @@
+package com.monk.commerce.service.simulation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monk.commerce.config.SimulationProperties;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.exception.InvalidSimulationException;
+import com.monk.commerce.exception.SimulationBusyException;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.strategy.CouponStrategy;
+import com.monk.commerce.service.strategy.CouponStrategyFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays a stream of historical carts, one CartRequest JSON per line, against proposed coupons
+ * that are never persisted and against the live catalog. The calling thread reads the stream in
+ * chunks of lines and hands each chunk to a fork-join pool, where it is split down to small slices
+ * evaluated in parallel and their tallies merged on the way back up. Only a bounded number of
+ * chunks is in flight at once, so memory does not depend on the size of the input.
+ */
+@Component
+public class CampaignSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(CampaignSimulator.class);
+    private static final int SLICE = 32;
+
+    private final CartEvaluator evaluator;
+    private final CouponStrategyFactory factory;
+    private final ObjectMapper mapper;
+    private final SimulationProperties properties;
+    private final ForkJoinPool pool;
+    private final Semaphore running;
+
+    public CampaignSimulator(CartEvaluator evaluator, CouponStrategyFactory factory, ObjectMapper mapper,
+                             SimulationProperties properties) {
+        this.evaluator = evaluator;
+        this.factory = factory;
+        this.mapper = mapper;
+        this.properties = properties;
+        int parallelism = properties.parallelism() > 0
+                ? properties.parallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism);
+        this.running = new Semaphore(Math.max(1, properties.maxConcurrent()));
+    }
+
+    public SimulationReport simulate(List<CouponRequest> proposed, InputStream carts) {
+        return simulate(evaluator, proposed, carts);
+    }
+
+    /** Simulates against the live coupons of the catalog {@code live} evaluates. */
+    public SimulationReport simulate(CartEvaluator live, List<CouponRequest> proposed, InputStream carts) {
+        List<CouponResponse> coupons = compile(proposed);
+        if (!running.tryAcquire()) throw new SimulationBusyException();
+        try {
+            long start = System.nanoTime();
+            SimulationTally total = run(live, coupons, carts);
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            log.info("Simulated {} proposed coupons over {} carts in {} ms", coupons.size(), total.carts, elapsed);
+            return new SimulationReport(total.carts, total.skipped, total.cartValue, total.cartsWithLive,
+                    total.bestLiveDiscount, total.impacts(proposed), elapsed);
+        } finally {
+            running.release();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private SimulationTally run(CartEvaluator live, List<CouponResponse> coupons, InputStream carts) {
+        int chunkSize = Math.max(1, properties.chunkSize());
+        int maxInFlight = 2 * pool.getParallelism();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        SimulationTally total = new SimulationTally(coupons.size());
+        int maxChars = (int) Math.min(Integer.MAX_VALUE, properties.maxLineLength().toBytes());
+        try (BoundedLineReader reader = new BoundedLineReader(carts, maxChars)) {
+            List<String> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null && failure.get() == null) {
+                if (line.isBlank()) continue;
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    submit(live, chunk, coupons, total, inFlight, failure);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) submit(live, chunk, coupons, total, inFlight, failure);
+            total.skipped += reader.oversized();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read carts", e);
+        } finally {
+            // Wait for the chunks still running
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+        if (failure.get() != null) throw new IllegalStateException("Simulation failed", failure.get());
+        return total;
+    }
+
+    private void submit(CartEvaluator live, List<String> lines, List<CouponResponse> coupons, SimulationTally total,
+                        Semaphore inFlight, AtomicReference<Throwable> failure) {
+        inFlight.acquireUninterruptibly();
+        try {
+            pool.execute(() -> {
+                try {
+                    SimulationTally tally = new Slice(live, lines, 0, lines.size(), coupons).invoke();
+                    synchronized (total) {
+                        total.add(tally);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            // Never queued, e.g. the pool is shutting down; run() waits for this permit
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private List<CouponResponse> compile(List<CouponRequest> proposed) {
+        if (proposed == null || proposed.isEmpty()) throw new InvalidSimulationException("no proposed coupons");
+        if (proposed.size() > properties.maxProposed()) {
+            throw new InvalidSimulationException("at most " + properties.maxProposed() + " proposed coupons");
+        }
+        List<CouponResponse> coupons = new ArrayList<>(proposed.size());
+        for (int i = 0; i < proposed.size(); i++) {
+            CouponRequest request = proposed.get(i);
+            if (request == null || request.type() == null || request.details() == null) {
+                throw new InvalidSimulationException("proposed coupon " + i + " needs a type and details");
+            }
+            CouponStrategy strategy = factory.getStrategy(request.type());
+            strategy.validate(request.details());
+            // Negative ids never collide with the catalog's
+            coupons.add(new CouponResponse(-(i + 1), request.type(), request.details(), request.constraints()));
+        }
+        return coupons;
+    }
+
+    private void evaluate(CartEvaluator live, String line, List<CouponResponse> coupons, SimulationTally tally) {
+        CartRequest cart;
+        try {
+            cart = mapper.readValue(line, CartRequest.class);
+        } catch (JsonProcessingException e) {
+            tally.skipped++;
+            return;
+        }
+        if (cart == null || cart.items() == null) {
+            tally.skipped++;
+            return;
+        }
+        double bestLive = 0;
+        double[] discounts = new double[coupons.size()];
+        try {
+            for (ApplicableCoupon coupon : live.evaluate(cart)) bestLive = Math.max(bestLive, coupon.discount());
+            for (int i = 0; i < coupons.size(); i++) {
+                CouponResponse coupon = coupons.get(i);
+                CouponStrategy strategy = factory.getStrategy(coupon.type());
+                if (live.isEligible(coupon, cart.customerId()) && strategy.isApplicable(cart, coupon)) {
+                    discounts[i] = strategy.calculateDiscount(cart, coupon);
+                }
+            }
+        } catch (RuntimeException e) {
+            // A cart the strategies cannot evaluate, such as one with a line missing its product
+            tally.skipped++;
+            return;
+        }
+        tally.carts++;
+        for (CartItem item : cart.items()) tally.cartValue += item.price() * item.quantity();
+        if (bestLive > 0) {
+            tally.cartsWithLive++;
+            tally.bestLiveDiscount += bestLive;
+        }
+        for (int i = 0; i < discounts.length; i++) {
+            if (discounts[i] > 0) tally.hit(i, discounts[i], bestLive);
+        }
+    }
+
+    private final class Slice extends RecursiveTask<SimulationTally> {
+
+        private final CartEvaluator live;
+        private final List<String> lines;
+        private final int from;
+        private final int to;
+        private final List<CouponResponse> coupons;
+
+        Slice(CartEvaluator live, List<String> lines, int from, int to, List<CouponResponse> coupons) {
+            this.live = live;
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+            this.coupons = coupons;
+        }
+
+        @Override
+        protected SimulationTally compute() {
+            if (to - from <= SLICE) {
+                SimulationTally tally = new SimulationTally(coupons.size());
+                for (int i = from; i < to; i++) evaluate(live, lines.get(i), coupons, tally);
+                return tally;
+            }
+            int mid = (from + to) >>> 1;
+            Slice left = new Slice(live, lines, from, mid, coupons);
+            left.fork();
+            SimulationTally tally = new Slice(live, lines, mid, to, coupons).compute();
+            tally.add(left.join());
+            return tally;
+        }
+    }
+}
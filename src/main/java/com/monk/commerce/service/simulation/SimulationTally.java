@@ -0,0 +1,106 @@
+package com.monk.commerce.service.simulation;
+
+import com.monk.commerce.dto.CouponRequest;
+import com.monk.commerce.dto.SimulationReport.CouponImpact;
+import com.monk.commerce.dto.SimulationReport.DiscountBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters for part of a simulation, merged pairwise as the fork-join tasks complete. Its size
+ * depends only on the number of proposed coupons: discounts are kept as a histogram over fixed
+ * 1-2-5 buckets rather than one by one.
+ */
+final class SimulationTally {
+
+    // 0, 1, 2, 5, 10, 20, 50, ... 1,000,000; the last bucket is open ended
+    static final double[] BUCKET_FLOORS = bucketFloors();
+
+    long carts;
+    long skipped;
+    double cartValue;
+    long cartsWithLive;
+    double bestLiveDiscount;
+    final long[] hits;
+    final double[] discount;
+    final double[] maxDiscount;
+    final long[] wins;
+    final double[] incremental;
+    final long[][] buckets;
+
+    SimulationTally(int proposed) {
+        hits = new long[proposed];
+        discount = new double[proposed];
+        maxDiscount = new double[proposed];
+        wins = new long[proposed];
+        incremental = new double[proposed];
+        buckets = new long[proposed][BUCKET_FLOORS.length];
+    }
+
+    void hit(int coupon, double amount, double bestLive) {
+        hits[coupon]++;
+        discount[coupon] += amount;
+        maxDiscount[coupon] = Math.max(maxDiscount[coupon], amount);
+        if (amount > bestLive) {
+            wins[coupon]++;
+            incremental[coupon] += amount - bestLive;
+        }
+        buckets[coupon][bucket(amount)]++;
+    }
+
+    void add(SimulationTally other) {
+        carts += other.carts;
+        skipped += other.skipped;
+        cartValue += other.cartValue;
+        cartsWithLive += other.cartsWithLive;
+        bestLiveDiscount += other.bestLiveDiscount;
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] += other.hits[i];
+            discount[i] += other.discount[i];
+            maxDiscount[i] = Math.max(maxDiscount[i], other.maxDiscount[i]);
+            wins[i] += other.wins[i];
+            incremental[i] += other.incremental[i];
+            for (int b = 0; b < BUCKET_FLOORS.length; b++) buckets[i][b] += other.buckets[i][b];
+        }
+    }
+
+    List<CouponImpact> impacts(List<CouponRequest> proposed) {
+        List<CouponImpact> impacts = new ArrayList<>(hits.length);
+        for (int i = 0; i < hits.length; i++) {
+            List<DiscountBucket> distribution = new ArrayList<>();
+            for (int b = 0; b < BUCKET_FLOORS.length; b++) {
+                if (buckets[i][b] == 0) continue;
+                Double to = b + 1 < BUCKET_FLOORS.length ? BUCKET_FLOORS[b + 1] : null;
+                distribution.add(new DiscountBucket(BUCKET_FLOORS[b], to, buckets[i][b]));
+            }
+            impacts.add(new CouponImpact(i, proposed.get(i).type(), hits[i], carts == 0 ? 0 : (double) hits[i] / carts,
+                    discount[i], hits[i] == 0 ? 0 : discount[i] / hits[i], maxDiscount[i], wins[i], incremental[i],
+                    distribution));
+        }
+        return impacts;
+    }
+
+    private static int bucket(double amount) {
+        int lo = 0;
+        int hi = BUCKET_FLOORS.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (BUCKET_FLOORS[mid] <= amount) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private static double[] bucketFloors() {
+        List<Double> floors = new ArrayList<>(List.of(0.0));
+        for (double decade = 1; decade <= 1_000_000; decade *= 10) {
+            floors.add(decade);
+            if (decade < 1_000_000) {
+                floors.add(decade * 2);
+                floors.add(decade * 5);
+            }
+        }
+        return floors.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+}
@@ -7,8 +7,8 @@ import com.monk.commerce.entity.CouponType;
 import com.monk.commerce.exception.CouponExpiredException;
 import org.springframework.stereotype.Component;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @CouponHandler(CouponType.BXGY)
@@ -28,78 +28,45 @@ public class BxGyCouponStrategy implements CouponStrategy {
     @Override
     public boolean isApplicable(CartRequest cart, CouponResponse coupon) {
         if (isExpired(coupon)) return false;
-        var details = mapper.convertValue(coupon.details(), BxGyDetails.class);
-
-        // Check if all buyProducts conditions are met
-        boolean hasAllBuys = details.buyProducts().stream().allMatch(req -> {
-            int qtyInCart = cart.items().stream()
-                    .filter(i -> Objects.equals(i.productId(), req.productId()))
-                    .mapToInt(CartItem::quantity)
-                    .sum();
-            return qtyInCart >= req.quantity();
-        });
-
-        // Check if at least one getProduct exists in cart
-        boolean hasGetProduct = cart.items().stream()
-                .anyMatch(i -> details.getProducts().stream()
-                        .anyMatch(gp -> Objects.equals(gp.productId(), i.productId())));
-
-        return hasAllBuys && hasGetProduct;
+        return new BxGyEngine(details(coupon)).isApplicable(cart.items());
     }
 
     @Override
     public double calculateDiscount(CartRequest cart, CouponResponse coupon) {
-        var details = mapper.convertValue(coupon.details(), BxGyDetails.class);
-
-        // Calculate how many times offer can apply (based on min ratio of buyProducts)
-        int maxApplications = details.repetitionLimit();
-
-        for (ProductQuantity req : details.buyProducts()) {
-            int qtyInCart = cart.items().stream()
-                    .filter(i -> Objects.equals(i.productId(), req.productId()))
-                    .mapToInt(CartItem::quantity)
-                    .sum();
-            int possibleApplications = qtyInCart / req.quantity();
-            maxApplications = Math.min(maxApplications, possibleApplications);
-        }
-
-        if (maxApplications <= 0) return 0.0;
-
-        // Now calculate free items
-        List<CartItem> getItems = cart.items().stream()
-                .filter(i -> details.getProducts().stream()
-                        .anyMatch(gp -> Objects.equals(gp.productId(), i.productId())))
-                .collect(Collectors.toList());
-
-        double discount = 0.0;
-        int finalMaxApplications = maxApplications;
-        int totalFreeItems = details.getProducts().stream()
-                .mapToInt(gp -> gp.quantity() * finalMaxApplications)
-                .sum();
-
-        // Sort getItems by price ascending (maximize savings for customer)
-        getItems.sort(Comparator.comparingDouble(CartItem::price));
+        return new BxGyEngine(details(coupon)).evaluate(cart.items(), null);
+    }
 
-        for (CartItem gi : getItems) {
-            int free = Math.min(totalFreeItems, gi.quantity());
-            discount += gi.price() * free;
-            totalFreeItems -= free;
-            if (totalFreeItems <= 0) break;
-        }
+    @Override
+    public boolean isApplicable(CartRequest cart, CartIndex index, CouponResponse coupon) {
+        if (isExpired(coupon)) return false;
+        return new BxGyEngine(details(coupon)).isApplicable(index);
+    }
 
-        return discount;
+    @Override
+    public double calculateDiscount(CartRequest cart, CartIndex index, CouponResponse coupon) {
+        return new BxGyEngine(details(coupon)).evaluate(index);
     }
 
     @Override
     public ApplyCouponResponse applyCoupon(CartRequest cart, CouponResponse coupon) {
-        if (isExpired(coupon)) throw new CouponExpiredException(coupon.id());;
-        double totalPrice = cart.items().stream().mapToDouble(i -> i.price() * i.quantity()).sum();
-        double totalDiscount = calculateDiscount(cart, coupon);
-
-        List<DiscountedItem> items = cart.items().stream()
-                .map(i -> new DiscountedItem(i.productId(), i.quantity(), i.price(), 0.0))
-                .toList();
-
+        if (isExpired(coupon)) throw new CouponExpiredException(coupon.id());
+        List<CartItem> cartItems = cart.items();
+        double[] lineDiscounts = new double[cartItems.size()];
+        double totalDiscount = new BxGyEngine(details(coupon)).evaluate(cartItems, lineDiscounts);
+
+        double totalPrice = 0.0;
+        List<DiscountedItem> items = new ArrayList<>(cartItems.size());
+        for (int i = 0; i < cartItems.size(); i++) {
+            CartItem item = cartItems.get(i);
+            totalPrice += item.price() * item.quantity();
+            items.add(new DiscountedItem(item.productId(), item.quantity(), item.price(), lineDiscounts[i]));
+        }
         return new ApplyCouponResponse(items, totalPrice, totalDiscount, totalPrice - totalDiscount);
     }
+
+    private BxGyDetails details(CouponResponse coupon) {
+        return coupon.details() instanceof BxGyDetails details
+                ? details
+                : mapper.convertValue(coupon.details(), BxGyDetails.class);
+    }
 }
\ No newline at end of file
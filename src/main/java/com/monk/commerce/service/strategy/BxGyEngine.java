@@ -0,0 +1,287 @@
+package com.monk.commerce.service.strategy;
+
+import com.monk.commerce.dto.BxGyDetails;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.ProductQuantity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates one BxGy coupon against a cart using primitive per-product tables.
+ * <p>
+ * Every distinct product of the buy and get lists gets a slot. One pass over the cart fills the
+ * slot quantities, so the number of applications {@code k} is known without rescanning the cart.
+ * A unit can serve either a buy slot or a free slot, never both: when a product is in both lists,
+ * {@code k} applications leave {@code qty - k * buyQty} of its units available for free.
+ * <p>
+ * Free units are taken cheapest first. More applications add free slots but, with overlap, remove
+ * available units, so the best {@code k} is either the last one where free slots are the
+ * bottleneck or the first one where available units are; both are evaluated and the larger
+ * discount wins.
+ * <p>
+ * A large cart comes as a {@link CartIndex}: the slots are then visited in product order and each
+ * product's lines found by galloping through the sorted cart, so the cost follows the coupon's
+ * products rather than the cart's lines.
+ */
+final class BxGyEngine {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final int repetitionLimit;
+    private final int[] tableKeys;
+    private final int[] tableSlots;
+    private final int mask;
+    private final int[] slotBuy;
+    private final boolean[] slotGet;
+    private final long freePerApplication;
+    private int slots;
+
+    BxGyEngine(BxGyDetails details) {
+        this.repetitionLimit = details.repetitionLimit();
+        int products = size(details.buyProducts()) + size(details.getProducts());
+        int capacity = Integer.highestOneBit(Math.max(1, products) * 2 - 1) << 1;
+        this.tableKeys = new int[capacity];
+        this.tableSlots = new int[capacity];
+        this.mask = capacity - 1;
+        this.slotBuy = new int[products];
+        this.slotGet = new boolean[products];
+        Arrays.fill(tableKeys, EMPTY);
+
+        List<ProductQuantity> buy = details.buyProducts();
+        for (int i = 0; i < size(buy); i++) {
+            ProductQuantity pq = buy.get(i);
+            if (pq.productId() == null || pq.quantity() == null || pq.quantity() <= 0) continue;
+            slotBuy[slotFor(pq.productId())] += pq.quantity();
+        }
+        long free = 0;
+        List<ProductQuantity> get = details.getProducts();
+        for (int i = 0; i < size(get); i++) {
+            ProductQuantity pq = get.get(i);
+            if (pq.productId() == null || pq.quantity() == null || pq.quantity() <= 0) continue;
+            slotGet[slotFor(pq.productId())] = true;
+            free += pq.quantity();
+        }
+        this.freePerApplication = free;
+    }
+
+    /**
+     * Returns true when one application is possible and leaves at least one get unit to give away.
+     */
+    boolean isApplicable(List<CartItem> items) {
+        return isApplicable(quantities(items));
+    }
+
+    boolean isApplicable(CartIndex cart) {
+        return isApplicable(quantities(cart));
+    }
+
+    private boolean isApplicable(long[] quantities) {
+        if (applicationsByBuy(quantities) < 1 || freePerApplication == 0) return false;
+        for (int s = 0; s < slots; s++) {
+            if (slotGet[s] && quantities[s] - slotBuy[s] > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the discount and, when {@code lineDiscounts} is not null, writes the discount of each
+     * cart line into it.
+     */
+    double evaluate(List<CartItem> items, double[] lineDiscounts) {
+        return evaluate(items, null, lineDiscounts);
+    }
+
+    double evaluate(CartIndex cart) {
+        return evaluate(cart.items(), cart, null);
+    }
+
+    private double evaluate(List<CartItem> items, CartIndex cart, double[] lineDiscounts) {
+        long[] quantities = cart == null ? quantities(items) : quantities(cart);
+        long byBuy = applicationsByBuy(quantities);
+        if (byBuy < 1 || freePerApplication == 0) return 0.0;
+
+        long available = 0;
+        long overlap = 0;
+        for (int s = 0; s < slots; s++) {
+            if (!slotGet[s]) continue;
+            available += quantities[s];
+            overlap += slotBuy[s];
+        }
+        if (available == 0) return 0.0;
+
+        int[] getLines = cart == null ? getLinesByPrice(items) : getLinesByPrice(cart);
+        long saturating = ceilDiv(available, freePerApplication + overlap);
+        long best = Math.min(byBuy, saturating);
+        long[] caps = new long[slots];
+        double discount = allocate(items, getLines, quantities, caps, best, null);
+        if (best == saturating && best > 1) {
+            double fewer = allocate(items, getLines, quantities, caps, best - 1, null);
+            if (fewer > discount) {
+                discount = fewer;
+                best = best - 1;
+            }
+        }
+        if (lineDiscounts != null) allocate(items, getLines, quantities, caps, best, lineDiscounts);
+        return discount;
+    }
+
+    private double allocate(List<CartItem> items, int[] getLines, long[] quantities, long[] caps,
+                            long applications, double[] lineDiscounts) {
+        for (int s = 0; s < slots; s++) {
+            caps[s] = slotGet[s] ? quantities[s] - applications * slotBuy[s] : 0;
+        }
+        long remaining = applications * freePerApplication;
+        double discount = 0.0;
+        for (int i = 0; i < getLines.length && remaining > 0; i++) {
+            CartItem item = items.get(getLines[i]);
+            int slot = lookup(item.productId());
+            long free = Math.min(Math.min(item.quantity(), caps[slot]), remaining);
+            if (free <= 0) continue;
+            caps[slot] -= free;
+            remaining -= free;
+            discount += free * item.price();
+            if (lineDiscounts != null) lineDiscounts[getLines[i]] = free * item.price();
+        }
+        return discount;
+    }
+
+    private long applicationsByBuy(long[] quantities) {
+        long applications = repetitionLimit;
+        for (int s = 0; s < slots; s++) {
+            if (slotBuy[s] > 0) applications = Math.min(applications, quantities[s] / slotBuy[s]);
+        }
+        return applications;
+    }
+
+    private long[] quantities(List<CartItem> items) {
+        long[] quantities = new long[slots];
+        for (int i = 0, n = items.size(); i < n; i++) {
+            CartItem item = items.get(i);
+            int slot = lookup(item.productId());
+            if (slot >= 0 && item.quantity() > 0) quantities[slot] += item.quantity();
+        }
+        return quantities;
+    }
+
+    private long[] quantities(CartIndex cart) {
+        long[] quantities = new long[slots];
+        int pos = 0;
+        for (long productSlot : slotsByProduct()) {
+            int product = (int) (productSlot >> 32);
+            int slot = (int) productSlot;
+            for (pos = cart.lowerBound(product, pos); pos < cart.size() && cart.productId(pos) == product; pos++) {
+                int quantity = cart.item(pos).quantity();
+                if (quantity > 0) quantities[slot] += quantity;
+            }
+        }
+        return quantities;
+    }
+
+    /**
+     * Indices of the cart lines holding a get product, ordered by unit price ascending.
+     */
+    private int[] getLinesByPrice(List<CartItem> items) {
+        int n = items.size();
+        int count = 0;
+        int[] lines = new int[n];
+        for (int i = 0; i < n; i++) {
+            int slot = lookup(items.get(i).productId());
+            if (slot >= 0 && slotGet[slot] && items.get(i).quantity() > 0) lines[count++] = i;
+        }
+        lines = count == n ? lines : Arrays.copyOf(lines, count);
+        heapSortByPrice(lines, items);
+        return lines;
+    }
+
+    private int[] getLinesByPrice(CartIndex cart) {
+        int count = 0;
+        int[] lines = new int[Math.min(cart.size(), 16)];
+        int pos = 0;
+        for (long productSlot : slotsByProduct()) {
+            int product = (int) (productSlot >> 32);
+            if (!slotGet[(int) productSlot]) continue;
+            for (pos = cart.lowerBound(product, pos); pos < cart.size() && cart.productId(pos) == product; pos++) {
+                if (cart.item(pos).quantity() <= 0) continue;
+                if (count == lines.length) lines = Arrays.copyOf(lines, count * 2);
+                lines[count++] = cart.line(pos);
+            }
+        }
+        lines = count == lines.length ? lines : Arrays.copyOf(lines, count);
+        heapSortByPrice(lines, cart.items());
+        return lines;
+    }
+
+    /**
+     * The slots in ascending product order, packed as product over slot.
+     */
+    private long[] slotsByProduct() {
+        long[] productSlots = new long[slots];
+        int n = 0;
+        for (int pos = 0; pos < tableKeys.length; pos++) {
+            if (tableKeys[pos] != EMPTY) productSlots[n++] = (long) tableKeys[pos] << 32 | tableSlots[pos];
+        }
+        Arrays.sort(productSlots);
+        return productSlots;
+    }
+
+    private static void heapSortByPrice(int[] lines, List<CartItem> items) {
+        for (int i = lines.length / 2 - 1; i >= 0; i--) siftDown(lines, items, i, lines.length);
+        for (int end = lines.length - 1; end > 0; end--) {
+            int top = lines[0];
+            lines[0] = lines[end];
+            lines[end] = top;
+            siftDown(lines, items, 0, end);
+        }
+    }
+
+    private static void siftDown(int[] lines, List<CartItem> items, int node, int size) {
+        while (true) {
+            int largest = node;
+            int left = 2 * node + 1;
+            int right = left + 1;
+            if (left < size && items.get(lines[left]).price() > items.get(lines[largest]).price()) largest = left;
+            if (right < size && items.get(lines[right]).price() > items.get(lines[largest]).price()) largest = right;
+            if (largest == node) return;
+            int swap = lines[node];
+            lines[node] = lines[largest];
+            lines[largest] = swap;
+            node = largest;
+        }
+    }
+
+    private int slotFor(int productId) {
+        int pos = mix(productId) & mask;
+        while (tableKeys[pos] != EMPTY) {
+            if (tableKeys[pos] == productId) return tableSlots[pos];
+            pos = (pos + 1) & mask;
+        }
+        tableKeys[pos] = productId;
+        tableSlots[pos] = slots;
+        return slots++;
+    }
+
+    private int lookup(Integer productId) {
+        if (productId == null) return -1;
+        int key = productId;
+        int pos = mix(key) & mask;
+        while (tableKeys[pos] != EMPTY) {
+            if (tableKeys[pos] == key) return tableSlots[pos];
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return (x + y - 1) / y;
+    }
+
+    private static int size(List<?> list) {
+        return list == null ? 0 : list.size();
+    }
+}
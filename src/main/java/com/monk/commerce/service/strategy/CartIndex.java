@@ -0,0 +1,115 @@
+package com.monk.commerce.service.strategy;
+
+import com.monk.commerce.dto.CartItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The lines of one cart sorted by product id, built once per evaluation so that each coupon finds
+ * its products by searching instead of scanning every line. Searches gallop forward from a given
+ * position, so a coupon visiting its products in ascending order merges them with the cart in time
+ * proportional to its own products, times the log of the distance skipped. Lines without a product
+ * id are left out.
+ */
+public final class CartIndex {
+
+    // Below this many lines an insertion sort beats packing and sorting keys
+    private static final int INSERTION_SORT_MAX = 32;
+
+    private final List<CartItem> items;
+    private final int[] lines;
+    private final int[] productIds;
+    private final int size;
+
+    private CartIndex(List<CartItem> items, int[] lines, int[] productIds, int size) {
+        this.items = items;
+        this.lines = lines;
+        this.productIds = productIds;
+        this.size = size;
+    }
+
+    public static CartIndex of(List<CartItem> items) {
+        int n = 0;
+        int[] lines = new int[items.size()];
+        int[] productIds = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            Integer productId = items.get(i).productId();
+            if (productId == null) continue;
+            lines[n] = i;
+            productIds[n++] = productId;
+        }
+        if (n <= INSERTION_SORT_MAX) {
+            for (int i = 1; i < n; i++) {
+                int line = lines[i];
+                int product = productIds[i];
+                int j = i - 1;
+                while (j >= 0 && productIds[j] > product) {
+                    lines[j + 1] = lines[j];
+                    productIds[j + 1] = productIds[j];
+                    j--;
+                }
+                lines[j + 1] = line;
+                productIds[j + 1] = product;
+            }
+        } else {
+            // Product over line number, so one primitive sort orders by product and keeps cart order within one
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) keys[i] = (long) productIds[i] << 32 | lines[i];
+            Arrays.sort(keys);
+            for (int i = 0; i < n; i++) {
+                productIds[i] = (int) (keys[i] >> 32);
+                lines[i] = (int) keys[i];
+            }
+        }
+        return new CartIndex(items, lines, productIds, n);
+    }
+
+    public List<CartItem> items() {
+        return items;
+    }
+
+    /** The number of lines indexed. */
+    public int size() {
+        return size;
+    }
+
+    /** The product id at sorted position {@code i}. */
+    public int productId(int i) {
+        return productIds[i];
+    }
+
+    /** The cart line number at sorted position {@code i}. */
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public CartItem item(int i) {
+        return items.get(lines[i]);
+    }
+
+    /**
+     * The first position at or after {@code from} whose product id is not below {@code product},
+     * or {@link #size()} if there is none.
+     */
+    public int lowerBound(int product, int from) {
+        if (from >= size || productIds[from] >= product) return from;
+        // Double the step until it passes the product, then binary-search the last step
+        int lo = from;
+        int step = 1;
+        int hi = from + 1;
+        while (hi < size && productIds[hi] < product) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        if (hi > size) hi = size;
+        lo++;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (productIds[mid] < product) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -9,12 +9,33 @@ public interface CouponStrategy {
 
     boolean isApplicable(CartRequest cart, CouponResponse coupon);
 
+    /**
+     * The discount for a cart that {@link #isApplicable(CartRequest, CouponResponse)} accepted.
+     */
     double calculateDiscount(CartRequest cart, CouponResponse coupon);
 
+    /**
+     * Like {@link #isApplicable(CartRequest, CouponResponse)}, for a large cart whose lines are
+     * already sorted by product. Strategies that look products up in the cart search the index
+     * instead of scanning every line.
+     */
+    default boolean isApplicable(CartRequest cart, CartIndex index, CouponResponse coupon) {
+        return isApplicable(cart, coupon);
+    }
+
+    default double calculateDiscount(CartRequest cart, CartIndex index, CouponResponse coupon) {
+        return calculateDiscount(cart, coupon);
+    }
+
     ApplyCouponResponse applyCoupon(CartRequest cart, CouponResponse coupon);
 
     CouponType getType();
 
+    /**
+     * Rejects details that cannot be evaluated, before the coupon is stored.
+     */
+    default void validate(CouponDetails details) {}
+
     default boolean isExpired(CouponResponse coupon) {
         LocalDate expiry = coupon.details().expiryDate();
         return expiry != null && expiry.isBefore(LocalDate.now());
@@ -14,9 +14,23 @@ public class CouponStrategyFactory {
 
     @Autowired
     public CouponStrategyFactory(List<CouponStrategy> strategies) {
+        this(strategies, false);
+    }
+
+    /**
+     * With {@code shadow}, the shadow strategies replace the primary ones of their type and the
+     * other types keep their primary strategy.
+     */
+    public CouponStrategyFactory(List<CouponStrategy> strategies, boolean shadow) {
+        for (CouponStrategy strategy : strategies) {
+            CouponHandler annotation = strategy.getClass().getAnnotation(CouponHandler.class);
+            if (annotation != null && !annotation.shadow())
+                strategyMap.put(annotation.value(), strategy);
+        }
+        if (!shadow) return;
         for (CouponStrategy strategy : strategies) {
             CouponHandler annotation = strategy.getClass().getAnnotation(CouponHandler.class);
-            if (annotation != null)
+            if (annotation != null && annotation.shadow())
                 strategyMap.put(annotation.value(), strategy);
         }
     }
@@ -39,6 +39,29 @@ public class ProductWiseCouponStrategy implements CouponStrategy {
                 .sum();
     }
 
+    @Override
+    public boolean isApplicable(CartRequest cart, CartIndex index, CouponResponse coupon) {
+        if (isExpired(coupon)) return false;
+        var details = mapper.convertValue(coupon.details(), ProductWiseDetails.class);
+        if (details.productId() == null) return false;
+        int product = details.productId();
+        int pos = index.lowerBound(product, 0);
+        return pos < index.size() && index.productId(pos) == product;
+    }
+
+    @Override
+    public double calculateDiscount(CartRequest cart, CartIndex index, CouponResponse coupon) {
+        var details = mapper.convertValue(coupon.details(), ProductWiseDetails.class);
+        if (details.productId() == null) return 0;
+        int product = details.productId();
+        double discount = 0;
+        for (int pos = index.lowerBound(product, 0); pos < index.size() && index.productId(pos) == product; pos++) {
+            CartItem item = index.item(pos);
+            discount += item.price() * item.quantity() * details.discount() / 100;
+        }
+        return discount;
+    }
+
     @Override
     public ApplyCouponResponse applyCoupon(CartRequest cart, CouponResponse coupon) {
         if (isExpired(coupon)) throw new CouponExpiredException(coupon.id());;
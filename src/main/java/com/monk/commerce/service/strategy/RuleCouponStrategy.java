@@ -0,0 +1,77 @@
+package com.monk.commerce.service.strategy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monk.commerce.annotation.CouponHandler;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.CouponExpiredException;
+import com.monk.commerce.service.rule.CompiledRule;
+import com.monk.commerce.service.rule.RuleCompiler;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@CouponHandler(CouponType.RULE)
+public class RuleCouponStrategy implements CouponStrategy {
+
+    private final RuleCompiler compiler;
+    private final ObjectMapper mapper;
+
+    public RuleCouponStrategy(RuleCompiler compiler, ObjectMapper mapper) {
+        this.compiler = compiler;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public CouponType getType() {
+        return CouponType.RULE;
+    }
+
+    @Override
+    public void validate(CouponDetails details) {
+        rule(details);
+    }
+
+    @Override
+    public boolean isApplicable(CartRequest cart, CouponResponse coupon) {
+        if (isExpired(coupon)) return false;
+        return rule(coupon.details()).matches(cart.items());
+    }
+
+    @Override
+    public double calculateDiscount(CartRequest cart, CouponResponse coupon) {
+        // Callers have already run the condition through isApplicable
+        List<CartItem> items = cart.items();
+        return rule(coupon.details()).discount(items, total(items));
+    }
+
+    @Override
+    public ApplyCouponResponse applyCoupon(CartRequest cart, CouponResponse coupon) {
+        if (isExpired(coupon)) throw new CouponExpiredException(coupon.id());
+        List<CartItem> cartItems = cart.items();
+        double totalPrice = total(cartItems);
+        CompiledRule rule = rule(coupon.details());
+        double totalDiscount = rule.matches(cartItems) ? rule.discount(cartItems, totalPrice) : 0;
+
+        List<DiscountedItem> items = new ArrayList<>(cartItems.size());
+        for (CartItem item : cartItems) {
+            // The rule discounts the cart as a whole, like CART_WISE
+            items.add(new DiscountedItem(item.productId(), item.quantity(), item.price(), 0.0));
+        }
+        return new ApplyCouponResponse(items, totalPrice, totalDiscount, totalPrice - totalDiscount);
+    }
+
+    private CompiledRule rule(CouponDetails details) {
+        return compiler.compile(details instanceof RuleDetails rule
+                ? rule
+                : mapper.convertValue(details, RuleDetails.class));
+    }
+
+    private static double total(List<CartItem> items) {
+        double total = 0;
+        for (CartItem item : items) total += item.price() * item.quantity();
+        return total;
+    }
+}
@@ -0,0 +1,136 @@
+package com.monk.commerce.service.tenant;
+
+import com.monk.commerce.config.TenantProperties;
+import com.monk.commerce.exception.TenantBusyException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits evaluation work up to {@code coupons.tenants.max-concurrent-evaluations} at a time. While
+ * every slot is taken, callers queue per tenant, and a freed slot goes to the waiting tenant with
+ * the fewest evaluations running, so a tenant flooding the service only ever competes for the
+ * slots the others leave unused. A caller still queued after {@code max-wait} is turned away.
+ */
+@Component
+public class FairShareScheduler {
+
+    private final int slots;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock
+    private final Map<String, Share> shares = new HashMap<>();
+    private int available;
+    private int waiting;
+
+    public FairShareScheduler(TenantProperties properties) {
+        this.slots = properties.maxConcurrentEvaluations() > 0
+                ? properties.maxConcurrentEvaluations()
+                : Runtime.getRuntime().availableProcessors();
+        this.available = slots;
+        this.maxWaitNanos = properties.maxWait().toNanos();
+    }
+
+    /**
+     * Takes a slot for the tenant, waiting for one if needed; every successful call must be paired
+     * with {@link #release(String)}.
+     */
+    public void acquire(String tenant) {
+        admit(tenant, maxWaitNanos);
+    }
+
+    /**
+     * Like {@link #acquire(String)}, but gives up at {@code deadlineNanos}, in {@link System#nanoTime()}
+     * terms, when that comes before {@code max-wait}.
+     */
+    public void acquire(String tenant, long deadlineNanos) {
+        admit(tenant, Math.min(maxWaitNanos, deadlineNanos - System.nanoTime()));
+    }
+
+    private void admit(String tenant, long waitNanos) {
+        lock.lock();
+        try {
+            Share share = shares.computeIfAbsent(tenant, t -> new Share());
+            if (available > 0 && waiting == 0) {
+                available--;
+                share.running++;
+                return;
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            share.queue.add(waiter);
+            waiting++;
+            long remaining = waitNanos;
+            boolean interrupted = false;
+            while (!waiter.admitted && remaining > 0 && !interrupted) {
+                try {
+                    remaining = waiter.admission.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (waiter.admitted) return;
+            share.queue.remove(waiter);
+            waiting--;
+            forgetIfIdle(tenant, share);
+            throw new TenantBusyException(tenant);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(String tenant) {
+        lock.lock();
+        try {
+            Share share = shares.get(tenant);
+            share.running--;
+            available++;
+            while (available > 0 && waiting > 0) admitNext();
+            forgetIfIdle(tenant, share);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int slots() {
+        return slots;
+    }
+
+    private void admitNext() {
+        Share next = null;
+        for (Share share : shares.values()) {
+            if (!share.queue.isEmpty() && (next == null || share.running < next.running)) next = share;
+        }
+        Waiter waiter = next.queue.poll();
+        waiting--;
+        available--;
+        next.running++;
+        waiter.admitted = true;
+        waiter.admission.signal();
+    }
+
+    private void forgetIfIdle(String tenant, Share share) {
+        // The default tenant's share is kept, so its requests allocate nothing here
+        if (share.running == 0 && share.queue.isEmpty() && !TenantContext.DEFAULT.equals(tenant)) {
+            shares.remove(tenant);
+        }
+    }
+
+    private static final class Share {
+        int running;
+        final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    }
+
+    private static final class Waiter {
+        final Condition admission;
+        boolean admitted;
+
+        Waiter(Condition admission) {
+            this.admission = admission;
+        }
+    }
+}
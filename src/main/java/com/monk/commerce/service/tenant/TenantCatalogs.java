@@ -0,0 +1,113 @@
+package com.monk.commerce.service.tenant;
+
+import com.monk.commerce.config.TenantProperties;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.session.CartEvaluator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A catalog partition per tenant, so that evaluating one tenant's carts never walks another's
+ * coupons. The default tenant's partition is the catalog and evaluator beans and is always
+ * loaded. Other partitions are created on a tenant's first request, load their coupons on first
+ * read, and are evicted once unused for {@code coupons.tenants.idle-timeout}, or least recently
+ * used first beyond {@code max-loaded}.
+ */
+@Component
+public class TenantCatalogs {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantCatalogs.class);
+
+    private final TenantPartition defaultPartition;
+    private final Map<String, TenantPartition> partitions = new ConcurrentHashMap<>();
+    private final CouponJsonCache json;
+    private final TenantProperties properties;
+    private final Counter evictedCounter;
+
+    public TenantCatalogs(CouponCatalog catalog, CartEvaluator evaluator, CouponJsonCache json,
+                          TenantProperties properties, MeterRegistry registry) {
+        this.defaultPartition = new TenantPartition(TenantContext.DEFAULT, catalog, evaluator);
+        this.json = json;
+        this.properties = properties;
+        this.evictedCounter = registry.counter("coupons.tenants.evicted");
+        registry.gauge("coupons.tenants.loaded", partitions, Map::size);
+    }
+
+    /** Leases the current thread's tenant partition; close it when done. */
+    public TenantPartition acquire() {
+        return acquire(TenantContext.current());
+    }
+
+    public TenantPartition acquire(String tenant) {
+        if (TenantContext.DEFAULT.equals(tenant)) {
+            // Never evicted
+            defaultPartition.lease();
+            return defaultPartition;
+        }
+        while (true) {
+            TenantPartition partition = partitions.get(tenant);
+            if (partition == null) {
+                partition = partitions.computeIfAbsent(tenant, this::create);
+                if (partitions.size() > properties.maxLoaded()) trim(partition);
+            }
+            if (partition.lease()) return partition;
+        }
+    }
+
+    /** Never evicted, so it can be used without a lease. */
+    public TenantPartition defaultPartition() {
+        return defaultPartition;
+    }
+
+    /** The default partition and every partition currently loaded. */
+    public List<TenantPartition> loaded() {
+        List<TenantPartition> loaded = new ArrayList<>(partitions.size() + 1);
+        loaded.add(defaultPartition);
+        loaded.addAll(partitions.values());
+        return loaded;
+    }
+
+    @Scheduled(fixedDelayString = "${coupons.tenants.sweep-interval:PT1M}")
+    public void evictIdle() {
+        long idleNanos = properties.idleTimeout().toNanos();
+        long now = System.nanoTime();
+        for (TenantPartition partition : partitions.values()) {
+            if (now - partition.lastUsed() >= idleNanos) evict(partition);
+        }
+    }
+
+    private TenantPartition create(String tenant) {
+        log.debug("Creating the catalog partition of tenant {}", tenant);
+        CouponCatalog catalog = defaultPartition.catalog().forTenant(tenant);
+        return new TenantPartition(tenant, catalog, defaultPartition.evaluator().forCatalog(catalog));
+    }
+
+    private void trim(TenantPartition keep) {
+        List<TenantPartition> byAge = new ArrayList<>(partitions.values());
+        byAge.sort(Comparator.comparingLong(TenantPartition::lastUsed));
+        int excess = partitions.size() - Math.max(0, properties.maxLoaded());
+        for (int i = 0; i < byAge.size() && excess > 0; i++) {
+            if (byAge.get(i) != keep && evict(byAge.get(i))) excess--;
+        }
+    }
+
+    private boolean evict(TenantPartition partition) {
+        if (!partition.evict()) return false;
+        partitions.remove(partition.tenant(), partition);
+        json.evictList(partition.tenant());
+        evictedCounter.increment();
+        log.info("Evicted the catalog partition of tenant {}", partition.tenant());
+        return true;
+    }
+}
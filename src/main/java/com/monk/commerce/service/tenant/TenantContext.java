@@ -0,0 +1,41 @@
+package com.monk.commerce.service.tenant;
+
+import java.util.regex.Pattern;
+
+/**
+ * The tenant the current thread works for, set per request from the {@code X-Tenant-Id} header.
+ * Threads outside a request, and requests without the header, work for the default tenant, whose
+ * coupons carry no tenant id in the database.
+ */
+public final class TenantContext {
+
+    public static final String DEFAULT = "default";
+    public static final String HEADER = "X-Tenant-Id";
+
+    private static final Pattern VALID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+
+    private TenantContext() {}
+
+    public static String current() {
+        String tenant = current.get();
+        return tenant == null ? DEFAULT : tenant;
+    }
+
+    public static void set(String tenant) {
+        current.set(tenant);
+    }
+
+    public static void clear() {
+        current.remove();
+    }
+
+    public static boolean isValid(String tenant) {
+        return tenant != null && VALID.matcher(tenant).matches();
+    }
+
+    /** The value of the {@code tenant_id} column for the tenant. */
+    public static String column(String tenant) {
+        return DEFAULT.equals(tenant) ? null : tenant;
+    }
+}
@@ -0,0 +1,67 @@
+package com.monk.commerce.service.tenant;
+
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.session.CartEvaluator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One tenant's catalog and evaluator. Requests lease the partition for as long as they use it, and
+ * it is only evicted while no lease is held, so a write can never land in an evicted partition
+ * after its replacement was loaded.
+ */
+public final class TenantPartition implements AutoCloseable {
+
+    private final String tenant;
+    private final CouponCatalog catalog;
+    private final CartEvaluator evaluator;
+    // Leases held, or -1 once evicted
+    private final AtomicInteger leases = new AtomicInteger();
+    private volatile long lastUsed = System.nanoTime();
+
+    TenantPartition(String tenant, CouponCatalog catalog, CartEvaluator evaluator) {
+        this.tenant = tenant;
+        this.catalog = catalog;
+        this.evaluator = evaluator;
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+    public CouponCatalog catalog() {
+        return catalog;
+    }
+
+    public CartEvaluator evaluator() {
+        return evaluator;
+    }
+
+    /** Ends the lease. */
+    @Override
+    public void close() {
+        lastUsed = System.nanoTime();
+        leases.decrementAndGet();
+    }
+
+    /** False once the partition is evicted, when the caller has to look the tenant up again. */
+    boolean lease() {
+        while (true) {
+            int held = leases.get();
+            if (held < 0) return false;
+            if (leases.compareAndSet(held, held + 1)) {
+                lastUsed = System.nanoTime();
+                return true;
+            }
+        }
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    /** Evicts the partition unless a lease is held. */
+    boolean evict() {
+        return leases.compareAndSet(0, -1);
+    }
+}
@@ -0,0 +1,190 @@
+package com.monk.commerce.service.warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monk.commerce.config.WarmupProperties;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.service.CouponService;
+import com.monk.commerce.service.catalog.CatalogEntry;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays carts through the evaluation path until per-round latency stops moving, so that the
+ * JIT, Jackson and Hibernate are warm before the first real request. Application runners finish
+ * before Spring Boot publishes {@code ReadinessState.ACCEPTING_TRAFFIC}, so the readiness probe
+ * stays down for the whole warm-up.
+ * <p>
+ * Carts go through the service's preview calls, which run the evaluation and apply paths without
+ * redeeming a coupon or publishing an event.
+ */
+@Component
+public class WarmupRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmupRunner.class);
+    private static final int COUPONS_PER_TYPE = 4;
+
+    private final CouponService service;
+    private final CouponCatalog catalog;
+    private final CouponRepository repository;
+    private final ObjectMapper mapper;
+    private final MeterRegistry registry;
+    private final WarmupProperties properties;
+    private final AtomicInteger lastRounds;
+
+    public WarmupRunner(CouponService service, CouponCatalog catalog, CouponRepository repository,
+                        ObjectMapper mapper, MeterRegistry registry, WarmupProperties properties) {
+        this.service = service;
+        this.catalog = catalog;
+        this.repository = repository;
+        this.mapper = mapper;
+        this.registry = registry;
+        this.properties = properties;
+        this.lastRounds = registry.gauge("coupons.warmup.rounds", new AtomicInteger());
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.enabled()) return;
+        long start = System.nanoTime();
+        catalog.ensureLoaded();
+
+        List<CouponResponse> samples = sampleCoupons();
+        List<CartRequest> carts = new ArrayList<>(recordedCarts());
+        carts.addAll(syntheticCarts(samples));
+
+        int rounds = 0;
+        int stable = 0;
+        double previous = Double.NaN;
+        long deadline = start + properties.maxDuration().toNanos();
+        while (rounds < properties.maxRounds() && System.nanoTime() < deadline) {
+            double nanosPerCart = runRound(carts, samples);
+            rounds++;
+            if (!Double.isNaN(previous) && Math.abs(nanosPerCart - previous) <= previous * properties.tolerance()) {
+                stable++;
+            } else {
+                stable = 0;
+            }
+            previous = nanosPerCart;
+            if (rounds >= properties.minRounds() && stable >= properties.stableRounds()) break;
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        Timer.builder("coupons.warmup.duration")
+                .description("Time spent warming up the evaluation path before readiness")
+                .tag("stabilized", String.valueOf(stable >= properties.stableRounds()))
+                .register(registry)
+                .record(elapsed);
+        lastRounds.set(rounds);
+        log.info("Warm-up finished after {} rounds over {} carts in {} ms ({} ns/cart in the last round)",
+                rounds, carts.size(), elapsed.toMillis(), Math.round(previous));
+    }
+
+    private double runRound(List<CartRequest> carts, List<CouponResponse> samples) {
+        long start = System.nanoTime();
+        for (CartRequest cart : carts) {
+            try {
+                mapper.writeValueAsBytes(service.previewApplicableCoupons(cart));
+            } catch (Exception ignored) {
+                // malformed recorded carts still exercise the code path
+            }
+            for (CouponResponse coupon : samples) {
+                try {
+                    mapper.writeValueAsBytes(service.previewCoupon(coupon.id(), cart));
+                } catch (Exception ignored) {
+                    // expired, inactive or inapplicable samples still exercise the code path
+                }
+            }
+        }
+        if (!samples.isEmpty()) repository.findById(samples.get(0).id());
+        return (System.nanoTime() - start) / (double) Math.max(1, carts.size());
+    }
+
+    private List<CouponResponse> sampleCoupons() {
+        Map<CouponType, List<CouponResponse>> byType = new EnumMap<>(CouponType.class);
+        for (CatalogEntry entry : catalog.entries()) {
+            List<CouponResponse> list = byType.computeIfAbsent(entry.coupon().type(), t -> new ArrayList<>());
+            if (list.size() < COUPONS_PER_TYPE) list.add(entry.coupon());
+        }
+        List<CouponResponse> samples = new ArrayList<>();
+        byType.values().forEach(samples::addAll);
+        return samples;
+    }
+
+    private List<CartRequest> recordedCarts() {
+        if (properties.cartsFile() == null) return List.of();
+        List<CartRequest> carts = new ArrayList<>();
+        int malformed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(properties.cartsFile())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    carts.add(mapper.readValue(line, CartRequest.class));
+                } catch (JsonProcessingException e) {
+                    malformed++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read recorded warm-up carts {} after {} carts: {}", properties.cartsFile(),
+                    carts.size(), e.getMessage());
+        }
+        if (malformed > 0) {
+            log.warn("Skipped {} malformed lines of recorded warm-up carts {}", malformed, properties.cartsFile());
+        }
+        return carts;
+    }
+
+    /**
+     * Builds seeded random carts around the sampled coupons' products, mixed with unrelated products,
+     * so that each strategy runs through both its applicable and its non-applicable branches.
+     */
+    private List<CartRequest> syntheticCarts(List<CouponResponse> samples) {
+        List<Integer> products = new ArrayList<>();
+        for (CouponResponse coupon : samples) {
+            if (coupon.details() instanceof ProductWiseDetails d && d.productId() != null) {
+                products.add(d.productId());
+            } else if (coupon.details() instanceof BxGyDetails d) {
+                addProducts(products, d.buyProducts());
+                addProducts(products, d.getProducts());
+            }
+        }
+
+        Random random = new Random(42);
+        List<CartRequest> carts = new ArrayList<>(properties.syntheticCarts());
+        for (int i = 0; i < properties.syntheticCarts(); i++) {
+            int lines = 1 + random.nextInt(8);
+            List<CartItem> items = new ArrayList<>(lines);
+            for (int j = 0; j < lines; j++) {
+                int productId = !products.isEmpty() && random.nextBoolean()
+                        ? products.get(random.nextInt(products.size()))
+                        : 1 + random.nextInt(1_000);
+                items.add(new CartItem(productId, 1 + random.nextInt(5), 10 + random.nextInt(490)));
+            }
+            carts.add(new CartRequest(items));
+        }
+        return carts;
+    }
+
+    private static void addProducts(List<Integer> products, List<ProductQuantity> quantities) {
+        if (quantities == null) return;
+        for (ProductQuantity pq : quantities) {
+            if (pq.productId() != null) products.add(pq.productId());
+        }
+    }
+}
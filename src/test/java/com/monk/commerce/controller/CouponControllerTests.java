@@ -14,12 +14,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -49,6 +54,7 @@ class CouponControllerTests {
 
     @BeforeEach
     void setUp() {
+        Mockito.clearInvocations(service);
         sampleResponse = new CouponResponse(
                 1,
                 CouponType.CART_WISE,
@@ -74,23 +80,56 @@ class CouponControllerTests {
 
     @Test
     void testGetAllCoupons() throws Exception {
-        Mockito.when(service.getAllCoupons()).thenReturn(List.of(sampleResponse));
+        Mockito.when(service.getCatalogETag()).thenReturn("\"catalog-3\"");
+        Mockito.when(service.getAllCouponsJson()).thenReturn(
+                new CachedJson("\"catalog-3\"", mapper.writeValueAsBytes(List.of(sampleResponse))));
 
         mockMvc.perform(get("/coupons"))
                 .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"catalog-3\""))
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].type").value("CART_WISE"));
     }
 
     @Test
     void testGetCouponById() throws Exception {
-        Mockito.when(service.getCoupon(1)).thenReturn(sampleResponse);
+        Mockito.when(service.getCouponETag(1)).thenReturn("\"1-7\"");
+        Mockito.when(service.getCouponJson(1))
+                .thenReturn(new CachedJson("\"1-7\"", mapper.writeValueAsBytes(sampleResponse)));
 
         mockMvc.perform(get("/coupons/1"))
                 .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", "\"1-7\""))
                 .andExpect(jsonPath("$.id").value(1));
     }
 
+    @Test
+    void testConditionalGetReturnsNotModifiedWithoutBody() throws Exception {
+        Mockito.when(service.getCouponETag(2)).thenReturn("\"2-4\"");
+        Mockito.when(service.getCatalogETag()).thenReturn("\"catalog-8\"");
+
+        mockMvc.perform(get("/coupons/2").header("If-None-Match", "\"2-3\", W/\"2-4\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"2-4\""))
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/coupons").header("If-None-Match", "\"catalog-8\""))
+                .andExpect(status().isNotModified());
+        Mockito.verify(service, Mockito.never()).getCouponJson(2);
+        Mockito.verify(service, Mockito.never()).getAllCouponsJson();
+    }
+
+    @Test
+    void testConditionalGetWithStaleETagReturnsBody() throws Exception {
+        Mockito.when(service.getCouponETag(3)).thenReturn("\"3-9\"");
+        Mockito.when(service.getCouponJson(3))
+                .thenReturn(new CachedJson("\"3-9\"", mapper.writeValueAsBytes(sampleResponse)));
+
+        mockMvc.perform(get("/coupons/3").header("If-None-Match", "\"3-8\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3-9\""));
+    }
+
     @Test
     void testUpdateCoupon() throws Exception {
         CouponRequest request = new CouponRequest(
@@ -139,6 +178,43 @@ class CouponControllerTests {
                 .andExpect(jsonPath("$.applicableCoupons[0].type").value("CART_WISE"));
     }
 
+    @Test
+    void testGetApplicableCouponsWithinADeadline() throws Exception {
+        CartRequest cart = new CartRequest(List.of(new CartItem(1, 2, 50.0)));
+        Mockito.when(service.getApplicableCoupons(any(), any())).thenReturn(new ApplicableCouponsResponse(
+                List.of(new ApplicableCoupon(1, CouponType.CART_WISE, 10.0)), true));
+
+        mockMvc.perform(post("/coupons/applicable-coupons?deadlineMs=80")
+                        .header("X-Deadline-Ms", "50")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(cart)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.partial").value(true))
+                .andExpect(jsonPath("$.applicableCoupons[0].couponId").value(1));
+        Mockito.verify(service).getApplicableCoupons(any(), eq(Duration.ofMillis(50)));
+
+        mockMvc.perform(post("/coupons/applicable-coupons?deadlineMs=80")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(cart)))
+                .andExpect(status().isOk());
+        Mockito.verify(service).getApplicableCoupons(any(), eq(Duration.ofMillis(80)));
+
+        // Nor can the header extend it
+        mockMvc.perform(post("/coupons/applicable-coupons?deadlineMs=30")
+                        .header("X-Deadline-Ms", "500")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(cart)))
+                .andExpect(status().isOk());
+        Mockito.verify(service).getApplicableCoupons(any(), eq(Duration.ofMillis(30)));
+    }
+
+    @Test
+    void testInvalidTenantIsRejected() throws Exception {
+        mockMvc.perform(get("/coupons").header("X-Tenant-Id", "../acme"))
+                .andExpect(status().isBadRequest());
+        Mockito.verifyNoInteractions(service);
+    }
+
     @Test
     void testApplyCoupon() throws Exception {
         CartRequest cart = new CartRequest(List.of(new CartItem(1, 2, 50.0)));
@@ -147,7 +223,7 @@ class CouponControllerTests {
                 100.0, 10.0, 90.0
         );
 
-        Mockito.when(service.applyCoupon(eq(1), any())).thenReturn(applied);
+        Mockito.when(service.applyCoupon(eq(1), any(), isNull())).thenReturn(applied);
 
         mockMvc.perform(post("/coupons/apply-coupon/1")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -157,4 +233,110 @@ class CouponControllerTests {
                 .andExpect(jsonPath("$.totalDiscount").value(10.0))
                 .andExpect(jsonPath("$.finalPrice").value(90.0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testApplyCouponForwardsIdempotencyKey() throws Exception {
+        CartRequest cart = new CartRequest(List.of(new CartItem(1, 2, 50.0)));
+        ApplyCouponResponse applied = new ApplyCouponResponse(
+                List.of(new DiscountedItem(1, 2, 50.0, 10.0)),
+                100.0, 10.0, 90.0
+        );
+
+        Mockito.when(service.applyCoupon(eq(1), any(), eq("order-17"))).thenReturn(applied);
+
+        mockMvc.perform(post("/coupons/apply-coupon/1")
+                        .header("Idempotency-Key", "order-17")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(cart)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalDiscount").value(10.0));
+    }
+
+    @Test
+    void testGetChanges() throws Exception {
+        Mockito.when(service.getChanges(5L))
+                .thenReturn(new CouponChangesResponse(5L, 9, List.of(sampleResponse), List.of(4)));
+        Mockito.when(service.getChanges(null))
+                .thenReturn(new CouponChangesResponse(null, 9, List.of(sampleResponse), List.of()));
+
+        mockMvc.perform(get("/coupons/changes").param("since", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(9))
+                .andExpect(jsonPath("$.changed[0].id").value(1))
+                .andExpect(jsonPath("$.deleted[0]").value(4));
+        mockMvc.perform(get("/coupons/changes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changed.length()").value(1));
+    }
+
+    @Test
+    void testCartSessionEndpoints() throws Exception {
+        CartSessionResponse session = new CartSessionResponse("abc", null, List.of(new CartItem(1, 2, 50.0)), 100.0,
+                List.of(new ApplicableCoupon(1, CouponType.CART_WISE, 10.0)));
+        Mockito.when(service.createCartSession(any())).thenReturn(session);
+        Mockito.when(service.updateCartSession(eq("abc"), any())).thenReturn(session);
+        Mockito.when(service.getCartSession("abc")).thenReturn(session);
+
+        mockMvc.perform(post("/coupons/cart-sessions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(new CartRequest(List.of(new CartItem(1, 2, 50.0))))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sessionId").value("abc"));
+        mockMvc.perform(patch("/coupons/cart-sessions/abc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"action\":\"ADD\",\"productId\":1,\"quantity\":1}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.applicableCoupons[0].couponId").value(1));
+        mockMvc.perform(get("/coupons/cart-sessions/abc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(100.0));
+        mockMvc.perform(delete("/coupons/cart-sessions/abc"))
+                .andExpect(status().isOk());
+
+        Mockito.verify(service).updateCartSession("abc",
+                List.of(new CartChange(CartChange.Action.ADD, 1, 1, null)));
+        Mockito.verify(service).deleteCartSession("abc");
+    }
+
+    @Test
+    void testSimulationTakesCouponsAndACartsFile() throws Exception {
+        SimulationReport report = new SimulationReport(2, 0, 300.0, 1, 20.0, List.of(), 5);
+        Mockito.when(service.simulateCampaign(any(), any())).thenReturn(report);
+        List<CouponRequest> proposed = List.of(
+                new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 10.0, null)));
+
+        mockMvc.perform(multipart("/coupons/simulations")
+                        .file(new MockMultipartFile("coupons", "", MediaType.APPLICATION_JSON_VALUE,
+                                mapper.writeValueAsBytes(proposed)))
+                        .file(new MockMultipartFile("carts", "carts.jsonl", "application/x-ndjson",
+                                "{\"items\":[]}\n{\"items\":[]}\n".getBytes())))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.carts").value(2))
+                .andExpect(jsonPath("$.bestLiveDiscount").value(20.0));
+
+        Mockito.verify(service).simulateCampaign(eq(proposed), any());
+    }
+
+    @Test
+    void testSegmentEndpoints() throws Exception {
+        SegmentResponse segment = new SegmentResponse("vip", 3, 30, Instant.parse("2030-01-01T00:00:00Z"));
+        Mockito.when(service.uploadSegment(eq("vip"), any())).thenAnswer(inv -> {
+            InputStream members = inv.getArgument(1);
+            return new String(members.readAllBytes()).equals("1\n2\n3\n") ? segment : null;
+        });
+        Mockito.when(service.getSegment("vip")).thenReturn(segment);
+
+        mockMvc.perform(put("/coupons/segments/vip")
+                        .contentType(MediaType.TEXT_PLAIN)
+                        .content("1\n2\n3\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.members").value(3));
+        mockMvc.perform(get("/coupons/segments/vip"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("vip"));
+        mockMvc.perform(delete("/coupons/segments/vip"))
+                .andExpect(status().isOk());
+
+        Mockito.verify(service).deleteSegment("vip");
+    }
+}
@@ -0,0 +1,133 @@
+package com.monk.commerce.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monk.commerce.config.*;
+import com.monk.commerce.repository.ArchivedCouponRepository;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.events.EventPublisher;
+import com.monk.commerce.service.idempotency.IdempotencyCache;
+import com.monk.commerce.service.impl.CouponServiceImpl;
+import com.monk.commerce.service.ledger.RedemptionLedger;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.rule.RuleCompiler;
+import com.monk.commerce.service.segment.CustomerSegments;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.session.CartSessionStore;
+import com.monk.commerce.service.shadow.ShadowEvaluator;
+import com.monk.commerce.service.simulation.CampaignSimulator;
+import com.monk.commerce.service.strategy.*;
+import com.monk.commerce.service.tenant.FairShareScheduler;
+import com.monk.commerce.service.tenant.TenantCatalogs;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * A {@link CouponServiceImpl} wired by hand over a coupon repository, with every collaborator in
+ * memory. The ledger, events and shadow evaluation are off unless a test passes its own.
+ */
+public final class CouponServiceFixture {
+
+    public final CouponService service;
+    public final CouponCatalog catalog;
+    public final CouponStrategyFactory factory;
+    public final RedemptionLimiter limiter;
+    public final CartEvaluator evaluator;
+
+    private CouponServiceFixture(Builder builder) {
+        ObjectMapper mapper = builder.mapper;
+        CouponRepository repository = builder.repository;
+        factory = new CouponStrategyFactory(List.of(
+                new CartWiseCouponStrategy(mapper),
+                new ProductWiseCouponStrategy(mapper),
+                new BxGyCouponStrategy(mapper),
+                new RuleCouponStrategy(new RuleCompiler(), mapper)
+        ));
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+        limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        evaluator = new CartEvaluator(catalog, factory, limiter, builder.segments, new EvaluationProperties(256));
+        CouponJsonCache json = new CouponJsonCache(mapper, new JsonCacheProperties(100, DataSize.ofMegabytes(1)));
+        TenantCatalogs tenants = new TenantCatalogs(catalog, evaluator, json, builder.tenantProperties,
+                new SimpleMeterRegistry());
+        service = new CouponServiceImpl(repository, builder.archive, tenants,
+                new FairShareScheduler(builder.tenantProperties), factory, limiter,
+                new IdempotencyCache(new IdempotencyProperties(Duration.ofMinutes(1), 100)), builder.ledger,
+                builder.events, json, new CartSessionStore(new CartSessionProperties(Duration.ofMinutes(1), 100)),
+                new CampaignSimulator(evaluator, factory, mapper, builder.simulationProperties),
+                new ShadowEvaluator(List.of(), new ShadowProperties(false, 0, 1, 1, 0), new SimpleMeterRegistry()),
+                builder.segments, mapper);
+    }
+
+    public static Builder builder(CouponRepository repository, ObjectMapper mapper) {
+        return new Builder(repository, mapper);
+    }
+
+    public static final class Builder {
+
+        private final CouponRepository repository;
+        private final ObjectMapper mapper;
+        private ArchivedCouponRepository archive = mock(ArchivedCouponRepository.class);
+        // Neither is started, so both drop what they are given
+        private RedemptionLedger ledger = new RedemptionLedger(new LedgerProperties(false, Path.of("unused"),
+                LedgerProperties.FsyncPolicy.NEVER, Duration.ofSeconds(1), DataSize.ofMegabytes(1),
+                Duration.ofHours(1), 1, 1, false, Duration.ofDays(7)));
+        private EventPublisher events = new EventPublisher(new EventProperties(false, 8,
+                EventProperties.Overflow.DROP, 1, List.of(), Path.of("unused"), 1), List.of(),
+                new SimpleMeterRegistry());
+        private CustomerSegments segments = CustomerSegments.inMemory();
+        private TenantProperties tenantProperties =
+                new TenantProperties(Duration.ofMinutes(30), 10, 0, Duration.ofSeconds(1));
+        private SimulationProperties simulationProperties =
+                new SimulationProperties(1, 512, 100, DataSize.ofMegabytes(1), 1);
+
+        private Builder(CouponRepository repository, ObjectMapper mapper) {
+            this.repository = repository;
+            this.mapper = mapper;
+        }
+
+        public Builder archive(ArchivedCouponRepository archive) {
+            this.archive = archive;
+            return this;
+        }
+
+        public Builder ledger(RedemptionLedger ledger) {
+            this.ledger = ledger;
+            return this;
+        }
+
+        public Builder events(EventPublisher events) {
+            this.events = events;
+            return this;
+        }
+
+        public Builder segments(CustomerSegments segments) {
+            this.segments = segments;
+            return this;
+        }
+
+        public Builder tenants(TenantProperties tenantProperties) {
+            this.tenantProperties = tenantProperties;
+            return this;
+        }
+
+        public Builder simulation(SimulationProperties simulationProperties) {
+            this.simulationProperties = simulationProperties;
+            return this;
+        }
+
+        public CouponServiceFixture build() {
+            return new CouponServiceFixture(this);
+        }
+    }
+}
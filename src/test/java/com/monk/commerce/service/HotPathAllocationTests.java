@@ -0,0 +1,180 @@
+package com.monk.commerce.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.strategy.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Bytes allocated per call on the evaluation hot path, measured with the per-thread allocation
+ * counter after warm-up on a fixed catalog and cart. Each operation fails when it allocates more
+ * than its budget in {@code allocation-budgets.properties}; a budget can be overridden with
+ * {@code -Dallocation.budget.<operation>=<bytes>}. Raise a budget only together with the change
+ * that needs it.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class HotPathAllocationTests {
+
+    private static final Logger log = LoggerFactory.getLogger(HotPathAllocationTests.class);
+    private static final int WARMUP = 20_000;
+    private static final int MEASURED = 10_000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Properties budgets = new Properties();
+    private CouponStrategyFactory factory;
+    private CouponService service;
+    private CouponCatalog catalog;
+    private CartRequest cart;
+
+    @BeforeAll
+    void setUp() throws IOException {
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "per-thread allocation counters are not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        try (InputStream in = getClass().getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        CouponRepository repository = mock(CouponRepository.class);
+        when(repository.findByTenantIdIsNull()).thenReturn(catalogRows());
+        CouponServiceFixture fixture = CouponServiceFixture.builder(repository, mapper).build();
+        factory = fixture.factory;
+        service = fixture.service;
+        catalog = fixture.catalog;
+        catalog.ensureLoaded();
+
+        List<CartItem> items = new ArrayList<>();
+        for (int product = 1; product <= 10; product++) items.add(new CartItem(product, product % 3 + 1, 10.0 * product));
+        cart = new CartRequest(items);
+    }
+
+    /**
+     * 40 CART_WISE, 100 PRODUCT_WISE, 20 BXGY and 10 RULE coupons over products 1 to 50, so about a
+     * quarter of them apply to the cart.
+     */
+    private static List<Coupon> catalogRows() {
+        List<Coupon> rows = new ArrayList<>();
+        LocalDate expiry = LocalDate.now().plusYears(1);
+        int id = 1;
+        for (int i = 0; i < 40; i++) {
+            rows.add(row(id++, CouponType.CART_WISE, "{\"threshold\":" + (100 + 25 * i) + ",\"discount\":" + (5 + i % 10) + "}",
+                    i % 2 == 0 ? expiry : null));
+        }
+        for (int i = 0; i < 100; i++) {
+            rows.add(row(id++, CouponType.PRODUCT_WISE, "{\"productId\":" + (1 + i % 50) + ",\"discount\":" + (5 + i % 20) + "}",
+                    i % 2 == 0 ? expiry : null));
+        }
+        for (int i = 0; i < 20; i++) {
+            int buy = 1 + i % 12;
+            rows.add(row(id++, CouponType.BXGY, "{\"buyProducts\":[{\"productId\":" + buy + ",\"quantity\":2},"
+                    + "{\"productId\":" + (buy + 1) + ",\"quantity\":2}],"
+                    + "\"getProducts\":[{\"productId\":" + (buy + 2) + ",\"quantity\":1}],\"repetitionLimit\":2}", null));
+        }
+        for (int i = 0; i < 10; i++) {
+            rows.add(row(id++, CouponType.RULE, "{\"condition\":\"total >= " + (200 * i) + " && contains(" + (1 + i) + ")\","
+                    + "\"discount\":\"min(total * 0.1, " + (10 + i) + ")\"}", null));
+        }
+        return rows;
+    }
+
+    private static Coupon row(int id, CouponType type, String details, LocalDate expiry) {
+        return Coupon.builder().id(id).type(type).details(details).expiryDate(expiry).version((long) id).build();
+    }
+
+    @Test
+    void getApplicableCoupons() {
+        assertFalse(service.getApplicableCoupons(cart).applicableCoupons().isEmpty());
+        assertWithinBudget("applicable-coupons", () -> service.getApplicableCoupons(cart));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CouponType.class)
+    void applyCoupon(CouponType type) {
+        int id = applicableCoupon(type).id();
+        assertWithinBudget("apply." + name(type), () -> service.applyCoupon(id, cart));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CouponType.class)
+    void strategyEvaluate(CouponType type) {
+        CouponStrategy strategy = factory.getStrategy(type);
+        CouponResponse coupon = applicableCoupon(type);
+        assertWithinBudget("strategy." + name(type) + ".evaluate", () -> {
+            if (strategy.isApplicable(cart, coupon)) strategy.calculateDiscount(cart, coupon);
+        });
+    }
+
+    @ParameterizedTest
+    @EnumSource(CouponType.class)
+    void strategyApply(CouponType type) {
+        CouponStrategy strategy = factory.getStrategy(type);
+        CouponResponse coupon = applicableCoupon(type);
+        assertWithinBudget("strategy." + name(type) + ".apply", () -> strategy.applyCoupon(cart, coupon));
+    }
+
+    private CouponResponse applicableCoupon(CouponType type) {
+        CouponStrategy strategy = factory.getStrategy(type);
+        return catalog.entries().stream()
+                .map(entry -> entry.coupon())
+                .filter(coupon -> coupon.type() == type && strategy.isApplicable(cart, coupon)
+                        && strategy.calculateDiscount(cart, coupon) > 0)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("no applicable " + type + " coupon in the fixture"));
+    }
+
+    private void assertWithinBudget(String operation, Runnable call) {
+        long budget = budget(operation);
+        long measured = bytesPerCall(call);
+        log.info("{}: {} bytes per call (budget {})", operation, measured, budget);
+        assertTrue(measured <= budget, operation + " allocates " + measured + " bytes per call, over its budget of "
+                + budget + "; avoid the new allocation or raise allocation.budget." + operation);
+    }
+
+    private long bytesPerCall(Runnable call) {
+        for (int i = 0; i < WARMUP; i++) call.run();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED; i++) call.run();
+        long after = threads.getThreadAllocatedBytes(thread);
+        return (after - before) / MEASURED;
+    }
+
+    private long budget(String operation) {
+        String key = "allocation.budget." + operation;
+        String value = System.getProperty(key, budgets.getProperty(key));
+        assertNotNull(value, "no budget for " + operation + " in allocation-budgets.properties");
+        return Long.parseLong(value.trim());
+    }
+
+    private static String name(CouponType type) {
+        return type.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,163 @@
+package com.monk.commerce.service.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.ArchiveProperties;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.JsonCacheProperties;
+import com.monk.commerce.config.TenantProperties;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.repository.ArchivedCouponRepository;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.strategy.CouponStrategyFactory;
+import com.monk.commerce.service.tenant.TenantCatalogs;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CouponArchiverTests {
+
+    private static final LocalDate TODAY = LocalDate.of(2030, 6, 1);
+
+    private CouponRepository repository;
+    private ArchivedCouponRepository archive;
+    private CouponCatalog catalog;
+    private SimpleMeterRegistry registry;
+    // The coupon table
+    private final Map<Integer, Coupon> table = new TreeMap<>();
+    private final List<Integer> archived = new ArrayList<>();
+    private final List<Integer> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CouponRepository.class);
+        archive = mock(ArchivedCouponRepository.class);
+        registry = new SimpleMeterRegistry();
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+
+        when(repository.findByTenantIdIsNull()).thenAnswer(inv -> new ArrayList<>(table.values()));
+        when(repository.findIdsExpiredBefore(any(), any())).thenAnswer(inv -> {
+            LocalDate cutoff = inv.getArgument(0);
+            Pageable page = inv.getArgument(1);
+            batches.add(page.getPageSize());
+            return table.values().stream()
+                    .filter(c -> c.getExpiryDate() != null && c.getExpiryDate().isBefore(cutoff))
+                    .map(Coupon::getId).limit(page.getPageSize()).toList();
+        });
+        when(archive.copyFromCoupons(anyCollection(), anyLong())).thenAnswer(inv -> {
+            Collection<Integer> ids = inv.getArgument(0);
+            archived.addAll(ids);
+            return ids.size();
+        });
+        doAnswer(inv -> {
+            Iterable<Integer> ids = inv.getArgument(0);
+            ids.forEach(table::remove);
+            return null;
+        }).when(repository).deleteAllByIdInBatch(any());
+    }
+
+    private void coupon(int id, LocalDate expiry) {
+        table.put(id, Coupon.builder().id(id).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").expiryDate(expiry).version((long) id).build());
+    }
+
+    private CouponArchiver archiver(int minBatch, int maxBatch, Duration targetLatency) {
+        ObjectMapper mapper = new ObjectMapper();
+        CouponJsonCache json = new CouponJsonCache(mapper, new JsonCacheProperties(100, DataSize.ofMegabytes(1)));
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        CouponStrategyFactory factory = new CouponStrategyFactory(List.of());
+        TenantCatalogs tenants = new TenantCatalogs(catalog, new CartEvaluator(catalog, factory, limiter), json,
+                new TenantProperties(Duration.ofMinutes(30), 10, 1, Duration.ofSeconds(1)), registry);
+        return new CouponArchiver(repository, archive, tenants, json, limiter,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new ArchiveProperties(true, Duration.ofDays(30), minBatch, maxBatch, targetLatency, 1.0), registry);
+    }
+
+    @Test
+    void testOnlyCouponsPastTheGracePeriodAreArchived() {
+        coupon(1, TODAY.minusDays(31));
+        coupon(2, TODAY.minusDays(30));
+        coupon(3, TODAY.minusDays(5));
+        coupon(4, null);
+        catalog.ensureLoaded();
+
+        assertEquals(1, archiver(10, 100, Duration.ofSeconds(1)).archiveExpired(TODAY));
+
+        assertEquals(List.of(1), archived);
+        assertEquals(List.of(2, 3, 4), List.copyOf(table.keySet()));
+        assertTrue(catalog.find(1).isEmpty());
+        assertEquals(List.of(1), catalog.changesSince(4L).deleted());
+        assertEquals(1.0, registry.counter("coupons.archive.archived").count());
+    }
+
+    @Test
+    void testBatchesGrowWhileFastUntilTheTableIsDrained() {
+        for (int id = 1; id <= 100; id++) coupon(id, TODAY.minusYears(1));
+        catalog.ensureLoaded();
+        CouponArchiver archiver = archiver(10, 25, Duration.ofSeconds(10));
+
+        assertEquals(100, archiver.archiveExpired(TODAY));
+
+        // 10, 20, then capped at 25 until a short batch shows the table is drained
+        assertEquals(List.of(10, 20, 25, 25, 25), batches);
+        assertTrue(table.isEmpty());
+        assertTrue(catalog.entries().isEmpty());
+    }
+
+    @Test
+    void testBatchesShrinkOnceWritesSlowDown() {
+        for (int id = 1; id <= 60; id++) coupon(id, TODAY.minusYears(1));
+        catalog.ensureLoaded();
+        AtomicInteger calls = new AtomicInteger();
+        when(archive.copyFromCoupons(anyCollection(), anyLong())).thenAnswer(inv -> {
+            if (calls.incrementAndGet() > 2) Thread.sleep(60);
+            return 0;
+        });
+        CouponArchiver archiver = archiver(4, 100, Duration.ofMillis(40));
+
+        assertEquals(60, archiver.archiveExpired(TODAY));
+
+        assertEquals(List.of(4, 8, 12, 6, 4), batches.subList(0, 5));
+        assertEquals(4, archiver.batchSize());
+    }
+
+    @Test
+    void testFailedBatchLeavesCouponsInPlace() {
+        coupon(1, TODAY.minusYears(1));
+        catalog.ensureLoaded();
+        when(archive.copyFromCoupons(anyCollection(), anyLong())).thenThrow(new RuntimeException("database is locked"));
+
+        assertEquals(0, archiver(10, 100, Duration.ofSeconds(1)).archiveExpired(TODAY));
+
+        assertTrue(table.containsKey(1));
+        assertTrue(catalog.find(1).isPresent());
+    }
+}
@@ -0,0 +1,93 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.CouponType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotCodecTests {
+
+    @TempDir
+    Path dir;
+
+    private CatalogSnapshot sampleSnapshot() {
+        return new CatalogSnapshot(42, List.of(
+                new CatalogEntry(new CouponResponse(1, CouponType.CART_WISE,
+                        new CartWiseDetails(100.0, 10.0, LocalDate.of(2030, 1, 31))), 40),
+                new CatalogEntry(new CouponResponse(2, CouponType.PRODUCT_WISE,
+                        new ProductWiseDetails(7, 20.0, null), new CouponConstraints(5, true)), 41),
+                new CatalogEntry(new CouponResponse(3, CouponType.BXGY,
+                        new BxGyDetails(
+                                List.of(new ProductQuantity(1, 2), new ProductQuantity(2, 2)),
+                                List.of(new ProductQuantity(3, 1)),
+                                3,
+                                null)), 42),
+                new CatalogEntry(new CouponResponse(4, CouponType.RULE,
+                        new RuleDetails("total >= 100 && contains(7)", "min(total * 0.1, 15)", null)), 42),
+                new CatalogEntry(new CouponResponse(5, CouponType.PRODUCT_WISE,
+                        new ProductWiseDetails(8, 5.0, null), new CouponConstraints(null, null,
+                        new CouponSchedule(Instant.parse("2030-01-01T00:00:00.5Z"), null, "Europe/Paris", List.of(
+                                new ActivationWindow(List.of(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY),
+                                        LocalTime.of(9, 30), LocalTime.of(1, 0)),
+                                new ActivationWindow(null, LocalTime.NOON, LocalTime.of(13, 0)))))), 42),
+                new CatalogEntry(new CouponResponse(6, CouponType.CART_WISE,
+                        new CartWiseDetails(50.0, 5.0, null), new CouponConstraints(null, true, null,
+                        List.of("vip", "new-users"))), 42)
+        ));
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        Path file = dir.resolve("catalog.snapshot");
+        CatalogSnapshot snapshot = sampleSnapshot();
+
+        CatalogSnapshotCodec.write(file, snapshot);
+        CatalogSnapshot restored = CatalogSnapshotCodec.read(file);
+
+        assertEquals(snapshot, restored);
+    }
+
+    @Test
+    void testCorruptedSnapshotIsRejected() throws IOException {
+        Path file = dir.resolve("catalog.snapshot");
+        CatalogSnapshotCodec.write(file, sampleSnapshot());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[30] ^= 0x5A;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> CatalogSnapshotCodec.read(file));
+    }
+
+    @Test
+    void testTruncatedSnapshotIsRejected() throws IOException {
+        Path file = dir.resolve("catalog.snapshot");
+        Files.write(file, new byte[]{1, 2, 3});
+
+        assertThrows(IOException.class, () -> CatalogSnapshotCodec.read(file));
+    }
+
+    @Test
+    void testSnapshotTooLargeToMapIsRejected() throws IOException {
+        Path file = dir.resolve("catalog.snapshot");
+        // Sparse, so it takes no disk space
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(CatalogSnapshotCodec.MAX_SNAPSHOT_BYTES + 1);
+        }
+
+        IOException e = assertThrows(IOException.class, () -> CatalogSnapshotCodec.read(file));
+        assertTrue(e.getMessage().contains("over the limit"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.dto.ActivationWindow;
+import com.monk.commerce.dto.CartWiseDetails;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.dto.CouponSchedule;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.InvalidScheduleException;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CouponActivationsTests {
+
+    private static final Instant NOW = Instant.parse("2030-01-04T12:00:00Z"); // a Friday
+
+    private static CatalogEntry scheduled(int id, CouponSchedule schedule, long version) {
+        return new CatalogEntry(new CouponResponse(id, CouponType.CART_WISE,
+                new CartWiseDetails(100.0, 10.0, null), new CouponConstraints(null, null, schedule)), version);
+    }
+
+    @Test
+    void testCouponIsInactiveUntilItStartsAndAfterItEnds() {
+        CouponActivations activations = new CouponActivations();
+        CouponSchedule schedule = new CouponSchedule(NOW.plusSeconds(60), NOW.plusSeconds(120));
+        activations.reset(List.of(scheduled(1, schedule, 1)), NOW);
+
+        assertEquals(Set.of(1), activations.inactive());
+        assertEquals(0, activations.advance(NOW.plusSeconds(59)));
+        assertEquals(1, activations.advance(NOW.plusSeconds(60)));
+        assertEquals(Set.of(), activations.inactive());
+        assertEquals(1, activations.advance(NOW.plusSeconds(120)));
+        assertEquals(Set.of(1), activations.inactive());
+        assertEquals(0, activations.pendingTimers());
+    }
+
+    @Test
+    void testCouponsSwitchingTogetherArePublishedInOneSet() {
+        CouponActivations activations = new CouponActivations();
+        CouponSchedule schedule = new CouponSchedule(NOW.plusSeconds(60), null);
+        activations.reset(List.of(scheduled(1, schedule, 1), scheduled(2, schedule, 1),
+                scheduled(3, new CouponSchedule(NOW.plusSeconds(3600), null), 1)), NOW);
+        Set<Integer> before = activations.inactive();
+
+        assertEquals(2, activations.advance(NOW.plusSeconds(61)));
+        assertEquals(Set.of(1, 2, 3), before);
+        assertEquals(Set.of(3), activations.inactive());
+    }
+
+    @Test
+    void testRecurringWindowFollowsItsTimeZone() {
+        // Fridays 22:00 to 02:00 in Kolkata, which is 16:30 to 20:30 UTC
+        CouponSchedule schedule = new CouponSchedule(null, null, "Asia/Kolkata", List.of(
+                new ActivationWindow(List.of(DayOfWeek.FRIDAY), LocalTime.of(22, 0), LocalTime.of(2, 0))));
+        CouponActivations activations = new CouponActivations();
+        activations.reset(List.of(scheduled(1, schedule, 1)), NOW);
+
+        assertEquals(Set.of(1), activations.inactive());
+        activations.advance(Instant.parse("2030-01-04T16:30:00Z"));
+        assertEquals(Set.of(), activations.inactive());
+        activations.advance(Instant.parse("2030-01-04T20:29:59Z"));
+        assertEquals(Set.of(), activations.inactive());
+        activations.advance(Instant.parse("2030-01-04T20:30:00Z"));
+        assertEquals(Set.of(1), activations.inactive());
+        // A week later the window opens again
+        activations.advance(Instant.parse("2030-01-11T16:29:59Z"));
+        assertEquals(Set.of(1), activations.inactive());
+        activations.advance(Instant.parse("2030-01-11T16:30:00Z"));
+        assertEquals(Set.of(), activations.inactive());
+    }
+
+    @Test
+    void testTrackingANewVersionReplacesTheSchedule() {
+        CouponActivations activations = new CouponActivations();
+        activations.reset(List.of(scheduled(1, new CouponSchedule(NOW.plusSeconds(60), null), 1)), NOW);
+
+        activations.track(scheduled(1, new CouponSchedule(NOW.minusSeconds(60), NOW.plusSeconds(30)), 2), NOW);
+        assertEquals(Set.of(), activations.inactive());
+        // The first version's start no longer applies, the second version's end does
+        assertEquals(0, activations.advance(NOW.plusSeconds(29)));
+        assertEquals(1, activations.advance(NOW.plusSeconds(90)));
+        assertEquals(Set.of(1), activations.inactive());
+    }
+
+    @Test
+    void testForgottenCouponIsNoLongerInactive() {
+        CouponActivations activations = new CouponActivations();
+        activations.reset(List.of(scheduled(1, new CouponSchedule(NOW.plusSeconds(60), null), 1)), NOW);
+
+        activations.forget(1);
+
+        assertEquals(Set.of(), activations.inactive());
+        assertEquals(0, activations.advance(NOW.plusSeconds(60)));
+    }
+
+    @Test
+    void testInvalidSchedulesAreRejected() {
+        assertThrows(InvalidScheduleException.class, () -> CouponSchedules.validate(
+                new CouponSchedule(NOW, NOW)));
+        assertThrows(InvalidScheduleException.class, () -> CouponSchedules.validate(
+                new CouponSchedule(null, null, "Mars/Olympus", null)));
+        assertThrows(InvalidScheduleException.class, () -> CouponSchedules.validate(
+                new CouponSchedule(null, null, null, List.of(
+                        new ActivationWindow(null, LocalTime.NOON, LocalTime.NOON)))));
+    }
+}
@@ -0,0 +1,372 @@
+package com.monk.commerce.service.catalog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.CatalogProperties;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.dto.CartWiseDetails;
+import com.monk.commerce.dto.CouponChangesResponse;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.dto.ProductWiseDetails;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.ChangesUnavailableException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.service.strategy.ProductWiseCouponStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CouponCatalogTests {
+
+    private CouponRepository repository;
+    private ObjectMapper mapper;
+    private CouponCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CouponRepository.class);
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+    }
+
+    private CatalogEntry cartWise(int id, double threshold, long version) {
+        return new CatalogEntry(new CouponResponse(id, CouponType.CART_WISE,
+                new CartWiseDetails(threshold, 10.0, null)), version);
+    }
+
+    private static Coupon productWise(int id, int productId, double discount, LocalDate expiry, long version) {
+        return Coupon.builder().id(id).type(CouponType.PRODUCT_WISE)
+                .details("{\"productId\":" + productId + ",\"discount\":" + discount + "}")
+                .expiryDate(expiry).version(version).build();
+    }
+
+    private Map<Integer, Double> matches(CouponCatalog.View view, List<CartItem> items) {
+        Map<Integer, Double> matches = new HashMap<>();
+        view.forEachProductWiseMatch(items, LocalDate.now(), (coupon, discount) ->
+                assertNull(matches.put(coupon.id(), discount), "coupon " + coupon.id() + " matched twice"));
+        return matches;
+    }
+
+    @Test
+    void testLazyLoadTracksHighestVersion() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(
+                Coupon.builder().id(1).type(CouponType.CART_WISE)
+                        .details("{\"threshold\":100,\"discount\":10}").version(5L).build(),
+                Coupon.builder().id(2).type(CouponType.CART_WISE)
+                        .details("{\"threshold\":200,\"discount\":10}").build()
+        ));
+
+        assertEquals(2, catalog.entries().size());
+        assertEquals(5, catalog.version());
+        long next = catalog.mutate(version -> version);
+        assertEquals(6, next);
+    }
+
+    @Test
+    void testRestoreCatchesUpOnChangedAndDeletedRows() {
+        CatalogSnapshot snapshot = new CatalogSnapshot(10, List.of(
+                cartWise(1, 100, 8),
+                cartWise(2, 200, 9),
+                cartWise(3, 300, 10)
+        ));
+        when(repository.findByVersionGreaterThanOrVersionIsNull(10L)).thenReturn(List.of(
+                Coupon.builder().id(2).type(CouponType.CART_WISE)
+                        .details("{\"threshold\":250,\"discount\":10}").version(12L).build()
+        ));
+        when(repository.findAllIds()).thenReturn(List.of(1, 2));
+        when(repository.findMaxVersion()).thenReturn(12L);
+
+        catalog.restore(snapshot);
+
+        assertTrue(catalog.isLoaded());
+        assertEquals(12, catalog.version());
+        assertEquals(2, catalog.entries().size());
+        assertTrue(catalog.find(3).isEmpty());
+        CartWiseDetails updated = (CartWiseDetails) catalog.find(2).orElseThrow().coupon().details();
+        assertEquals(250.0, updated.threshold());
+        verify(repository, never()).findByTenantIdIsNull();
+    }
+
+    @Test
+    void testSnapshotCapturesVersionAndEntries() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of());
+
+        catalog.mutate(version -> catalog.put(Coupon.builder().id(9).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").version(version).build()));
+
+        CatalogSnapshot snapshot = catalog.snapshot();
+        assertEquals(1, snapshot.version());
+        assertEquals(1, snapshot.entries().size());
+        assertEquals(9, snapshot.entries().get(0).coupon().id());
+    }
+
+    @Test
+    void testProductWiseCouponsAreServedFromColumns() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(
+                productWise(1, 7, 10, null, 1),
+                productWise(2, 3, 12.5, null, 2),
+                productWise(3, 7, 20, LocalDate.now().minusDays(1), 3),
+                Coupon.builder().id(4).type(CouponType.PRODUCT_WISE)
+                        .details("{\"productId\":7,\"discount\":5}").usageLimit(3).oncePerCustomer(true)
+                        .version(4L).build(),
+                // Not representable in basis points, so it stays a record
+                productWise(5, 7, 2.125, null, 5),
+                Coupon.builder().id(6).type(CouponType.CART_WISE)
+                        .details("{\"threshold\":100,\"discount\":10}").version(6L).build()
+        ));
+        List<CartItem> items = List.of(new CartItem(7, 2, 50.0), new CartItem(1, 1, 10.0), new CartItem(7, 1, 30.0));
+
+        CouponCatalog.View view = catalog.view();
+
+        assertEquals(Set.of(5, 6), ids(view.records()));
+        assertEquals(6, catalog.entries().size());
+        assertEquals(Map.of(1, 13.0, 4, 6.5), matches(view, items));
+        assertEquals(catalog.compile(productWise(2, 3, 12.5, null, 2)), catalog.find(2).orElseThrow().coupon());
+        assertEquals(new CouponConstraints(3, true), catalog.find(4).orElseThrow().coupon().constraints());
+        assertEquals(4, catalog.find(4).orElseThrow().version());
+        assertEquals(LocalDate.now().minusDays(1),
+                catalog.find(3).orElseThrow().coupon().details().expiryDate());
+        assertTrue(catalog.find(99).isEmpty());
+
+        ProductWiseCouponStrategy strategy = new ProductWiseCouponStrategy(mapper);
+        CouponResponse coupon = catalog.find(1).orElseThrow().coupon();
+        assertEquals(strategy.calculateDiscount(new CartRequest(items), coupon), matches(view, items).get(1));
+    }
+
+    @Test
+    void testWritesShadowRowsUntilTheyAreMerged() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(
+                productWise(1, 7, 10, null, 1),
+                productWise(2, 7, 20, null, 2),
+                productWise(3, 7, 30, null, 3)
+        ));
+        List<CartItem> items = List.of(new CartItem(7, 1, 100.0));
+        catalog.ensureLoaded();
+
+        catalog.put(productWise(1, 7, 15, null, 10));
+        catalog.remove(2, 12);
+        catalog.put(Coupon.builder().id(3).type(CouponType.CART_WISE)
+                .details("{\"threshold\":10,\"discount\":10}").version(11L).build());
+        // An older version does not replace the row
+        catalog.put(productWise(1, 7, 99, null, 9));
+
+        // Rows 1 and 3 are shadowed by records and row 2 by a tombstone
+        assertTrue(matches(catalog.view(), items).isEmpty());
+        assertEquals(Set.of(1, 3), ids(catalog.view().records()));
+        assertEquals(15.0, ((ProductWiseDetails) catalog.find(1).orElseThrow().coupon().details()).discount());
+        assertTrue(catalog.find(2).isEmpty());
+        assertEquals(CouponType.CART_WISE, catalog.find(3).orElseThrow().coupon().type());
+        assertEquals(2, catalog.entries().size());
+    }
+
+    @Test
+    void testMergeKeepsEveryCouponVisibleExactlyOnce() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(productWise(1, 7, 10, null, 1)));
+        catalog.ensureLoaded();
+        CouponCatalog.View before = catalog.view();
+
+        // Enough writes to trigger a merge into new columns
+        int count = 2048;
+        for (int id = 2; id <= count; id++) catalog.put(productWise(id, 7, 10, null, id));
+        CouponCatalog.View after = catalog.view();
+
+        // A reader of the old columns still sees the folded records, a reader of the new ones the rows
+        assertEquals(count, before.entries().size());
+        assertEquals(count, ids(before.entries()).size());
+        assertEquals(count, after.entries().size());
+        assertEquals(count, ids(after.entries()).size());
+        assertTrue(after.records().size() < count / 2);
+
+        catalog.remove(1, count + 1);
+        for (int id = count + 1; id <= 2 * count; id++) catalog.put(productWise(id, 7, 10, null, id));
+
+        assertEquals(2 * count - 1, catalog.entries().size());
+        assertEquals(2 * count - 1, ids(catalog.entries()).size());
+        assertTrue(catalog.find(1).isEmpty());
+        assertEquals(2 * count - 1, matches(catalog.view(), List.of(new CartItem(7, 1, 100.0))).size()
+                + catalog.view().records().size());
+    }
+
+    @Test
+    void testSnapshotRoundTripsColumns() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(
+                productWise(1, 7, 10, null, 1),
+                productWise(2, 8, 20, LocalDate.of(2030, 1, 1), 2)
+        ));
+        CatalogSnapshot snapshot = catalog.snapshot();
+        when(repository.findByVersionGreaterThanOrVersionIsNull(2L)).thenReturn(List.of());
+        when(repository.findAllIds()).thenReturn(List.of(2));
+        when(repository.findMaxVersion()).thenReturn(2L);
+
+        CouponCatalog restored = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+        restored.restore(snapshot);
+
+        assertEquals(2, snapshot.entries().size());
+        assertTrue(restored.find(1).isEmpty());
+        assertEquals(catalog.find(2), restored.find(2));
+        assertTrue(restored.view().records().isEmpty());
+    }
+
+    @Test
+    void testOffHeapColumnsServeTheSameCoupons() {
+        List<Coupon> rows = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            rows.add(productWise(id, 1 + id % 10, 5 + id % 20, id % 3 == 0 ? LocalDate.now().minusDays(1) : null, id));
+        }
+        rows.add(Coupon.builder().id(101).type(CouponType.PRODUCT_WISE)
+                .details("{\"productId\":4,\"discount\":5}").usageLimit(3).oncePerCustomer(true)
+                .version(101L).build());
+        when(repository.findByTenantIdIsNull()).thenReturn(rows);
+        CouponCatalog offHeap = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000),
+                new CatalogProperties(CatalogProperties.ColumnStorage.OFF_HEAP));
+        // Enough writes on both to merge new columns
+        for (CouponCatalog each : List.of(catalog, offHeap)) {
+            each.ensureLoaded();
+            each.remove(2, 102);
+            for (int id = 200; id < 200 + 2048; id++) each.put(productWise(id, 1 + id % 10, 10, null, id + 1000));
+        }
+        List<CartItem> items = List.of(new CartItem(4, 2, 50.0), new CartItem(7, 1, 30.0), new CartItem(2, 1, 10.0));
+
+        assertTrue(offHeap.view().records().size() < 2048 / 2);
+        assertEquals(matches(catalog.view(), items), matches(offHeap.view(), items));
+        assertEquals(new HashSet<>(catalog.entries()), new HashSet<>(offHeap.entries()));
+        assertEquals(catalog.find(101), offHeap.find(101));
+        assertTrue(offHeap.find(2).isEmpty());
+    }
+
+    @Test
+    void testReplacedOffHeapBuffersAreReusedOnceTheirReadersClose() {
+        ProductWiseColumns.BufferPool pool = new ProductWiseColumns.BufferPool();
+        List<CatalogEntry> added = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) {
+            added.add(new CatalogEntry(new CouponResponse(id, CouponType.PRODUCT_WISE,
+                    new ProductWiseDetails(id % 10, 5.0, null)), id));
+        }
+        ProductWiseColumns first = ProductWiseColumns.merge(CatalogProperties.ColumnStorage.OFF_HEAP, pool,
+                ProductWiseColumns.EMPTY, id -> true, new ArrayList<>(added));
+        ProductWiseColumns second = ProductWiseColumns.merge(CatalogProperties.ColumnStorage.OFF_HEAP, pool,
+                first, id -> id != 1, new ArrayList<>());
+        // A reader still holds the replaced generation
+        assertTrue(first.retain());
+        first.release();
+        assertNull(pool.spare());
+        first.release();
+        var buffer = pool.spare();
+        assertNotNull(buffer);
+        assertFalse(first.retain());
+
+        ProductWiseColumns third = ProductWiseColumns.merge(CatalogProperties.ColumnStorage.OFF_HEAP, pool,
+                second, id -> id != 2, new ArrayList<>());
+        assertNull(pool.spare());
+        second.release();
+        third.release();
+        assertSame(buffer, pool.spare());
+        assertEquals(98, third.size());
+    }
+
+    private static Set<Integer> ids(List<CatalogEntry> entries) {
+        Set<Integer> ids = new HashSet<>();
+        for (CatalogEntry entry : new ArrayList<>(entries)) ids.add(entry.coupon().id());
+        return ids;
+    }
+
+    private Coupon cartWiseCoupon(int id, double threshold, long version) {
+        return Coupon.builder().id(id).type(CouponType.CART_WISE)
+                .details("{\"threshold\":" + threshold + ",\"discount\":10}").version(version).build();
+    }
+
+    @Test
+    void testChangesSinceReturnLatestStatesAndTombstones() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWiseCoupon(1, 100, 1), productWise(2, 7, 10, null, 2)));
+
+        catalog.mutate(version -> catalog.put(cartWiseCoupon(3, 300, version)));
+        catalog.mutate(version -> catalog.put(cartWiseCoupon(1, 150, version)));
+        catalog.mutate(version -> {
+            catalog.remove(2, version);
+            return null;
+        });
+
+        CouponChangesResponse changes = catalog.changesSince(2L);
+        assertEquals(5, changes.version());
+        assertEquals(List.of(1, 3), changes.changed().stream().map(CouponResponse::id).toList());
+        assertEquals(150.0, ((CartWiseDetails) changes.changed().get(0).details()).threshold());
+        assertEquals(List.of(2), changes.deleted());
+
+        assertEquals(List.of(2), catalog.changesSince(4L).deleted());
+        assertTrue(catalog.changesSince(4L).changed().isEmpty());
+        CouponChangesResponse none = catalog.changesSince(5L);
+        assertTrue(none.changed().isEmpty() && none.deleted().isEmpty());
+        assertEquals(5, none.version());
+
+        CouponChangesResponse all = catalog.changesSince(null);
+        assertEquals(List.of(1, 3), all.changed().stream().map(CouponResponse::id).toList());
+        assertEquals(5, all.version());
+    }
+
+    @Test
+    void testChangesStopBelowWritesInFlight() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWiseCoupon(1, 100, 1)));
+
+        CouponChangesResponse during = catalog.mutate(version -> {
+            catalog.put(cartWiseCoupon(2, 200, version));
+            return catalog.changesSince(1L);
+        });
+
+        assertEquals(1, during.version());
+        assertTrue(during.changed().isEmpty());
+        assertEquals(List.of(2), catalog.changesSince(1L).changed().stream().map(CouponResponse::id).toList());
+    }
+
+    @Test
+    void testChangesOutsideTheLogAreGone() {
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(2));
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWiseCoupon(1, 100, 4)));
+
+        for (int i = 0; i < 3; i++) catalog.mutate(version -> catalog.put(cartWiseCoupon(1, 100, version)));
+
+        // Versions 5..7 were written, only 6 and 7 are kept
+        assertThrows(ChangesUnavailableException.class, () -> catalog.changesSince(4L));
+        assertThrows(ChangesUnavailableException.class, () -> catalog.changesSince(8L));
+        assertEquals(List.of(1), catalog.changesSince(5L).changed().stream().map(CouponResponse::id).toList());
+    }
+
+    @Test
+    void testScheduledCouponIsLeftOutOfRecordsUntilActive() {
+        Instant start = Instant.now().plusSeconds(3600);
+        Coupon scheduled = productWise(2, 7, 20.0, null, 2);
+        scheduled.setSchedule("{\"startsAt\":\"" + start + "\"}");
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWiseCoupon(1, 100, 1), scheduled));
+
+        CouponCatalog.View view = catalog.view();
+        assertFalse(catalog.isActive(2));
+        assertEquals(List.of(1), view.records().stream().map(entry -> entry.coupon().id()).toList());
+        assertEquals(2, view.entries().size());
+        assertTrue(view.find(2).isPresent());
+        // Scheduled PRODUCT_WISE coupons stay records, so the columns never match them
+        assertTrue(matches(view, List.of(new CartItem(7, 1, 50.0))).isEmpty());
+
+        // Boundaries never fire early, so up to a tick late
+        assertEquals(1, catalog.advanceActivations(start.plusMillis(CouponActivations.TICK_MILLIS)));
+        assertTrue(catalog.isActive(2));
+        assertEquals(Set.of(1, 2), new HashSet<>(catalog.view().records().stream()
+                .map(entry -> entry.coupon().id()).toList()));
+        // Views taken earlier keep what they saw
+        assertFalse(view.isActive(2));
+    }
+}
@@ -0,0 +1,80 @@
+package com.monk.commerce.service.catalog;
+
+import com.monk.commerce.config.CatalogProperties.ColumnStorage;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.dto.ProductWiseDetails;
+import com.monk.commerce.entity.CouponType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.ref.Reference;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retained heap per PRODUCT_WISE coupon as records in a map, the layout before
+ * {@link ProductWiseColumns}, and as columns on and off the heap. Run with
+ * {@code gradle test -Dbenchmarks=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class ProductWiseFootprintBenchmark {
+
+    private static final int COUPONS = 1_000_000;
+
+    @Test
+    void reportHeapPerCoupon() {
+        double records = bytesPerCoupon(() -> {
+            Map<Integer, CatalogEntry> map = new ConcurrentHashMap<>();
+            for (CatalogEntry entry : entries()) map.put(entry.coupon().id(), entry);
+            return map;
+        });
+        double columns = bytesPerCoupon(() -> ProductWiseColumns.merge(ColumnStorage.HEAP,
+                new ProductWiseColumns.BufferPool(), ProductWiseColumns.EMPTY, id -> true, new ArrayList<>(entries())));
+        double offHeap = bytesPerCoupon(() -> ProductWiseColumns.merge(ColumnStorage.OFF_HEAP,
+                new ProductWiseColumns.BufferPool(), ProductWiseColumns.EMPTY, id -> true, new ArrayList<>(entries())));
+
+        System.out.printf("PRODUCT_WISE heap per coupon: records %.1f bytes, columns %.1f bytes, off-heap columns "
+                + "%.1f bytes%n", records, columns, offHeap);
+        assertTrue(columns * 2 < records);
+        assertTrue(offHeap < 1);
+    }
+
+    private static List<CatalogEntry> entries() {
+        List<CatalogEntry> entries = new ArrayList<>(COUPONS);
+        LocalDate expiry = LocalDate.of(2030, 1, 1);
+        for (int id = 1; id <= COUPONS; id++) {
+            // Distinct boxed ids and product ids, as parsed from JSON
+            entries.add(new CatalogEntry(new CouponResponse(Integer.valueOf(id + 1_000_000), CouponType.PRODUCT_WISE,
+                    new ProductWiseDetails(Integer.valueOf(1_000 + id % 50_000 + 1_000_000), 5 + id % 20,
+                            id % 2 == 0 ? expiry : null)), id));
+        }
+        return entries;
+    }
+
+    private static double bytesPerCoupon(Supplier<Object> build) {
+        long before = usedAfterGc();
+        Object retained = build.get();
+        long after = usedAfterGc();
+        Reference.reachabilityFence(retained);
+        return (after - before) / (double) COUPONS;
+    }
+
+    private static long usedAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,97 @@
+package com.monk.commerce.service.catalog;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTests {
+
+    private static final long SECOND = 1000;
+
+    private static List<String> advance(TimerWheel<String> wheel, long nowMillis) {
+        List<String> fired = new ArrayList<>();
+        wheel.advance(nowMillis, fired::add);
+        return fired;
+    }
+
+    @Test
+    void testTimerFiresOnTheFirstTickAtOrAfterItsDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 0);
+        wheel.schedule(2500, "a");
+
+        assertEquals(List.of(), advance(wheel, 2999));
+        assertEquals(List.of("a"), advance(wheel, 3000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testPastDeadlineFiresOnNextAdvance() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 10 * SECOND);
+        wheel.schedule(5 * SECOND, "late");
+
+        assertEquals(List.of("late"), advance(wheel, 10 * SECOND));
+    }
+
+    @Test
+    void testTimersOnEveryLevelFireAtTheirTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 0);
+        long[] deadlines = {5, 64, 65, 4095, 4097, 300_000, 16_000_000};
+        for (long deadline : deadlines) wheel.schedule(deadline * SECOND, "t" + deadline);
+
+        for (long deadline : deadlines) {
+            assertEquals(List.of(), advance(wheel, (deadline - 1) * SECOND), "t" + deadline + " fired early");
+            assertEquals(List.of("t" + deadline), advance(wheel, deadline * SECOND));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testTimerBeyondTheHorizonIsRefiled() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 0);
+        long deadline = 40_000_000L;
+        wheel.schedule(deadline * SECOND, "far");
+
+        assertEquals(List.of(), advance(wheel, (deadline - 1) * SECOND));
+        assertEquals(List.of("far"), advance(wheel, deadline * SECOND));
+    }
+
+    @Test
+    void testLargeJumpFiresEverythingInOrder() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 0);
+        wheel.schedule(90_000 * SECOND, "c");
+        wheel.schedule(10 * SECOND, "a");
+        wheel.schedule(700 * SECOND, "b");
+
+        assertEquals(List.of("a", "b", "c"), advance(wheel, 100_000 * SECOND));
+    }
+
+    @Test
+    void testTimerScheduledWhileFiringIsFiledRelativeToTheNewTick() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 0);
+        wheel.schedule(10 * SECOND, "first");
+        List<String> fired = new ArrayList<>();
+
+        wheel.advance(10 * SECOND, payload -> {
+            fired.add(payload);
+            wheel.schedule(70 * SECOND, "second");
+        });
+        assertEquals(List.of("first"), fired);
+        assertEquals(1, wheel.size());
+
+        assertEquals(List.of(), advance(wheel, 69 * SECOND));
+        assertEquals(List.of("second"), advance(wheel, 70 * SECOND));
+    }
+
+    @Test
+    void testEmptyWheelSkipsAheadAndStillSchedules() {
+        TimerWheel<String> wheel = new TimerWheel<>(SECOND, 0);
+        advance(wheel, 1_000_000_000L * SECOND);
+        wheel.schedule(1_000_000_003L * SECOND, "x");
+
+        assertEquals(List.of(), advance(wheel, 1_000_000_002L * SECOND));
+        assertEquals(List.of("x"), advance(wheel, 1_000_000_003L * SECOND));
+    }
+}
@@ -0,0 +1,126 @@
+package com.monk.commerce.service.events;
+
+import com.monk.commerce.config.EventProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventPublisherTests {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private EventProperties properties(int bufferSize, EventProperties.Overflow overflow, List<String> sinks) {
+        return new EventProperties(true, bufferSize, overflow, 64, sinks, dir.resolve("events.log"), 100_000);
+    }
+
+    @Test
+    void testEveryConsumerSeesEveryEventFromConcurrentProducers() throws Exception {
+        EventProperties properties = properties(1024, EventProperties.Overflow.BLOCK, List.of("broker", "log"));
+        LocalBrokerSink broker = new LocalBrokerSink(properties);
+        EventPublisher publisher = new EventPublisher(properties, List.of(new LogFileEventSink(properties), broker), registry);
+        publisher.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 4; t++) {
+            int producer = t;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 5_000; i++) publisher.publishApply(producer, (long) i, 100.0, 10.0);
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        publisher.close();
+
+        List<LocalBrokerSink.Message> messages = broker.poll(Integer.MAX_VALUE);
+        assertEquals(20_000, messages.size());
+        int[] lastPerProducer = {-1, -1, -1, -1};
+        for (LocalBrokerSink.Message message : messages) {
+            // Each producer's own events stay in order
+            assertEquals(lastPerProducer[message.couponId()] + 1, message.customerId());
+            lastPerProducer[message.couponId()] = message.customerId().intValue();
+        }
+        assertEquals(20_000, Files.readAllLines(dir.resolve("events.log")).size());
+        assertEquals(20_000, registry.get("coupons.events.published").counter().count());
+        assertEquals(0, registry.get("coupons.events.dropped").counter().count());
+    }
+
+    @Test
+    void testFullRingDropsWhenConfiguredTo() throws Exception {
+        EventProperties properties = properties(4, EventProperties.Overflow.DROP, List.of("stalled"));
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> seen = new ArrayList<>();
+        EventSink stalled = new EventSink() {
+            @Override
+            public String name() {
+                return "stalled";
+            }
+
+            @Override
+            public void onEvent(CouponEvent event) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                seen.add(event.couponId());
+            }
+        };
+        EventPublisher publisher = new EventPublisher(properties, List.of(stalled), registry);
+        publisher.start();
+
+        for (int i = 0; i < 10; i++) publisher.publishApplicable(i, null, 50.0, 5.0, 1);
+        assertTrue(registry.get("coupons.events.dropped").counter().count() >= 6);
+        assertTrue(registry.get("coupons.events.depth").gauge().value() <= 4);
+
+        release.countDown();
+        publisher.close();
+        assertEquals(List.of(0, 1, 2, 3), seen);
+    }
+
+    @Test
+    void testNothingIsPublishedBeforeStartOrWhenDisabled() throws Exception {
+        EventProperties properties = properties(16, EventProperties.Overflow.DROP, List.of("broker"));
+        LocalBrokerSink broker = new LocalBrokerSink(properties);
+        EventPublisher publisher = new EventPublisher(properties, List.of(broker), registry);
+        publisher.publishApply(1, null, 1.0, 1.0);
+        publisher.start();
+        publisher.close();
+        assertTrue(broker.poll(10).isEmpty());
+
+        EventProperties disabled = new EventProperties(false, 16, EventProperties.Overflow.DROP, 64,
+                List.of("broker"), dir.resolve("events.log"), 10);
+        EventPublisher off = new EventPublisher(disabled, List.of(broker), new SimpleMeterRegistry());
+        off.start();
+        off.publishApply(1, null, 1.0, 1.0);
+        off.close();
+        assertTrue(broker.poll(10).isEmpty());
+    }
+
+    @Test
+    void testUnknownSinkIsRejected() {
+        EventProperties properties = properties(16, EventProperties.Overflow.DROP, List.of("kafka"));
+
+        assertThrows(IllegalStateException.class, () -> new EventPublisher(properties, List.of(), registry));
+    }
+}
@@ -0,0 +1,141 @@
+package com.monk.commerce.service.idempotency;
+
+import com.monk.commerce.config.IdempotencyProperties;
+import com.monk.commerce.exception.IdempotencyKeyReusedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTests {
+
+    private IdempotencyCache cache(Duration ttl, int maxEntries) {
+        return new IdempotencyCache(new IdempotencyProperties(ttl, maxEntries));
+    }
+
+    @Test
+    void testReplayReturnsStoredResult() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), 10);
+        AtomicInteger runs = new AtomicInteger();
+
+        String first = cache.execute("k", 1, () -> "result-" + runs.incrementAndGet());
+        String replay = cache.execute("k", 1, () -> "result-" + runs.incrementAndGet());
+
+        assertEquals("result-1", first);
+        assertEquals("result-1", replay);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testKeyReusedForAnotherRequestIsRejected() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), 10);
+        cache.execute("k", 1, () -> "one");
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> cache.execute("k", 2, () -> "two"));
+    }
+
+    @Test
+    void testFailuresAreNotRemembered() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), 10);
+
+        assertThrows(IllegalStateException.class, () -> cache.execute("k", 1, () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals("ok", cache.execute("k", 1, () -> "ok"));
+    }
+
+    @Test
+    void testConcurrentDuplicatesWaitForTheFirstCall() throws Exception {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), 10);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> first = pool.submit(() -> cache.execute("k", 1, () -> {
+                started.countDown();
+                await(release);
+                return runs.incrementAndGet();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            List<Future<Integer>> duplicates = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                duplicates.add(pool.submit(() -> cache.execute("k", 1, runs::incrementAndGet)));
+            }
+            release.countDown();
+
+            assertEquals(1, first.get(5, TimeUnit.SECONDS));
+            for (Future<Integer> duplicate : duplicates) assertEquals(1, duplicate.get(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testEntriesExpireAndAreBounded() {
+        IdempotencyCache expiring = cache(Duration.ZERO, 10);
+        expiring.execute("k", 1, () -> "one");
+        assertEquals("two", expiring.execute("k", 2, () -> "two"));
+
+        IdempotencyCache bounded = cache(Duration.ofMinutes(1), 3);
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            bounded.execute("k" + i, n, () -> n);
+        }
+        assertTrue(bounded.size() <= 3);
+        assertEquals(99, bounded.execute("k0", 0, () -> 99));
+    }
+
+    @Test
+    void testErrorsAreNotRememberedEither() {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), 10);
+
+        assertThrows(StackOverflowError.class, () -> cache.execute("k", 1, () -> {
+            throw new StackOverflowError();
+        }));
+
+        assertEquals("ok", cache.execute("k", 1, () -> "ok"));
+    }
+
+    @Test
+    void testEntriesInFlightAreNeverEvicted() throws Exception {
+        IdempotencyCache cache = cache(Duration.ofMinutes(1), 1);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = pool.submit(() -> cache.execute("k", 1, () -> {
+                started.countDown();
+                await(release);
+                return runs.incrementAndGet();
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // Over max-entries, which would have evicted the running entry
+            cache.execute("other", 2, () -> 0);
+            // Only an entry still held can reject a different request under its key
+            assertThrows(IdempotencyKeyReusedException.class, () -> cache.execute("k", 3, runs::incrementAndGet));
+            release.countDown();
+
+            assertEquals(1, first.get(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
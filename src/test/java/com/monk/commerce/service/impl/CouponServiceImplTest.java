@@ -4,47 +4,74 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.SimulationProperties;
+import com.monk.commerce.config.TenantProperties;
 import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.ArchivedCoupon;
 import com.monk.commerce.entity.Coupon;
 import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.CartSessionNotFoundException;
+import com.monk.commerce.exception.CouponAlreadyUsedException;
+import com.monk.commerce.exception.CouponNotActiveException;
+import com.monk.commerce.exception.CouponNotEligibleException;
 import com.monk.commerce.exception.CouponNotFoundException;
+import com.monk.commerce.exception.CustomerRequiredException;
+import com.monk.commerce.exception.InvalidRuleException;
+import com.monk.commerce.exception.InvalidScheduleException;
+import com.monk.commerce.exception.InvalidSegmentException;
+import com.monk.commerce.exception.CouponUsageLimitReachedException;
+import com.monk.commerce.repository.ArchivedCouponRepository;
 import com.monk.commerce.repository.CouponRepository;
-import com.monk.commerce.service.strategy.BxGyCouponStrategy;
-import com.monk.commerce.service.strategy.CartWiseCouponStrategy;
-import com.monk.commerce.service.strategy.CouponStrategyFactory;
-import com.monk.commerce.service.strategy.ProductWiseCouponStrategy;
+import com.monk.commerce.service.CouponServiceFixture;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.events.EventPublisher;
+import com.monk.commerce.service.ledger.RedemptionLedger;
+import com.monk.commerce.service.tenant.TenantContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 public class CouponServiceImplTest {
 
     private CouponRepository repository;
+    private ArchivedCouponRepository archive;
     private CouponServiceImpl service;
     private ObjectMapper mapper;
+    private RedemptionLedger ledger;
+    private EventPublisher events;
 
 
     @BeforeEach
     void setUp() {
         repository = mock(CouponRepository.class);
+        archive = mock(ArchivedCouponRepository.class);
+        ledger = mock(RedemptionLedger.class);
+        events = mock(EventPublisher.class);
 
         mapper = spy(new ObjectMapper());
         mapper.registerModule(new JavaTimeModule());
         mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
-        CouponStrategyFactory factory = new CouponStrategyFactory(List.of(
-                new CartWiseCouponStrategy(mapper),
-                new ProductWiseCouponStrategy(mapper),
-                new BxGyCouponStrategy(mapper)
-        ));
-
-        service = new CouponServiceImpl(repository, factory, mapper);
+        service = (CouponServiceImpl) CouponServiceFixture.builder(repository, mapper)
+                .archive(archive)
+                .ledger(ledger)
+                .events(events)
+                .tenants(new TenantProperties(Duration.ofMinutes(30), 10, 4, Duration.ofSeconds(1)))
+                .simulation(new SimulationProperties(2, 4, 10, DataSize.ofKilobytes(64), 1))
+                .build().service;
     }
 
 
@@ -63,7 +90,7 @@ public class CouponServiceImplTest {
         couponEntity.setType(CouponType.CART_WISE);
         couponEntity.setDetails("{\"threshold\":100,\"discount\":10}");
 
-        when(repository.findAll()).thenReturn(List.of(couponEntity));
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(couponEntity));
         when(repository.findById(1)).thenReturn(java.util.Optional.of(couponEntity));
 
         ApplicableCouponsResponse applicable = service.getApplicableCoupons(sampleCart());
@@ -76,6 +103,19 @@ public class CouponServiceImplTest {
         assertEquals(396.0, applied.finalPrice(), 0.001);
     }
 
+    @Test
+    void testHugeBudgetsAreClampedRatherThanOverflowing() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(Coupon.builder().id(1).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").version(1L).build()));
+
+        for (Duration budget : List.of(Duration.ofMillis(Long.MAX_VALUE), Duration.ofSeconds(Long.MAX_VALUE),
+                Duration.ofMillis(Long.MIN_VALUE))) {
+            ApplicableCouponsResponse response = service.getApplicableCoupons(sampleCart(), budget);
+            assertEquals(1, response.applicableCoupons().size());
+        }
+        assertFalse(service.getApplicableCoupons(sampleCart(), Duration.ofMillis(Long.MAX_VALUE)).partial());
+    }
+
     @Test
     void testProductWiseCoupon() {
         Coupon coupon = new Coupon();
@@ -141,7 +181,7 @@ public class CouponServiceImplTest {
                         """)
                 .build();
 
-        when(repository.findAll()).thenReturn(List.of(c1, c2, c3));
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(c1, c2, c3));
 
         ApplicableCouponsResponse applicable = service.getApplicableCoupons(sampleCart());
         assertEquals(3, applicable.applicableCoupons().size());
@@ -357,7 +397,7 @@ public class CouponServiceImplTest {
                 .details("{\"threshold\":200,\"discount\":20}")
                 .build();
 
-        when(repository.findAll()).thenReturn(List.of(c1));
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(c1));
 
         List<CouponResponse> responses = service.getAllCoupons();
 
@@ -368,4 +408,370 @@ public class CouponServiceImplTest {
         assertEquals(20.0, details.discount());
     }
 
-}
\ No newline at end of file
+    @Test
+    void testUsageLimitIsEnforced() {
+        Coupon limited = Coupon.builder()
+                .id(7)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .usageLimit(2)
+                .redemptionCount(1)
+                .build();
+
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(limited));
+        when(repository.findRedemptionCount(7)).thenReturn(1);
+
+        assertEquals(1, service.getApplicableCoupons(sampleCart()).applicableCoupons().size());
+        assertEquals(44.0, service.applyCoupon(7, sampleCart()).totalDiscount(), 0.001);
+
+        assertThrows(CouponUsageLimitReachedException.class, () -> service.applyCoupon(7, sampleCart()));
+        assertTrue(service.getApplicableCoupons(sampleCart()).applicableCoupons().isEmpty());
+    }
+
+    @Test
+    void testZeroDiscountDoesNotUseLimitedCoupon() {
+        Coupon limited = Coupon.builder()
+                .id(8)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":1000,\"discount\":10}")
+                .usageLimit(1)
+                .build();
+
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(limited));
+
+        assertEquals(0.0, service.applyCoupon(8, sampleCart()).totalDiscount(), 0.001);
+        assertEquals(0.0, service.applyCoupon(8, sampleCart()).totalDiscount(), 0.001);
+    }
+
+    @Test
+    void testCreateCouponWithUsageLimit() {
+        when(repository.save(any(Coupon.class))).thenAnswer(inv -> {
+            Coupon c = inv.getArgument(0);
+            c.setId(11);
+            return c;
+        });
+
+        CouponResponse response = service.createCoupon(new CouponRequest(
+                CouponType.CART_WISE,
+                new CartWiseDetails(100.0, 10.0, null),
+                new CouponConstraints(500)
+        ));
+
+        assertEquals(500, response.constraints().usageLimit());
+    }
+
+
+    @Test
+    void testOncePerCustomerCoupon() {
+        Coupon once = Coupon.builder()
+                .id(9)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .oncePerCustomer(true)
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(once));
+        CartRequest first = new CartRequest(sampleCart().items(), 41L);
+        CartRequest second = new CartRequest(sampleCart().items(), 42L);
+
+        assertTrue(service.getApplicableCoupons(sampleCart()).applicableCoupons().isEmpty());
+        assertEquals(44.0, service.applyCoupon(9, first).totalDiscount(), 0.001);
+
+        assertTrue(service.getApplicableCoupons(first).applicableCoupons().isEmpty());
+        assertThrows(CouponAlreadyUsedException.class, () -> service.applyCoupon(9, first));
+        assertEquals(1, service.getApplicableCoupons(second).applicableCoupons().size());
+    }
+
+    @Test
+    void testIdempotentApplyIsEvaluatedOnce() {
+        Coupon limited = Coupon.builder()
+                .id(10)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .usageLimit(1)
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(limited));
+
+        ApplyCouponResponse first = service.applyCoupon(10, sampleCart(), "retry-1");
+        ApplyCouponResponse replay = service.applyCoupon(10, sampleCart(), "retry-1");
+
+        assertSame(first, replay);
+        assertThrows(CouponUsageLimitReachedException.class, () -> service.applyCoupon(10, sampleCart(), "retry-2"));
+    }
+
+    @Test
+    void testSuccessfulApplicationIsRecordedInLedger() {
+        Coupon limited = Coupon.builder()
+                .id(11)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .usageLimit(5)
+                .build();
+        Coupon unreachable = Coupon.builder()
+                .id(12)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":1000,\"discount\":10}")
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(limited, unreachable));
+
+        service.applyCoupon(11, new CartRequest(sampleCart().items(), 5L));
+        service.applyCoupon(12, sampleCart());
+
+        verify(ledger).append(argThat(r -> r.couponId() == 11 && r.customerId() == 5L && r.limited()
+                && r.totalPrice() == 440.0 && r.totalDiscount() == 44.0));
+        verify(ledger, never()).append(argThat(r -> r.couponId() == 12));
+    }
+
+    @Test
+    void testEventsArePublishedForApplicableAndApply() {
+        Coupon coupon = Coupon.builder()
+                .id(13)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(coupon));
+
+        service.getApplicableCoupons(new CartRequest(sampleCart().items(), 3L));
+        service.applyCoupon(13, sampleCart());
+
+        verify(events).publishApplicable(13, 3L, 440.0, 44.0, 1);
+        verify(events).publishApply(13, null, 440.0, 44.0);
+    }
+
+    @Test
+    void testPreviewsNeitherRedeemNorPublish() {
+        Coupon limited = Coupon.builder()
+                .id(14)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .usageLimit(1)
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(limited));
+
+        assertEquals(1, service.previewApplicableCoupons(sampleCart()).applicableCoupons().size());
+        assertEquals(44.0, service.previewCoupon(14, sampleCart()).totalDiscount(), 0.001);
+        assertEquals(44.0, service.previewCoupon(14, sampleCart()).totalDiscount(), 0.001);
+
+        verifyNoInteractions(events, ledger);
+        assertEquals(44.0, service.applyCoupon(14, sampleCart()).totalDiscount(), 0.001);
+    }
+
+    @Test
+    void testRuleCoupon() {
+        Coupon rule = Coupon.builder()
+                .id(14)
+                .type(CouponType.RULE)
+                .details("{\"condition\":\"total >= 400 && contains(2) && qty(1) >= 6\",\"discount\":\"min(total * 0.1, 40)\"}")
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(rule));
+
+        assertEquals(40.0, service.applyCoupon(14, sampleCart()).totalDiscount(), 0.001);
+        assertEquals(1, service.getApplicableCoupons(sampleCart()).applicableCoupons().size());
+        assertTrue(service.getApplicableCoupons(new CartRequest(List.of(new CartItem(1, 6, 50.0))))
+                .applicableCoupons().isEmpty());
+    }
+
+    @Test
+    void testInvalidRuleIsRejectedBeforeSaving() {
+        CouponRequest request = new CouponRequest(CouponType.RULE, new RuleDetails("total >=", "10", null));
+
+        assertThrows(InvalidRuleException.class, () -> service.createCoupon(request));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void testCouponOutsideItsScheduleIsNeitherApplicableNorApplied() {
+        Coupon coupon = new Coupon();
+        coupon.setId(30);
+        coupon.setType(CouponType.CART_WISE);
+        coupon.setDetails("{\"threshold\":100,\"discount\":10}");
+        coupon.setSchedule("{\"startsAt\":\"" + Instant.now().plusSeconds(3600) + "\"}");
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(coupon));
+        when(repository.findById(30)).thenReturn(Optional.of(coupon));
+
+        assertTrue(service.getApplicableCoupons(sampleCart()).applicableCoupons().isEmpty());
+        assertThrows(CouponNotActiveException.class, () -> service.applyCoupon(30, sampleCart()));
+        assertNotNull(service.getCoupon(30).constraints().schedule());
+    }
+
+    @Test
+    void testInvalidScheduleIsRejectedBeforeSaving() {
+        Instant now = Instant.now();
+        CouponRequest request = new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 10.0, null),
+                new CouponConstraints(null, null, new CouponSchedule(now, now.minusSeconds(1))));
+
+        assertThrows(InvalidScheduleException.class, () -> service.createCoupon(request));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void testSegmentCouponIsOnlyForItsMembers() {
+        Coupon coupon = Coupon.builder()
+                .id(31)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}")
+                .segments("vip,new-users")
+                .build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(coupon));
+        service.uploadSegment("vip", new ByteArrayInputStream("41\n42".getBytes(StandardCharsets.UTF_8)));
+        service.uploadSegment("new-users", new ByteArrayInputStream("7, 8".getBytes(StandardCharsets.UTF_8)));
+        CartRequest member = new CartRequest(sampleCart().items(), 42L);
+        CartRequest newUser = new CartRequest(sampleCart().items(), 8L);
+        CartRequest other = new CartRequest(sampleCart().items(), 43L);
+
+        assertEquals(List.of("vip", "new-users"), service.getCoupon(31).constraints().segments());
+        assertEquals(1, service.getApplicableCoupons(member).applicableCoupons().size());
+        assertEquals(1, service.getApplicableCoupons(newUser).applicableCoupons().size());
+        assertTrue(service.getApplicableCoupons(other).applicableCoupons().isEmpty());
+        assertTrue(service.getApplicableCoupons(sampleCart()).applicableCoupons().isEmpty());
+        assertEquals(44.0, service.applyCoupon(31, member).totalDiscount(), 0.001);
+        assertThrows(CouponNotEligibleException.class, () -> service.applyCoupon(31, other));
+        assertThrows(CustomerRequiredException.class, () -> service.applyCoupon(31, sampleCart()));
+
+        service.uploadSegment("vip", new ByteArrayInputStream("43".getBytes(StandardCharsets.UTF_8)));
+        assertTrue(service.getApplicableCoupons(member).applicableCoupons().isEmpty());
+        assertEquals(1, service.getApplicableCoupons(other).applicableCoupons().size());
+    }
+
+    @Test
+    void testInvalidSegmentIsRejectedBeforeSaving() {
+        CouponRequest request = new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 10.0, null),
+                new CouponConstraints(null, null, null, List.of("vip,gold")));
+
+        assertThrows(InvalidSegmentException.class, () -> service.createCoupon(request));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void testArchivedCouponIsStillRetrievableById() throws Exception {
+        when(repository.findById(40)).thenReturn(Optional.empty());
+        when(archive.findById(40)).thenReturn(Optional.of(ArchivedCoupon.builder().id(40).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").expiryDate(LocalDate.of(2020, 1, 31))
+                .version(7L).archivedAt(0L).build()));
+
+        CouponResponse coupon = service.getCoupon(40);
+        assertEquals(CouponType.CART_WISE, coupon.type());
+        assertEquals(LocalDate.of(2020, 1, 31), coupon.details().expiryDate());
+        assertEquals("\"40-7\"", service.getCouponJson(40).eTag());
+        assertEquals(40, mapper.readTree(service.getCouponJson(40).body()).get("id").asInt());
+        // Never brought back into the catalog
+        assertTrue(service.getAllCoupons().isEmpty());
+    }
+
+    @Test
+    void testCouponJsonIsReusedUntilTheCouponChanges() throws Exception {
+        Coupon coupon = new Coupon();
+        coupon.setId(15);
+        coupon.setType(CouponType.CART_WISE);
+        coupon.setDetails("{\"threshold\":100,\"discount\":10}");
+        when(repository.findById(15)).thenReturn(Optional.of(coupon));
+        when(repository.save(any(Coupon.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        CachedJson first = service.getCouponJson(15);
+        assertSame(first, service.getCouponJson(15));
+        assertEquals(first.eTag(), service.getCouponETag(15));
+        assertEquals(15, mapper.readTree(first.body()).get("id").asInt());
+        verify(mapper, times(1)).writeValueAsBytes(any());
+
+        service.updateCoupon(15, new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(300.0, 20.0, null)));
+
+        assertNotEquals(first.eTag(), service.getCouponETag(15));
+        CachedJson updated = service.getCouponJson(15);
+        assertEquals(service.getCouponETag(15), updated.eTag());
+        assertEquals(20.0, mapper.readTree(updated.body()).at("/details/discount").asDouble());
+    }
+
+    @Test
+    void testCouponETagNeverReadsTheRepository() {
+        assertNull(service.getCouponETag(16));
+        verify(repository, never()).findById(16);
+    }
+
+    @Test
+    void testCatalogETagChangesWithEveryWrite() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of());
+        when(repository.save(any(Coupon.class))).thenAnswer(inv -> {
+            Coupon saved = inv.getArgument(0);
+            saved.setId(17);
+            return saved;
+        });
+
+        String before = service.getCatalogETag();
+        CachedJson list = service.getAllCouponsJson();
+        assertEquals(before, list.eTag());
+        assertSame(list, service.getAllCouponsJson());
+
+        service.createCoupon(new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 10.0, null)));
+
+        assertNotEquals(before, service.getCatalogETag());
+        assertNotSame(list, service.getAllCouponsJson());
+    }
+
+    @Test
+    void testCartSessionIsUpdatedWithDeltas() {
+        Coupon cartWise = Coupon.builder().id(20).type(CouponType.CART_WISE)
+                .details("{\"threshold\":300,\"discount\":10}").build();
+        Coupon productWise = Coupon.builder().id(21).type(CouponType.PRODUCT_WISE)
+                .details("{\"productId\":2,\"discount\":50}").build();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWise, productWise));
+
+        CartSessionResponse created = service.createCartSession(new CartRequest(List.of(new CartItem(1, 4, 50.0)), 5L));
+        assertEquals(200.0, created.total(), 0.001);
+        assertTrue(created.applicableCoupons().isEmpty());
+
+        CartSessionResponse updated = service.updateCartSession(created.sessionId(), List.of(
+                new CartChange(CartChange.Action.ADD, 2, 2, 60.0),
+                new CartChange(CartChange.Action.SET, 1, 3, null)));
+
+        assertEquals(270.0, updated.total(), 0.001);
+        assertEquals(List.of(21), updated.applicableCoupons().stream().map(ApplicableCoupon::couponId).toList());
+        assertEquals(60.0, updated.applicableCoupons().get(0).discount(), 0.001);
+
+        updated = service.updateCartSession(created.sessionId(), List.of(new CartChange(CartChange.Action.ADD, 1, 1, null)));
+        assertEquals(List.of(20, 21), updated.applicableCoupons().stream().map(ApplicableCoupon::couponId).toList());
+        assertEquals(updated, service.getCartSession(created.sessionId()));
+
+        service.deleteCartSession(created.sessionId());
+        assertThrows(CartSessionNotFoundException.class, () -> service.getCartSession(created.sessionId()));
+    }
+
+    @Test
+    void testTenantsOnlySeeTheirOwnCouponsAndSessions() {
+        Coupon own = Coupon.builder().id(30).tenantId("acme").type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").build();
+        Coupon other = Coupon.builder().id(31).tenantId("globex").type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":20}").build();
+        when(repository.findByTenantId("acme")).thenReturn(List.of(own));
+        when(repository.findById(31)).thenReturn(Optional.of(other));
+        when(repository.save(any(Coupon.class))).thenAnswer(inv -> {
+            Coupon saved = inv.getArgument(0);
+            saved.setId(32);
+            return saved;
+        });
+
+        TenantContext.set("acme");
+        try {
+            assertEquals(List.of(30), service.getApplicableCoupons(sampleCart()).applicableCoupons().stream()
+                    .map(ApplicableCoupon::couponId).toList());
+            assertThrows(CouponNotFoundException.class, () -> service.getCoupon(31));
+            assertThrows(CouponNotFoundException.class, () -> service.deleteCoupon(31));
+            verify(repository, never()).deleteById(31);
+
+            CouponResponse created = service.createCoupon(
+                    new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 5.0, null)));
+            verify(repository).save(argThat(coupon -> "acme".equals(coupon.getTenantId())));
+            assertEquals(List.of(30, 32), service.getAllCoupons().stream().map(CouponResponse::id).toList());
+            assertNotEquals(CouponJsonCache.listETag(TenantContext.DEFAULT, 0), service.getCatalogETag());
+
+            String session = service.createCartSession(sampleCart()).sessionId();
+            TenantContext.set("globex");
+            assertThrows(CartSessionNotFoundException.class, () -> service.getCartSession(session));
+            when(repository.findById(32)).thenReturn(Optional.of(Coupon.builder().id(32).tenantId("acme")
+                    .type(CouponType.CART_WISE).details("{\"threshold\":100,\"discount\":5}").build()));
+            assertThrows(CouponNotFoundException.class, () -> service.getCoupon(created.id()));
+        } finally {
+            TenantContext.clear();
+        }
+        // The default tenant never loaded either partition's coupons
+        assertTrue(service.getAllCoupons().isEmpty());
+    }
+}
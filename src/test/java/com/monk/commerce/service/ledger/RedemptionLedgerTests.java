@@ -0,0 +1,210 @@
+package com.monk.commerce.service.ledger;
+
+import com.monk.commerce.config.LedgerProperties;
+import com.monk.commerce.dto.CartWiseDetails;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.CouponUsageLimitReachedException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RedemptionLedgerTests {
+
+    @TempDir
+    Path dir;
+
+    private LedgerProperties properties(LedgerProperties.FsyncPolicy fsync, DataSize rollSize) {
+        return new LedgerProperties(true, dir, fsync, Duration.ofMillis(10), rollSize, Duration.ofHours(1),
+                16, 1024, true, Duration.ofDays(7));
+    }
+
+    private static LedgerRecord record(int couponId, Long customerId) {
+        return new LedgerRecord(1_700_000_000_000L + couponId, couponId, customerId, 100.0, 10.0, couponId % 2 == 0);
+    }
+
+    @Test
+    void testWrittenRecordsReplayInOrder() throws Exception {
+        RedemptionLedger ledger = new RedemptionLedger(properties(LedgerProperties.FsyncPolicy.BATCH, DataSize.ofMegabytes(1)));
+        ledger.start();
+        for (int i = 0; i < 100; i++) ledger.append(record(i, i % 3 == 0 ? null : (long) i));
+        ledger.close();
+
+        List<LedgerRecord> replayed = new ArrayList<>();
+        assertEquals(100, ledger.replay(replayed::add));
+        for (int i = 0; i < 100; i++) assertEquals(record(i, i % 3 == 0 ? null : (long) i), replayed.get(i));
+        assertEquals(100, ledger.written());
+    }
+
+    @Test
+    void testSegmentsRollBySizeAndRestartsOpenANewSegment() throws Exception {
+        LedgerProperties properties = properties(LedgerProperties.FsyncPolicy.NEVER, DataSize.ofBytes(200));
+        RedemptionLedger first = new RedemptionLedger(properties);
+        first.start();
+        for (int i = 0; i < 20; i++) first.append(record(i, null));
+        first.close();
+        int segments = LedgerReader.segments(dir).size();
+        assertTrue(segments > 1);
+
+        RedemptionLedger second = new RedemptionLedger(properties);
+        second.start();
+        second.append(record(20, null));
+        second.close();
+
+        assertEquals(segments + 1, LedgerReader.segments(dir).size());
+        List<LedgerRecord> replayed = new ArrayList<>();
+        LedgerReader.read(dir, replayed::add);
+        assertEquals(21, replayed.size());
+        assertEquals(20, replayed.get(20).couponId());
+    }
+
+    @Test
+    void testTornTailIsSkipped() throws Exception {
+        RedemptionLedger ledger = new RedemptionLedger(properties(LedgerProperties.FsyncPolicy.INTERVAL, DataSize.ofMegabytes(1)));
+        ledger.start();
+        for (int i = 0; i < 3; i++) ledger.append(record(i, null));
+        ledger.close();
+
+        Path segment = LedgerReader.segments(dir).get(0);
+        Files.write(segment, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 10] ^= 0x5A;
+        Files.write(segment, bytes);
+
+        assertEquals(2, LedgerReader.read(dir, r -> {}));
+    }
+
+    @Test
+    void testDisabledLedgerWritesNothing() throws Exception {
+        RedemptionLedger ledger = new RedemptionLedger(new LedgerProperties(false, dir.resolve("off"),
+                LedgerProperties.FsyncPolicy.BATCH, Duration.ofSeconds(1), DataSize.ofMegabytes(1),
+                Duration.ofHours(1), 16, 16, true, Duration.ofDays(7)));
+        ledger.start();
+        ledger.append(record(1, null));
+        ledger.close();
+
+        assertFalse(Files.exists(dir.resolve("off")));
+        assertEquals(0, ledger.rejected());
+    }
+
+    @Test
+    void testRecordsAppendedWhileStoppedAreCountedAsRejected() throws Exception {
+        RedemptionLedger ledger = new RedemptionLedger(properties(LedgerProperties.FsyncPolicy.BATCH, DataSize.ofMegabytes(1)));
+        ledger.append(record(1, null));
+        ledger.start();
+        ledger.append(record(2, null));
+        ledger.close();
+        ledger.append(record(3, null));
+
+        assertEquals(1, ledger.written());
+        assertEquals(2, ledger.rejected());
+    }
+
+    @Test
+    void testRecoveryRaisesCountersToLedgerCounts() throws Exception {
+        LedgerProperties properties = properties(LedgerProperties.FsyncPolicy.BATCH, DataSize.ofMegabytes(1));
+        RedemptionLedger ledger = new RedemptionLedger(properties);
+        ledger.start();
+        for (int i = 0; i < 3; i++) ledger.append(new LedgerRecord(i, 7, null, 100.0, 10.0, true));
+        ledger.append(new LedgerRecord(3, 7, null, 100.0, 10.0, false));
+        ledger.close();
+
+        CouponRepository repository = mock(CouponRepository.class);
+        when(repository.findRedemptionCount(7)).thenReturn(1);
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        new LedgerRecovery(ledger, limiter, properties).afterSingletonsInstantiated();
+
+        CouponResponse coupon = new CouponResponse(7, CouponType.CART_WISE, new CartWiseDetails(0, 10, null),
+                new CouponConstraints(4));
+        limiter.reserve(coupon).commit();
+        assertThrows(CouponUsageLimitReachedException.class, () -> limiter.reserve(coupon));
+    }
+
+    @Test
+    void testFailedWritesAreRetriedInsteadOfDropped() throws Exception {
+        Path directory = dir.resolve("ledger");
+        // A zero roll interval opens a new segment for every batch, which fails while the directory is gone
+        RedemptionLedger ledger = new RedemptionLedger(new LedgerProperties(true, directory,
+                LedgerProperties.FsyncPolicy.BATCH, Duration.ofSeconds(1), DataSize.ofMegabytes(1), Duration.ZERO,
+                16, 1024, true, Duration.ofDays(7)));
+        ledger.start();
+        ledger.append(record(0, null));
+        awaitWritten(ledger, 1);
+        for (Path segment : LedgerReader.segments(directory)) Files.delete(segment);
+        Files.delete(directory);
+
+        for (int i = 1; i <= 3; i++) ledger.append(record(i, null));
+        Thread.sleep(300);
+        assertEquals(1, ledger.written());
+        Files.createDirectories(directory);
+        awaitWritten(ledger, 4);
+        ledger.close();
+
+        List<LedgerRecord> replayed = new ArrayList<>();
+        assertEquals(3, ledger.replay(replayed::add));
+        assertEquals(List.of(record(1, null), record(2, null), record(3, null)), replayed);
+    }
+
+    @Test
+    void testCompactionFoldsOldSegmentsIntoTheCheckpoint() throws Exception {
+        LedgerProperties properties = new LedgerProperties(true, dir, LedgerProperties.FsyncPolicy.NEVER,
+                Duration.ofMillis(10), DataSize.ofBytes(200), Duration.ofHours(1), 16, 1024, true, Duration.ZERO);
+        RedemptionLedger first = new RedemptionLedger(properties);
+        first.start();
+        for (int i = 0; i < 20; i++) first.append(new LedgerRecord(i, 7, null, 100.0, 10.0, i % 2 == 0));
+        first.close();
+        assertTrue(LedgerReader.segments(dir).size() > 1);
+
+        RedemptionLedger second = new RedemptionLedger(properties);
+        second.compact();
+        assertTrue(LedgerReader.segments(dir).isEmpty());
+        assertEquals(20, second.checkpoint().records());
+        assertEquals(10L, second.checkpoint().limitedCounts().get(7));
+
+        second.start();
+        second.append(new LedgerRecord(20, 7, null, 100.0, 10.0, true));
+        second.close();
+        assertEquals(1, second.replay(r -> {}));
+
+        CouponRepository repository = mock(CouponRepository.class);
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        new LedgerRecovery(second, limiter, properties).afterSingletonsInstantiated();
+
+        CouponResponse coupon = new CouponResponse(7, CouponType.CART_WISE, new CartWiseDetails(0, 10, null),
+                new CouponConstraints(12));
+        limiter.reserve(coupon).commit();
+        assertThrows(CouponUsageLimitReachedException.class, () -> limiter.reserve(coupon));
+    }
+
+    private static void awaitWritten(RedemptionLedger ledger, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (ledger.written() < count && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(count, ledger.written());
+    }
+
+    @Test
+    void testSegmentWithForeignHeaderIsRejected() throws IOException {
+        Files.write(dir.resolve(LedgerFormat.segmentName(0)), new byte[]{0, 0, 0, 0, 0, 1});
+
+        assertThrows(IOException.class, () -> LedgerReader.read(dir, r -> {}));
+    }
+}
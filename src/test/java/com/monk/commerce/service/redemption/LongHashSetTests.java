@@ -0,0 +1,48 @@
+package com.monk.commerce.service.redemption;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTests {
+
+    @Test
+    void testAddContainsRemove() {
+        LongHashSet set = new LongHashSet(0);
+
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.contains(5));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertFalse(set.contains(6));
+
+        assertTrue(set.remove(Long.MIN_VALUE));
+        assertTrue(set.remove(5));
+        assertFalse(set.remove(5));
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    void testMatchesHashSetUnderRandomOperations() {
+        LongHashSet set = new LongHashSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(31);
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key = 0; key < 2_000; key++) {
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+    }
+}
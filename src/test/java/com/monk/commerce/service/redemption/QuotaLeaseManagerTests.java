@@ -0,0 +1,148 @@
+package com.monk.commerce.service.redemption;
+
+import com.monk.commerce.config.RedemptionProperties;
+import com.monk.commerce.dto.CartWiseDetails;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.entity.RedemptionLease;
+import com.monk.commerce.exception.CouponUsageLimitReachedException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.repository.RedemptionLeaseRepository;
+import com.monk.commerce.repository.RedemptionQuotaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class QuotaLeaseManagerTests {
+
+    private CouponRepository coupons;
+    private RedemptionQuotaRepository quotas;
+    private RedemptionLeaseRepository leaseRows;
+    private QuotaLeaseManager leases;
+    private RedemptionLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        coupons = mock(CouponRepository.class);
+        quotas = mock(RedemptionQuotaRepository.class);
+        leaseRows = mock(RedemptionLeaseRepository.class);
+        when(leaseRows.findByCouponIdAndNodeId(anyInt(), anyString())).thenReturn(Optional.empty());
+        leases = manager(Duration.ofMinutes(1));
+        limiter = new RedemptionLimiter(coupons, new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)),
+                Optional.of(leases));
+    }
+
+    private QuotaLeaseManager manager(Duration idleReturn) {
+        RedemptionProperties properties = new RedemptionProperties(500, RedemptionProperties.Mode.LEASED, "node-a",
+                Duration.ofMinutes(1), idleReturn, Duration.ofSeconds(10), 3, 100);
+        return new QuotaLeaseManager(quotas, leaseRows,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), properties);
+    }
+
+    private CouponResponse coupon(int id, int usageLimit) {
+        return new CouponResponse(id, CouponType.CART_WISE, new CartWiseDetails(0, 10, null),
+                new CouponConstraints(usageLimit));
+    }
+
+    @Test
+    void testReservationsSpendLeasedBlocks() {
+        when(quotas.allocate(1, 3)).thenReturn(1);
+        CouponResponse coupon = coupon(1, 50);
+
+        for (int i = 0; i < 4; i++) limiter.reserve(coupon).commit();
+
+        verify(quotas, times(2)).allocate(1, 3);
+        assertEquals(6, limiter.counters().get(1).allowance());
+        verifyNoInteractions(coupons);
+    }
+
+    @Test
+    void testFallsBackToTheRemainingQuotaThenStops() {
+        when(quotas.allocate(2, 3)).thenReturn(0);
+        when(quotas.findUnallocated(2)).thenReturn(1L, 0L);
+        when(quotas.allocate(2, 1)).thenReturn(1);
+        CouponResponse coupon = coupon(2, 50);
+
+        limiter.reserve(coupon).commit();
+
+        assertThrows(CouponUsageLimitReachedException.class, () -> limiter.reserve(coupon));
+        assertFalse(limiter.hasRemaining(coupon));
+    }
+
+    @Test
+    void testIdleUnitsAreReturnedOnHeartbeat() {
+        leases = manager(Duration.ZERO);
+        limiter = new RedemptionLimiter(coupons, new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)),
+                Optional.of(leases));
+        when(quotas.allocate(3, 3)).thenReturn(1);
+        RedemptionLease row = RedemptionLease.builder().couponId(3).nodeId("node-a").granted(3L).used(0L).build();
+        when(leaseRows.save(any())).thenAnswer(invocation -> {
+            when(leaseRows.findByCouponIdAndNodeId(3, "node-a")).thenReturn(Optional.of(row));
+            return invocation.getArgument(0);
+        });
+        when(leaseRows.findByExpiresAtBefore(any())).thenReturn(List.of());
+
+        limiter.reserve(coupon(3, 50)).commit();
+        leases.heartbeat();
+
+        verify(quotas).deallocate(3, 2);
+        assertEquals(1, row.getGranted());
+        assertEquals(1, row.getUsed());
+        assertEquals(1, limiter.counters().get(3).allowance());
+    }
+
+    @Test
+    void testExpiredLeasesOfOtherNodesAreReclaimed() {
+        RedemptionLease mine = RedemptionLease.builder().couponId(4).nodeId("node-a").granted(5L).used(1L).build();
+        RedemptionLease theirs = RedemptionLease.builder().couponId(4).nodeId("node-b").granted(8L).used(3L)
+                .expiresAt(Instant.EPOCH).build();
+        when(leaseRows.findByExpiresAtBefore(any())).thenReturn(List.of(mine, theirs));
+
+        leases.heartbeat();
+
+        verify(quotas).deallocate(4, 5);
+        verify(leaseRows).delete(theirs);
+        verify(leaseRows, never()).delete(mine);
+    }
+
+    @Test
+    void testRevokeKeepsUsedUnits() {
+        RedemptionCounter counter = new RedemptionCounter(0);
+        counter.grant(5);
+        assertTrue(counter.tryReserveLeased());
+        assertTrue(counter.tryReserveLeased());
+
+        assertEquals(3, counter.revokeUnused());
+        assertFalse(counter.tryReserveLeased());
+        assertEquals(2, counter.allowance());
+        assertEquals(0, counter.revokeUnused());
+    }
+
+    @Test
+    void testForgettingACouponDeletesItsQuotaOnEveryNode() {
+        when(quotas.allocate(5, 3)).thenReturn(1);
+        limiter.reserve(coupon(5, 50)).commit();
+
+        limiter.forget(5);
+        // Never reserved on this node, but maybe on another
+        limiter.forget(6);
+
+        verify(leaseRows).deleteByCouponId(5);
+        verify(quotas).deleteByCouponId(5);
+        verify(leaseRows).deleteByCouponId(6);
+        verify(quotas).deleteByCouponId(6);
+        assertFalse(limiter.counters().containsKey(5));
+    }
+}
@@ -0,0 +1,194 @@
+package com.monk.commerce.service.redemption;
+
+import com.monk.commerce.config.RedemptionProperties;
+import com.monk.commerce.dto.CartWiseDetails;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.CouponAlreadyUsedException;
+import com.monk.commerce.exception.CouponUsageLimitReachedException;
+import com.monk.commerce.exception.CustomerRequiredException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RedemptionLimiterTests {
+
+    private CouponRepository repository;
+    private CustomerRedemptionRepository customerRepository;
+    private CustomerUsageIndex customers;
+    private RedemptionLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CouponRepository.class);
+        customerRepository = mock(CustomerRedemptionRepository.class);
+        customers = new CustomerUsageIndex(customerRepository);
+        limiter = new RedemptionLimiter(repository, customers, Optional.empty());
+    }
+
+    private CouponResponse coupon(int id, Integer usageLimit) {
+        return new CouponResponse(id, CouponType.CART_WISE, new CartWiseDetails(0, 10, null),
+                usageLimit == null ? null : new CouponConstraints(usageLimit));
+    }
+
+    private RedemptionFlusher flusher(int batchSize) {
+        TransactionTemplate transactions = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        RedemptionProperties properties = new RedemptionProperties(batchSize, RedemptionProperties.Mode.LOCAL, null,
+                Duration.ofMinutes(1), Duration.ofSeconds(30), Duration.ofSeconds(10), 10, 10_000);
+        return new RedemptionFlusher(limiter, repository, customers, customerRepository, transactions, properties);
+    }
+
+    private CouponResponse oncePerCustomer(int id) {
+        return new CouponResponse(id, CouponType.CART_WISE, new CartWiseDetails(0, 10, null),
+                new CouponConstraints(null, true));
+    }
+
+    @Test
+    void testUnlimitedCouponNeverTouchesRepository() {
+        CouponResponse coupon = coupon(1, null);
+
+        limiter.reserve(coupon).commit();
+
+        assertTrue(limiter.hasRemaining(coupon));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void testCounterIsSeededFromPersistedCount() {
+        when(repository.findRedemptionCount(2)).thenReturn(4);
+        CouponResponse coupon = coupon(2, 5);
+
+        limiter.reserve(coupon).commit();
+
+        assertFalse(limiter.hasRemaining(coupon));
+        assertThrows(CouponUsageLimitReachedException.class, () -> limiter.reserve(coupon));
+    }
+
+    @Test
+    void testReleaseReturnsTheReservation() {
+        CouponResponse coupon = coupon(3, 1);
+
+        Reservation reservation = limiter.reserve(coupon);
+        assertFalse(limiter.hasRemaining(coupon));
+        reservation.release();
+        reservation.release();
+
+        assertTrue(limiter.hasRemaining(coupon));
+        limiter.reserve(coupon).commit();
+        assertFalse(limiter.hasRemaining(coupon));
+    }
+
+    @Test
+    void testConcurrentReservationsNeverExceedLimit() throws InterruptedException {
+        CouponResponse coupon = coupon(4, 500);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 2_000; i++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    limiter.reserve(coupon).commit();
+                    granted.incrementAndGet();
+                } catch (CouponUsageLimitReachedException | InterruptedException ignored) {
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(500, granted.get());
+        assertEquals(500, limiter.counters().get(4).committed());
+    }
+
+    @Test
+    void testFlusherWritesOnlyChangedCounts() {
+        RedemptionFlusher flusher = flusher(1);
+        when(repository.findRedemptionCount(5)).thenReturn(10);
+
+        limiter.reserve(coupon(5, 100)).commit();
+        limiter.reserve(coupon(6, 100)).release();
+        flusher.flush();
+        flusher.flush();
+
+        verify(repository, times(1)).incrementRedemptionCount(5, 1);
+        verify(repository, never()).incrementRedemptionCount(eq(6), anyInt());
+    }
+
+    @Test
+    void testCustomerUsesCouponOnce() {
+        when(customerRepository.findCustomerIds(10)).thenReturn(List.of(7L));
+        CouponResponse coupon = oncePerCustomer(10);
+
+        assertFalse(limiter.hasRemaining(coupon, 7L));
+        assertFalse(limiter.hasRemaining(coupon, null));
+        assertThrows(CouponAlreadyUsedException.class, () -> limiter.reserve(coupon, 7L));
+        assertThrows(CustomerRequiredException.class, () -> limiter.reserve(coupon, null));
+
+        limiter.reserve(coupon, 8L).release();
+        assertTrue(limiter.hasRemaining(coupon, 8L));
+        limiter.reserve(coupon, 8L).commit();
+        assertFalse(limiter.hasRemaining(coupon, 8L));
+    }
+
+    @Test
+    void testCustomerClaimIsReturnedWhenLimitIsReached() {
+        CouponResponse coupon = new CouponResponse(11, CouponType.CART_WISE, new CartWiseDetails(0, 10, null),
+                new CouponConstraints(1, true));
+
+        limiter.reserve(coupon, 1L).commit();
+
+        assertThrows(CouponUsageLimitReachedException.class, () -> limiter.reserve(coupon, 2L));
+        assertTrue(customers.hasUsed(11, 1L));
+        assertFalse(customers.hasUsed(11, 2L));
+    }
+
+    @Test
+    void testFlusherWritesCustomerUsesInBatches() {
+        RedemptionFlusher flusher = flusher(2);
+        CouponResponse coupon = oncePerCustomer(12);
+        for (long customer = 1; customer <= 3; customer++) limiter.reserve(coupon, customer).commit();
+
+        flusher.flush();
+        flusher.flush();
+
+        verify(customerRepository, times(2)).saveAll(anyList());
+        assertTrue(customers.pending().isEmpty());
+    }
+
+    @Test
+    void testForgetDropsCustomerUses() {
+        CouponResponse coupon = oncePerCustomer(13);
+        limiter.reserve(coupon, 1L).commit();
+
+        limiter.forget(13);
+        flusher(10).flush();
+
+        verify(customerRepository).deleteByCouponId(13);
+        verify(customerRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void testForgetDropsStoredUsesThatWereNeverLoaded() {
+        limiter.forget(14);
+
+        verify(customerRepository).deleteByCouponId(14);
+    }
+}
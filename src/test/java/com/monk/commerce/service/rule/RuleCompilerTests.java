@@ -0,0 +1,108 @@
+package com.monk.commerce.service.rule;
+
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.RuleDetails;
+import com.monk.commerce.exception.InvalidRuleException;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleCompilerTests {
+
+    private final RuleCompiler compiler = new RuleCompiler();
+
+    private static final List<CartItem> CART = List.of(
+            new CartItem(1, 6, 50.0),
+            new CartItem(2, 3, 30.0),
+            new CartItem(3, 2, 25.0)
+    );
+
+    private CompiledRule rule(String condition, String discount) {
+        return compiler.compile(new RuleDetails(condition, discount, null));
+    }
+
+    @Test
+    void testConditions() {
+        assertTrue(rule("total >= 440 and contains(3) and qty(3) >= 2", "0").matches(CART));
+        assertFalse(rule("total > 440 || contains(9)", "0").matches(CART));
+        assertTrue(rule("!(lines != 3) && items == 11", "0").matches(CART));
+        assertTrue(rule("not contains(9) and (value(2) == 90 or false)", "0").matches(CART));
+        assertTrue(rule("price(1) * 2 - 10 / 2 >= 95", "0").matches(CART));
+        assertTrue(rule("-qty(1) < 0", "0").matches(CART));
+    }
+
+    @Test
+    void testDiscountIsBoundedByZeroAndTotal() {
+        assertEquals(44.0, rule("true", "total * 10 / 100").discount(CART, 440.0), 1e-9);
+        assertEquals(15.0, rule("true", "min(total * 0.1, 15)").discount(CART, 440.0), 1e-9);
+        assertEquals(440.0, rule("true", "max(total * 2, 0)").discount(CART, 440.0), 1e-9);
+        assertEquals(0.0, rule("true", "qty(1) - 100").discount(CART, 440.0), 1e-9);
+        assertEquals(0.0, rule("true", "total / 0").discount(CART, 440.0), 1e-9);
+    }
+
+    @Test
+    void testSyntaxAndTypeErrorsAreRejected() {
+        assertThrows(InvalidRuleException.class, () -> rule("total >=", "1"));
+        assertThrows(InvalidRuleException.class, () -> rule("total", "1"));
+        assertThrows(InvalidRuleException.class, () -> rule("true", "contains(1)"));
+        assertThrows(InvalidRuleException.class, () -> rule("qty(x) > 1", "1"));
+        assertThrows(InvalidRuleException.class, () -> rule("bogus > 1", "1"));
+        assertThrows(InvalidRuleException.class, () -> rule("(total > 1", "1"));
+        assertThrows(InvalidRuleException.class, () -> rule("true", null));
+        assertThrows(InvalidRuleException.class, () -> rule("true true", "1"));
+    }
+
+    @Test
+    void testCompiledRulesAreShared() {
+        assertSame(rule("contains(1)", "10"), rule("contains(1)", "10"));
+    }
+
+    @Test
+    void testExpiryDatesShareTheCompiledRule() {
+        assertSame(compiler.compile(new RuleDetails("contains(1)", "10", LocalDate.of(2030, 1, 1))),
+                compiler.compile(new RuleDetails("contains(1)", "10", LocalDate.of(2031, 1, 1))));
+        assertEquals(1, compiler.size());
+    }
+
+    @Test
+    void testRulesUnusedForAWholeSweepAreEvicted() {
+        CompiledRule kept = rule("contains(1)", "10");
+        rule("contains(2)", "10");
+        compiler.evictUnused();
+        assertEquals(2, compiler.size());
+
+        assertSame(kept, rule("contains(1)", "10"));
+        compiler.evictUnused();
+
+        assertEquals(1, compiler.size());
+        assertSame(kept, rule("contains(1)", "10"));
+    }
+
+    @Test
+    void testConjunctionLearnsToRunTheUsuallyFalseCheckFirst() {
+        // Written with the always-true, costlier checks first
+        CompiledRule rule = rule("total > 0 && items > 0 && contains(9)", "0");
+        RuleNodes.Junction and = (RuleNodes.Junction) rule.condition();
+
+        for (int i = 0; i < RuleNodes.Junction.SAMPLE_EVERY * RuleNodes.Junction.REORDER_EVERY * 4; i++) {
+            assertFalse(rule.matches(CART));
+        }
+
+        assertEquals(2, and.order()[0]);
+    }
+
+    @Test
+    void testDisjunctionLearnsToRunTheUsuallyTrueCheckFirst() {
+        CompiledRule rule = rule("contains(9) || qty(8) > 0 || total > 0", "0");
+        RuleNodes.Junction or = (RuleNodes.Junction) rule.condition();
+
+        for (int i = 0; i < RuleNodes.Junction.SAMPLE_EVERY * RuleNodes.Junction.REORDER_EVERY * 4; i++) {
+            assertTrue(rule.matches(CART));
+        }
+
+        assertEquals(2, or.order()[0]);
+    }
+}
@@ -0,0 +1,161 @@
+package com.monk.commerce.service.segment;
+
+import com.monk.commerce.dto.CartWiseDetails;
+import com.monk.commerce.dto.CouponConstraints;
+import com.monk.commerce.dto.CouponResponse;
+import com.monk.commerce.dto.SegmentResponse;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.entity.CustomerSegment;
+import com.monk.commerce.exception.InvalidSegmentException;
+import com.monk.commerce.exception.SegmentNotFoundException;
+import com.monk.commerce.repository.CustomerSegmentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class CustomerSegmentsTests {
+
+    private static final CouponResponse VIP_ONLY = new CouponResponse(1, CouponType.CART_WISE,
+            new CartWiseDetails(100.0, 10.0, null), new CouponConstraints(null, null, null, List.of("vip")));
+
+    private CustomerSegmentRepository repository;
+    // The customer_segment table
+    private final Map<Long, CustomerSegment> table = new TreeMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CustomerSegmentRepository.class);
+        when(repository.save(any(CustomerSegment.class))).thenAnswer(inv -> {
+            CustomerSegment segment = inv.getArgument(0);
+            if (segment.getId() == null) segment.setId(ids.incrementAndGet());
+            table.put(segment.getId(), copy(segment));
+            return segment;
+        });
+        when(repository.findById(anyLong())).thenAnswer(inv -> Optional.ofNullable(table.get((Long) inv.getArgument(0)))
+                .map(CustomerSegmentsTests::copy));
+        when(repository.findByTenantIdIsNullAndName(any())).thenAnswer(inv -> table.values().stream()
+                .filter(s -> s.getTenantId() == null && s.getName().equals(inv.getArgument(0)))
+                .findFirst().map(CustomerSegmentsTests::copy));
+        when(repository.findAllBy()).thenAnswer(inv -> {
+            List<CustomerSegmentRepository.Stamp> stamps = new ArrayList<>();
+            for (CustomerSegment segment : table.values()) stamps.add(stamp(segment));
+            return stamps;
+        });
+        doAnswer(inv -> table.remove(((CustomerSegment) inv.getArgument(0)).getId()))
+                .when(repository).delete(any(CustomerSegment.class));
+    }
+
+    private static CustomerSegment copy(CustomerSegment segment) {
+        return CustomerSegment.builder().id(segment.getId()).tenantId(segment.getTenantId()).name(segment.getName())
+                .members(segment.getMembers()).bitmap(segment.getBitmap()).updatedAt(segment.getUpdatedAt()).build();
+    }
+
+    private static CustomerSegmentRepository.Stamp stamp(CustomerSegment segment) {
+        return new CustomerSegmentRepository.Stamp() {
+            public Long getId() { return segment.getId(); }
+            public String getTenantId() { return segment.getTenantId(); }
+            public String getName() { return segment.getName(); }
+            public Long getUpdatedAt() { return segment.getUpdatedAt(); }
+        };
+    }
+
+    private static InputStream members(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCouponsWithoutSegmentsAdmitEveryone() {
+        CouponResponse open = new CouponResponse(2, CouponType.CART_WISE, new CartWiseDetails(100.0, 10.0, null));
+
+        assertTrue(CustomerSegments.inMemory().admits(null, open, null));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void testUploadIsParsedStoredAndPublished() {
+        CustomerSegments segments = new CustomerSegments(repository);
+
+        SegmentResponse response = segments.upload(null, "vip", members("1, 2\n3\t-4,,\r\n3"));
+
+        assertEquals(4, response.members());
+        assertTrue(segments.admits(null, VIP_ONLY, 3L));
+        assertTrue(segments.admits(null, VIP_ONLY, -4L));
+        assertFalse(segments.admits(null, VIP_ONLY, 5L));
+        assertFalse(segments.admits(null, VIP_ONLY, null));
+        // Another tenant's segment of the same name is another segment
+        assertFalse(segments.admits("acme", VIP_ONLY, 3L));
+        assertEquals(4, SegmentBitmap.fromBytes(table.get(1L).getBitmap()).cardinality());
+    }
+
+    @Test
+    void testMalformedUploadChangesNothing() {
+        CustomerSegments segments = new CustomerSegments(repository);
+        segments.upload(null, "vip", members("1"));
+
+        assertThrows(InvalidSegmentException.class, () -> segments.upload(null, "vip", members("2 x3")));
+        assertThrows(InvalidSegmentException.class, () -> segments.upload(null, "vip", members("99999999999999999999")));
+        assertThrows(InvalidSegmentException.class, () -> segments.upload(null, "vip", members("5 -")));
+        assertThrows(InvalidSegmentException.class, () -> segments.upload(null, "no/slashes", members("1")));
+
+        assertTrue(segments.admits(null, VIP_ONLY, 1L));
+        assertFalse(segments.admits(null, VIP_ONLY, 2L));
+        verify(repository, times(1)).save(any());
+    }
+
+    @Test
+    void testSegmentsAreLoadedAndRefreshedFromTheTable() {
+        new CustomerSegments(repository).upload(null, "vip", members("1 2"));
+        CustomerSegments other = new CustomerSegments(repository);
+
+        assertTrue(other.admits(null, VIP_ONLY, 2L));
+
+        CustomerSegments writer = new CustomerSegments(repository);
+        writer.upload(null, "vip", members("3"));
+        assertTrue(other.admits(null, VIP_ONLY, 2L));
+        other.refresh();
+        assertFalse(other.admits(null, VIP_ONLY, 2L));
+        assertTrue(other.admits(null, VIP_ONLY, 3L));
+
+        writer.delete(null, "vip");
+        other.refresh();
+        assertFalse(other.admits(null, VIP_ONLY, 3L));
+        assertThrows(SegmentNotFoundException.class, () -> other.get(null, "vip"));
+    }
+
+    @Test
+    void testEvaluationIsNotPausedByAnUpload() throws Exception {
+        CustomerSegments segments = CustomerSegments.inMemory();
+        segments.upload(null, "vip", members("1"));
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicBoolean lostMember = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            // Customer 1 is in every version of the segment
+            while (!stop.get()) if (!segments.admits(null, VIP_ONLY, 1L)) lostMember.set(true);
+        });
+        reader.start();
+        StringBuilder ids = new StringBuilder("1");
+        for (int i = 2; i < 200_000; i++) ids.append(' ').append(i);
+        for (int round = 0; round < 5; round++) segments.upload(null, "vip", members(ids.toString()));
+        stop.set(true);
+        reader.join();
+
+        assertFalse(lostMember.get());
+        assertEquals(199_999, segments.get(null, "vip").members());
+    }
+}
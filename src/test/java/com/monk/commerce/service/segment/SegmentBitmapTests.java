@@ -0,0 +1,89 @@
+package com.monk.commerce.service.segment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentBitmapTests {
+
+    @Test
+    void testMembershipMatchesASetAcrossContainerKinds() {
+        Random random = new Random(7);
+        Set<Long> expected = new HashSet<>();
+        SegmentBitmap.Builder builder = SegmentBitmap.builder();
+        // A dense range that becomes a bitmap container, sparse ids in array containers, negatives
+        for (long id = 1_000_000; id < 1_010_000; id++) {
+            if (random.nextInt(3) > 0) {
+                expected.add(id);
+                builder.add(id);
+            }
+        }
+        for (int i = 0; i < 20_000; i++) {
+            long id = random.nextLong() >> random.nextInt(40);
+            expected.add(id);
+            builder.add(id).add(id);
+        }
+        SegmentBitmap bitmap = builder.build();
+
+        assertEquals(expected.size(), bitmap.cardinality());
+        for (long id : expected) assertTrue(bitmap.contains(id));
+        for (int i = 0; i < 100_000; i++) {
+            long id = random.nextBoolean() ? 1_000_000 + random.nextInt(20_000) : random.nextLong();
+            assertEquals(expected.contains(id), bitmap.contains(id));
+        }
+    }
+
+    @Test
+    void testDenseSegmentsAreCompressed() {
+        SegmentBitmap.Builder builder = SegmentBitmap.builder();
+        for (long id = 0; id < 1_000_000; id++) builder.add(id);
+        SegmentBitmap bitmap = builder.build();
+
+        assertEquals(1_000_000, bitmap.cardinality());
+        // One bit per id instead of eight bytes
+        assertTrue(bitmap.sizeInBytes() < 1_000_000 / 7, "took " + bitmap.sizeInBytes() + " bytes");
+    }
+
+    @Test
+    void testOrMergesArrayAndBitmapContainers() {
+        SegmentBitmap.Builder left = SegmentBitmap.builder();
+        SegmentBitmap.Builder right = SegmentBitmap.builder();
+        for (long id = 0; id < 6000; id++) left.add(id);
+        for (long id = 5000; id < 7000; id += 2) right.add(id);
+        right.add(1L << 40);
+
+        SegmentBitmap merged = left.build().or(right.build());
+
+        assertEquals(6000 + 500 + 1, merged.cardinality());
+        assertTrue(merged.contains(6998));
+        assertFalse(merged.contains(6999));
+        assertTrue(merged.contains(1L << 40));
+    }
+
+    @Test
+    void testBytesRoundTrip() {
+        SegmentBitmap.Builder builder = SegmentBitmap.builder();
+        for (long id = -5000; id < 5000; id += 3) builder.add(id);
+        for (long id = 70_000; id < 80_000; id++) builder.add(id);
+        SegmentBitmap bitmap = builder.build();
+
+        SegmentBitmap restored = SegmentBitmap.fromBytes(bitmap.toBytes());
+
+        assertEquals(bitmap.cardinality(), restored.cardinality());
+        for (long id = -6000; id < 81_000; id++) assertEquals(bitmap.contains(id), restored.contains(id));
+        assertEquals(0, SegmentBitmap.fromBytes(SegmentBitmap.EMPTY.toBytes()).cardinality());
+    }
+
+    @Test
+    void testCorruptBytesAreRejected() {
+        byte[] bytes = SegmentBitmap.builder().add(1).add(2).build().toBytes();
+
+        assertThrows(IllegalArgumentException.class, () -> SegmentBitmap.fromBytes(new byte[]{1, 2, 3, 4, 5}));
+        assertThrows(IllegalArgumentException.class,
+                () -> SegmentBitmap.fromBytes(java.util.Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+}
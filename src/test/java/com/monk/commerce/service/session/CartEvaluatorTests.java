@@ -0,0 +1,226 @@
+package com.monk.commerce.service.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.EvaluationProperties;
+import com.monk.commerce.dto.ApplicableCoupon;
+import com.monk.commerce.dto.ApplicableCouponsResponse;
+import com.monk.commerce.dto.CartChange;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.InvalidCartChangeException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.rule.RuleCompiler;
+import com.monk.commerce.service.strategy.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CartEvaluatorTests {
+
+    private CouponRepository repository;
+    private CouponCatalog catalog;
+    private BxGyCouponStrategy bxGy;
+    private CouponStrategyFactory factory;
+    private CartEvaluator evaluator;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CouponRepository.class);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+        bxGy = spy(new BxGyCouponStrategy(mapper));
+        factory = new CouponStrategyFactory(List.of(
+                new CartWiseCouponStrategy(mapper),
+                new ProductWiseCouponStrategy(mapper),
+                bxGy,
+                new RuleCouponStrategy(new RuleCompiler(), mapper)
+        ));
+        evaluator = new CartEvaluator(catalog, factory, new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty()));
+    }
+
+    private static Coupon coupon(int id, CouponType type, String details) {
+        return Coupon.builder().id(id).type(type).details(details).build();
+    }
+
+    private static Coupon cartWise(int id, double threshold) {
+        return coupon(id, CouponType.CART_WISE, "{\"threshold\":" + threshold + ",\"discount\":10}");
+    }
+
+    private static Coupon productWise(int id, int productId, double discount) {
+        return coupon(id, CouponType.PRODUCT_WISE, "{\"productId\":" + productId + ",\"discount\":" + discount + "}");
+    }
+
+    private static Coupon bxGy(int id, int buy, int get) {
+        return coupon(id, CouponType.BXGY, "{\"buyProducts\":[{\"productId\":" + buy + ",\"quantity\":2}],"
+                + "\"getProducts\":[{\"productId\":" + get + ",\"quantity\":1}],\"repetitionLimit\":2}");
+    }
+
+    private void write(Coupon coupon) {
+        catalog.mutate(version -> {
+            coupon.setVersion(version);
+            return catalog.put(coupon);
+        });
+    }
+
+    private List<ApplicableCoupon> fromScratch(CartSession session) {
+        CartSession fresh = CartSession.of("fresh", new CartRequest(session.items(), session.customerId()));
+        evaluator.evaluate(fresh);
+        return fresh.applicableCoupons();
+    }
+
+    private static void assertSameCoupons(List<ApplicableCoupon> expected, List<ApplicableCoupon> actual) {
+        assertEquals(expected.stream().map(ApplicableCoupon::couponId).toList(),
+                actual.stream().map(ApplicableCoupon::couponId).toList());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).discount(), actual.get(i).discount(), 1e-9);
+        }
+    }
+
+    @Test
+    void testIncrementalResultsMatchAFullEvaluation() {
+        List<Coupon> loaded = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) loaded.add(productWise(i, i, 5 + i));
+        for (int i = 11; i <= 15; i++) loaded.add(cartWise(i, (i - 10) * 150));
+        loaded.add(bxGy(16, 1, 2));
+        loaded.add(bxGy(17, 3, 4));
+        loaded.add(coupon(18, CouponType.RULE, "{\"condition\":\"items >= 6\",\"discount\":\"25\"}"));
+        when(repository.findByTenantIdIsNull()).thenReturn(loaded);
+
+        Random random = new Random(7);
+        CartSession session = CartSession.of("s", new CartRequest(List.of(new CartItem(1, 2, 40.0))));
+        evaluator.evaluate(session);
+        for (int step = 0; step < 300; step++) {
+            if (step % 50 == 25) write(productWise(100 + step, 1 + random.nextInt(10), 30));
+            if (step % 50 == 40) write(cartWise(200 + step, random.nextInt(800)));
+            CartChange.Action action = CartChange.Action.values()[random.nextInt(3)];
+            int product = 1 + random.nextInt(10);
+            Integer quantity = action == CartChange.Action.REMOVE && random.nextBoolean() ? null : 1 + random.nextInt(3);
+            Set<Integer> changed = session.apply(List.of(new CartChange(action, product, quantity, 10.0 * product)));
+            evaluator.reevaluate(session, changed);
+
+            assertSameCoupons(fromScratch(session), session.applicableCoupons());
+        }
+    }
+
+    @Test
+    void testDeadlineReturnsTheMostValuableCouponsFirst() {
+        List<Coupon> loaded = new ArrayList<>();
+        // 10% off at thresholds 0, 100, ..., 3000: only the first three apply to a cart of 250
+        for (int i = 0; i <= 30; i++) loaded.add(cartWise(100 + i, i * 100));
+        loaded.add(bxGy(1, 1, 2));
+        loaded.add(productWise(2, 2, 50));
+        when(repository.findByTenantIdIsNull()).thenReturn(loaded);
+        CartRequest cart = new CartRequest(List.of(new CartItem(1, 2, 50.0), new CartItem(2, 1, 150.0)));
+
+        ApplicableCouponsResponse complete = evaluator.evaluate(cart, System.nanoTime() + 60_000_000_000L);
+        assertFalse(complete.partial());
+        assertEquals(Set.copyOf(evaluator.evaluate(cart)), Set.copyOf(complete.applicableCoupons()));
+
+        // Past its deadline: the columns, then one round of records, the free product before the rest
+        ApplicableCouponsResponse partial = evaluator.evaluate(cart, System.nanoTime() - 1);
+        assertTrue(partial.partial());
+        assertEquals(List.of(2, 1, 102, 101, 100),
+                partial.applicableCoupons().stream().map(ApplicableCoupon::couponId).toList());
+    }
+
+    @Test
+    void testSpentDeadlineRanksOnlyTheFirstBlockOfALargeCatalog() {
+        List<Coupon> loaded = new ArrayList<>();
+        // The discount grows with the id, so the best coupons are the last ones ranked
+        for (int i = 1; i <= 3000; i++) {
+            loaded.add(coupon(i, CouponType.CART_WISE, "{\"threshold\":0,\"discount\":" + i / 100.0 + "}"));
+        }
+        when(repository.findByTenantIdIsNull()).thenReturn(loaded);
+        CartRequest cart = new CartRequest(List.of(new CartItem(1, 1, 100.0)));
+
+        ApplicableCouponsResponse partial = evaluator.evaluate(cart, System.nanoTime() - 1);
+
+        assertTrue(partial.partial());
+        assertEquals(16, partial.applicableCoupons().size());
+        assertTrue(partial.applicableCoupons().stream().allMatch(coupon -> coupon.couponId() <= 1024));
+    }
+
+    @Test
+    void testLargeCartsAreSortMergedWithTheSameResults() {
+        List<Coupon> loaded = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) loaded.add(productWise(i, i, 5 + i % 7));
+        // Not representable in basis points, so evaluated by the strategy
+        for (int i = 51; i <= 60; i++) loaded.add(productWise(i, i - 50, 2.125));
+        for (int i = 61; i <= 80; i++) loaded.add(bxGy(i, i % 25, (i + 3) % 25));
+        loaded.add(cartWise(81, 500));
+        when(repository.findByTenantIdIsNull()).thenReturn(loaded);
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        CartEvaluator sortMerge = new CartEvaluator(catalog, factory, limiter, new EvaluationProperties(1));
+        CartEvaluator scan = new CartEvaluator(catalog, factory, limiter,
+                new EvaluationProperties(Integer.MAX_VALUE));
+
+        Random random = new Random(13);
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            items.add(new CartItem(1 + random.nextInt(60), 1 + random.nextInt(3), 5.0 + i % 17));
+        }
+        CartRequest cart = new CartRequest(items);
+
+        assertSameCoupons(scan.evaluate(cart), sortMerge.evaluate(cart));
+        assertEquals(scan.evaluate(cart).size(), sortMerge.evaluate(cart, System.nanoTime() + 60_000_000_000L)
+                .applicableCoupons().size());
+    }
+
+    @Test
+    void testUnrelatedCouponsAreNotReevaluated() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(bxGy(1, 5, 6), productWise(2, 1, 10), cartWise(3, 1000)));
+        CartSession session = CartSession.of("s", new CartRequest(List.of(
+                new CartItem(5, 2, 10.0), new CartItem(6, 1, 10.0))));
+        evaluator.evaluate(session);
+        clearInvocations(bxGy);
+
+        evaluator.reevaluate(session, session.apply(List.of(new CartChange(CartChange.Action.ADD, 1, 1, 50.0))));
+
+        verify(bxGy, never()).isApplicable(any(), any());
+        assertEquals(List.of(1, 2), session.applicableCoupons().stream().map(ApplicableCoupon::couponId).toList());
+    }
+
+    @Test
+    void testCatalogWritesAndDeletesAreFoldedIn() {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWise(1, 10), productWise(2, 1, 10)));
+        CartSession session = CartSession.of("s", new CartRequest(List.of(new CartItem(1, 1, 50.0))));
+        evaluator.evaluate(session);
+        assertEquals(2, session.applicableCoupons().size());
+
+        write(productWise(3, 1, 20));
+        catalog.mutate(version -> {
+            catalog.remove(1, version);
+            return null;
+        });
+        evaluator.reevaluate(session, Set.of());
+
+        assertEquals(List.of(2, 3), session.applicableCoupons().stream().map(ApplicableCoupon::couponId).toList());
+    }
+
+    @Test
+    void testInvalidChangesLeaveTheCartUntouched() {
+        CartSession session = CartSession.of("s", new CartRequest(List.of(new CartItem(1, 1, 50.0))));
+
+        assertThrows(InvalidCartChangeException.class, () -> session.apply(List.of(
+                new CartChange(CartChange.Action.ADD, 1, 2, null),
+                new CartChange(CartChange.Action.ADD, 9, 1, null))));
+
+        assertEquals(List.of(new CartItem(1, 1, 50.0)), session.items());
+    }
+}
@@ -0,0 +1,48 @@
+package com.monk.commerce.service.session;
+
+import com.monk.commerce.config.CartSessionProperties;
+import com.monk.commerce.dto.CartRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartSessionStoreTests {
+
+    private static CartSession session(String id) {
+        return CartSession.of(id, new CartRequest(List.of()));
+    }
+
+    @Test
+    void testLeastRecentlyUsedSessionIsDroppedBeyondTheLimit() {
+        CartSessionStore store = new CartSessionStore(new CartSessionProperties(Duration.ofMinutes(1), 2));
+        store.put(session("a"));
+        store.put(session("b"));
+        assertTrue(store.find("a").isPresent());
+
+        store.put(session("c"));
+
+        assertTrue(store.find("a").isPresent());
+        assertFalse(store.find("b").isPresent());
+        assertTrue(store.find("c").isPresent());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testSessionsExpireWhenUnused() throws InterruptedException {
+        CartSessionStore store = new CartSessionStore(new CartSessionProperties(Duration.ofMillis(20), 10));
+        store.put(session("a"));
+        store.put(session("b"));
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(10);
+            assertTrue(store.find("b").isPresent());
+        }
+
+        assertFalse(store.find("a").isPresent());
+        assertEquals(1, store.size());
+        assertTrue(store.remove("b"));
+        assertFalse(store.remove("b"));
+    }
+}
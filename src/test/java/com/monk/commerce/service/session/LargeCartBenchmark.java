@@ -0,0 +1,106 @@
+package com.monk.commerce.service.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.EvaluationProperties;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.rule.RuleCompiler;
+import com.monk.commerce.service.strategy.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Time per cart line of a full evaluation against 500 BXGY and 500 PRODUCT_WISE records, as carts
+ * grow from 500 to 10,000 lines, scanning the cart per coupon and sort-merging it. Run with
+ * {@code gradle test -Dbenchmarks=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class LargeCartBenchmark {
+
+    private static final int[] LINES = {500, 1_000, 2_000, 5_000, 10_000};
+    private static final int PRODUCTS = 20_000;
+
+    @Test
+    void reportTimePerLine() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        CouponStrategyFactory factory = new CouponStrategyFactory(List.of(
+                new CartWiseCouponStrategy(mapper),
+                new ProductWiseCouponStrategy(mapper),
+                new BxGyCouponStrategy(mapper),
+                new RuleCouponStrategy(new RuleCompiler(), mapper)
+        ));
+        CouponRepository repository = mock(CouponRepository.class);
+        when(repository.findByTenantIdIsNull()).thenReturn(catalogRows());
+        CouponCatalog catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        CartEvaluator scan = new CartEvaluator(catalog, factory, limiter, new EvaluationProperties(Integer.MAX_VALUE));
+        CartEvaluator sortMerge = new CartEvaluator(catalog, factory, limiter, new EvaluationProperties(1));
+
+        double[] sortMergeNanos = new double[LINES.length];
+        for (int i = 0; i < LINES.length; i++) {
+            CartRequest cart = cart(LINES[i]);
+            double scanNanos = nanosPerLine(scan, cart);
+            sortMergeNanos[i] = nanosPerLine(sortMerge, cart);
+            System.out.printf("%,6d lines: scan %.0f ns per line, sort-merge %.0f ns per line%n",
+                    LINES[i], scanNanos, sortMergeNanos[i]);
+        }
+        // Linear or better: the cost per line does not grow with the cart
+        assertTrue(sortMergeNanos[LINES.length - 1] <= 2 * sortMergeNanos[1]);
+    }
+
+    private static List<Coupon> catalogRows() {
+        Random random = new Random(1);
+        List<Coupon> rows = new ArrayList<>();
+        int id = 1;
+        for (int i = 0; i < 500; i++) {
+            // Not representable in basis points, so held as records and evaluated by the strategy
+            rows.add(coupon(id++, CouponType.PRODUCT_WISE,
+                    "{\"productId\":" + random.nextInt(PRODUCTS) + ",\"discount\":2.125}"));
+        }
+        for (int i = 0; i < 500; i++) {
+            rows.add(coupon(id++, CouponType.BXGY, "{\"buyProducts\":[{\"productId\":" + random.nextInt(PRODUCTS)
+                    + ",\"quantity\":1},{\"productId\":" + random.nextInt(PRODUCTS) + ",\"quantity\":1}],"
+                    + "\"getProducts\":[{\"productId\":" + random.nextInt(PRODUCTS) + ",\"quantity\":1}],"
+                    + "\"repetitionLimit\":3}"));
+        }
+        return rows;
+    }
+
+    private static Coupon coupon(int id, CouponType type, String details) {
+        return Coupon.builder().id(id).type(type).details(details).version((long) id).build();
+    }
+
+    private static CartRequest cart(int lines) {
+        Random random = new Random(lines);
+        List<CartItem> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) items.add(new CartItem(random.nextInt(PRODUCTS), 1 + random.nextInt(5), 10.0));
+        return new CartRequest(items);
+    }
+
+    private static double nanosPerLine(CartEvaluator evaluator, CartRequest cart) {
+        int rounds = Math.max(20, 200_000 / cart.items().size());
+        for (int i = 0; i < rounds; i++) evaluator.evaluate(cart);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) evaluator.evaluate(cart);
+        return (System.nanoTime() - start) / (double) rounds / cart.items().size();
+    }
+}
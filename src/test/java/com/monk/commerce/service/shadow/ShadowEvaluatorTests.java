@@ -0,0 +1,209 @@
+package com.monk.commerce.service.shadow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.annotation.CouponHandler;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.ShadowProperties;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.shadow.ShadowEvaluator.CatalogRead;
+import com.monk.commerce.service.strategy.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ShadowEvaluatorTests {
+
+    private ObjectMapper mapper;
+    private CouponRepository repository;
+    private CouponCatalog catalog;
+    private RedemptionLimiter limiter;
+    private CartEvaluator evaluator;
+    private List<CouponStrategy> strategies;
+    private SimpleMeterRegistry registry;
+    private final CartRequest cart = new CartRequest(List.of(new CartItem(1, 2, 100.0), new CartItem(2, 1, 50.0)));
+
+    /** A shadow CART_WISE engine that takes twice the discount above a threshold of 500. */
+    @CouponHandler(value = CouponType.CART_WISE, shadow = true)
+    static class GenerousCartWise extends CartWiseCouponStrategy {
+
+        GenerousCartWise(ObjectMapper mapper) {
+            super(mapper);
+        }
+
+        @Override
+        public double calculateDiscount(CartRequest cart, CouponResponse coupon) {
+            double discount = super.calculateDiscount(cart, coupon);
+            return ((CartWiseDetails) coupon.details()).threshold() >= 500 ? 2 * discount : discount;
+        }
+
+        @Override
+        public ApplyCouponResponse applyCoupon(CartRequest cart, CouponResponse coupon) {
+            ApplyCouponResponse response = super.applyCoupon(cart, coupon);
+            if (((CartWiseDetails) coupon.details()).threshold() < 500) return response;
+            return new ApplyCouponResponse(response.items(), response.totalPrice(), 2 * response.totalDiscount(),
+                    response.totalPrice() - 2 * response.totalDiscount());
+        }
+    }
+
+    /** A shadow PRODUCT_WISE engine that takes twice the discount. */
+    @CouponHandler(value = CouponType.PRODUCT_WISE, shadow = true)
+    static class GenerousProductWise extends ProductWiseCouponStrategy {
+
+        GenerousProductWise(ObjectMapper mapper) {
+            super(mapper);
+        }
+
+        @Override
+        public double calculateDiscount(CartRequest cart, CouponResponse coupon) {
+            return 2 * super.calculateDiscount(cart, coupon);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        strategies = List.of(
+                new CartWiseCouponStrategy(mapper),
+                new ProductWiseCouponStrategy(mapper),
+                new BxGyCouponStrategy(mapper),
+                new GenerousCartWise(mapper));
+        repository = mock(CouponRepository.class);
+        List<Coupon> rows = new ArrayList<>();
+        rows.add(Coupon.builder().id(1).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").version(1L).build());
+        rows.add(Coupon.builder().id(2).type(CouponType.PRODUCT_WISE)
+                .details("{\"productId\":2,\"discount\":20}").version(2L).build());
+        when(repository.findByTenantIdIsNull()).thenReturn(rows);
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(100));
+        limiter = new RedemptionLimiter(repository, new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)),
+                Optional.empty());
+        evaluator = new CartEvaluator(catalog, new CouponStrategyFactory(strategies), limiter);
+        registry = new SimpleMeterRegistry();
+    }
+
+    private ShadowEvaluator shadow(boolean enabled) {
+        return new ShadowEvaluator(strategies, new ShadowProperties(enabled, 1.0, 1, 100, 0.005), registry);
+    }
+
+    private double count(String name, String operation) {
+        return registry.counter(name, "operation", operation).count();
+    }
+
+    @Test
+    void testPrimaryFactoryIgnoresShadowStrategies() {
+        assertEquals(CartWiseCouponStrategy.class,
+                new CouponStrategyFactory(strategies).getStrategy(CouponType.CART_WISE).getClass());
+        assertEquals(GenerousCartWise.class,
+                new CouponStrategyFactory(strategies, true).getStrategy(CouponType.CART_WISE).getClass());
+        assertEquals(ProductWiseCouponStrategy.class,
+                new CouponStrategyFactory(strategies, true).getStrategy(CouponType.PRODUCT_WISE).getClass());
+    }
+
+    @Test
+    void testAgreeingResultsAreComparedWithoutMismatch() throws InterruptedException {
+        ShadowEvaluator shadow = shadow(true);
+        assertTrue(shadow.sample());
+
+        shadow.applicable(new CatalogRead(evaluator, catalog, catalog.version()), cart, evaluator.evaluate(cart), 1_000);
+        CouponResponse coupon = catalog.find(1).orElseThrow().coupon();
+        shadow.apply(coupon, cart, new CartWiseCouponStrategy(mapper).applyCoupon(cart, coupon), 1_000);
+        shadow.close();
+
+        assertEquals(1, count("coupons.shadow.compared", "applicable"));
+        assertEquals(1, count("coupons.shadow.compared", "apply"));
+        assertEquals(0, count("coupons.shadow.mismatches", "applicable"));
+        assertEquals(0, count("coupons.shadow.mismatches", "apply"));
+        assertEquals(1, registry.timer("coupons.shadow.latency", "operation", "apply", "engine", "shadow").count());
+    }
+
+    @Test
+    void testDifferingDiscountsAreCountedAsMismatches() throws InterruptedException {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(Coupon.builder().id(3).type(CouponType.CART_WISE)
+                .details("{\"threshold\":200,\"discount\":10}").version(3L).build()));
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(100));
+        evaluator = evaluator.forCatalog(catalog);
+        ShadowEvaluator shadow = shadow(true);
+        CouponResponse big = new CouponResponse(4, CouponType.CART_WISE, new CartWiseDetails(500.0, 10.0, null));
+        CartRequest large = new CartRequest(List.of(new CartItem(1, 10, 100.0)));
+
+        shadow.applicable(new CatalogRead(evaluator, catalog, catalog.version()), cart, List.of(), 1_000);
+        shadow.apply(big, large, new CartWiseCouponStrategy(mapper).applyCoupon(large, big), 1_000);
+        shadow.close();
+
+        // Coupon 3 applies in the shadow but the primary result given was empty
+        assertEquals(1, count("coupons.shadow.mismatches", "applicable"));
+        assertEquals(1, count("coupons.shadow.mismatches", "apply"));
+    }
+
+    @Test
+    void testColumnsCouponsAreJudgedByAShadowProductWiseStrategy() throws InterruptedException {
+        List<CouponStrategy> withProductWise = new ArrayList<>(strategies);
+        withProductWise.add(new GenerousProductWise(mapper));
+        ShadowEvaluator shadow = new ShadowEvaluator(withProductWise, new ShadowProperties(true, 1.0, 1, 100, 0.005),
+                registry);
+        // Coupon 2 is held in the columns rather than as a record
+        assertTrue(catalog.view().records().stream().noneMatch(entry -> entry.coupon().id() == 2));
+
+        shadow.applicable(new CatalogRead(evaluator, catalog, catalog.version()), cart, evaluator.evaluate(cart), 1_000);
+        shadow.close();
+
+        assertEquals(1, count("coupons.shadow.compared", "applicable"));
+        assertEquals(1, count("coupons.shadow.mismatches", "applicable"));
+    }
+
+    @Test
+    void testCouponsLeftOutByAUsageLimitReachedInBetweenAreSkipped() throws InterruptedException {
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(Coupon.builder().id(5).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").usageLimit(1).version(5L).build()));
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(100));
+        evaluator = evaluator.forCatalog(catalog);
+        ShadowEvaluator shadow = shadow(true);
+        List<ApplicableCoupon> primary = evaluator.evaluate(cart);
+        assertEquals(1, primary.size());
+        // Redeemed after the primary evaluation, so the shadow no longer sees it
+        limiter.reserve(catalog.find(5).orElseThrow().coupon());
+
+        shadow.applicable(new CatalogRead(evaluator, catalog, catalog.version()), cart, primary, 1_000);
+        shadow.close();
+
+        assertEquals(1, registry.counter("coupons.shadow.skipped").count());
+        assertEquals(0, count("coupons.shadow.compared", "applicable"));
+        assertEquals(0, count("coupons.shadow.mismatches", "applicable"));
+    }
+
+    @Test
+    void testComparisonIsSkippedWhenTheCatalogMoved() throws InterruptedException {
+        ShadowEvaluator shadow = shadow(true);
+        CatalogRead read = new CatalogRead(evaluator, catalog, catalog.version() - 1);
+
+        shadow.applicable(read, cart, List.of(), 1_000);
+        shadow.close();
+
+        assertEquals(1, registry.counter("coupons.shadow.skipped").count());
+        assertEquals(0, count("coupons.shadow.compared", "applicable"));
+    }
+
+    @Test
+    void testNothingIsSampledWhenDisabledOrWithoutShadowStrategies() {
+        assertFalse(shadow(false).sample());
+        assertFalse(new ShadowEvaluator(strategies.subList(0, 3), new ShadowProperties(true, 1.0, 1, 100, 0.005),
+                registry).sample());
+    }
+}
@@ -0,0 +1,178 @@
+package com.monk.commerce.service.simulation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.SimulationProperties;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.InvalidRuleException;
+import com.monk.commerce.exception.InvalidSimulationException;
+import com.monk.commerce.exception.SimulationBusyException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.rule.RuleCompiler;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.strategy.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CampaignSimulatorTests {
+
+    private ObjectMapper mapper;
+    private CampaignSimulator simulator;
+
+    @BeforeEach
+    void setUp() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        CouponStrategyFactory factory = new CouponStrategyFactory(List.of(
+                new CartWiseCouponStrategy(mapper),
+                new ProductWiseCouponStrategy(mapper),
+                new BxGyCouponStrategy(mapper),
+                new RuleCouponStrategy(new RuleCompiler(), mapper)
+        ));
+        CouponRepository repository = mock(CouponRepository.class);
+        // Live: 10% off carts of 100 or more
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(Coupon.builder().id(1).type(CouponType.CART_WISE)
+                .details("{\"threshold\":100,\"discount\":10}").version(1L).build()));
+        CouponCatalog catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(100));
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        simulator = new CampaignSimulator(new CartEvaluator(catalog, factory, limiter), factory, mapper,
+                new SimulationProperties(4, 16, 10, DataSize.ofBytes(200), 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        simulator.close();
+    }
+
+    private static InputStream lines(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testProposedCouponsAreTalliedAcrossChunks() throws IOException {
+        // 1000 carts of product 1 at 10 each, quantity 1 to 20: totals 10 to 200
+        StringBuilder carts = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            int quantity = 1 + i % 20;
+            carts.append(mapper.writeValueAsString(new CartRequest(List.of(new CartItem(1, quantity, 10.0)))))
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        List<CouponRequest> proposed = List.of(
+                // 20% off product 1: beats the live coupon on every cart
+                new CouponRequest(CouponType.PRODUCT_WISE, new ProductWiseDetails(1, 20.0, null)),
+                // Nothing in the carts
+                new CouponRequest(CouponType.PRODUCT_WISE, new ProductWiseDetails(2, 50.0, null)));
+
+        SimulationReport report = simulator.simulate(proposed, lines(carts.toString()));
+
+        assertEquals(1000, report.carts());
+        assertEquals(0, report.skippedLines());
+        // Each quantity appears 50 times: total value 50 * 10 * (1 + ... + 20)
+        assertEquals(105_000, report.cartValue(), 1e-6);
+        assertEquals(550, report.cartsWithLiveCoupon());
+        // 10% of totals 100 to 200, 50 carts each
+        assertEquals(50 * (10 + 20) * 11 / 2.0, report.bestLiveDiscount(), 1e-6);
+
+        SimulationReport.CouponImpact product = report.proposed().get(0);
+        assertEquals(1000, product.hits());
+        assertEquals(1.0, product.hitRate());
+        assertEquals(21_000, product.totalDiscount(), 1e-6);
+        assertEquals(40, product.maxDiscount(), 1e-6);
+        assertEquals(1000, product.winsOverLive());
+        assertEquals(21_000 - report.bestLiveDiscount(), product.incrementalDiscount(), 1e-6);
+        assertEquals(1000, product.distribution().stream().mapToLong(SimulationReport.DiscountBucket::carts).sum());
+        // Discounts of 2 to 40: buckets [2, 5), [5, 10), [10, 20), [20, 50)
+        assertEquals(List.of(2.0, 5.0, 10.0, 20.0),
+                product.distribution().stream().map(SimulationReport.DiscountBucket::from).toList());
+
+        SimulationReport.CouponImpact none = report.proposed().get(1);
+        assertEquals(0, none.hits());
+        assertTrue(none.distribution().isEmpty());
+    }
+
+    @Test
+    void testMalformedAndOversizedLinesAreSkipped() {
+        String carts = "{\"items\":[{\"productId\":1,\"quantity\":1,\"price\":150}]}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"items\":null}\n"
+                + "{\"items\":[{\"productId\":1,\"quantity\":1,\"price\":" + "1".repeat(300) + "}]}\n"
+                + "{\"items\":[{\"productId\":1,\"quantity\":1,\"price\":50}]}";
+
+        SimulationReport report = simulator.simulate(List.of(
+                new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 5.0, null))), lines(carts));
+
+        assertEquals(2, report.carts());
+        assertEquals(3, report.skippedLines());
+        assertEquals(1, report.proposed().get(0).hits());
+        assertEquals(0, report.proposed().get(0).winsOverLive());
+    }
+
+    @Test
+    void testProposedCouponsAreValidated() {
+        assertThrows(InvalidSimulationException.class, () -> simulator.simulate(List.of(), lines("")));
+        assertThrows(InvalidRuleException.class, () -> simulator.simulate(List.of(
+                new CouponRequest(CouponType.RULE, new RuleDetails("total >=", "1", null))), lines("")));
+    }
+
+    @Test
+    void testARejectedChunkFailsTheSimulationInsteadOfHangingIt() {
+        simulator.close();
+        String carts = "{\"items\":[{\"productId\":1,\"quantity\":1,\"price\":150}]}\n".repeat(40);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(RejectedExecutionException.class,
+                () -> simulator.simulate(List.of(new CouponRequest(CouponType.CART_WISE,
+                        new CartWiseDetails(100.0, 5.0, null))), lines(carts))));
+    }
+
+    @Test
+    void testOnlyOneSimulationRunsAtATime() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream blocking = new InputStream() {
+            @Override
+            public int read() {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return -1;
+            }
+        };
+        List<CouponRequest> proposed = List.of(
+                new CouponRequest(CouponType.CART_WISE, new CartWiseDetails(100.0, 5.0, null)));
+        Thread first = new Thread(() -> simulator.simulate(proposed, blocking));
+        first.start();
+        reading.await();
+
+        assertThrows(SimulationBusyException.class, () -> simulator.simulate(proposed, lines("")));
+        release.countDown();
+        first.join();
+        assertEquals(0, simulator.simulate(proposed, lines("")).carts());
+    }
+}
@@ -10,7 +10,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -183,4 +185,119 @@ class BxGyCouponStrategyTests {
         assertFalse(strategy.isApplicable(cart, coupon)); // covers false branch of hasAllBuys && hasGetProduct
     }
 
-}
\ No newline at end of file
+    @Test
+    void testCalculateDiscount_OverlapDoesNotCountUnitTwice() {
+        // Buy 2 of product 1, get 1 of product 1: six units support two full applications (2 + 1 each)
+        CartRequest cart = new CartRequest(List.of(new CartItem(1, 6, 10.0)));
+        BxGyDetails details = new BxGyDetails(
+                List.of(new ProductQuantity(1, 2)),
+                List.of(new ProductQuantity(1, 1)),
+                5,
+                LocalDate.now().plusDays(1)
+        );
+        CouponResponse coupon = new CouponResponse(1, CouponType.BXGY, details);
+
+        assertEquals(20.0, strategy.calculateDiscount(cart, coupon), 0.001);
+    }
+
+    @Test
+    void testIsApplicable_OverlapWithNothingLeftToGiveAway() {
+        CartRequest cart = new CartRequest(List.of(new CartItem(1, 2, 10.0)));
+        BxGyDetails details = new BxGyDetails(
+                List.of(new ProductQuantity(1, 2)),
+                List.of(new ProductQuantity(1, 1)),
+                5,
+                LocalDate.now().plusDays(1)
+        );
+        CouponResponse coupon = new CouponResponse(1, CouponType.BXGY, details);
+
+        assertFalse(strategy.isApplicable(cart, coupon));
+        assertEquals(0.0, strategy.calculateDiscount(cart, coupon), 0.001);
+    }
+
+    @Test
+    void testCalculateDiscount_FewerApplicationsCanBeWorthMore() {
+        // Two applications would consume every unit of product 1 as a buy, leaving only the ₹1 item free
+        CartRequest cart = new CartRequest(List.of(
+                new CartItem(1, 4, 100.0),
+                new CartItem(2, 1, 1.0)
+        ));
+        BxGyDetails details = new BxGyDetails(
+                List.of(new ProductQuantity(1, 2)),
+                List.of(new ProductQuantity(1, 1), new ProductQuantity(2, 1)),
+                10,
+                LocalDate.now().plusDays(1)
+        );
+        CouponResponse coupon = new CouponResponse(1, CouponType.BXGY, details);
+
+        assertEquals(101.0, strategy.calculateDiscount(cart, coupon), 0.001);
+    }
+
+    @Test
+    void testCalculateDiscount_RespectsRepetitionLimit() {
+        CartRequest cart = new CartRequest(List.of(
+                new CartItem(1, 5, 100.0),
+                new CartItem(2, 5, 10.0)
+        ));
+        BxGyDetails details = new BxGyDetails(
+                List.of(new ProductQuantity(1, 1)),
+                List.of(new ProductQuantity(2, 1)),
+                2,
+                LocalDate.now().plusDays(1)
+        );
+        CouponResponse coupon = new CouponResponse(1, CouponType.BXGY, details);
+
+        assertEquals(20.0, strategy.calculateDiscount(cart, coupon), 0.001);
+    }
+
+    @Test
+    void testApplyCoupon_FillsPerItemDiscountCheapestFirst() {
+        CartRequest cart = new CartRequest(List.of(
+                new CartItem(1, 1, 100.0),
+                new CartItem(2, 1, 30.0),
+                new CartItem(3, 3, 20.0)
+        ));
+        BxGyDetails details = new BxGyDetails(
+                List.of(new ProductQuantity(1, 1)),
+                List.of(new ProductQuantity(2, 1), new ProductQuantity(3, 1)),
+                1,
+                LocalDate.now().plusDays(1)
+        );
+        CouponResponse coupon = new CouponResponse(1, CouponType.BXGY, details);
+
+        ApplyCouponResponse response = strategy.applyCoupon(cart, coupon);
+
+        assertEquals(40.0, response.totalDiscount(), 0.001);
+        assertEquals(0.0, response.items().get(0).totalDiscount(), 0.001);
+        assertEquals(0.0, response.items().get(1).totalDiscount(), 0.001);
+        assertEquals(40.0, response.items().get(2).totalDiscount(), 0.001);
+        assertEquals(response.totalDiscount(),
+                response.items().stream().mapToDouble(DiscountedItem::totalDiscount).sum(), 0.001);
+    }
+
+    @Test
+    void testSortedCartGivesTheSameResultAsAScan() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            List<CartItem> items = new ArrayList<>();
+            for (int i = 0, lines = 1 + random.nextInt(300); i < lines; i++) {
+                items.add(new CartItem(1 + random.nextInt(40), random.nextInt(4), 1 + random.nextInt(100)));
+            }
+            CartRequest cart = new CartRequest(items);
+            // Buy and get lists that sometimes share a product
+            BxGyDetails details = new BxGyDetails(
+                    List.of(new ProductQuantity(1 + random.nextInt(40), 1 + random.nextInt(3)),
+                            new ProductQuantity(1 + random.nextInt(40), 1 + random.nextInt(3))),
+                    List.of(new ProductQuantity(1 + random.nextInt(40), 1 + random.nextInt(2))),
+                    1 + random.nextInt(5),
+                    null
+            );
+            CouponResponse coupon = new CouponResponse(1, CouponType.BXGY, details);
+            CartIndex index = CartIndex.of(items);
+
+            assertEquals(strategy.isApplicable(cart, coupon), strategy.isApplicable(cart, index, coupon));
+            assertEquals(strategy.calculateDiscount(cart, coupon), strategy.calculateDiscount(cart, index, coupon),
+                    1e-9);
+        }
+    }
+}
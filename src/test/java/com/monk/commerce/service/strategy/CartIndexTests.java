@@ -0,0 +1,54 @@
+package com.monk.commerce.service.strategy;
+
+import com.monk.commerce.dto.CartItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartIndexTests {
+
+    private static List<CartItem> randomCart(Random random, int lines, int products) {
+        List<CartItem> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            Integer productId = random.nextInt(50) == 0 ? null : random.nextInt(products) - products / 4;
+            items.add(new CartItem(productId, 1 + random.nextInt(3), 10.0));
+        }
+        return items;
+    }
+
+    @Test
+    void testLinesAreSortedByProductThenCartOrder() {
+        Random random = new Random(3);
+        for (int lines : new int[]{0, 1, 5, 32, 33, 500}) {
+            List<CartItem> items = randomCart(random, lines, 40);
+            CartIndex index = CartIndex.of(items);
+
+            assertEquals(items.stream().filter(item -> item.productId() != null).count(), index.size());
+            for (int i = 0; i < index.size(); i++) {
+                assertEquals(items.get(index.line(i)).productId(), index.productId(i));
+                if (i > 0) {
+                    assertTrue(index.productId(i - 1) < index.productId(i)
+                            || index.productId(i - 1) == index.productId(i) && index.line(i - 1) < index.line(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testLowerBoundGallopsToTheFirstMatch() {
+        Random random = new Random(5);
+        CartIndex index = CartIndex.of(randomCart(random, 2000, 300));
+        for (int probe = 0; probe < 2000; probe++) {
+            int product = random.nextInt(340) - 90;
+            int from = random.nextInt(index.size() + 1);
+            int expected = from;
+            while (expected < index.size() && index.productId(expected) < product) expected++;
+
+            assertEquals(expected, index.lowerBound(product, from), "product " + product + " from " + from);
+        }
+    }
+}
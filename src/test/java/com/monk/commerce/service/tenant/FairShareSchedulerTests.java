@@ -0,0 +1,84 @@
+package com.monk.commerce.service.tenant;
+
+import com.monk.commerce.config.TenantProperties;
+import com.monk.commerce.exception.TenantBusyException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FairShareSchedulerTests {
+
+    private static FairShareScheduler scheduler(int slots, Duration maxWait) {
+        return new FairShareScheduler(new TenantProperties(Duration.ofMinutes(30), 10, slots, maxWait));
+    }
+
+    private static Thread waiter(FairShareScheduler scheduler, String tenant, List<String> admitted) {
+        Thread thread = new Thread(() -> {
+            scheduler.acquire(tenant);
+            admitted.add(tenant);
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) Thread.sleep(1);
+        assertEquals(Thread.State.TIMED_WAITING, thread.getState());
+    }
+
+    @Test
+    void testFreedSlotsGoToTheTenantWithTheFewestRunning() throws InterruptedException {
+        FairShareScheduler scheduler = scheduler(2, Duration.ofSeconds(10));
+        scheduler.acquire("heavy");
+        scheduler.acquire("heavy");
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        // The heavy tenant queues first, yet the small one, with nothing running, goes first
+        Thread heavy = waiter(scheduler, "heavy", admitted);
+        awaitQueued(heavy);
+        Thread small = waiter(scheduler, "small", admitted);
+        awaitQueued(small);
+
+        scheduler.release("heavy");
+        small.join(5000);
+        assertEquals(List.of("small"), admitted);
+
+        scheduler.release("heavy");
+        heavy.join(5000);
+        assertEquals(List.of("small", "heavy"), admitted);
+    }
+
+    @Test
+    void testCallersQueuedPastMaxWaitAreTurnedAway() {
+        FairShareScheduler scheduler = scheduler(1, Duration.ofMillis(20));
+        scheduler.acquire("heavy");
+
+        assertThrows(TenantBusyException.class, () -> scheduler.acquire("small"));
+
+        scheduler.release("heavy");
+        scheduler.acquire("small");
+        scheduler.release("small");
+    }
+
+    @Test
+    void testADeadlineBeforeMaxWaitShortensTheWait() {
+        FairShareScheduler scheduler = scheduler(1, Duration.ofSeconds(30));
+        scheduler.acquire("heavy");
+
+        long start = System.nanoTime();
+        assertThrows(TenantBusyException.class,
+                () -> scheduler.acquire("small", System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        // Already spent: turned away without waiting at all
+        assertThrows(TenantBusyException.class, () -> scheduler.acquire("small", System.nanoTime() - 1));
+
+        scheduler.release("heavy");
+        scheduler.acquire("small", System.nanoTime() - 1);
+        scheduler.release("small");
+    }
+}
@@ -0,0 +1,158 @@
+package com.monk.commerce.service.tenant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.JsonCacheProperties;
+import com.monk.commerce.config.TenantProperties;
+import com.monk.commerce.dto.ApplicableCoupon;
+import com.monk.commerce.dto.CartItem;
+import com.monk.commerce.dto.CartRequest;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.ChangesUnavailableException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.repository.CustomerRedemptionRepository;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import com.monk.commerce.service.catalog.CouponJsonCache;
+import com.monk.commerce.service.redemption.CustomerUsageIndex;
+import com.monk.commerce.service.redemption.RedemptionLimiter;
+import com.monk.commerce.service.rule.RuleCompiler;
+import com.monk.commerce.service.session.CartEvaluator;
+import com.monk.commerce.service.strategy.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TenantCatalogsTests {
+
+    private CouponRepository repository;
+    private SimpleMeterRegistry registry;
+    private CouponCatalog defaultCatalog;
+    private TenantCatalogs tenants;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CouponRepository.class);
+        registry = new SimpleMeterRegistry();
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(cartWise(1, null, 10)));
+        when(repository.findByTenantId("acme")).thenReturn(List.of(cartWise(2, "acme", 20)));
+        when(repository.findByTenantId("globex")).thenReturn(List.of(cartWise(3, "globex", 30)));
+        tenants = tenants(Duration.ofMinutes(30), 10);
+    }
+
+    private TenantCatalogs tenants(Duration idleTimeout, int maxLoaded) {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        CouponStrategyFactory factory = new CouponStrategyFactory(List.of(
+                new CartWiseCouponStrategy(mapper),
+                new ProductWiseCouponStrategy(mapper),
+                new BxGyCouponStrategy(mapper),
+                new RuleCouponStrategy(new RuleCompiler(), mapper)
+        ));
+        RedemptionLimiter limiter = new RedemptionLimiter(repository,
+                new CustomerUsageIndex(mock(CustomerRedemptionRepository.class)), Optional.empty());
+        defaultCatalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(100));
+        return new TenantCatalogs(defaultCatalog, new CartEvaluator(defaultCatalog, factory, limiter),
+                new CouponJsonCache(mapper, new JsonCacheProperties(100, DataSize.ofMegabytes(1))),
+                new TenantProperties(idleTimeout, maxLoaded, 1, Duration.ofSeconds(1)), registry);
+    }
+
+    private static Coupon cartWise(int id, String tenant, double discount) {
+        return Coupon.builder().id(id).tenantId(tenant).type(CouponType.CART_WISE)
+                .details("{\"threshold\":0,\"discount\":" + discount + "}").version((long) id).build();
+    }
+
+    private static List<Integer> applicable(TenantPartition partition) {
+        return partition.evaluator().evaluate(new CartRequest(List.of(new CartItem(1, 1, 100.0)))).stream()
+                .map(ApplicableCoupon::couponId).toList();
+    }
+
+    @Test
+    void testEachTenantEvaluatesOnlyItsOwnCoupons() {
+        try (TenantPartition acme = tenants.acquire("acme");
+             TenantPartition fallback = tenants.acquire(TenantContext.DEFAULT)) {
+            assertSame(defaultCatalog, fallback.catalog());
+            assertEquals(List.of(2), applicable(acme));
+            assertEquals(List.of(1), applicable(fallback));
+        }
+        // Loaded on first read, and only for the tenant asked for
+        verify(repository).findByTenantId("acme");
+        verify(repository, never()).findByTenantId("globex");
+        verify(repository, never()).findAll();
+    }
+
+    @Test
+    void testIdlePartitionsAreEvictedUnlessLeased() {
+        tenants = tenants(Duration.ZERO, 10);
+        TenantPartition globex = tenants.acquire("globex");
+        try (TenantPartition acme = tenants.acquire("acme")) {
+            applicable(acme);
+        }
+
+        tenants.evictIdle();
+
+        // acme is dropped and loads afresh on its next request; globex is still leased
+        assertEquals(2, tenants.loaded().size());
+        assertSame(globex, tenants.acquire("globex"));
+        globex.close();
+        globex.close();
+        try (TenantPartition acme = tenants.acquire("acme")) {
+            assertEquals(List.of(2), applicable(acme));
+        }
+        verify(repository, times(2)).findByTenantId("acme");
+        assertEquals(1.0, registry.counter("coupons.tenants.evicted").count());
+    }
+
+    @Test
+    void testVersionsTakenByDeletesSurviveAReload() {
+        Map<String, Long> stored = new HashMap<>();
+        when(repository.raiseCatalogVersion(anyString(), anyLong())).thenAnswer(call ->
+                stored.merge(call.getArgument(0), call.getArgument(1), Math::max) == null ? 0 : 1);
+        when(repository.findCatalogVersion(anyString())).thenAnswer(call -> stored.get(call.<String>getArgument(0)));
+        tenants = tenants(Duration.ZERO, 10);
+        long before;
+        long deleted;
+        try (TenantPartition acme = tenants.acquire("acme")) {
+            CouponCatalog catalog = acme.catalog();
+            before = catalog.version();
+            deleted = catalog.mutate(version -> {
+                catalog.remove(2, version);
+                return version;
+            });
+        }
+        when(repository.findByTenantId("acme")).thenReturn(List.of());
+
+        tenants.evictIdle();
+
+        try (TenantPartition acme = tenants.acquire("acme")) {
+            CouponCatalog catalog = acme.catalog();
+            assertTrue(catalog.version() >= deleted);
+            assertTrue(catalog.mutate(version -> version) > deleted);
+            // A client that last synced before the delete must start over rather than miss it
+            assertThrows(ChangesUnavailableException.class, () -> catalog.changesSince(before));
+        }
+        verify(repository, times(2)).findByTenantId("acme");
+    }
+
+    @Test
+    void testLeastRecentlyUsedPartitionsGoBeyondMaxLoaded() throws InterruptedException {
+        tenants = tenants(Duration.ofMinutes(30), 1);
+        tenants.acquire("acme").close();
+        Thread.sleep(1);
+        tenants.acquire("globex").close();
+
+        List<String> loaded = tenants.loaded().stream().map(TenantPartition::tenant).toList();
+        assertEquals(List.of(TenantContext.DEFAULT, "globex"), loaded);
+    }
+}
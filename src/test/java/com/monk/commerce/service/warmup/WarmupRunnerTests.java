@@ -0,0 +1,120 @@
+package com.monk.commerce.service.warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.monk.commerce.config.ChangeLogProperties;
+import com.monk.commerce.config.WarmupProperties;
+import com.monk.commerce.dto.*;
+import com.monk.commerce.entity.Coupon;
+import com.monk.commerce.entity.CouponType;
+import com.monk.commerce.exception.CouponNotActiveException;
+import com.monk.commerce.repository.CouponRepository;
+import com.monk.commerce.service.CouponService;
+import com.monk.commerce.service.catalog.CouponCatalog;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WarmupRunnerTests {
+
+    private CouponRepository repository;
+    private CouponService service;
+    private CouponCatalog catalog;
+    private ObjectMapper mapper;
+    private SimpleMeterRegistry registry;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(CouponRepository.class);
+        service = mock(CouponService.class);
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        catalog = new CouponCatalog(repository, mapper, new ChangeLogProperties(1000));
+        registry = new SimpleMeterRegistry();
+
+        when(repository.findByTenantIdIsNull()).thenReturn(List.of(
+                Coupon.builder().id(1).type(CouponType.CART_WISE)
+                        .details("{\"threshold\":100,\"discount\":10}").build(),
+                Coupon.builder().id(2).type(CouponType.PRODUCT_WISE)
+                        .details("{\"productId\":1,\"discount\":20}").build()
+        ));
+        when(service.previewApplicableCoupons(any())).thenReturn(new ApplicableCouponsResponse(List.of()));
+    }
+
+    private WarmupRunner runner(WarmupProperties properties) {
+        return new WarmupRunner(service, catalog, repository, mapper, registry, properties);
+    }
+
+    @Test
+    void testRunsBoundedRoundsAndRecordsDuration() throws Exception {
+        WarmupProperties properties = new WarmupProperties(true, null, 10, 2, 5, 100, 0.0, Duration.ofSeconds(10));
+
+        runner(properties).run(null);
+
+        verify(service, times(50)).previewApplicableCoupons(any());
+        verify(service, never()).getApplicableCoupons(any());
+        verify(service, never()).applyCoupon(any(), any());
+        Timer timer = registry.get("coupons.warmup.duration").timer();
+        assertEquals(1, timer.count());
+        assertEquals(5.0, registry.get("coupons.warmup.rounds").gauge().value());
+    }
+
+    @Test
+    void testReplaysRecordedCarts() throws Exception {
+        Path carts = dir.resolve("carts.jsonl");
+        Files.writeString(carts, mapper.writeValueAsString(new CartRequest(List.of(new CartItem(1, 2, 50.0)))) + "\n");
+        WarmupProperties properties = new WarmupProperties(true, carts, 0, 1, 1, 1, 0.1, Duration.ofSeconds(10));
+
+        runner(properties).run(null);
+
+        verify(service).previewApplicableCoupons(new CartRequest(List.of(new CartItem(1, 2, 50.0))));
+    }
+
+    @Test
+    void testMalformedLinesSkipOnlyThemselves() throws Exception {
+        Path carts = dir.resolve("carts.jsonl");
+        Files.writeString(carts, "{not json\n"
+                + mapper.writeValueAsString(new CartRequest(List.of(new CartItem(1, 2, 50.0)))) + "\n");
+        WarmupProperties properties = new WarmupProperties(true, carts, 0, 1, 1, 1, 0.1, Duration.ofSeconds(10));
+
+        runner(properties).run(null);
+
+        verify(service).previewApplicableCoupons(new CartRequest(List.of(new CartItem(1, 2, 50.0))));
+    }
+
+    @Test
+    void testDisabled() throws Exception {
+        WarmupProperties properties = new WarmupProperties(false, null, 10, 1, 5, 1, 0.1, Duration.ofSeconds(10));
+
+        runner(properties).run(null);
+
+        verifyNoInteractions(service);
+        assertNull(registry.find("coupons.warmup.duration").timer());
+    }
+
+    @Test
+    void testAFailingSampleDoesNotSkipTheRest() throws Exception {
+        when(service.previewCoupon(eq(1), any())).thenThrow(new CouponNotActiveException(1));
+        WarmupProperties properties = new WarmupProperties(true, null, 3, 1, 1, 100, 0.0, Duration.ofSeconds(10));
+
+        runner(properties).run(null);
+
+        verify(service, times(3)).previewCoupon(eq(1), any());
+        verify(service, times(3)).previewCoupon(eq(2), any());
+    }
+}